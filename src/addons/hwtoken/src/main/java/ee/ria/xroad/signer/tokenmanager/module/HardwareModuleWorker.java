@@ -162,6 +162,7 @@ public class HardwareModuleWorker extends AbstractModuleWorker {
                 tokenInfo.getLabel().trim(), // PKCS11 gives us only 32 bytes.
                 module.isPinVerificationPerSigning(),
                 module.isBatchSigningEnabled(),
+                module.getSignSessionCount(),
                 module.getSignMechanismName(),
                 module.getPrivKeyAttributes(),
                 module.getPubKeyAttributes()
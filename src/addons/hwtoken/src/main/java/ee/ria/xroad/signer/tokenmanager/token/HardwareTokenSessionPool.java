@@ -0,0 +1,204 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import ee.ria.xroad.common.CodedException;
+
+import iaik.pkcs.pkcs11.Mechanism;
+import iaik.pkcs.pkcs11.Session;
+import iaik.pkcs.pkcs11.Token;
+import iaik.pkcs.pkcs11.objects.RSAPrivateKey;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+
+import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
+import static iaik.pkcs.pkcs11.Token.SessionType.SERIAL_SESSION;
+
+/**
+ * Pool of PKCS#11 sessions used for calculating signatures in parallel on one hardware token.
+ *
+ * The login state of a token is shared by all sessions of the application, so the sessions in the pool are
+ * opened after the user has logged in using the token's management session. Sessions that fail are closed and
+ * replaced with new ones on demand.
+ */
+@Slf4j
+class HardwareTokenSessionPool {
+
+    private final String tokenId;
+
+    private final Token token;
+
+    private final Callable<char[]> pin;
+
+    private final BlockingQueue<Session> idleSessions;
+
+    private volatile boolean closed;
+
+    /**
+     * Creates the pool and opens the given number of sessions on the token.
+     * @param tokenId the token id
+     * @param token the PKCS#11 token
+     * @param pin returns the stored PIN of the token, or null if the PIN is not stored
+     * @param size number of sessions in the pool
+     * @throws Exception if a session cannot be opened
+     */
+    HardwareTokenSessionPool(String tokenId, Token token, Callable<char[]> pin, int size) throws Exception {
+        this.tokenId = tokenId;
+        this.token = token;
+        this.pin = pin;
+        this.idleSessions = new ArrayBlockingQueue<>(size);
+
+        try {
+            for (int i = 0; i < size; i++) {
+                idleSessions.add(openSession());
+            }
+        } catch (Exception e) {
+            close();
+
+            throw e;
+        }
+    }
+
+    /**
+     * Signs the data with the given key on one of the pooled sessions. If the session turns out to be broken,
+     * it is replaced with a new session and signing is retried once.
+     * @param mechanism the sign mechanism
+     * @param key the private key
+     * @param data the data to be signed
+     * @return the signature
+     * @throws Exception in case of any errors
+     */
+    byte[] sign(Mechanism mechanism, RSAPrivateKey key, byte[] data) throws Exception {
+        if (closed) {
+            throw new CodedException(X_INTERNAL_ERROR, "No active session on token %s", tokenId);
+        }
+
+        try {
+            return sign(acquire(), mechanism, key, data);
+        } catch (PKCS11Exception e) {
+            if (!isSessionFailure(e)) {
+                throw e;
+            }
+
+            log.warn("Session on token '{}' failed ({}), re-establishing session", tokenId, e.getMessage());
+
+            return sign(openSession(), mechanism, key, data);
+        }
+    }
+
+    /**
+     * @return true, if the pool has been closed
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Closes all idle sessions. Sessions currently in use are closed when they are released.
+     */
+    void close() {
+        closed = true;
+
+        Session session;
+
+        while ((session = idleSessions.poll()) != null) {
+            closeSession(session);
+        }
+    }
+
+    private byte[] sign(Session session, Mechanism mechanism, RSAPrivateKey key, byte[] data) throws Exception {
+        boolean failed = false;
+
+        try {
+            session.signInit(mechanism, key);
+
+            return session.sign(data);
+        } catch (PKCS11Exception e) {
+            failed = isSessionFailure(e);
+
+            throw e;
+        } finally {
+            if (failed) {
+                closeSession(session);
+            } else {
+                release(session);
+            }
+        }
+    }
+
+    private Session acquire() throws Exception {
+        Session session = idleSessions.poll();
+
+        return session != null ? session : openSession();
+    }
+
+    private void release(Session session) {
+        if (closed || !idleSessions.offer(session)) {
+            closeSession(session);
+        }
+    }
+
+    private Session openSession() throws Exception {
+        Session session = token.openSession(SERIAL_SESSION, false, null, null);
+
+        try {
+            char[] password = pin.call();
+
+            if (password != null) {
+                // No-op if the token is already logged in, restores the login if the token has been reset.
+                HardwareTokenUtil.login(session, password);
+            }
+        } catch (Exception e) {
+            closeSession(session);
+
+            throw e;
+        }
+
+        return session;
+    }
+
+    private void closeSession(Session session) {
+        try {
+            session.closeSession();
+        } catch (Exception e) {
+            log.warn("Failed to close session on token '{}'", tokenId, e);
+        }
+    }
+
+    private static boolean isSessionFailure(PKCS11Exception e) {
+        long errorCode = e.getErrorCode();
+
+        return errorCode == PKCS11Constants.CKR_SESSION_HANDLE_INVALID
+                || errorCode == PKCS11Constants.CKR_SESSION_CLOSED
+                || errorCode == PKCS11Constants.CKR_USER_NOT_LOGGED_IN
+                || errorCode == PKCS11Constants.CKR_DEVICE_ERROR
+                || errorCode == PKCS11Constants.CKR_OPERATION_ACTIVE;
+    }
+}
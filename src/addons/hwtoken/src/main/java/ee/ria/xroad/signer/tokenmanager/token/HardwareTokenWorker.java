@@ -57,6 +57,11 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_KEY_NOT_FOUND;
@@ -104,12 +109,16 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
     // maps signature algorithm id and signing mechanism
     private final Map<String, Mechanism> signMechanisms;
 
-    // maps key id (hex) to RSAPrivateKey
-    private final Map<String, RSAPrivateKey> privateKeys = new HashMap<>();
+    // maps key id (hex) to RSAPrivateKey, read concurrently when signing on the session pool
+    private final Map<String, RSAPrivateKey> privateKeys = new ConcurrentHashMap<>();
     private final Map<String, List<X509PublicKeyCertificate>> certs = new HashMap<>();
 
     private Session activeSession;
 
+    // signing sessions and threads, used if the token is configured with more than one sign session
+    private ExecutorService signExecutor;
+    private volatile HardwareTokenSessionPool sessionPool;
+
     /**
      * @param tokenInfo the token info
      * @param tokenType the token type
@@ -172,6 +181,10 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
 
     @Override
     public void preStart() throws Exception {
+        if (isParallelSigning()) {
+            signExecutor = createSignExecutor();
+        }
+
         try {
             initialize();
             setTokenAvailable(tokenId, true);
@@ -199,6 +212,10 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
         } catch (Exception e) {
             log.warn("Failed to close active session", e);
         }
+
+        if (signExecutor != null) {
+            signExecutor.shutdownNow();
+        }
     }
 
     @Override
@@ -233,6 +250,13 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
         return e;
     }
 
+    @Override
+    protected Executor getSignExecutor() {
+        HardwareTokenSessionPool pool = sessionPool;
+
+        return pool != null && !pool.isClosed() ? signExecutor : null;
+    }
+
     // ----------------------- Message handlers -------------------------------
 
     @Override
@@ -397,7 +421,13 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
     protected byte[] sign(String keyId, String signatureAlgorithmId, byte[] data) throws Exception {
         log.trace("sign({}, {})", keyId, signatureAlgorithmId);
 
-        assertActiveSession();
+        // Once created, the pool is only ever replaced, so requests running on the sign executor never
+        // use the active session, which is confined to the worker thread.
+        HardwareTokenSessionPool pool = sessionPool;
+
+        if (pool == null) {
+            assertActiveSession();
+        }
 
         if (tokenType.isPinVerificationPerSigning()) {
             try {
@@ -430,6 +460,10 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
                         "Unsupported signature algorithm '%s'", signatureAlgorithmId);
             }
 
+            if (pool != null) {
+                return pool.sign(signMechanism, key, data);
+            }
+
             activeSession.signInit(signMechanism, key);
 
             return activeSession.sign(data);
@@ -586,6 +620,10 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
         try {
             HardwareTokenUtil.login(activeSession, password);
 
+            if (isParallelSigning()) {
+                openSessionPool();
+            }
+
             log.info("User successfully logged in");
 
             setTokenStatus(tokenId, TokenStatusInfo.OK);
@@ -604,6 +642,7 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
         }
 
         privateKeys.clear();
+        closeSessionPool();
 
         log.trace("logout()");
 
@@ -630,6 +669,35 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
         }
     }
 
+    private boolean isParallelSigning() {
+        return tokenType.getSignSessionCount() > 1 && !tokenType.isPinVerificationPerSigning();
+    }
+
+    private ExecutorService createSignExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        return Executors.newFixedThreadPool(tokenType.getSignSessionCount(), r -> {
+            Thread thread = new Thread(r, "token-sign-" + getWorkerId() + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void openSessionPool() throws Exception {
+        closeSessionPool();
+
+        sessionPool = new HardwareTokenSessionPool(tokenId, getToken(), () -> PasswordStore.getPassword(tokenId),
+                tokenType.getSignSessionCount());
+
+        log.debug("Opened {} sign session(s) on token '{}'", tokenType.getSignSessionCount(), getWorkerId());
+    }
+
+    private void closeSessionPool() {
+        if (sessionPool != null) {
+            sessionPool.close();
+        }
+    }
+
     private void loadPrivateKeys() throws Exception {
         if (activeSession == null) {
             return;
@@ -0,0 +1,232 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import ee.ria.xroad.common.CodedException;
+
+import iaik.pkcs.pkcs11.Mechanism;
+import iaik.pkcs.pkcs11.Session;
+import iaik.pkcs.pkcs11.Token;
+import iaik.pkcs.pkcs11.objects.RSAPrivateKey;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Exception;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the session handling of {@link HardwareTokenSessionPool} with mocked PKCS#11 sessions.
+ */
+public class HardwareTokenSessionPoolTest {
+
+    private static final char[] PIN = "1234".toCharArray();
+
+    private static final byte[] DATA = new byte[] {1, 2, 3};
+
+    private static final byte[] SIGNATURE = new byte[] {4, 5, 6};
+
+    private final Mechanism mechanism = new Mechanism(PKCS11Constants.CKM_RSA_PKCS);
+
+    private final RSAPrivateKey key = new RSAPrivateKey();
+
+    private Token token;
+
+    /**
+     * Creates the mocked token.
+     */
+    @Before
+    public void setUp() {
+        token = mock(Token.class);
+    }
+
+    /**
+     * Test that the pooled sessions are reused and not closed after signing.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void signOnPooledSessions() throws Exception {
+        Session first = signingSession();
+        Session second = signingSession();
+        openSessions(first, second);
+
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool("token", token, () -> PIN, 2);
+
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(SIGNATURE, pool.sign(mechanism, key, DATA));
+        }
+
+        verify(token, times(2)).openSession(anyBoolean(), anyBoolean(), any(), any());
+        verify(first, times(2)).sign(DATA);
+        verify(second).sign(DATA);
+        verify(first, never()).closeSession();
+        verify(first).login(anyBoolean(), eq(PIN));
+    }
+
+    /**
+     * Test that a session failing with a session error is closed and signing is retried on a new session
+     * that logs in again.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void replaceFailedSession() throws Exception {
+        long[] sessionFailures = {
+            PKCS11Constants.CKR_SESSION_HANDLE_INVALID,
+            PKCS11Constants.CKR_SESSION_CLOSED,
+            PKCS11Constants.CKR_USER_NOT_LOGGED_IN,
+            PKCS11Constants.CKR_DEVICE_ERROR,
+            PKCS11Constants.CKR_OPERATION_ACTIVE
+        };
+
+        for (long errorCode : sessionFailures) {
+            setUp();
+
+            Session failing = failingSession(errorCode);
+            Session replacement = signingSession();
+            openSessions(failing, replacement);
+
+            HardwareTokenSessionPool pool = new HardwareTokenSessionPool("token", token, () -> PIN, 1);
+
+            assertArrayEquals(SIGNATURE, pool.sign(mechanism, key, DATA));
+
+            verify(failing).closeSession();
+            verify(replacement).login(anyBoolean(), eq(PIN));
+            verify(replacement, never()).closeSession();
+
+            // the replacement session is kept in the pool
+            assertArrayEquals(SIGNATURE, pool.sign(mechanism, key, DATA));
+            verify(token, times(2)).openSession(anyBoolean(), anyBoolean(), any(), any());
+        }
+    }
+
+    /**
+     * Test that other errors are thrown without replacing the session.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void keepSessionOnOtherErrors() throws Exception {
+        Session session = failingSession(PKCS11Constants.CKR_KEY_HANDLE_INVALID);
+        openSessions(session);
+
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool("token", token, () -> PIN, 1);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                pool.sign(mechanism, key, DATA);
+                fail("Expected PKCS11Exception");
+            } catch (PKCS11Exception expected) {
+                assertEquals(PKCS11Constants.CKR_KEY_HANDLE_INVALID, expected.getErrorCode());
+            }
+        }
+
+        verify(session, never()).closeSession();
+        verify(token).openSession(anyBoolean(), anyBoolean(), any(), any());
+    }
+
+    /**
+     * Test that a session in use when the pool is closed is closed when it is released, and that the
+     * closed pool refuses to sign.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void closeSessionOnReleaseAfterPoolClosed() throws Exception {
+        Session idle = signingSession();
+        Session inUse = mock(Session.class);
+        openSessions(inUse, idle);
+
+        HardwareTokenSessionPool pool = new HardwareTokenSessionPool("token", token, () -> PIN, 2);
+
+        doAnswer(invocation -> {
+            pool.close();
+            return SIGNATURE;
+        }).when(inUse).sign(DATA);
+
+        assertArrayEquals(SIGNATURE, pool.sign(mechanism, key, DATA));
+
+        assertTrue(pool.isClosed());
+        verify(idle).closeSession();
+        verify(inUse).closeSession();
+
+        try {
+            pool.sign(mechanism, key, DATA);
+            fail("Expected CodedException");
+        } catch (CodedException expected) {
+            // the pool is closed
+        }
+    }
+
+    /**
+     * Test that the sessions opened so far are closed if the pool cannot be created, and that login is
+     * skipped when no PIN is stored.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void closeSessionsWhenCreationFails() throws Exception {
+        Session opened = signingSession();
+        when(token.openSession(anyBoolean(), anyBoolean(), any(), any()))
+                .thenReturn(opened)
+                .thenThrow(new PKCS11Exception(PKCS11Constants.CKR_SESSION_COUNT));
+
+        try {
+            new HardwareTokenSessionPool("token", token, () -> null, 2);
+            fail("Expected PKCS11Exception");
+        } catch (PKCS11Exception expected) {
+            assertEquals(PKCS11Constants.CKR_SESSION_COUNT, expected.getErrorCode());
+        }
+
+        verify(opened).closeSession();
+        verify(opened, never()).login(anyBoolean(), any());
+    }
+
+    private void openSessions(Session first, Session... rest) throws Exception {
+        when(token.openSession(anyBoolean(), anyBoolean(), any(), any())).thenReturn(first, rest);
+    }
+
+    private static Session signingSession() throws Exception {
+        Session session = mock(Session.class);
+        when(session.sign(DATA)).thenReturn(SIGNATURE);
+
+        return session;
+    }
+
+    private static Session failingSession(long errorCode) throws Exception {
+        Session session = mock(Session.class);
+        when(session.sign(DATA)).thenThrow(new PKCS11Exception(errorCode));
+
+        return session;
+    }
+}
@@ -31,6 +31,7 @@ import ee.ria.xroad.common.signature.TimestampVerifier;
 
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.tsp.TimeStampRequest;
@@ -39,8 +40,22 @@ import org.bouncycastle.tsp.TimeStampResponse;
 import org.bouncycastle.tsp.TimeStampToken;
 
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
@@ -52,8 +67,22 @@ import static ee.ria.xroad.proxy.messagelog.TimestamperUtil.getTimestampResponse
 @RequiredArgsConstructor
 abstract class AbstractTimestampRequest {
 
+    // Bounds the number of concurrent hedged requests; when all the threads are busy, requests are not hedged
+    private static final int HEDGE_THREADS = 8;
+    private static final long HEDGE_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    private static final ExecutorService HEDGE_EXECUTOR = new ThreadPoolExecutor(0, HEDGE_THREADS,
+            HEDGE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            AbstractTimestampRequest::newHedgeThread);
+
     protected final Long[] logRecords;
 
+    // connections of the hedged requests, closed when their responses are no longer needed
+    private final Set<String> hedgedUrls = ConcurrentHashMap.newKeySet();
+    private final Map<String, HttpURLConnection> hedgedConnections = new ConcurrentHashMap<>();
+
+    private volatile boolean hedgeFinished;
+
     abstract byte[] getRequestData() throws Exception;
 
     abstract Timestamper.TimestampResult result(TimeStampResponse tsResponse, String url) throws Exception;
@@ -77,19 +106,25 @@ abstract class AbstractTimestampRequest {
 
     protected Timestamper.TimestampResult makeTsRequest(TimeStampRequest tsRequest,
                                       List<String> tspUrls) throws Exception {
-        for (String url: tspUrls) {
-            try {
-                log.debug("Sending time-stamp request to {}", url);
+        int first = 0;
 
-                TsRequest req = new TsRequest(TimestamperUtil.makeTsRequest(tsRequest, url), url);
-
-                TimeStampResponse tsResponse = getTimestampResponse(req.getInputStream());
-                log.info("tsresponse {}", tsResponse);
-
-                verify(tsRequest, tsResponse);
+        long hedgeDelay = getHedgeDelay(tspUrls);
+        if (hedgeDelay >= 0) {
+            try {
+                Timestamper.TimestampResult result = makeHedgedTsRequest(tsRequest, tspUrls, hedgeDelay);
+                if (result != null) {
+                    return result;
+                }
 
-                return result(tsResponse, url);
+                first = 2;
+            } catch (RejectedExecutionException e) {
+                log.warn("Too many concurrent hedged time-stamp requests, sending the request without hedging");
+            }
+        }
 
+        for (String url: tspUrls.subList(first, tspUrls.size())) {
+            try {
+                return result(getRecordedResponse(tsRequest, url), url);
             } catch (Exception ex) {
                 log.error("Failed to get time stamp from " + url, ex);
             }
@@ -100,6 +135,197 @@ abstract class AbstractTimestampRequest {
                 "Failed to get time stamp from any time-stamping providers");
     }
 
+    /**
+     * Sends the request to the first provider and, if it has not responded within the hedge delay or has failed,
+     * also to the second provider. The first valid response is used, and the request still pending is cancelled
+     * and its connection closed. Only the responses received before that are recorded in the provider statistics,
+     * so a provider is not counted as failing because its request was cancelled.
+     * @return the result, or null if neither of the providers returned a valid response
+     * @throws RejectedExecutionException if the request could not be sent because all hedging threads are busy
+     */
+    private Timestamper.TimestampResult makeHedgedTsRequest(TimeStampRequest tsRequest, List<String> tspUrls,
+            long hedgeDelay) throws Exception {
+        CompletionService<HedgedResponse> requests = new ExecutorCompletionService<>(HEDGE_EXECUTOR);
+        List<Future<HedgedResponse>> futures = new ArrayList<>(2);
+        String winner = null;
+
+        futures.add(requests.submit(hedgedRequest(tsRequest, tspUrls.get(0))));
+
+        try {
+            int pending = 1;
+            boolean hedged = false;
+
+            Future<HedgedResponse> done = requests.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+            if (done == null) {
+                log.debug("No time-stamp response from {} in {} ms, sending hedged request to {}",
+                        tspUrls.get(0), hedgeDelay, tspUrls.get(1));
+
+                pending += hedge(requests, futures, tsRequest, tspUrls.get(1));
+                hedged = true;
+            }
+
+            while (pending > 0) {
+                HedgedResponse response = (done != null ? done : requests.take()).get();
+                pending--;
+                done = null;
+
+                try {
+                    if (response.getError() != null) {
+                        TspStatistics.recordFailure(response.getUrl());
+
+                        throw response.getError();
+                    }
+
+                    TspStatistics.recordLatency(response.getUrl(), response.getMillis());
+
+                    Timestamper.TimestampResult result = result(response.getResponse(), response.getUrl());
+                    winner = response.getUrl();
+
+                    return result;
+                } catch (Exception ex) {
+                    log.error("Failed to get time stamp from " + response.getUrl(), ex);
+                }
+
+                if (!hedged) {
+                    // The first provider failed within the hedge delay
+                    pending += hedge(requests, futures, tsRequest, tspUrls.get(1));
+                    hedged = true;
+                }
+            }
+
+            return null;
+        } finally {
+            cancelLosers(futures, winner);
+        }
+    }
+
+    /**
+     * @return 1 if the request was sent, 0 if all hedging threads are busy
+     */
+    private int hedge(CompletionService<HedgedResponse> requests, List<Future<HedgedResponse>> futures,
+            TimeStampRequest tsRequest, String url) {
+        try {
+            futures.add(requests.submit(hedgedRequest(tsRequest, url)));
+
+            return 1;
+        } catch (RejectedExecutionException e) {
+            log.warn("Too many concurrent hedged time-stamp requests, not sending hedged request to {}", url);
+
+            return 0;
+        }
+    }
+
+    private void cancelLosers(List<Future<HedgedResponse>> futures, String winner) {
+        hedgeFinished = true;
+
+        for (Future<HedgedResponse> future : futures) {
+            future.cancel(true);
+        }
+
+        // Interrupting does not stop blocking socket reads, so the connections still waiting are closed as well.
+        // Connections opened after this are closed by connectionOpened().
+        hedgedConnections.forEach((url, connection) -> {
+            if (!url.equals(winner)) {
+                connection.disconnect();
+            }
+        });
+    }
+
+    private void connectionOpened(String url, HttpURLConnection connection) {
+        if (!hedgedUrls.contains(url)) {
+            return;
+        }
+
+        hedgedConnections.put(url, connection);
+
+        if (hedgeFinished) {
+            connection.disconnect();
+        }
+    }
+
+    private Callable<HedgedResponse> hedgedRequest(TimeStampRequest tsRequest, String url) {
+        hedgedUrls.add(url);
+
+        return () -> {
+            long start = System.currentTimeMillis();
+            try {
+                TimeStampResponse tsResponse = getVerifiedResponse(tsRequest, url);
+
+                return new HedgedResponse(url, tsResponse, null, System.currentTimeMillis() - start);
+            } catch (Exception ex) {
+                return new HedgedResponse(url, null, ex, System.currentTimeMillis() - start);
+            }
+        };
+    }
+
+    /**
+     * Gets the verified response and records the response time or the failure in the provider statistics.
+     */
+    private TimeStampResponse getRecordedResponse(TimeStampRequest tsRequest, String url) throws Exception {
+        long start = System.currentTimeMillis();
+
+        try {
+            TimeStampResponse tsResponse = getVerifiedResponse(tsRequest, url);
+
+            TspStatistics.recordLatency(url, System.currentTimeMillis() - start);
+
+            return tsResponse;
+        } catch (Exception e) {
+            TspStatistics.recordFailure(url);
+
+            throw e;
+        }
+    }
+
+    TimeStampResponse getVerifiedResponse(TimeStampRequest tsRequest, String url) throws Exception {
+        log.debug("Sending time-stamp request to {}", url);
+
+        TsRequest req = new TsRequest(TimestamperUtil.makeTsRequest(tsRequest, url,
+                connection -> connectionOpened(url, connection)), url);
+
+        TimeStampResponse tsResponse = getTimestampResponse(req.getInputStream());
+        log.info("tsresponse {}", tsResponse);
+
+        verify(tsRequest, tsResponse);
+
+        return tsResponse;
+    }
+
+    /**
+     * @return the time in milliseconds to wait for the first provider before sending the request to the second
+     * provider too (0 if the request is sent to both at once), or -1 if requests should not be hedged
+     */
+    private static long getHedgeDelay(List<String> tspUrls) {
+        if (tspUrls.size() < 2) {
+            return -1;
+        }
+
+        if (MessageLogProperties.isTimestampConcurrentRequests()) {
+            return 0;
+        }
+
+        int percentile = MessageLogProperties.getTimestampHedgePercentile();
+        if (percentile <= 0) {
+            return -1;
+        }
+
+        return TspStatistics.getLatencyPercentile(tspUrls.get(0), percentile);
+    }
+
+    private static Thread newHedgeThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "timestamper-hedge");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    @Value
+    private static class HedgedResponse {
+        private final String url;
+        private final TimeStampResponse response;
+        private final Exception error;
+        private final long millis;
+    }
+
     private TimeStampRequest createTimestampRequest(byte[] data)
             throws Exception {
         TimeStampRequestGenerator reqgen = new TimeStampRequestGenerator();
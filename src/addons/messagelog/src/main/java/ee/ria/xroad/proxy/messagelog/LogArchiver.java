@@ -27,6 +27,7 @@ package ee.ria.xroad.proxy.messagelog;
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.ErrorCodes;
 import ee.ria.xroad.common.messagelog.LogRecord;
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.messagelog.MessageRecord;
 import ee.ria.xroad.common.messagelog.TimestampRecord;
 import ee.ria.xroad.common.messagelog.archive.DigestEntry;
@@ -87,6 +88,12 @@ public class LogArchiver extends UntypedAbstractActor {
                     while (handleArchive(maxTimestampId)) {
                     }
                 }
+
+                if (MessageLogProperties.isPartitionedStorage()) {
+                    int marked = doInTransaction(session ->
+                            LogRecordPartitions.markArchived(session, System.currentTimeMillis()));
+                    log.debug("Marked {} log record partitions archived", marked);
+                }
             } catch (Exception ex) {
                 log.error("Failed to archive log records", ex);
             }
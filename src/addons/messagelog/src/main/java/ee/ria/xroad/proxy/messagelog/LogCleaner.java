@@ -24,6 +24,7 @@
  */
 package ee.ria.xroad.proxy.messagelog;
 
+import ee.ria.xroad.common.db.TransactionCallback;
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
 
 import akka.actor.UntypedAbstractActor;
@@ -43,6 +44,9 @@ public class LogCleaner extends UntypedAbstractActor {
     public static final String START_CLEANING = "doClean";
     public static final int CLEAN_BATCH_LIMIT = MessageLogProperties.getCleanTransactionBatchSize();
 
+    private static final int PARTITION_LOCK_ATTEMPTS = 5;
+    private static final long PARTITION_LOCK_RETRY_DELAY_MILLIS = 5000;
+
     @Override
     public void onReceive(Object message) {
         log.trace("onReceive({})", message);
@@ -67,18 +71,93 @@ public class LogCleaner extends UntypedAbstractActor {
     protected long handleClean() throws Exception {
 
         final Long time = new DateTime().minusDays(MessageLogProperties.getKeepRecordsForDays()).getMillis();
+
+        if (MessageLogProperties.isPartitionedStorage()) {
+            dropExpiredPartitions(time);
+            createPartitions();
+
+            long count = 0;
+
+            // The daily partitions are dropped as a whole, records are deleted row by row only from the others.
+            for (String name : doInTransaction(LogRecordPartitions::getRowDeletePartitions)) {
+                count += deleteRecords(session ->
+                        LogRecordPartitions.deleteArchivedRecords(session, name, time, CLEAN_BATCH_LIMIT));
+            }
+
+            return count;
+        }
+
+        return deleteRecords(session -> {
+            final Query query = session.getNamedQuery("delete-logrecords");
+            query.setParameter("time", time);
+            query.setParameter("limit", CLEAN_BATCH_LIMIT);
+            return query.executeUpdate();
+        });
+    }
+
+    private static long deleteRecords(TransactionCallback<Integer> deleteBatch) throws Exception {
         long count = 0;
         int removed;
         do {
-            removed = doInTransaction(session -> {
-                final Query query = session.getNamedQuery("delete-logrecords");
-                query.setParameter("time", time);
-                query.setParameter("limit", CLEAN_BATCH_LIMIT);
-                return query.executeUpdate();
-            });
+            removed = doInTransaction(deleteBatch);
             log.debug("Removed {} archived records", removed);
             count += removed;
         } while (removed > 0);
         return count;
     }
+
+    private void dropExpiredPartitions(long time) throws Exception {
+        for (String name : doInTransaction(session -> LogRecordPartitions.getExpiredPartitions(session, time))) {
+            try {
+                doInPartitionTransaction(session -> {
+                    LogRecordPartitions.dropPartition(session, name);
+                    return null;
+                });
+                log.info("Dropped archived log record partition {}", name);
+            } catch (Exception e) {
+                log.error("Error when dropping log record partition " + name, e);
+            }
+        }
+    }
+
+    private void createPartitions() throws Exception {
+        Long end = doInTransaction(LogRecordPartitions::getPartitionsEnd);
+
+        if (end == null) {
+            log.warn("No log record partitions found, partitioned storage has not been set up in the database");
+
+            return;
+        }
+
+        for (long start : LogRecordPartitions.getPartitionsToCreate(end, System.currentTimeMillis())) {
+            try {
+                String name = doInPartitionTransaction(session ->
+                        LogRecordPartitions.createPartition(session, start));
+                log.info("Created log record partition {}", name);
+            } catch (Exception e) {
+                // The partitions must be contiguous, the rest are created on the next run
+                log.error("Error when creating log record partition " + LogRecordPartitions.getPartitionName(start),
+                        e);
+
+                break;
+            }
+        }
+    }
+
+    private static <T> T doInPartitionTransaction(TransactionCallback<T> callback) throws Exception {
+        for (int attempt = 1;; attempt++) {
+            try {
+                return doInTransaction(callback);
+            } catch (LogRecordPartitions.LockTimeoutException e) {
+                if (attempt >= PARTITION_LOCK_ATTEMPTS) {
+                    throw e;
+                }
+
+                log.warn("Timed out waiting for a lock on the log record table, retrying (attempt {} of {})",
+                        attempt, PARTITION_LOCK_ATTEMPTS);
+
+                Thread.sleep(PARTITION_LOCK_RETRY_DELAY_MILLIS * attempt);
+            }
+        }
+    }
 }
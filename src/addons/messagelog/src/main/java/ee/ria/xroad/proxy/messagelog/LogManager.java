@@ -32,7 +32,9 @@ import ee.ria.xroad.common.DiagnosticsUtils;
 import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
+import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.messagelog.AbstractLogManager;
+import ee.ria.xroad.common.messagelog.FindByQueryId;
 import ee.ria.xroad.common.messagelog.LogMessage;
 import ee.ria.xroad.common.messagelog.LogRecord;
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
@@ -61,7 +63,11 @@ import scala.concurrent.duration.FiniteDuration;
 
 import java.nio.file.Paths;
 import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_LOGGING_FAILED_X;
@@ -71,6 +77,7 @@ import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveInte
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getCleanInterval;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getHashAlg;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getTimestampRetryDelay;
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.getWriterCount;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.shouldTimestampImmediately;
 import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
 import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
@@ -82,7 +89,8 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * Message log manager. Sets up the whole logging system components.
- * The logging system consists of a task queue, timestamper, archiver and log cleaner.
+ * The logging system consists of log writers, a task queue, timestamper, archiver and log cleaner.
+ * Logged messages and query id lookups are sharded between the log writers by member and query id.
  */
 @Slf4j
 public class LogManager extends AbstractLogManager {
@@ -96,6 +104,12 @@ public class LogManager extends AbstractLogManager {
     static final String TIMESTAMPER_NAME = "RequestLogTimestamper";
     static final String ARCHIVER_NAME = "RequestLogArchiver";
     static final String CLEANER_NAME = "RequestLogCleaner";
+    static final String WRITER_NAME = "RequestLogWriter";
+
+    static final String WRITER_DISPATCHER = "akka.messagelog-writer-dispatcher";
+
+    // Database connections needed besides the writers' connections
+    static final int RESERVED_CONNECTIONS = 3;
 
     static final long MAX_LOGGABLE_BODY_SIZE = MessageLogProperties.getMaxLoggableBodySize();
     static final boolean TRUNCATED_BODY_ALLOWED = MessageLogProperties.isTruncatedBodyAllowed();
@@ -103,10 +117,12 @@ public class LogManager extends AbstractLogManager {
     // Date at which a time-stamping first failed.
     private DateTime timestampFailed;
 
-    private final ActorRef timestamper;
+
     private final ActorRef timestamperJob;
+    private final List<ActorRef> writers;
 
     // package private for testing
+    final ActorRef timestamper;
     final ActorRef taskQueueRef;
     final ActorRef logArchiver;
     final ActorRef logCleaner;
@@ -117,6 +133,7 @@ public class LogManager extends AbstractLogManager {
         taskQueueRef = createTaskQueue();
         timestamper = createTimestamper();
         timestamperJob = createTimestamperJob();
+        writers = createWriters();
         logArchiver = createArchiver(jobManager);
         logCleaner = createCleaner(jobManager);
     }
@@ -130,6 +147,30 @@ public class LogManager extends AbstractLogManager {
         return ref;
     }
 
+    private List<ActorRef> createWriters() {
+        int count = Math.max(getWriterCount(), 1);
+        int poolSize = MessageLogDatabaseCtx.getMaxPoolSize();
+
+        // Each writer holds a database connection while saving, the rest are left for time-stamping,
+        // archiving and cleaning.
+        if (poolSize > 0 && count > poolSize - RESERVED_CONNECTIONS) {
+            int maxCount = Math.max(poolSize - RESERVED_CONNECTIONS, 1);
+
+            log.warn("Message log writer count {} needs a database connection pool of at least {} connections, "
+                    + "the pool has {}. Using {} writers.", count, count + RESERVED_CONNECTIONS, poolSize, maxCount);
+
+            count = maxCount;
+        }
+
+        List<ActorRef> refs = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            refs.add(getContext().actorOf(getWriterImpl(), WRITER_NAME + i));
+        }
+
+        return refs;
+    }
+
     private ActorRef createTimestamperJob() {
         ActorRef ref = getContext().actorOf(Props.create(TimestamperJob.class, getTimestamperJobInitialDelay()));
         return ref;
@@ -158,25 +199,6 @@ public class LogManager extends AbstractLogManager {
 
     // ------------------------------------------------------------------------
 
-    @Override
-    protected void log(LogMessage message) throws Exception {
-        boolean shouldTimestampImmediately = shouldTimestampImmediately();
-
-        verifyCanLogMessage(shouldTimestampImmediately);
-
-        MessageRecord logRecord;
-        if (message instanceof SoapLogMessage) {
-            logRecord = createMessageRecord((SoapLogMessage) message);
-        } else {
-            logRecord = createMessageRecord((RestLogMessage) message);
-        }
-        logRecord = saveMessageRecord(logRecord);
-
-        if (shouldTimestampImmediately) {
-            timestampImmediately(logRecord);
-        }
-    }
-
     @Override
     protected TimestampRecord timestamp(Long messageRecordId) throws Exception {
         log.trace("timestamp({})", messageRecordId);
@@ -196,11 +218,27 @@ public class LogManager extends AbstractLogManager {
         }
     }
 
+    /**
+     * Forwards the message to its log writer, which replies to the sender once the message has been saved.
+     */
+    @Override
+    protected void log(LogMessage message) throws Exception {
+        verifyCanLogMessage(shouldTimestampImmediately());
+
+        getWriter(getMember(message)).forward(message, getContext());
+    }
+
+    /**
+     * Forwards the query to a log writer, which replies to the sender with the result.
+     * @return null, the result is sent by the log writer
+     */
     @Override
     protected LogRecord findByQueryId(String queryId, Date startTime, Date endTime) throws Exception {
         log.trace("findByQueryId({}, {}, {})", queryId, startTime, endTime);
 
-        return LogRecordManager.getByQueryId(queryId, startTime, endTime);
+        getWriter(queryId).forward(new FindByQueryId(queryId, startTime, endTime), getContext());
+
+        return null;
     }
 
     @Override
@@ -209,9 +247,14 @@ public class LogManager extends AbstractLogManager {
 
         try {
             if (message instanceof String && CommonMessages.TIMESTAMP_STATUS.equals(message)) {
-                getSender().tell(statusMap, getSelf());
+                getSender().tell(getTimestampingStatus(), getSelf());
             } else if (message instanceof SetTimestampingStatusMessage) {
                 setTimestampingStatus((SetTimestampingStatusMessage) message);
+            } else if (message instanceof LogMessage) {
+                log((LogMessage) message);
+            } else if (message instanceof FindByQueryId) {
+                FindByQueryId f = (FindByQueryId) message;
+                findByQueryId(f.getQueryId(), f.getStartTime(), f.getEndTime());
             } else {
                 super.onReceive(message);
             }
@@ -220,6 +263,14 @@ public class LogManager extends AbstractLogManager {
         }
     }
 
+    private ActorRef getWriter(Object shardKey) {
+        return writers.get(Math.floorMod(shardKey.hashCode(), writers.size()));
+    }
+
+    private static ClientId getMember(LogMessage message) {
+        return message.isClientSide() ? message.getClient() : message.getService().getClientId();
+    }
+
     // ------------------------------------------------------------------------
 
     protected Props getTaskQueueImpl() {
@@ -239,11 +290,36 @@ public class LogManager extends AbstractLogManager {
         return Props.create(LogCleaner.class);
     }
 
+    protected Props getWriterImpl() {
+        return Props.create(LogWriter.class, timestamper).withDispatcher(WRITER_DISPATCHER);
+    }
+
     private TimestampRecord timestampImmediately(MessageRecord logRecord) throws Exception {
+        return timestampImmediately(timestamper, logRecord);
+    }
+
+    static TimestampRecord timestampImmediately(ActorRef timestamper, MessageRecord logRecord) throws Exception {
         log.trace("timestampImmediately({})", logRecord);
 
-        Object result = Await.result(Patterns.ask(timestamper, new Timestamper.TimestampTask(logRecord),
-                TIMESTAMP_TIMEOUT), TIMESTAMP_TIMEOUT.duration());
+        return timestampImmediately(timestamper, new Timestamper.TimestampTask(logRecord));
+    }
+
+    /**
+     * Time-stamps the message records in one batch.
+     */
+    static TimestampRecord timestampImmediately(ActorRef timestamper, List<MessageRecord> logRecords)
+            throws Exception {
+        log.trace("timestampImmediately({} records)", logRecords.size());
+
+        return timestampImmediately(timestamper, new Timestamper.TimestampTask(
+                logRecords.stream().map(MessageRecord::getId).toArray(Long[]::new),
+                logRecords.stream().map(MessageRecord::getSignatureHash).toArray(String[]::new)));
+    }
+
+    private static TimestampRecord timestampImmediately(ActorRef timestamper, Timestamper.TimestampTask task)
+            throws Exception {
+        Object result = Await.result(Patterns.ask(timestamper, task, TIMESTAMP_TIMEOUT),
+                TIMESTAMP_TIMEOUT.duration());
 
         if (result instanceof Timestamper.TimestampSucceeded) {
             return saveTimestampRecord((Timestamper.TimestampSucceeded) result);
@@ -252,9 +328,7 @@ public class LogManager extends AbstractLogManager {
 
             log.error("Timestamping failed", e);
 
-            for (String tspUrl : ServerConf.getTspUrl()) {
-                statusMap.put(tspUrl, new DiagnosticsStatus(DiagnosticsUtils.getErrorCode(e), LocalTime.now(), tspUrl));
-            }
+            setTimestampingFailed(e);
 
             throw e;
         } else {
@@ -262,6 +336,14 @@ public class LogManager extends AbstractLogManager {
         }
     }
 
+    static MessageRecord createMessageRecord(LogMessage message) throws Exception {
+        if (message instanceof SoapLogMessage) {
+            return createMessageRecord((SoapLogMessage) message);
+        } else {
+            return createMessageRecord((RestLogMessage) message);
+        }
+    }
+
     private static MessageRecord createMessageRecord(SoapLogMessage message) throws Exception {
         log.trace("createMessageRecord()");
 
@@ -321,9 +403,25 @@ public class LogManager extends AbstractLogManager {
         return messageRecord;
     }
 
-    protected MessageRecord saveMessageRecord(MessageRecord messageRecord) throws Exception {
-        LogRecordManager.saveMessageRecord(messageRecord);
-        return messageRecord;
+    /**
+     * Sets the status of all the time-stamping providers to failed after none of them could time-stamp.
+     */
+    static void setTimestampingFailed(Exception e) {
+        for (String tspUrl : ServerConf.getTspUrl()) {
+            statusMap.put(tspUrl, new DiagnosticsStatus(DiagnosticsUtils.getErrorCode(e), LocalTime.now(), tspUrl));
+        }
+    }
+
+    /**
+     * @return the status of each time-stamping provider together with the statistics of its recent requests
+     */
+    static Map<String, DiagnosticsStatus> getTimestampingStatus() {
+        Map<String, DiagnosticsStatus> result = new HashMap<>();
+
+        statusMap.forEach((url, status) -> result.put(url, new TimestampingStatus(status,
+                TspStatistics.getErrorRate(url), TspStatistics.getMedianLatency(url))));
+
+        return result;
     }
 
     static TimestampRecord saveTimestampRecord(Timestamper.TimestampSucceeded message) throws Exception {
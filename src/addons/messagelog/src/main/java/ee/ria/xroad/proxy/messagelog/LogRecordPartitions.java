@@ -0,0 +1,285 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Maintains the daily partitions of the LOGRECORD table when the time-partitioned storage layout is in use
+ * (see {@link MessageLogProperties#isPartitionedStorage()}).
+ *
+ * Every partition is listed in the LOGRECORD_PARTITION table together with the range of record times it
+ * holds. The archiver marks the partitions whose records have all been archived, and the cleaner drops the
+ * marked partitions that are older than the retention period. Records are deleted one by one only from the
+ * legacy partition, which holds the records saved before the migration, and from the default partition.
+ *
+ * Creating and detaching a partition needs an exclusive lock on the LOGRECORD table. The statements give up
+ * waiting for the lock after {@link #LOCK_TIMEOUT_MILLIS}, so that the message log writers do not queue
+ * behind them while a long transaction holds the table, and throw {@link LockTimeoutException}.
+ */
+@Slf4j
+final class LogRecordPartitions {
+
+    /** The range of record times in one partition. */
+    static final long PARTITION_LENGTH = TimeUnit.DAYS.toMillis(1);
+
+    /** Number of partitions that are created in advance. */
+    static final int PARTITIONS_AHEAD = 7;
+
+    // Records are saved a moment after their time is taken, so a partition is checked for unarchived
+    // records only after it has been closed for a while.
+    private static final long CLOSED_PARTITION_MARGIN = TimeUnit.HOURS.toMillis(1);
+
+    /** How long partition maintenance waits for a lock on the LOGRECORD table. */
+    static final long LOCK_TIMEOUT_MILLIS = 1000;
+
+    private static final String LOCK_NOT_AVAILABLE = "55P03";
+
+    private static final String LEGACY_PARTITION = "logrecord_legacy";
+
+    private static final String DEFAULT_PARTITION = "logrecord_default";
+
+    private static final String PARTITION_NAME_PREFIX = "logrecord_p";
+
+    // Partition names are part of DDL statements, so only names created by us are accepted.
+    private static final Pattern PARTITION_NAME = Pattern.compile("logrecord_[a-z0-9_]+");
+
+    private static final DateTimeFormatter PARTITION_DATE = DateTimeFormat.forPattern("yyyyMMdd").withZoneUTC();
+
+    private LogRecordPartitions() {
+    }
+
+    /**
+     * Marks the closed partitions, which no longer contain unarchived records, archived.
+     * @param session the database session
+     * @param now the current time in milliseconds
+     * @return number of partitions marked archived
+     */
+    static int markArchived(Session session, long now) {
+        return session.getNamedQuery("mark-logrecord-partitions-archived")
+                .setParameter("time", now - CLOSED_PARTITION_MARGIN)
+                .executeUpdate();
+    }
+
+    /**
+     * @param session the database session
+     * @param time the oldest record time to keep in milliseconds
+     * @return the names of archived partitions that only contain records older than the given time
+     */
+    @SuppressWarnings("unchecked")
+    static List<String> getExpiredPartitions(Session session, long time) {
+        return session.getNamedQuery("get-archived-logrecord-partitions")
+                .setParameter("time", time)
+                .list();
+    }
+
+    /**
+     * @param session the database session
+     * @return the end of the time range covered by the partitions, or null if there are no partitions
+     */
+    static Long getPartitionsEnd(Session session) {
+        Number end = (Number) session.getNamedQuery("get-logrecord-partitions-end").uniqueResult();
+
+        return end != null ? end.longValue() : null;
+    }
+
+    /**
+     * @param session the database session
+     * @return the partitions whose archived records are deleted one by one: the legacy partition until it is
+     * dropped, and the default partition. The daily partitions are only dropped as a whole.
+     */
+    static List<String> getRowDeletePartitions(Session session) {
+        List<String> names = new ArrayList<>();
+
+        if (session.getNamedQuery("get-logrecord-partition").setParameter("name", LEGACY_PARTITION)
+                .uniqueResult() != null) {
+            names.add(LEGACY_PARTITION);
+        }
+
+        names.add(DEFAULT_PARTITION);
+
+        return names;
+    }
+
+    /**
+     * Deletes a batch of archived records from the partition, in the same way as the delete-logrecords query
+     * deletes them from the whole table.
+     * @param session the database session
+     * @param name the partition name
+     * @param time the oldest record time to keep in milliseconds
+     * @param limit the batch size
+     * @return number of deleted records
+     */
+    static int deleteArchivedRecords(Session session, String name, long time, int limit) {
+        checkPartitionName(name);
+
+        return session.createNativeQuery("DELETE FROM " + name + " WHERE archived = true AND time <= :time"
+                + " AND id > 0 AND id <= (SELECT max(l.id) FROM (SELECT id FROM " + name
+                + " ORDER BY id LIMIT :limit) l)")
+                .setParameter("time", time)
+                .setParameter("limit", limit)
+                .executeUpdate();
+    }
+
+    /**
+     * Detaches and drops the partition.
+     * @param session the database session
+     * @param name the partition name
+     */
+    static void dropPartition(Session session, String name) {
+        checkPartitionName(name);
+
+        setLockTimeout(session);
+
+        // Detach first, so that no records can be added while the attachments are unlinked.
+        execute(session, "ALTER TABLE logrecord DETACH PARTITION " + name);
+
+        // Dropping a table does not fire the delete trigger that unlinks the attachments of message records.
+        session.createNativeQuery("SELECT lo_unlink(attachment) FROM " + name + " WHERE attachment IS NOT NULL")
+                .list();
+
+        execute(session, "DROP TABLE " + name);
+
+        session.getNamedQuery("remove-logrecord-partition")
+                .setParameter("name", name)
+                .executeUpdate();
+    }
+
+    /**
+     * Creates a partition for the record times [start, start + {@link #PARTITION_LENGTH}). The records of the
+     * time range that have been saved in the default partition meanwhile are moved to the new partition,
+     * because a partition can not be added while the default partition holds records of its range.
+     * @param session the database session
+     * @param start the start of the time range in milliseconds
+     * @return the partition name
+     */
+    static String createPartition(Session session, long start) {
+        String name = getPartitionName(start);
+        long end = start + PARTITION_LENGTH;
+
+        setLockTimeout(session);
+
+        execute(session, "CREATE TABLE " + name + " (LIKE logrecord INCLUDING DEFAULTS)");
+
+        // The attachments of the moved records must not be unlinked by the delete trigger.
+        execute(session, "ALTER TABLE " + DEFAULT_PARTITION + " DISABLE TRIGGER t_logrecord_attachment");
+        int moved = execute(session, "WITH moved AS (DELETE FROM " + DEFAULT_PARTITION + " WHERE time >= " + start
+                + " AND time < " + end + " RETURNING *) INSERT INTO " + name + " SELECT * FROM moved");
+        execute(session, "ALTER TABLE " + DEFAULT_PARTITION + " ENABLE TRIGGER t_logrecord_attachment");
+
+        if (moved > 0) {
+            log.warn("Moved {} records from the default partition to log record partition {}", moved, name);
+        }
+
+        execute(session, "ALTER TABLE logrecord ATTACH PARTITION " + name + " FOR VALUES FROM (" + start
+                + ") TO (" + end + ")");
+
+        // Row triggers are not inherited from the partitioned table before PostgreSQL 13.
+        execute(session, "CREATE TRIGGER t_logrecord_attachment BEFORE DELETE ON " + name
+                + " FOR EACH ROW WHEN (old.attachment IS NOT NULL) EXECUTE PROCEDURE del_logrecord_attachment()");
+
+        session.getNamedQuery("add-logrecord-partition")
+                .setParameter("name", name)
+                .setParameter("start", start)
+                .setParameter("end", end)
+                .executeUpdate();
+
+        return name;
+    }
+
+    /**
+     * @param partitionsEnd the end of the time range covered by the existing partitions
+     * @param now the current time in milliseconds
+     * @return the start times of the partitions to create so that partitions exist
+     * {@link #PARTITIONS_AHEAD} days ahead
+     */
+    static List<Long> getPartitionsToCreate(long partitionsEnd, long now) {
+        long horizon = now + PARTITIONS_AHEAD * PARTITION_LENGTH;
+        List<Long> starts = new ArrayList<>();
+
+        for (long start = partitionsEnd; start < horizon; start += PARTITION_LENGTH) {
+            starts.add(start);
+        }
+
+        return starts;
+    }
+
+    static String getPartitionName(long start) {
+        return PARTITION_NAME_PREFIX + PARTITION_DATE.print(start);
+    }
+
+    private static void setLockTimeout(Session session) {
+        session.createNativeQuery("SET LOCAL lock_timeout = " + LOCK_TIMEOUT_MILLIS).executeUpdate();
+    }
+
+    private static int execute(Session session, String sql) {
+        try {
+            return session.createNativeQuery(sql).executeUpdate();
+        } catch (RuntimeException e) {
+            if (isLockTimeout(e)) {
+                throw new LockTimeoutException(e);
+            }
+
+            throw e;
+        }
+    }
+
+    static boolean isLockTimeout(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException && LOCK_NOT_AVAILABLE.equals(((SQLException) cause).getSQLState())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static void checkPartitionName(String name) {
+        if (!PARTITION_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid log record partition name: " + name);
+        }
+    }
+
+    /**
+     * Thrown when partition maintenance times out waiting for a lock on the LOGRECORD table. The transaction
+     * has been rolled back and the operation can be retried.
+     */
+    static final class LockTimeoutException extends RuntimeException {
+        LockTimeoutException(Throwable cause) {
+            super("Timed out waiting for a lock on the log record table", cause);
+        }
+    }
+}
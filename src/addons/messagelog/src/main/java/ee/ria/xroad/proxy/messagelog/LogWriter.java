@@ -0,0 +1,188 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.messagelog.FindByQueryId;
+import ee.ria.xroad.common.messagelog.LogMessage;
+import ee.ria.xroad.common.messagelog.LogRecord;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.UntypedAbstractActor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import scala.concurrent.duration.Duration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.getGroupCommitMaxDelay;
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.getGroupCommitMaxRecords;
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.shouldTimestampImmediately;
+
+/**
+ * Message log writer. Saves logged messages to the database and finds log records by query id. The log manager
+ * shards the messages between several writers, so that the database work is done on several threads in parallel.
+ * Time-stamping and archiving are still coordinated by the log manager.
+ */
+@Slf4j
+public class LogWriter extends UntypedAbstractActor {
+
+    // Message for saving the pending group commit records
+    static final String GROUP_COMMIT = "GroupCommit";
+
+    private final ActorRef timestamper;
+
+    // Message records waiting to be saved in one transaction (group commit)
+    private final int groupCommitMaxRecords = getGroupCommitMaxRecords();
+    private final List<PendingMessageRecord> groupCommitRecords = new ArrayList<>();
+    private Cancellable groupCommitTick;
+
+    /**
+     * Constructor.
+     * @param timestamper the timestamper used for time-stamping messages immediately
+     */
+    public LogWriter(ActorRef timestamper) {
+        this.timestamper = timestamper;
+    }
+
+    @Override
+    public void onReceive(Object message) throws Exception {
+        log.trace("onReceive({})", message);
+
+        try {
+            if (message instanceof LogMessage) {
+                handleLog((LogMessage) message);
+            } else if (message instanceof FindByQueryId) {
+                FindByQueryId f = (FindByQueryId) message;
+                LogRecord result = LogRecordManager.getByQueryId(f.getQueryId(), f.getStartTime(), f.getEndTime());
+
+                getSender().tell(result, getSelf());
+            } else if (GROUP_COMMIT.equals(message)) {
+                groupCommitTick = null;
+                commitGroup();
+            } else {
+                unhandled(message);
+            }
+        } catch (Exception e) {
+            getSender().tell(e, getSelf());
+        }
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        // Do not leave the senders of pending records waiting
+        commitGroup();
+
+        super.postStop();
+    }
+
+    private void handleLog(LogMessage message) throws Exception {
+        MessageRecord logRecord = createMessageRecord(message);
+
+        if (groupCommitMaxRecords > 1) {
+            addToGroupCommit(logRecord);
+        } else {
+            LogRecordManager.saveMessageRecord(logRecord);
+
+            if (shouldTimestampImmediately()) {
+                LogManager.timestampImmediately(timestamper, logRecord);
+            }
+
+            getSender().tell(new Object(), getSelf());
+        }
+    }
+
+    /**
+     * Adds the record to the pending group commit. The sender is acknowledged after the pending records have been
+     * saved in one transaction, which happens when the maximum number of records is reached or the group commit
+     * delay expires.
+     */
+    private void addToGroupCommit(MessageRecord logRecord) {
+        groupCommitRecords.add(new PendingMessageRecord(logRecord, getSender()));
+
+        if (groupCommitRecords.size() >= groupCommitMaxRecords) {
+            commitGroup();
+        } else if (groupCommitTick == null) {
+            groupCommitTick = getContext().system().scheduler().scheduleOnce(
+                    Duration.create(getGroupCommitMaxDelay(), TimeUnit.MILLISECONDS), getSelf(), GROUP_COMMIT,
+                    getContext().dispatcher(), ActorRef.noSender());
+        }
+    }
+
+    private void commitGroup() {
+        if (groupCommitTick != null) {
+            groupCommitTick.cancel();
+            groupCommitTick = null;
+        }
+
+        if (groupCommitRecords.isEmpty()) {
+            return;
+        }
+
+        List<PendingMessageRecord> pending = new ArrayList<>(groupCommitRecords);
+        groupCommitRecords.clear();
+
+        try {
+            LogRecordManager.saveMessageRecords(pending.stream()
+                    .map(PendingMessageRecord::getRecord)
+                    .collect(Collectors.toList()));
+        } catch (Exception e) {
+            log.error("Saving {} message records failed", pending.size(), e);
+
+            pending.forEach(p -> p.getSender().tell(e, getSelf()));
+
+            return;
+        }
+
+        if (shouldTimestampImmediately()) {
+            // Time-stamp the whole group in one batch instead of one record at a time
+            try {
+                LogManager.timestampImmediately(timestamper, pending.stream()
+                        .map(PendingMessageRecord::getRecord)
+                        .collect(Collectors.toList()));
+            } catch (Exception e) {
+                pending.forEach(p -> p.getSender().tell(e, getSelf()));
+
+                return;
+            }
+        }
+
+        pending.forEach(p -> p.getSender().tell(new Object(), getSelf()));
+    }
+
+    protected MessageRecord createMessageRecord(LogMessage message) throws Exception {
+        return LogManager.createMessageRecord(message);
+    }
+
+    @Value
+    private static class PendingMessageRecord {
+        private final MessageRecord record;
+        private final ActorRef sender;
+    }
+}
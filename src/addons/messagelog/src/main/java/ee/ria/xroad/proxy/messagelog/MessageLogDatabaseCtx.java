@@ -25,6 +25,7 @@
 package ee.ria.xroad.proxy.messagelog;
 
 import ee.ria.xroad.common.db.DatabaseCtx;
+import ee.ria.xroad.common.db.HibernateUtil;
 import ee.ria.xroad.common.db.TransactionCallback;
 
 /**
@@ -32,7 +33,11 @@ import ee.ria.xroad.common.db.TransactionCallback;
  */
 public final class MessageLogDatabaseCtx {
 
-    private static final DatabaseCtx CTX = new DatabaseCtx("messagelog");
+    private static final String SESSION_FACTORY_NAME = "messagelog";
+
+    private static final DatabaseCtx CTX = new DatabaseCtx(SESSION_FACTORY_NAME);
+
+    private static final String POOL_SIZE_PROPERTY = "hibernate.hikari.maximumPoolSize";
 
     private MessageLogDatabaseCtx() {
     }
@@ -44,6 +49,16 @@ public final class MessageLogDatabaseCtx {
         return CTX;
     }
 
+    /**
+     * @return the maximum size of the database connection pool, or 0 if the pool size is not configured
+     */
+    public static int getMaxPoolSize() {
+        Object poolSize = HibernateUtil.getSessionFactory(SESSION_FACTORY_NAME).getProperties()
+                .get(POOL_SIZE_PROPERTY);
+
+        return poolSize != null ? Integer.parseInt(poolSize.toString().trim()) : 0;
+    }
+
     /**
      * Convenience method for a transaction callback.
      * @param <T> the type of result.
@@ -24,6 +24,7 @@
  */
 package ee.ria.xroad.proxy.messagelog;
 
+import ee.ria.xroad.common.conf.serverconf.ServerConf;
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.proxy.messagelog.Timestamper.TimestampFailed;
 import ee.ria.xroad.proxy.messagelog.Timestamper.TimestampSucceeded;
@@ -39,6 +40,7 @@ import org.hibernate.Session;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.proxy.messagelog.LogManager.TIMESTAMPER_NAME;
 import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
@@ -55,6 +57,13 @@ public class TaskQueue extends UntypedAbstractActor {
     static final double TIMESTAMPED_RECORDS_RATIO_THRESHOLD = 0.7;
     static final int TIMESTAMP_RECORDS_LIMIT_RETRY_MODE = 1;
 
+    // Longest time a time-stamping round is waited for, also when the client timeouts are infinite, so that
+    // periodic time-stamping continues even if the result of a round never arrives
+    static final long MAX_TIMESTAMPING_ROUND_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    // Start time of the time-stamping round waiting for the timestamper, 0 if none
+    private long timestampingStarted;
+
     @Override
     public void onReceive(Object message) throws Exception {
         log.trace("onReceive({})", message);
@@ -75,6 +84,8 @@ public class TaskQueue extends UntypedAbstractActor {
     protected void handleTimestampSucceeded(TimestampSucceeded message) {
         log.trace("handleTimestampSucceeded");
 
+        timestampingStarted = 0;
+
         if (log.isTraceEnabled()) {
             log.trace("Time-stamped message records {}", Arrays.toString(message.getMessageRecords()));
         }
@@ -134,6 +145,10 @@ public class TaskQueue extends UntypedAbstractActor {
     protected void handleTimestampFailed(TimestampFailed message) {
         log.trace("handleTimestampFailed");
 
+        timestampingStarted = 0;
+
+        LogManager.setTimestampingFailed(message.getCause());
+
         indicateFailure();
     }
 
@@ -142,6 +157,13 @@ public class TaskQueue extends UntypedAbstractActor {
     }
 
     protected void handleStartTimestamping(int timestampRecordsLimit) {
+        if (isTimestampingInProgress()) {
+            // The same records would be sent again while the previous round is still waiting for a slow TSP
+            log.info("Previous time-stamping round is still in progress, skipping");
+
+            return;
+        }
+
         List<Task> timestampTasks;
 
         try {
@@ -168,9 +190,35 @@ public class TaskQueue extends UntypedAbstractActor {
                     TIMESTAMPED_RECORDS_RATIO_THRESHOLD * 100);
         }
 
+        timestampingStarted = System.currentTimeMillis();
+
         sendToTimestamper(createTimestampTask(timestampTasks));
     }
 
+    /**
+     * @return true if a time-stamping round has been started and the timestamper can still be trying to get the
+     * time-stamp from the configured providers, at most {@link #MAX_TIMESTAMPING_ROUND_MILLIS}
+     */
+    private boolean isTimestampingInProgress() {
+        if (timestampingStarted == 0) {
+            return false;
+        }
+
+        long roundTimeout = MAX_TIMESTAMPING_ROUND_MILLIS;
+
+        int connectTimeout = MessageLogProperties.getTimestamperClientConnectTimeout();
+        int readTimeout = MessageLogProperties.getTimestamperClientReadTimeout();
+
+        // Zero is an infinite timeout
+        if (connectTimeout > 0 && readTimeout > 0) {
+            long providerTimeout = (long) connectTimeout + readTimeout;
+
+            roundTimeout = Math.min(roundTimeout, providerTimeout * Math.max(1, ServerConf.getTspUrl().size()));
+        }
+
+        return System.currentTimeMillis() - timestampingStarted < roundTimeout;
+    }
+
     private void sendToTimestamper(TimestampTask timestampTask) {
         ActorSelection timestamper = getContext().actorSelection("../" + TIMESTAMPER_NAME);
         timestamper.tell(timestampTask, getSelf());
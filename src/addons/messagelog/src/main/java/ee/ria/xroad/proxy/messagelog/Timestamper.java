@@ -26,20 +26,31 @@ package ee.ria.xroad.proxy.messagelog;
 
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.messagelog.MessageRecord;
 
 import akka.actor.ActorRef;
+import akka.actor.Cancellable;
 import akka.actor.Props;
 import akka.actor.UntypedAbstractActor;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.ToString;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
+import scala.concurrent.duration.Duration;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Timestamper is responsible for routing timestamping tasks to the timestamp worker.
+ *
+ * If the time-stamping batch window is set, the tasks received during the window are time-stamped in one batch,
+ * and the worker replies to the sender of each task with the result for the task's message records.
  */
 @Slf4j
 public class Timestamper extends UntypedAbstractActor {
@@ -75,17 +86,85 @@ public class Timestamper extends UntypedAbstractActor {
         private final Exception cause;
     }
 
+    /**
+     * Time-stamping tasks of several senders that are time-stamped in one batch.
+     */
+    @Value
+    static final class MergedTimestampTask {
+        private final List<TimestampTask> tasks;
+        private final List<ActorRef> senders;
+
+        TimestampTask merge() {
+            List<Long> messageRecords = new ArrayList<>();
+            List<String> signatureHashes = new ArrayList<>();
+
+            for (TimestampTask task : tasks) {
+                messageRecords.addAll(Arrays.asList(task.getMessageRecords()));
+                signatureHashes.addAll(Arrays.asList(task.getSignatureHashes()));
+            }
+
+            return new TimestampTask(messageRecords.toArray(new Long[0]), signatureHashes.toArray(new String[0]));
+        }
+
+        /**
+         * Sends each sender the part of the result that concerns its message records.
+         */
+        void reply(TimestampResult result) {
+            int offset = 0;
+
+            for (int i = 0; i < tasks.size(); i++) {
+                Long[] messageRecords = tasks.get(i).getMessageRecords();
+                int end = offset + messageRecords.length;
+
+                senders.get(i).tell(split(result, messageRecords, offset, end), ActorRef.noSender());
+
+                offset = end;
+            }
+        }
+
+        private static TimestampResult split(TimestampResult result, Long[] messageRecords, int from, int to) {
+            if (result instanceof TimestampSucceeded) {
+                TimestampSucceeded succeeded = (TimestampSucceeded) result;
+
+                return new TimestampSucceeded(messageRecords, succeeded.getTimestampDer(),
+                        succeeded.getHashChainResult(), Arrays.copyOfRange(succeeded.getHashChains(), from, to),
+                        succeeded.getUrl());
+            }
+
+            return new TimestampFailed(messageRecords, ((TimestampFailed) result).getCause());
+        }
+    }
+
+    private static final String FLUSH = "Flush";
+
+    private final List<TimestampTask> pendingTasks = new ArrayList<>();
+    private final List<ActorRef> pendingSenders = new ArrayList<>();
+    private int pendingRecords;
+    private Cancellable flushTick;
+
     @Override
     public void onReceive(Object message) throws Exception {
         log.trace("onReceive({})", message.getClass());
 
         if (message instanceof TimestampTask) {
             handleTimestampTask((TimestampTask) message);
+        } else if (FLUSH.equals(message)) {
+            flushTick = null;
+            flush();
         } else {
             unhandled(message);
         }
     }
 
+    @Override
+    public void postStop() throws Exception {
+        if (flushTick != null) {
+            flushTick.cancel();
+        }
+
+        super.postStop();
+    }
+
     protected Class<? extends TimestamperWorker> getWorkerImpl() {
         return TimestamperWorker.class;
     }
@@ -95,8 +174,48 @@ public class Timestamper extends UntypedAbstractActor {
             return;
         }
 
+        int batchWindow = MessageLogProperties.getTimestampBatchWindow();
+        if (batchWindow <= 0) {
+            startWorker(message, getSender());
+            return;
+        }
+
+        pendingTasks.add(message);
+        pendingSenders.add(getSender());
+        pendingRecords += message.getMessageRecords().length;
+
+        if (pendingRecords >= MessageLogProperties.getTimestampRecordsLimit()) {
+            flush();
+        } else if (flushTick == null) {
+            flushTick = getContext().system().scheduler().scheduleOnce(
+                    Duration.create(batchWindow, TimeUnit.MILLISECONDS), getSelf(), FLUSH,
+                    getContext().dispatcher(), ActorRef.noSender());
+        }
+    }
+
+    private void flush() {
+        if (flushTick != null) {
+            flushTick.cancel();
+            flushTick = null;
+        }
+
+        if (pendingTasks.size() == 1) {
+            startWorker(pendingTasks.get(0), pendingSenders.get(0));
+        } else if (!pendingTasks.isEmpty()) {
+            log.debug("Time-stamping {} tasks in one batch", pendingTasks.size());
+
+            startWorker(new MergedTimestampTask(new ArrayList<>(pendingTasks), new ArrayList<>(pendingSenders)),
+                    ActorRef.noSender());
+        }
+
+        pendingTasks.clear();
+        pendingSenders.clear();
+        pendingRecords = 0;
+    }
+
+    private void startWorker(Object task, ActorRef sender) {
         // Spawn a new temporary child actor that will do the actual time stamping, which is probably lengthy process.
         ActorRef worker = getContext().actorOf(Props.create(getWorkerImpl(), ServerConf.getTspUrl()));
-        worker.tell(message, getSender());
+        worker.tell(task, sender);
     }
 }
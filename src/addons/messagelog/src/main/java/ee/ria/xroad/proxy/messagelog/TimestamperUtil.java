@@ -47,6 +47,7 @@ import java.net.URL;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Slf4j
 final class TimestamperUtil {
@@ -67,11 +68,17 @@ final class TimestamperUtil {
                 new JcaCertStore(collection), cms.getAttributeCertificates(), cms.getCRLs()));
     }
 
-    static InputStream makeTsRequest(TimeStampRequest req, String tspUrl) throws Exception {
+    /**
+     * @param onOpen called with the connection before the request is sent, so that it can be closed by another
+     * thread if the response is no longer needed
+     */
+    static InputStream makeTsRequest(TimeStampRequest req, String tspUrl, Consumer<HttpURLConnection> onOpen)
+            throws Exception {
         byte[] request = req.getEncoded();
 
         URL url = new URL(tspUrl);
         HttpURLConnection con = (HttpURLConnection) url.openConnection();
+        onOpen.accept(con);
 
         con.setDoOutput(true);
         con.setDoInput(true);
@@ -24,6 +24,7 @@
  */
 package ee.ria.xroad.proxy.messagelog;
 
+import ee.ria.xroad.proxy.messagelog.Timestamper.MergedTimestampTask;
 import ee.ria.xroad.proxy.messagelog.Timestamper.TimestampTask;
 
 import akka.actor.ActorRef;
@@ -49,9 +50,14 @@ public class TimestamperWorker extends UntypedAbstractActor {
 
         if (message instanceof TimestampTask) {
             try {
-                handleTimestampTask((TimestampTask) message);
-            } catch (Exception e) {
-                handleFailure((TimestampTask) message, e);
+                getSender().tell(timestamp((TimestampTask) message), ActorRef.noSender());
+            } finally {
+                getContext().stop(getSelf());
+            }
+        } else if (message instanceof MergedTimestampTask) {
+            try {
+                MergedTimestampTask merged = (MergedTimestampTask) message;
+                merged.reply(timestamp(merged.merge()));
             } finally {
                 getContext().stop(getSelf());
             }
@@ -60,15 +66,22 @@ public class TimestamperWorker extends UntypedAbstractActor {
         }
     }
 
-    private void handleFailure(TimestampTask message, Exception e) {
+    private Timestamper.TimestampResult timestamp(TimestampTask message) {
+        try {
+            return handleTimestampTask(message);
+        } catch (Exception e) {
+            return handleFailure(message, e);
+        }
+    }
+
+    private Timestamper.TimestampResult handleFailure(TimestampTask message, Exception e) {
         log.error("Timestamper failed for message records {}: {}",
                 Arrays.toString(message.getMessageRecords()), e.getMessage());
 
-        getSender().tell(new Timestamper.TimestampFailed(
-                message.getMessageRecords(), e), ActorRef.noSender());
+        return new Timestamper.TimestampFailed(message.getMessageRecords(), e);
     }
 
-    private void handleTimestampTask(TimestampTask message) throws Exception {
+    private Timestamper.TimestampResult handleTimestampTask(TimestampTask message) throws Exception {
         if (tspUrls.isEmpty()) {
             throw new RuntimeException(
                     "Cannot time-stamp, no TSP URLs configured");
@@ -92,13 +105,16 @@ public class TimestamperWorker extends UntypedAbstractActor {
         AbstractTimestampRequest tsRequest =
                 createTimestampRequest(logRecords, signatureHashes);
 
-        Timestamper.TimestampResult result = tsRequest.execute(tspUrls);
+        List<String> orderedUrls = TspStatistics.sampleAlternate(TspStatistics.orderByHealth(tspUrls));
+        log.trace("Time-stamping providers ordered by health: {}", orderedUrls);
+
+        Timestamper.TimestampResult result = tsRequest.execute(orderedUrls);
 
         log.info("Timestamped {} message records in {} ms",
                 message.getMessageRecords().length,
                 (System.currentTimeMillis() - start));
 
-        getSender().tell(result, ActorRef.noSender());
+        return result;
     }
 
     private AbstractTimestampRequest createTimestampRequest(Long[] logRecords,
@@ -0,0 +1,54 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.DiagnosticsStatus;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Time-stamping provider status that also holds the statistics of the recent requests to the provider.
+ */
+@Getter
+@ToString(callSuper = true)
+public class TimestampingStatus extends DiagnosticsStatus {
+
+    private final double errorRate;
+    private final long medianResponseTime;
+
+    /**
+     * Constructor
+     * @param status the latest status of the provider
+     * @param errorRate share (0-1) of failed requests among the recent requests
+     * @param medianResponseTime median response time in milliseconds, -1 if not known
+     */
+    TimestampingStatus(DiagnosticsStatus status, double errorRate, long medianResponseTime) {
+        super(status.getReturnCode(), status.getPrevUpdate(), status.getDescription());
+
+        this.errorRate = errorRate;
+        this.medianResponseTime = medianResponseTime;
+    }
+}
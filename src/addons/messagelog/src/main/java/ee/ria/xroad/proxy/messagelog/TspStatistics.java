@@ -0,0 +1,260 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the response times and error rates of the time-stamping providers.
+ */
+final class TspStatistics {
+
+    // Number of latest responses kept for each provider
+    static final int LATENCY_SAMPLES = 100;
+
+    // Minimum number of response times needed for calculating a percentile
+    static final int MIN_LATENCY_SAMPLES = 20;
+
+    // Minimum number of requests needed before a provider is moved from its configured position
+    static final int MIN_REQUEST_SAMPLES = 20;
+
+    // Every SAMPLE_INTERVAL-th time-stamping round is sent first to one of the alternate providers
+    static final int SAMPLE_INTERVAL = 10;
+
+    private static final int MEDIAN = 50;
+
+    private static final double PERCENT = 100.0;
+
+    private static final Map<String, Provider> PROVIDERS = new ConcurrentHashMap<>();
+
+    private static final AtomicLong ROUNDS = new AtomicLong();
+
+    private TspStatistics() {
+    }
+
+    /**
+     * Records the time it took to get a valid time-stamp response from the provider.
+     * @param url the time-stamping provider URL
+     * @param millis response time in milliseconds
+     */
+    static void recordLatency(String url, long millis) {
+        getProvider(url).succeeded(millis);
+    }
+
+    /**
+     * Records a failed time-stamp request to the provider.
+     * @param url the time-stamping provider URL
+     */
+    static void recordFailure(String url) {
+        getProvider(url).failed();
+    }
+
+    /**
+     * @param url the time-stamping provider URL
+     * @param percentile the percentile (1-100)
+     * @return the given percentile of the latest response times of the provider in milliseconds,
+     * or -1 if not enough response times have been recorded
+     */
+    static long getLatencyPercentile(String url, int percentile) {
+        Provider provider = PROVIDERS.get(url);
+
+        return provider != null ? provider.getPercentile(percentile) : -1;
+    }
+
+    /**
+     * @param url the time-stamping provider URL
+     * @return the share (0-1) of failed requests among the latest requests to the provider,
+     * 0 if no requests have been recorded
+     */
+    static double getErrorRate(String url) {
+        Provider provider = PROVIDERS.get(url);
+
+        return provider != null ? provider.getErrorRate() : 0;
+    }
+
+    /**
+     * Orders the time-stamping providers by their current health: providers with a lower error rate come first and
+     * providers with the same error rate are ordered by their median response time. Only the providers with at least
+     * {@link #MIN_REQUEST_SAMPLES} recorded requests are reordered among the positions they hold in the configured
+     * order. The other providers keep their configured position, so that a provider is not demoted in favour of one
+     * whose health is not known yet.
+     * @param tspUrls the configured time-stamping provider URLs
+     * @return the URLs ordered by health
+     */
+    static List<String> orderByHealth(List<String> tspUrls) {
+        if (tspUrls.size() < 2 || PROVIDERS.isEmpty()) {
+            return tspUrls;
+        }
+
+        boolean[] measured = new boolean[tspUrls.size()];
+        List<String> measuredUrls = new ArrayList<>();
+        for (int i = 0; i < tspUrls.size(); i++) {
+            measured[i] = getRequestCount(tspUrls.get(i)) >= MIN_REQUEST_SAMPLES;
+
+            if (measured[i]) {
+                measuredUrls.add(tspUrls.get(i));
+            }
+        }
+
+        if (measuredUrls.size() < 2) {
+            return tspUrls;
+        }
+
+        measuredUrls.sort(Comparator.comparingDouble(TspStatistics::getErrorRate)
+                .thenComparingLong(url -> {
+                    long median = getMedianLatency(url);
+
+                    return median >= 0 ? median : Long.MAX_VALUE;
+                }));
+
+        Iterator<String> healthiest = measuredUrls.iterator();
+        List<String> ordered = new ArrayList<>(tspUrls.size());
+        for (int i = 0; i < tspUrls.size(); i++) {
+            ordered.add(measured[i] ? healthiest.next() : tspUrls.get(i));
+        }
+
+        return ordered;
+    }
+
+    /**
+     * Moves one of the alternate providers to the front on every {@link #SAMPLE_INTERVAL}-th call, taking the
+     * alternates in turn. Otherwise an alternate provider only gets requests when the providers before it fail, and
+     * a slow but working first provider would never collect enough requests to be reordered.
+     * @param orderedUrls the time-stamping provider URLs ordered by health
+     * @return the URLs to use for the next time-stamping round
+     */
+    static List<String> sampleAlternate(List<String> orderedUrls) {
+        if (orderedUrls.size() < 2) {
+            return orderedUrls;
+        }
+
+        long round = ROUNDS.incrementAndGet();
+        if (round % SAMPLE_INTERVAL != 0) {
+            return orderedUrls;
+        }
+
+        int alternate = 1 + (int) ((round / SAMPLE_INTERVAL - 1) % (orderedUrls.size() - 1));
+
+        List<String> sampled = new ArrayList<>(orderedUrls);
+        sampled.add(0, sampled.remove(alternate));
+
+        return sampled;
+    }
+
+    /**
+     * @param url the time-stamping provider URL
+     * @return the median of the latest response times of the provider in milliseconds,
+     * or -1 if not enough response times have been recorded
+     */
+    static long getMedianLatency(String url) {
+        return getLatencyPercentile(url, MEDIAN);
+    }
+
+    /**
+     * @param url the time-stamping provider URL
+     * @return the number of latest requests to the provider that the error rate is calculated from
+     */
+    static int getRequestCount(String url) {
+        Provider provider = PROVIDERS.get(url);
+
+        return provider != null ? provider.getRequestCount() : 0;
+    }
+
+    /**
+     * Forgets all recorded requests and time-stamping rounds.
+     */
+    static void clear() {
+        PROVIDERS.clear();
+        ROUNDS.set(0);
+    }
+
+    private static Provider getProvider(String url) {
+        return PROVIDERS.computeIfAbsent(url, u -> new Provider());
+    }
+
+    private static final class Provider {
+        private final long[] latencies = new long[LATENCY_SAMPLES];
+        private final boolean[] failures = new boolean[LATENCY_SAMPLES];
+        private int latencyCount;
+        private int requestCount;
+        private int failureCount;
+
+        synchronized void succeeded(long millis) {
+            latencies[latencyCount % LATENCY_SAMPLES] = millis;
+            latencyCount++;
+
+            addRequest(false);
+        }
+
+        synchronized void failed() {
+            addRequest(true);
+        }
+
+        private void addRequest(boolean failure) {
+            int index = requestCount % LATENCY_SAMPLES;
+
+            if (requestCount >= LATENCY_SAMPLES && failures[index]) {
+                failureCount--;
+            }
+
+            failures[index] = failure;
+            requestCount++;
+
+            if (failure) {
+                failureCount++;
+            }
+        }
+
+        synchronized int getRequestCount() {
+            return Math.min(requestCount, LATENCY_SAMPLES);
+        }
+
+        synchronized double getErrorRate() {
+            int size = Math.min(requestCount, LATENCY_SAMPLES);
+
+            return size > 0 ? failureCount / (double) size : 0;
+        }
+
+        synchronized long getPercentile(int percentile) {
+            int size = Math.min(latencyCount, LATENCY_SAMPLES);
+            if (size < MIN_LATENCY_SAMPLES) {
+                return -1;
+            }
+
+            long[] sorted = Arrays.copyOf(latencies, size);
+            Arrays.sort(sorted);
+
+            int index = (int) Math.ceil(percentile / PERCENT * size) - 1;
+            return sorted[Math.max(0, Math.min(index, size - 1))];
+        }
+    }
+}
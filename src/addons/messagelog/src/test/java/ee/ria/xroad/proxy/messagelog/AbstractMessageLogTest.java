@@ -38,6 +38,7 @@ import akka.actor.ActorSystem;
 import akka.actor.DeadLetter;
 import akka.actor.Props;
 import akka.actor.UntypedAbstractActor;
+import akka.pattern.Patterns;
 import akka.testkit.TestActorRef;
 import com.typesafe.config.ConfigFactory;
 import com.typesafe.config.ConfigRenderOptions;
@@ -49,6 +50,7 @@ import scala.concurrent.duration.Duration;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -57,6 +59,8 @@ import static org.junit.Assert.assertTrue;
 @Slf4j
 abstract class AbstractMessageLogTest {
 
+    private static final long ASK_TIMEOUT_MILLIS = 10000;
+
     JobManager jobManager;
     ActorSystem actorSystem;
     LogManager logManager;
@@ -154,12 +158,28 @@ abstract class AbstractMessageLogTest {
     }
 
     protected void log(SoapMessageImpl message, SignatureData signature) throws Exception {
-        logManager.log(new SoapLogMessage(message, signature, true));
+        ask(new SoapLogMessage(message, signature, true));
     }
 
     protected void log(SoapMessageImpl message, SignatureData signature, String xRequestId)
             throws Exception {
-        logManager.log(new SoapLogMessage(message, signature, true, xRequestId));
+        ask(new SoapLogMessage(message, signature, true, xRequestId));
+    }
+
+    /**
+     * Sends the message to the log manager and waits for the reply of the log writer.
+     * @return the reply
+     * @throws Exception the exception replied by the log writer
+     */
+    protected Object ask(Object message) throws Exception {
+        Object result = Await.result(Patterns.ask(logManagerRef, message, ASK_TIMEOUT_MILLIS),
+                Duration.create(ASK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        if (result instanceof Exception) {
+            throw (Exception) result;
+        }
+
+        return result;
     }
 
     TimestampRecord timestamp(MessageRecord record) throws Exception {
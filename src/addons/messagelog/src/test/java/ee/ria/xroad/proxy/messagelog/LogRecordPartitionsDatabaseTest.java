@@ -0,0 +1,343 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.db.CustomPostgreSQLDialect;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static ee.ria.xroad.proxy.messagelog.LogRecordPartitions.PARTITION_LENGTH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests the partitioning migration and the partition maintenance against a PostgreSQL (11 or later) database.
+ * The test is skipped unless the connection is given with the system properties
+ * xroad.test.messagelog.postgres-url, xroad.test.messagelog.postgres-user and
+ * xroad.test.messagelog.postgres-password. The LOGRECORD tables of the database are dropped.
+ */
+public class LogRecordPartitionsDatabaseTest {
+
+    private static final String URL = System.getProperty("xroad.test.messagelog.postgres-url");
+    private static final String USER = System.getProperty("xroad.test.messagelog.postgres-user");
+    private static final String PASSWORD = System.getProperty("xroad.test.messagelog.postgres-password");
+
+    private static final String BASELINE_SCHEMA = "src/test/resources/messagelog-postgres-baseline.sql";
+    private static final String PARTITIONING_CHANGELOG =
+            "../../packages/src/xroad/common/addon/proxy/messagelog-partitioning-changelog.xml";
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private static final int BATCH_LIMIT = 100;
+
+    private Connection connection;
+    private SessionFactory sessionFactory;
+    private long cutover;
+    private long nextId = 1;
+
+    /**
+     * Creates the LOGRECORD table and converts it to partitions with the migration.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(URL != null);
+
+        connection = DriverManager.getConnection(URL, USER, PASSWORD);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS logrecord, logrecord_legacy, logrecord_partition CASCADE");
+            statement.execute("SELECT lo_unlink(oid) FROM pg_largeobject_metadata");
+            statement.execute(new String(Files.readAllBytes(Paths.get(BASELINE_SCHEMA)), StandardCharsets.UTF_8));
+            statement.execute(getMigrationSql());
+        }
+
+        sessionFactory = new Configuration()
+                .addResource("messagelog.hbm.xml")
+                .setProperty("hibernate.dialect", CustomPostgreSQLDialect.class.getName())
+                .setProperty("hibernate.connection.driver_class", "org.postgresql.Driver")
+                .setProperty("hibernate.connection.url", URL)
+                .setProperty("hibernate.connection.username", USER)
+                .setProperty("hibernate.connection.password", PASSWORD)
+                .buildSessionFactory();
+
+        cutover = queryLong("SELECT endtime FROM logrecord_partition WHERE name = 'logrecord_legacy'");
+    }
+
+    /**
+     * Closes the connections.
+     * @throws Exception in case of any unexpected errors
+     */
+    @After
+    public void tearDown() throws Exception {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Test that the migration keeps the existing records in the legacy partition and creates daily
+     * partitions after it.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void migration() throws Exception {
+        long legacy = insertRecord(cutover - HOUR, false, false);
+        long daily = insertRecord(cutover + HOUR, false, false);
+
+        assertEquals("logrecord_legacy", getPartitionOf(legacy));
+        assertEquals(LogRecordPartitions.getPartitionName(cutover), getPartitionOf(daily));
+
+        long end = inTransaction(LogRecordPartitions::getPartitionsEnd);
+        assertEquals(cutover + LogRecordPartitions.PARTITIONS_AHEAD * PARTITION_LENGTH, end);
+    }
+
+    /**
+     * Test that the records saved in the default partition are moved to the partition created for their
+     * time range, keeping their attachments.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void createPartitionMovesRecordsFromDefaultPartition() throws Exception {
+        long end = inTransaction(LogRecordPartitions::getPartitionsEnd);
+        long id = insertRecord(end + HOUR, false, true);
+        long attachment = getAttachment(id);
+
+        assertEquals("logrecord_default", getPartitionOf(id));
+
+        String name = inTransaction(session -> LogRecordPartitions.createPartition(session, end));
+
+        assertEquals(LogRecordPartitions.getPartitionName(end), name);
+        assertEquals(name, getPartitionOf(id));
+        assertEquals(0, queryLong("SELECT count(*) FROM logrecord_default"));
+        assertTrue(largeObjectExists(attachment));
+        assertEquals(end + PARTITION_LENGTH, inTransaction(LogRecordPartitions::getPartitionsEnd).longValue());
+
+        // the attachment delete trigger is enabled in the default partition and created in the new partition
+        long defaultId = insertRecord(end + PARTITION_LENGTH + HOUR, false, true);
+        long defaultAttachment = getAttachment(defaultId);
+
+        execute("DELETE FROM logrecord WHERE id = " + id + " OR id = " + defaultId);
+
+        assertFalse(largeObjectExists(attachment));
+        assertFalse(largeObjectExists(defaultAttachment));
+    }
+
+    /**
+     * Test that a partition is marked archived only after all its records have been archived, and that
+     * dropping the partition unlinks the attachments of its records.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void markArchivedAndDrop() throws Exception {
+        long now = cutover + 2 * HOUR;
+        long archived = insertRecord(cutover - 2 * HOUR, true, true);
+        long attachment = getAttachment(archived);
+        insertRecord(cutover - HOUR, false, false);
+
+        assertEquals(0, inTransaction(session -> LogRecordPartitions.markArchived(session, now)).intValue());
+        assertTrue(inTransaction(session -> LogRecordPartitions.getExpiredPartitions(session, now)).isEmpty());
+
+        execute("UPDATE logrecord SET archived = true");
+
+        assertEquals(1, inTransaction(session -> LogRecordPartitions.markArchived(session, now)).intValue());
+        assertEquals("logrecord_legacy",
+                inTransaction(session -> LogRecordPartitions.getExpiredPartitions(session, now)).get(0));
+
+        inTransaction(session -> {
+            LogRecordPartitions.dropPartition(session, "logrecord_legacy");
+            return null;
+        });
+
+        assertFalse(largeObjectExists(attachment));
+        assertNull(queryString("SELECT to_regclass('logrecord_legacy')::text"));
+        assertEquals(0, queryLong("SELECT count(*) FROM logrecord_partition WHERE name = 'logrecord_legacy'"));
+    }
+
+    /**
+     * Test that archived records are deleted one by one only from the legacy and the default partition.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void deleteArchivedRecordsSkipsDailyPartitions() throws Exception {
+        long end = inTransaction(LogRecordPartitions::getPartitionsEnd);
+        long legacy = insertRecord(cutover - HOUR, true, false);
+        long daily = insertRecord(cutover + HOUR, true, false);
+        long outside = insertRecord(end + HOUR, true, false);
+
+        List<String> partitions = inTransaction(LogRecordPartitions::getRowDeletePartitions);
+        assertEquals(Arrays.asList("logrecord_legacy", "logrecord_default"), partitions);
+
+        for (String name : partitions) {
+            inTransaction(session -> LogRecordPartitions.deleteArchivedRecords(session, name, end + PARTITION_LENGTH,
+                    BATCH_LIMIT));
+        }
+
+        assertEquals(0, queryLong("SELECT count(*) FROM logrecord WHERE id = " + legacy + " OR id = " + outside));
+        assertEquals(1, queryLong("SELECT count(*) FROM logrecord WHERE id = " + daily));
+
+        execute("UPDATE logrecord_partition SET archived = true WHERE name = 'logrecord_legacy'");
+        inTransaction(session -> {
+            LogRecordPartitions.dropPartition(session, "logrecord_legacy");
+            return null;
+        });
+
+        assertEquals(Collections.singletonList("logrecord_default"),
+                inTransaction(LogRecordPartitions::getRowDeletePartitions));
+    }
+
+    /**
+     * Test that partition maintenance gives up waiting for the table lock held by another transaction.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void lockTimeout() throws Exception {
+        long end = inTransaction(LogRecordPartitions::getPartitionsEnd);
+
+        try (Connection other = DriverManager.getConnection(URL, USER, PASSWORD)) {
+            other.setAutoCommit(false);
+
+            try (Statement statement = other.createStatement()) {
+                statement.execute("SELECT count(*) FROM logrecord");
+            }
+
+            try {
+                inTransaction(session -> LogRecordPartitions.createPartition(session, end));
+                fail("Expected lock timeout");
+            } catch (LogRecordPartitions.LockTimeoutException expected) {
+                // the lock is held by the other transaction
+            }
+
+            other.rollback();
+        }
+
+        assertEquals(end, inTransaction(LogRecordPartitions::getPartitionsEnd).longValue());
+        assertNull(queryString("SELECT to_regclass('" + LogRecordPartitions.getPartitionName(end) + "')::text"));
+    }
+
+    private <T> T inTransaction(Function<Session, T> callback) {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                T result = callback.apply(session);
+                transaction.commit();
+
+                return result;
+            } catch (RuntimeException e) {
+                transaction.rollback();
+
+                throw e;
+            }
+        }
+    }
+
+    private long insertRecord(long time, boolean archived, boolean withAttachment) throws SQLException {
+        long id = nextId++;
+
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO logrecord "
+                + "(id, discriminator, time, archived, attachment) VALUES (?, 'm', ?, ?, "
+                + (withAttachment ? "lo_from_bytea(0, '\\x01')" : "NULL") + ")")) {
+            statement.setLong(1, id);
+            statement.setLong(2, time);
+            statement.setBoolean(3, archived);
+            statement.executeUpdate();
+        }
+
+        return id;
+    }
+
+    private String getPartitionOf(long id) throws SQLException {
+        return queryString("SELECT tableoid::regclass::text FROM logrecord WHERE id = " + id);
+    }
+
+    private long getAttachment(long id) throws SQLException {
+        return queryLong("SELECT attachment FROM logrecord WHERE id = " + id);
+    }
+
+    private boolean largeObjectExists(long oid) throws SQLException {
+        return queryLong("SELECT count(*) FROM pg_largeobject_metadata WHERE oid = " + oid) > 0;
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private long queryLong(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+
+            return rs.getLong(1);
+        }
+    }
+
+    private String queryString(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+
+            return rs.getString(1);
+        }
+    }
+
+    private static String getMigrationSql() throws Exception {
+        Document changelog = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(Paths.get(PARTITIONING_CHANGELOG).toFile());
+
+        return changelog.getElementsByTagName("sql").item(0).getTextContent();
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.util.List;
+
+import static ee.ria.xroad.proxy.messagelog.LogRecordPartitions.PARTITIONS_AHEAD;
+import static ee.ria.xroad.proxy.messagelog.LogRecordPartitions.PARTITION_LENGTH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the planning of the log record partitions.
+ */
+public class LogRecordPartitionsTest {
+
+    private static final long MIDNIGHT = new DateTime(2020, 1, 15, 0, 0, DateTimeZone.UTC).getMillis();
+
+    /**
+     * Test that the partitions are named by the UTC date of their start time.
+     */
+    @Test
+    public void partitionName() {
+        assertEquals("logrecord_p20200115", LogRecordPartitions.getPartitionName(MIDNIGHT));
+        assertEquals("logrecord_p20200116", LogRecordPartitions.getPartitionName(MIDNIGHT + PARTITION_LENGTH));
+    }
+
+    /**
+     * Test that the missing partitions are created contiguously up to the given number of days ahead.
+     */
+    @Test
+    public void partitionsToCreate() {
+        long now = MIDNIGHT + PARTITION_LENGTH / 2;
+        List<Long> starts = LogRecordPartitions.getPartitionsToCreate(MIDNIGHT + PARTITION_LENGTH, now);
+
+        assertEquals(PARTITIONS_AHEAD, starts.size());
+
+        for (int i = 0; i < starts.size(); i++) {
+            assertEquals(MIDNIGHT + (i + 1) * PARTITION_LENGTH, starts.get(i).longValue());
+        }
+
+        long end = starts.get(starts.size() - 1) + PARTITION_LENGTH;
+
+        assertTrue(end >= now + PARTITIONS_AHEAD * PARTITION_LENGTH);
+        assertTrue(LogRecordPartitions.getPartitionsToCreate(end, now).isEmpty());
+    }
+
+    /**
+     * Test that a single partition is created when the time range ahead shrinks by a day.
+     */
+    @Test
+    public void partitionsToCreateNextDay() {
+        long now = MIDNIGHT + PARTITION_LENGTH / 2;
+        long end = MIDNIGHT + (PARTITIONS_AHEAD + 1) * PARTITION_LENGTH;
+
+        List<Long> starts = LogRecordPartitions.getPartitionsToCreate(end, now + PARTITION_LENGTH);
+
+        assertEquals(1, starts.size());
+        assertEquals(end, starts.get(0).longValue());
+    }
+}
@@ -30,9 +30,12 @@ import ee.ria.xroad.common.conf.serverconf.ServerConf;
 import ee.ria.xroad.common.message.SoapMessageImpl;
 import ee.ria.xroad.common.messagelog.AbstractLogManager;
 import ee.ria.xroad.common.messagelog.AbstractLogRecord;
+import ee.ria.xroad.common.messagelog.FindByQueryId;
+import ee.ria.xroad.common.messagelog.LogMessage;
 import ee.ria.xroad.common.messagelog.LogRecord;
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.messagelog.MessageRecord;
+import ee.ria.xroad.common.messagelog.SoapLogMessage;
 import ee.ria.xroad.common.messagelog.TimestampRecord;
 import ee.ria.xroad.common.messagelog.archive.DigestEntry;
 import ee.ria.xroad.common.signature.SignatureData;
@@ -40,7 +43,10 @@ import ee.ria.xroad.common.util.JobManager;
 import ee.ria.xroad.proxy.messagelog.Timestamper.TimestampFailed;
 import ee.ria.xroad.proxy.messagelog.Timestamper.TimestampSucceeded;
 
+import akka.actor.ActorRef;
+import akka.actor.ActorSelection;
 import akka.actor.Props;
+import akka.pattern.Patterns;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.filefilter.RegexFileFilter;
@@ -50,6 +56,8 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import scala.concurrent.Await;
+import scala.concurrent.Future;
 import scala.concurrent.duration.Duration;
 import scala.concurrent.duration.FiniteDuration;
 
@@ -73,7 +81,9 @@ import static ee.ria.xroad.proxy.messagelog.TestUtil.cleanUpDatabase;
 import static ee.ria.xroad.proxy.messagelog.TestUtil.createMessage;
 import static ee.ria.xroad.proxy.messagelog.TestUtil.createSignature;
 import static ee.ria.xroad.proxy.messagelog.TestUtil.initForTest;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -211,6 +221,45 @@ public class MessageLogTest extends AbstractMessageLogTest {
         }
     }
 
+    /**
+     * Logs messages in group commit mode. The records are saved only when the group is full and the senders are
+     * acknowledged only after that.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void groupCommit() throws Exception {
+        log.trace("groupCommit()");
+
+        System.setProperty(MessageLogProperties.GROUP_COMMIT_MAX_RECORDS, "3");
+        System.setProperty(MessageLogProperties.GROUP_COMMIT_MAX_DELAY, "60000");
+
+        try {
+            // recreate log manager with group commit enabled
+            testTearDown();
+            testSetUp();
+            initLogManager();
+
+            Future<Object> first = logAsync(createMessage(), createSignature());
+            Future<Object> second = logAsync(createMessage(), createSignature());
+
+            assertFalse(first.isCompleted());
+            assertFalse(second.isCompleted());
+            assertTaskQueueSize(0);
+
+            Future<Object> third = logAsync(createMessage(), createSignature());
+
+            for (Future<Object> reply : new Future[] {first, second, third}) {
+                Object result = Await.result(reply, Duration.create(5, TimeUnit.SECONDS));
+                assertFalse("Got " + result, result instanceof Exception);
+            }
+
+            assertTaskQueueSize(3);
+        } finally {
+            System.clearProperty(MessageLogProperties.GROUP_COMMIT_MAX_RECORDS);
+            System.clearProperty(MessageLogProperties.GROUP_COMMIT_MAX_DELAY);
+        }
+    }
+
     /**
      * Timestamps message immediately. No messages are expected to be in the task queue.
      * @throws Exception in case of any unexpected errors
@@ -246,6 +295,80 @@ public class MessageLogTest extends AbstractMessageLogTest {
         }
     }
 
+    /**
+     * Logs a group of messages that are time-stamped immediately with a single time-stamp.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void groupCommitTimestampImmediately() throws Exception {
+        log.trace("groupCommitTimestampImmediately()");
+
+        System.setProperty(MessageLogProperties.GROUP_COMMIT_MAX_RECORDS, "2");
+        System.setProperty(MessageLogProperties.GROUP_COMMIT_MAX_DELAY, "60000");
+
+        try {
+            // recreate log manager with group commit enabled
+            testTearDown();
+            testSetUp();
+            initLogManager();
+
+            System.setProperty(MessageLogProperties.TIMESTAMP_IMMEDIATELY, "true");
+
+            Future<Object> first = logAsync(createMessage(), createSignature());
+            Future<Object> second = logAsync(createMessage(), createSignature());
+
+            for (Future<Object> reply : new Future[] {first, second}) {
+                Object result = Await.result(reply, Duration.create(5, TimeUnit.SECONDS));
+                assertFalse("Got " + result, result instanceof Exception);
+            }
+
+            assertTaskQueueSize(0);
+        } finally {
+            System.clearProperty(MessageLogProperties.GROUP_COMMIT_MAX_RECORDS);
+            System.clearProperty(MessageLogProperties.GROUP_COMMIT_MAX_DELAY);
+        }
+    }
+
+    /**
+     * Sends time-stamping tasks within the batch window. The tasks are expected to share a single time-stamp.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void timestampTasksBatched() throws Exception {
+        log.trace("timestampTasksBatched()");
+
+        System.setProperty(MessageLogProperties.TIMESTAMP_BATCH_WINDOW, "60000");
+        System.setProperty(MessageLogProperties.TIMESTAMP_RECORDS_LIMIT, "3");
+
+        try {
+            ActorSelection timestamper = actorSystem.actorSelection(
+                    getLogManagerRef().path().child(LogManager.TIMESTAMPER_NAME));
+            String hash = LogManager.signatureHash(createSignature().getSignatureXml());
+
+            Future<Object> first = Patterns.ask(timestamper,
+                    new Timestamper.TimestampTask(new Long[] {1L}, new String[] {hash}), 5000);
+            Future<Object> second = Patterns.ask(timestamper,
+                    new Timestamper.TimestampTask(new Long[] {2L, 3L}, new String[] {hash, hash}), 5000);
+
+            TimestampSucceeded firstResult =
+                    (TimestampSucceeded) Await.result(first, Duration.create(5, TimeUnit.SECONDS));
+            TimestampSucceeded secondResult =
+                    (TimestampSucceeded) Await.result(second, Duration.create(5, TimeUnit.SECONDS));
+
+            assertArrayEquals(new Long[] {1L}, firstResult.getMessageRecords());
+            assertEquals(1, firstResult.getHashChains().length);
+
+            assertArrayEquals(new Long[] {2L, 3L}, secondResult.getMessageRecords());
+            assertEquals(2, secondResult.getHashChains().length);
+
+            assertArrayEquals(firstResult.getTimestampDer(), secondResult.getTimestampDer());
+            assertEquals(firstResult.getHashChainResult(), secondResult.getHashChainResult());
+        } finally {
+            System.clearProperty(MessageLogProperties.TIMESTAMP_BATCH_WINDOW);
+            System.clearProperty(MessageLogProperties.TIMESTAMP_RECORDS_LIMIT);
+        }
+    }
+
     /**
      * Logs messages, time-stamps them. Then archives the messages and cleans the database.
      * @throws Exception in case of any unexpected errors
@@ -399,6 +522,68 @@ public class MessageLogTest extends AbstractMessageLogTest {
         assertNull(findByQueryId("foo", "02-04-2014 12:34:56.100", "02-04-2014 12:34:59.100"));
     }
 
+    /**
+     * Logs messages and finds them by query id through sharded log writers.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void shardedWriters() throws Exception {
+        log.trace("shardedWriters()");
+
+        System.setProperty(MessageLogProperties.WRITER_COUNT, "4");
+
+        try {
+            // recreate log manager with several writers
+            testTearDown();
+            testSetUp();
+            initLogManager();
+
+            for (String queryId : new String[] {"message1", "message2", "message3"}) {
+                Object result = Await.result(logAsync(createMessage(queryId), createSignature()),
+                        Duration.create(5, TimeUnit.SECONDS));
+                assertFalse("Got " + result, result instanceof Exception);
+            }
+
+            assertTaskQueueSize(3);
+
+            Date now = new Date();
+            for (String queryId : new String[] {"message1", "message2", "message3"}) {
+                Object result = Await.result(Patterns.ask(getLogManagerRef(),
+                        new FindByQueryId(queryId, new Date(now.getTime() - 60000), now), 5000),
+                        Duration.create(5, TimeUnit.SECONDS));
+                assertMessageRecord(result, queryId);
+            }
+        } finally {
+            System.clearProperty(MessageLogProperties.WRITER_COUNT);
+        }
+    }
+
+    /**
+     * Test that the number of log writers is limited by the database connection pool size.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void writerCountLimitedByPoolSize() throws Exception {
+        int poolSize = MessageLogDatabaseCtx.getMaxPoolSize();
+        int maxWriters = poolSize - LogManager.RESERVED_CONNECTIONS;
+
+        System.setProperty(MessageLogProperties.WRITER_COUNT, String.valueOf(poolSize));
+
+        try {
+            testTearDown();
+            testSetUp();
+            initLogManager();
+
+            assertTrue(logManager.getContext().child(LogManager.WRITER_NAME + (maxWriters - 1)).isDefined());
+            assertFalse(logManager.getContext().child(LogManager.WRITER_NAME + maxWriters).isDefined());
+
+            log(createMessage(), createSignature());
+            assertTaskQueueSize(1);
+        } finally {
+            System.clearProperty(MessageLogProperties.WRITER_COUNT);
+        }
+    }
+
     /**
      * Wants to time-stamp, but no TSP urls configured.
      * @throws Exception in case of any unexpected errors
@@ -488,8 +673,12 @@ public class MessageLogTest extends AbstractMessageLogTest {
         log(message, signature, xRequestId);
     }
 
+    private Future<Object> logAsync(SoapMessageImpl message, SignatureData signature) {
+        return Patterns.ask(getLogManagerRef(), new SoapLogMessage(message, signature, true), 5000);
+    }
+
     protected LogRecord findByQueryId(String queryId, String startTime, String endTime) throws Exception {
-        return logManager.findByQueryId(queryId, getDate(startTime), getDate(endTime));
+        return LogRecordManager.getByQueryId(queryId, getDate(startTime), getDate(endTime));
     }
 
 
@@ -661,14 +850,8 @@ public class MessageLogTest extends AbstractMessageLogTest {
         }
 
         @Override
-        protected MessageRecord saveMessageRecord(MessageRecord messageRecord) throws Exception {
-            log.info("saving message record");
-
-            if (logRecordTime != null) {
-                messageRecord.setTime(logRecordTime.getTime());
-            }
-
-            return super.saveMessageRecord(messageRecord);
+        protected Props getWriterImpl() {
+            return Props.create(TestLogWriter.class, timestamper).withDispatcher(WRITER_DISPATCHER);
         }
 
         @Override
@@ -688,4 +871,21 @@ public class MessageLogTest extends AbstractMessageLogTest {
             }
         }
     }
+
+    private static class TestLogWriter extends LogWriter {
+        TestLogWriter(ActorRef timestamper) {
+            super(timestamper);
+        }
+
+        @Override
+        protected MessageRecord createMessageRecord(LogMessage message) throws Exception {
+            MessageRecord messageRecord = super.createMessageRecord(message);
+
+            if (logRecordTime != null) {
+                messageRecord.setTime(logRecordTime.getTime());
+            }
+
+            return messageRecord;
+        }
+    }
 }
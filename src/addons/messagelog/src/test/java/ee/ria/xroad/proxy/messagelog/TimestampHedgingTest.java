@@ -0,0 +1,206 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests hedging of time-stamp requests to the time-stamping providers.
+ */
+public class TimestampHedgingTest {
+
+    private static final String SLOW_TSP = "http://slow-tsp";
+    private static final String FAST_TSP = "http://fast-tsp";
+
+    private static final List<String> TSP_URLS = Arrays.asList(SLOW_TSP, FAST_TSP);
+
+    private static final long WAIT_SECONDS = 10;
+
+    /**
+     * Set up the test.
+     */
+    @Before
+    public void setUp() {
+        TspStatistics.clear();
+        System.setProperty(MessageLogProperties.TIMESTAMP_HEDGE_PERCENTILE, "95");
+    }
+
+    /**
+     * Tear down the test.
+     */
+    @After
+    public void tearDown() {
+        TspStatistics.clear();
+        System.clearProperty(MessageLogProperties.TIMESTAMP_HEDGE_PERCENTILE);
+        System.clearProperty(MessageLogProperties.TIMESTAMP_CONCURRENT_REQUESTS);
+    }
+
+    /**
+     * Test that the second provider is asked when the first does not respond within its usual response time, and
+     * that the request to the first provider is cancelled without counting it as failed.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void slowProviderIsHedged() throws Exception {
+        recordUsualLatency(SLOW_TSP);
+
+        TestRequest request = new TestRequest(Behaviour.HANG);
+
+        assertEquals(FAST_TSP, timestamp(request));
+        assertTrue(request.slowRequestCancelled.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(TspStatistics.MIN_LATENCY_SAMPLES, TspStatistics.getRequestCount(SLOW_TSP));
+        assertEquals(0, TspStatistics.getErrorRate(SLOW_TSP), 0);
+    }
+
+    /**
+     * Test that the second provider is asked at once when the first provider fails.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void failedProviderIsHedged() throws Exception {
+        recordUsualLatency(SLOW_TSP);
+
+        assertEquals(FAST_TSP, timestamp(new TestRequest(Behaviour.FAIL)));
+    }
+
+    /**
+     * Test that requests are not hedged until enough response times have been recorded.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void noHedgingWithoutStatistics() throws Exception {
+        TestRequest request = new TestRequest(Behaviour.RESPOND);
+
+        assertEquals(SLOW_TSP, timestamp(request));
+        assertFalse(request.fastRequested);
+    }
+
+    /**
+     * Test that requests are not hedged by default.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void noHedgingByDefault() throws Exception {
+        System.clearProperty(MessageLogProperties.TIMESTAMP_HEDGE_PERCENTILE);
+        recordUsualLatency(SLOW_TSP);
+
+        TestRequest request = new TestRequest(Behaviour.RESPOND);
+
+        assertEquals(SLOW_TSP, timestamp(request));
+        assertFalse(request.fastRequested);
+    }
+
+    /**
+     * Test that the request is sent to both providers at once when concurrent requests are enabled.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void concurrentRequests() throws Exception {
+        System.setProperty(MessageLogProperties.TIMESTAMP_CONCURRENT_REQUESTS, "true");
+
+        TestRequest request = new TestRequest(Behaviour.HANG);
+
+        assertEquals(FAST_TSP, timestamp(request));
+        assertTrue(request.slowRequestCancelled.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, TspStatistics.getRequestCount(FAST_TSP));
+        assertEquals(0, TspStatistics.getRequestCount(SLOW_TSP));
+    }
+
+    private static void recordUsualLatency(String url) {
+        for (int i = 0; i < TspStatistics.MIN_LATENCY_SAMPLES; i++) {
+            TspStatistics.recordLatency(url, 10);
+        }
+    }
+
+    private static String timestamp(TestRequest request) throws Exception {
+        Timestamper.TimestampSucceeded result = (Timestamper.TimestampSucceeded) request.execute(TSP_URLS);
+
+        return result.getUrl();
+    }
+
+    private enum Behaviour {
+        RESPOND, FAIL, HANG
+    }
+
+    private static final class TestRequest extends AbstractTimestampRequest {
+
+        private final Behaviour slowProvider;
+
+        private final CountDownLatch slowRequestCancelled = new CountDownLatch(1);
+
+        private volatile boolean fastRequested;
+
+        TestRequest(Behaviour slowProvider) {
+            super(new Long[] {1L});
+
+            this.slowProvider = slowProvider;
+        }
+
+        @Override
+        byte[] getRequestData() {
+            return new byte[] {1, 2, 3};
+        }
+
+        @Override
+        TimeStampResponse getVerifiedResponse(TimeStampRequest tsRequest, String url) throws Exception {
+            if (FAST_TSP.equals(url)) {
+                fastRequested = true;
+            } else if (slowProvider == Behaviour.FAIL) {
+                throw new Exception("Time-stamping provider is not available");
+            } else if (slowProvider == Behaviour.HANG) {
+                try {
+                    // only returns when the request is cancelled
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    slowRequestCancelled.countDown();
+
+                    throw e;
+                }
+            }
+
+            return null;
+        }
+
+        @Override
+        Timestamper.TimestampResult result(TimeStampResponse tsResponse, String url) {
+            return new Timestamper.TimestampSucceeded(logRecords, new byte[0], null, null, url);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the statistics of the time-stamping providers.
+ */
+public class TspStatisticsTest {
+
+    private static final String FIRST_TSP = "http://first-tsp";
+    private static final String SECOND_TSP = "http://second-tsp";
+    private static final String THIRD_TSP = "http://third-tsp";
+
+    private static final double DELTA = 0.0001;
+
+    /**
+     * Set up the test.
+     */
+    @Before
+    public void setUp() {
+        TspStatistics.clear();
+    }
+
+    /**
+     * Tear down the test.
+     */
+    @After
+    public void tearDown() {
+        TspStatistics.clear();
+    }
+
+    /**
+     * Test that the percentile is calculated from the latest response times.
+     */
+    @Test
+    public void latencyPercentile() {
+        assertEquals(-1, TspStatistics.getLatencyPercentile(FIRST_TSP, 95));
+
+        for (int i = 1; i <= TspStatistics.LATENCY_SAMPLES * 2; i++) {
+            TspStatistics.recordLatency(FIRST_TSP, i);
+        }
+
+        assertEquals(195, TspStatistics.getLatencyPercentile(FIRST_TSP, 95));
+        assertEquals(200, TspStatistics.getLatencyPercentile(FIRST_TSP, 100));
+        assertEquals(150, TspStatistics.getMedianLatency(FIRST_TSP));
+        assertEquals(-1, TspStatistics.getLatencyPercentile(SECOND_TSP, 95));
+    }
+
+    /**
+     * Test that the error rate is calculated from the latest requests.
+     */
+    @Test
+    public void errorRate() {
+        assertEquals(0, TspStatistics.getErrorRate(FIRST_TSP), DELTA);
+
+        TspStatistics.recordFailure(FIRST_TSP);
+        TspStatistics.recordLatency(FIRST_TSP, 10);
+        TspStatistics.recordLatency(FIRST_TSP, 10);
+        TspStatistics.recordFailure(FIRST_TSP);
+
+        assertEquals(0.5, TspStatistics.getErrorRate(FIRST_TSP), DELTA);
+
+        for (int i = 0; i < TspStatistics.LATENCY_SAMPLES - 1; i++) {
+            TspStatistics.recordLatency(FIRST_TSP, 10);
+        }
+
+        // only the last failure is among the latest requests
+        assertEquals(1.0 / TspStatistics.LATENCY_SAMPLES, TspStatistics.getErrorRate(FIRST_TSP), DELTA);
+    }
+
+    /**
+     * Test that the providers are ordered by error rate and response time.
+     */
+    @Test
+    public void orderByHealth() {
+        assertEquals(Arrays.asList(FIRST_TSP, SECOND_TSP, THIRD_TSP),
+                TspStatistics.orderByHealth(Arrays.asList(FIRST_TSP, SECOND_TSP, THIRD_TSP)));
+
+        for (int i = 0; i < TspStatistics.MIN_LATENCY_SAMPLES; i++) {
+            TspStatistics.recordLatency(FIRST_TSP, 100);
+            TspStatistics.recordLatency(SECOND_TSP, 10);
+        }
+
+        // the third provider has no statistics yet
+        assertEquals(Arrays.asList(SECOND_TSP, FIRST_TSP, THIRD_TSP),
+                TspStatistics.orderByHealth(Arrays.asList(FIRST_TSP, SECOND_TSP, THIRD_TSP)));
+
+        TspStatistics.recordFailure(SECOND_TSP);
+
+        // the third provider keeps its configured position
+        assertEquals(Arrays.asList(FIRST_TSP, SECOND_TSP, THIRD_TSP),
+                TspStatistics.orderByHealth(Arrays.asList(FIRST_TSP, SECOND_TSP, THIRD_TSP)));
+
+        for (int i = 0; i < TspStatistics.MIN_REQUEST_SAMPLES; i++) {
+            TspStatistics.recordLatency(THIRD_TSP, 200);
+        }
+
+        assertEquals(Arrays.asList(FIRST_TSP, THIRD_TSP, SECOND_TSP),
+                TspStatistics.orderByHealth(Arrays.asList(FIRST_TSP, SECOND_TSP, THIRD_TSP)));
+    }
+
+    /**
+     * Test that a provider is not demoted before enough requests have been recorded for the other providers.
+     */
+    @Test
+    public void orderByHealthRequiresMinimumSampleSize() {
+        for (int i = 0; i < TspStatistics.LATENCY_SAMPLES - 1; i++) {
+            TspStatistics.recordLatency(FIRST_TSP, 10);
+        }
+
+        TspStatistics.recordFailure(FIRST_TSP);
+
+        // the second provider has no statistics yet
+        assertEquals(Arrays.asList(FIRST_TSP, SECOND_TSP),
+                TspStatistics.orderByHealth(Arrays.asList(FIRST_TSP, SECOND_TSP)));
+
+        for (int i = 0; i < TspStatistics.MIN_REQUEST_SAMPLES - 1; i++) {
+            TspStatistics.recordLatency(SECOND_TSP, 10);
+        }
+
+        assertEquals(Arrays.asList(FIRST_TSP, SECOND_TSP),
+                TspStatistics.orderByHealth(Arrays.asList(FIRST_TSP, SECOND_TSP)));
+
+        TspStatistics.recordLatency(SECOND_TSP, 10);
+
+        assertEquals(Arrays.asList(SECOND_TSP, FIRST_TSP),
+                TspStatistics.orderByHealth(Arrays.asList(FIRST_TSP, SECOND_TSP)));
+    }
+
+    /**
+     * Test that every sampling round is sent first to the next alternate provider.
+     */
+    @Test
+    public void sampleAlternate() {
+        List<String> tspUrls = Arrays.asList(FIRST_TSP, SECOND_TSP, THIRD_TSP);
+
+        for (int i = 0; i < TspStatistics.SAMPLE_INTERVAL - 1; i++) {
+            assertEquals(tspUrls, TspStatistics.sampleAlternate(tspUrls));
+        }
+
+        assertEquals(Arrays.asList(SECOND_TSP, FIRST_TSP, THIRD_TSP), TspStatistics.sampleAlternate(tspUrls));
+
+        for (int i = 0; i < TspStatistics.SAMPLE_INTERVAL - 1; i++) {
+            assertEquals(tspUrls, TspStatistics.sampleAlternate(tspUrls));
+        }
+
+        assertEquals(Arrays.asList(THIRD_TSP, FIRST_TSP, SECOND_TSP), TspStatistics.sampleAlternate(tspUrls));
+
+        for (int i = 0; i < TspStatistics.SAMPLE_INTERVAL - 1; i++) {
+            TspStatistics.sampleAlternate(tspUrls);
+        }
+
+        assertEquals(Arrays.asList(SECOND_TSP, FIRST_TSP, THIRD_TSP), TspStatistics.sampleAlternate(tspUrls));
+        assertEquals(Collections.singletonList(FIRST_TSP),
+                TspStatistics.sampleAlternate(Collections.singletonList(FIRST_TSP)));
+    }
+}
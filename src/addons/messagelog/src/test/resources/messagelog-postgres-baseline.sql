@@ -0,0 +1,45 @@
+-- LOGRECORD table as created by messagelog-changelog.xml, used by LogRecordPartitionsDatabaseTest
+
+CREATE TABLE logrecord (
+  id BIGINT NOT NULL,
+  discriminator VARCHAR(255) NOT NULL,
+  time BIGINT,
+  archived BOOLEAN,
+  queryid VARCHAR(255),
+  message TEXT,
+  signature TEXT,
+  hashchain TEXT,
+  hashchainresult TEXT,
+  signaturehash TEXT,
+  timestamprecord BIGINT,
+  timestamphashchain TEXT,
+  response BOOLEAN,
+  timestamp TEXT,
+  memberclass VARCHAR(255),
+  membercode VARCHAR(255),
+  subsystemcode VARCHAR(255),
+  attachment OID,
+  xrequestid VARCHAR(255),
+  CONSTRAINT logrecordpk PRIMARY KEY (id),
+  CONSTRAINT fk_qo6ack8sad6fqib90xghdaylh FOREIGN KEY (timestamprecord) REFERENCES logrecord (id)
+);
+
+CREATE INDEX logrecord_timestamprecord_fkey ON logrecord (timestamprecord);
+CREATE INDEX ix_not_archived_logrecord ON logrecord (id) WHERE discriminator = 't' AND archived = false;
+CREATE INDEX ix_not_timestamped_logrecord ON logrecord (id, discriminator, signaturehash)
+  WHERE discriminator = 'm' AND signaturehash IS NOT NULL;
+
+CREATE OR REPLACE FUNCTION del_logrecord_attachment()
+  RETURNS trigger
+  LANGUAGE plpgsql
+AS $function$
+BEGIN
+  PERFORM LO_UNLINK(OLD.ATTACHMENT);
+  RETURN OLD;
+END;
+$function$;
+
+CREATE TRIGGER t_logrecord_attachment
+    BEFORE DELETE ON logrecord
+    FOR EACH ROW WHEN (old.attachment IS NOT NULL)
+    EXECUTE PROCEDURE del_logrecord_attachment();
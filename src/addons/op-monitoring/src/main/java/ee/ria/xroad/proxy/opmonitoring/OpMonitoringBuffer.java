@@ -29,14 +29,11 @@ import ee.ria.xroad.common.opmonitoring.AbstractOpMonitoringBuffer;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringDaemonHttpClient;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
-import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataRequest;
-import ee.ria.xroad.common.util.JsonUtils;
 import ee.ria.xroad.common.util.TimeUtils;
 
 import akka.actor.ActorRef;
 import akka.actor.Cancellable;
 import akka.actor.Props;
-import com.google.gson.Gson;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
@@ -44,11 +41,14 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import scala.concurrent.duration.FiniteDuration;
 
 import java.net.NetworkInterface;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.net.NetworkInterface.getNetworkInterfaces;
 import static java.util.Collections.list;
@@ -56,7 +56,9 @@ import static java.util.Collections.list;
 /**
  * Operational monitoring buffer. This buffer is used for gathering
  * operational data and for periodically sending the data to the operational
- * monitoring daemon (using OpMonitoringDaemonSender).
+ * monitoring daemon (using OpMonitoringDaemonSender). Request threads write
+ * the data directly into a preallocated ring buffer, the actor only drains
+ * the buffer and coordinates sending.
  */
 @Slf4j
 public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
@@ -65,12 +67,14 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
     private static final String NO_ADDRESS_FOUND = "No suitable IP address is bound to the network interface ";
     private static final String NO_INTERFACE_FOUND = "No non-loopback network interface found";
 
-    private static final long MAX_BUFFER_SIZE = OpMonitoringSystemProperties.getOpMonitorBufferSize();
+    private static final int MAX_BUFFER_SIZE = OpMonitoringSystemProperties.getOpMonitorBufferSize();
 
     private static final int MAX_RECORDS_IN_MESSAGE =
             OpMonitoringSystemProperties.getOpMonitorBufferMaxRecordsInMessage();
     private static final long SENDING_INTERVAL_SECONDS =
             OpMonitoringSystemProperties.getOpMonitorBufferSendingIntervalSeconds();
+    private static final int MAX_CONCURRENT_REQUESTS =
+            OpMonitoringSystemProperties.getOpMonitorBufferMaxConcurrentRequests();
 
     private static final int CLIENT_CONNECTION_TIMEOUT_MILLISECONDS = TimeUtils.secondsToMillis(
             OpMonitoringSystemProperties.getOpMonitorBufferConnectionTimeoutSeconds());
@@ -78,31 +82,23 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
     private static final int CLIENT_SOCKET_TIMEOUT_MILLISECONDS = TimeUtils.secondsToMillis(
             OpMonitoringSystemProperties.getOpMonitorBufferSocketTimeoutSeconds());
 
-    private static final Gson GSON = JsonUtils.getSerializer();
-
     private Cancellable tick;
 
-    final Map<Long, OpMonitoringData> buffer =
-            new LinkedHashMap<Long, OpMonitoringData>() {
-                @Override
-                protected boolean removeEldestEntry(Map.Entry eldest) {
-                    boolean overflow = size() > MAX_BUFFER_SIZE;
+    final OpMonitoringRingBuffer buffer;
 
-                    if (overflow) {
-                        log.warn("Operational monitoring buffer overflow, removing eldest record: {}", eldest.getKey());
-                    }
+    private final AtomicBoolean sendRequested = new AtomicBoolean();
 
-                    return overflow;
-                }
-            };
+    private final Deque<ActorRef> idleSenders = new ArrayDeque<>();
 
-    private long bufferIndex = 0;
+    // Records being sent, by the sender actor that acknowledges them.
+    final Map<ActorRef, List<OpMonitoringData>> inFlight = new HashMap<>();
 
-    private final Set<Long> processedBufferIndices = new HashSet<>();
+    // Records that could not be sent, retried before the records remaining in the buffer.
+    final Deque<List<OpMonitoringData>> failed = new ArrayDeque<>();
 
-    private final CloseableHttpClient httpClient;
+    private long reportedDroppedCount = 0;
 
-    private final ActorRef sender;
+    private final CloseableHttpClient httpClient;
 
     private static String ipAddress;
 
@@ -114,22 +110,26 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
         if (ignoreOpMonitoringData()) {
             log.info("Operational monitoring buffer is switched off, no operational monitoring data is stored");
 
+            buffer = null;
             httpClient = null;
-            sender = null;
         } else {
+            buffer = new OpMonitoringRingBuffer(MAX_BUFFER_SIZE);
             httpClient = createHttpClient();
-            sender = createSender();
+
+            for (int i = 0; i < MAX_CONCURRENT_REQUESTS; i++) {
+                idleSenders.add(createSender(i));
+            }
         }
     }
 
     CloseableHttpClient createHttpClient() throws Exception {
-        return OpMonitoringDaemonHttpClient.createHttpClient(ServerConf.getSSLKey(), 1, 1,
-                CLIENT_CONNECTION_TIMEOUT_MILLISECONDS, CLIENT_SOCKET_TIMEOUT_MILLISECONDS);
+        return OpMonitoringDaemonHttpClient.createHttpClient(ServerConf.getSSLKey(), MAX_CONCURRENT_REQUESTS,
+                MAX_CONCURRENT_REQUESTS, CLIENT_CONNECTION_TIMEOUT_MILLISECONDS, CLIENT_SOCKET_TIMEOUT_MILLISECONDS);
     }
 
-    ActorRef createSender() {
+    ActorRef createSender(int index) {
         return getContext().system().actorOf(Props.create(OpMonitoringDaemonSender.class, httpClient),
-                OP_MONITORING_DAEMON_SENDER);
+                index == 0 ? OP_MONITORING_DAEMON_SENDER : OP_MONITORING_DAEMON_SENDER + index);
     }
 
     @Override
@@ -138,49 +138,83 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
             return;
         }
 
-        data.setSecurityServerInternalIp(getIpAddress());
+        put(data);
+        send();
+    }
 
-        buffer.put(getNextBufferIndex(), data);
+    /**
+     * Writes the data into the ring buffer. Called directly by request threads,
+     * the buffer actor is notified only if no sending has been requested yet.
+     */
+    void storeDirectly(OpMonitoringData data, ActorRef self) {
+        put(data);
 
-        send();
+        if (sendRequested.compareAndSet(false, true)) {
+            self.tell(SEND_MONITORING_DATA, ActorRef.noSender());
+        }
+    }
+
+    private void put(OpMonitoringData data) {
+        data.setSecurityServerInternalIp(getIpAddress());
+
+        buffer.put(data);
     }
 
     @Override
     protected void send() throws Exception {
+        sendRequested.set(false);
+
         if (!canSend()) {
             return;
         }
 
-        String json = prepareMonitoringMessage();
+        while (canSend()) {
+            List<OpMonitoringData> records = failed.isEmpty()
+                    ? Collections.unmodifiableList(buffer.drain(MAX_RECORDS_IN_MESSAGE)) : failed.poll();
+
+            if (records.isEmpty()) {
+                break;
+            }
+
+            ActorRef sender = idleSenders.poll();
+
+            inFlight.put(sender, records);
+            sender.tell(records, getSelf());
+        }
+
+        logDroppedRecords();
 
-        sender.tell(json, getSelf());
+        log.debug("Op monitoring buffer records count: {}, messages in flight: {}", buffer.size()
+                + failed.stream().mapToInt(List::size).sum(), inFlight.size());
     }
 
     private boolean canSend() {
-        return !buffer.isEmpty() && processedBufferIndices.isEmpty();
+        return buffer != null && !idleSenders.isEmpty() && (!failed.isEmpty() || !buffer.isEmpty());
     }
 
-    private String prepareMonitoringMessage() {
-        StoreOpMonitoringDataRequest request = new StoreOpMonitoringDataRequest();
+    private void logDroppedRecords() {
+        long droppedCount = buffer.getDroppedCount();
 
-        for (Map.Entry<Long, OpMonitoringData> entry : buffer.entrySet()) {
-            processedBufferIndices.add(entry.getKey());
-            request.addRecord(entry.getValue().getData());
+        if (droppedCount > reportedDroppedCount) {
+            log.warn("Operational monitoring buffer overflow, {} eldest records dropped ({} in total)",
+                    droppedCount - reportedDroppedCount, droppedCount);
 
-            if (request.getRecords().size() == MAX_RECORDS_IN_MESSAGE) {
-                break;
-            }
+            reportedDroppedCount = droppedCount;
         }
+    }
 
-        log.debug("Op monitoring buffer records count: {}", buffer.size());
-
-        return GSON.toJson(request);
+    /**
+     * @return total number of records dropped due to buffer overflow
+     */
+    long getDroppedCount() {
+        return buffer != null ? buffer.getDroppedCount() : 0;
     }
 
     @Override
     protected void sendingSuccess() throws Exception {
-        processedBufferIndices.forEach(buffer::remove);
-        processedBufferIndices.clear();
+        if (inFlight.remove(getSender()) != null) {
+            idleSenders.add(getSender());
+        }
 
         if (canSend()) {
             send();
@@ -189,15 +223,14 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
 
     @Override
     protected void sendingFailure() throws Exception {
-        processedBufferIndices.clear();
-
-        // Do not worry, scheduled sending retries..
-    }
+        List<OpMonitoringData> records = inFlight.remove(getSender());
 
-    long getNextBufferIndex() {
-        bufferIndex = bufferIndex == Long.MAX_VALUE ? 0 : bufferIndex + 1;
+        if (records != null) {
+            failed.add(records);
+            idleSenders.add(getSender());
+        }
 
-        return bufferIndex;
+        // Do not worry, scheduled sending retries the failed records..
     }
 
     private void scheduleSendMonitoringData() {
@@ -214,10 +247,16 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
         }
 
         scheduleSendMonitoringData();
+
+        ActorRef self = getSelf();
+
+        OpMonitoring.setDirectStore(data -> storeDirectly(data, self));
     }
 
     @Override
     public void postStop() throws Exception {
+        OpMonitoring.setDirectStore(null);
+
         if (tick != null) {
             tick.cancel();
         }
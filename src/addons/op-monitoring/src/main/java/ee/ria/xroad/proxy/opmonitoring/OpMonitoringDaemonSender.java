@@ -26,6 +26,7 @@ package ee.ria.xroad.proxy.opmonitoring;
 
 import ee.ria.xroad.common.opmonitoring.AbstractOpMonitoringBuffer;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringDaemonEndpoints;
+import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
 import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse;
 import ee.ria.xroad.common.util.HttpSender;
@@ -34,16 +35,27 @@ import ee.ria.xroad.common.util.MimeTypes;
 import ee.ria.xroad.common.util.MimeUtils;
 import ee.ria.xroad.common.util.TimeUtils;
 
-import akka.actor.ActorRef;
 import akka.actor.UntypedAbstractActor;
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.EntityTemplate;
 import org.apache.http.impl.client.CloseableHttpClient;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 import static ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse.STATUS_ERROR;
 import static ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse.STATUS_OK;
@@ -57,6 +69,12 @@ public class OpMonitoringDaemonSender extends UntypedAbstractActor {
 
     private static final Gson GSON = JsonUtils.getSerializer();
 
+    private static final String RECORDS = "records";
+
+    private static final String GZIP = "gzip";
+
+    private static final boolean COMPRESS_MESSAGES = OpMonitoringSystemProperties.isOpMonitorBufferCompressMessages();
+
     private static final int CONNECTION_TIMEOUT_MILLISECONDS = TimeUtils.secondsToMillis(
             OpMonitoringSystemProperties.getOpMonitorBufferConnectionTimeoutSeconds());
 
@@ -71,13 +89,14 @@ public class OpMonitoringDaemonSender extends UntypedAbstractActor {
 
     @Override
     public void onReceive(Object message) throws Exception {
-        if (message instanceof String) {
-            String json = (String) message;
+        if (message instanceof List) {
+            @SuppressWarnings("unchecked")
+            List<OpMonitoringData> records = (List<OpMonitoringData>) message;
 
-            log.trace("onReceive: {}", json);
+            log.trace("onReceive: {} records", records.size());
 
             try {
-                send(json);
+                send(records);
                 success();
             } catch (Exception e) {
                 log.error("Sending operational monitoring data failed", e);
@@ -90,19 +109,19 @@ public class OpMonitoringDaemonSender extends UntypedAbstractActor {
     }
 
     private void success() {
-        getSender().tell(AbstractOpMonitoringBuffer.SENDING_SUCCESS, ActorRef.noSender());
+        getSender().tell(AbstractOpMonitoringBuffer.SENDING_SUCCESS, getSelf());
     }
 
     private void failure() {
-        getSender().tell(AbstractOpMonitoringBuffer.SENDING_FAILURE, ActorRef.noSender());
+        getSender().tell(AbstractOpMonitoringBuffer.SENDING_FAILURE, getSelf());
     }
 
-    private void send(String json) throws Exception {
+    private void send(List<OpMonitoringData> records) throws Exception {
         try (HttpSender sender = new HttpSender(httpClient)) {
             sender.setConnectionTimeout(CONNECTION_TIMEOUT_MILLISECONDS);
             sender.setSocketTimeout(SOCKET_TIMEOUT_MILLISECONDS);
 
-            sender.doPost(getAddress(), json, MimeTypes.JSON);
+            sender.doPost(getAddress(), createEntity(records, COMPRESS_MESSAGES));
 
             String responseJson = IOUtils.toString(sender.getResponseContent(), MimeUtils.UTF8);
             StoreOpMonitoringDataResponse response;
@@ -128,6 +147,49 @@ public class OpMonitoringDaemonSender extends UntypedAbstractActor {
         }
     }
 
+    /**
+     * Creates an entity that writes the records as a store operational monitoring data request
+     * directly into the request stream, without building the JSON string in memory.
+     */
+    static HttpEntity createEntity(List<OpMonitoringData> records, boolean compress) {
+        EntityTemplate entity = new EntityTemplate(out -> {
+            if (compress) {
+                GZIPOutputStream gzip = new GZIPOutputStream(out);
+
+                writeJson(records, gzip);
+                gzip.finish();
+            } else {
+                writeJson(records, out);
+            }
+        });
+
+        entity.setContentType(ContentType.create(MimeTypes.JSON, MimeUtils.UTF8).toString());
+
+        if (compress) {
+            entity.setContentEncoding(GZIP);
+        }
+
+        return entity;
+    }
+
+    static void writeJson(List<OpMonitoringData> records, OutputStream out) throws IOException {
+        JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+
+        writer.beginObject();
+        writer.name(RECORDS);
+        writer.beginArray();
+
+        for (OpMonitoringData record : records) {
+            Map<String, Object> data = record.getData();
+
+            GSON.toJson(data, data.getClass(), writer);
+        }
+
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+    }
+
     private URI getAddress() throws URISyntaxException {
         return new URI(OpMonitoringSystemProperties.getOpMonitorDaemonScheme(), null,
                 OpMonitoringSystemProperties.getOpMonitorHost(), OpMonitoringSystemProperties.getOpMonitorPort(),
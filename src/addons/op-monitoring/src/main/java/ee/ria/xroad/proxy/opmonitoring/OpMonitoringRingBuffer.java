@@ -0,0 +1,154 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.opmonitoring;
+
+import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Preallocated multi-producer, single-consumer ring buffer for operational
+ * monitoring data. Request threads write records without locking; when the
+ * buffer is full the eldest unsent record is overwritten and counted as dropped.
+ * Records are drained by a single consumer (the operational monitoring buffer actor).
+ */
+class OpMonitoringRingBuffer {
+
+    private final int capacity;
+
+    private final AtomicReferenceArray<OpMonitoringData> slots;
+
+    // Sequence number of the record most recently published into each slot.
+    private final AtomicLongArray published;
+
+    private final AtomicLong writeSequence = new AtomicLong();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    // Accessed only by the consumer.
+    private long readSequence = 0;
+
+    /**
+     * Creates a ring buffer.
+     * @param capacity maximum number of records kept in the buffer
+     */
+    OpMonitoringRingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.published = new AtomicLongArray(capacity);
+
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * Adds a record to the buffer. May be called concurrently by any number of threads.
+     * @param data the operational monitoring data
+     */
+    void put(OpMonitoringData data) {
+        long sequence = writeSequence.getAndIncrement();
+        int index = index(sequence);
+
+        if (slots.getAndSet(index, data) != null) {
+            droppedCount.incrementAndGet();
+        }
+
+        published.set(index, sequence);
+    }
+
+    /**
+     * Removes up to the given number of records from the buffer in the order they
+     * were written. Must only be called by the single consumer.
+     * @param maxRecords maximum number of records to return
+     * @return the drained records, empty if there are none
+     */
+    List<OpMonitoringData> drain(int maxRecords) {
+        long available = writeSequence.get();
+
+        if (available - readSequence > capacity) {
+            // Records behind the last lap have been overwritten and already counted as dropped.
+            readSequence = available - capacity;
+        }
+
+        List<OpMonitoringData> records = new ArrayList<>(
+                (int) Math.min(maxRecords, available - readSequence));
+
+        while (readSequence < available && records.size() < maxRecords) {
+            int index = index(readSequence);
+            long sequence = published.get(index);
+
+            if (sequence < readSequence) {
+                // The producer has claimed the slot but not yet published the record.
+                break;
+            }
+
+            if (sequence == readSequence) {
+                OpMonitoringData data = slots.getAndSet(index, null);
+
+                if (data != null) {
+                    records.add(data);
+                }
+            }
+
+            readSequence++;
+        }
+
+        return records;
+    }
+
+    /**
+     * @return true if no records are waiting to be drained
+     */
+    boolean isEmpty() {
+        return writeSequence.get() == readSequence;
+    }
+
+    /**
+     * @return approximate number of records waiting to be drained
+     */
+    int size() {
+        return (int) Math.min(capacity, writeSequence.get() - readSequence);
+    }
+
+    /**
+     * @return total number of records dropped due to buffer overflow
+     */
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence % capacity);
+    }
+}
@@ -25,15 +25,37 @@
 package ee.ria.xroad.proxy.opmonitoring;
 
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataRequest;
+import ee.ria.xroad.common.util.JsonUtils;
 
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
 import akka.testkit.TestActorRef;
+import akka.testkit.TestProbe;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.BeforeClass;
 import org.junit.Test;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests operational monitoring buffer.
@@ -41,6 +63,8 @@ import static org.junit.Assert.assertEquals;
 public class OpMonitoringBufferTest {
     private static final ActorSystem ACTOR_SYSTEM = ActorSystem.create();
 
+    private static final List<TestProbe> SENDERS = new ArrayList<>();
+
     private static class TestOpMonitoringBuffer extends OpMonitoringBuffer {
         TestOpMonitoringBuffer() throws Exception {
             super();
@@ -52,19 +76,31 @@ public class OpMonitoringBufferTest {
         }
 
         @Override
-        ActorRef createSender() {
-            return null;
+        ActorRef createSender(int index) {
+            TestProbe sender = new TestProbe(ACTOR_SYSTEM);
+            SENDERS.add(sender);
+
+            return sender.ref();
         }
 
         @Override
         protected void store(OpMonitoringData data) throws Exception {
-            buffer.put(getNextBufferIndex(), data);
+            buffer.put(data);
         }
     }
 
+    /**
+     * Set up the buffer configuration shared by the tests.
+     */
+    @BeforeClass
+    public static void setUpBeforeClass() {
+        System.setProperty("xroad.op-monitor-buffer.size", "2");
+        System.setProperty("xroad.op-monitor-buffer.max-records-in-message", "1");
+        System.setProperty("xroad.op-monitor-buffer.max-concurrent-requests", "2");
+    }
+
     @Test
     public void bufferOverflow() throws Exception {
-        System.setProperty("xroad.op-monitor-buffer.size", "2");
 
         final Props props = Props.create(TestOpMonitoringBuffer.class);
         final TestActorRef<TestOpMonitoringBuffer> testActorRef =
@@ -73,15 +109,140 @@ public class OpMonitoringBufferTest {
         TestOpMonitoringBuffer opMonitoringBuffer =
                 testActorRef.underlyingActor();
 
-        OpMonitoringData opMonitoringData = new OpMonitoringData(
+        OpMonitoringData first = new OpMonitoringData(
                 OpMonitoringData.SecurityServerType.CLIENT, 100);
+        OpMonitoringData second = new OpMonitoringData(
+                OpMonitoringData.SecurityServerType.CLIENT, 200);
+        OpMonitoringData third = new OpMonitoringData(
+                OpMonitoringData.SecurityServerType.CLIENT, 300);
 
-        opMonitoringBuffer.store(opMonitoringData);
-        opMonitoringBuffer.store(opMonitoringData);
-        opMonitoringBuffer.store(opMonitoringData);
+        opMonitoringBuffer.store(first);
+        opMonitoringBuffer.store(second);
+        opMonitoringBuffer.store(third);
 
         assertEquals(2, opMonitoringBuffer.buffer.size());
-        assertEquals(true, opMonitoringBuffer.buffer.containsKey(2L));
-        assertEquals(true, opMonitoringBuffer.buffer.containsKey(3L));
+        assertEquals(1, opMonitoringBuffer.getDroppedCount());
+        assertEquals(Arrays.asList(second, third), opMonitoringBuffer.buffer.drain(10));
+        assertTrue(opMonitoringBuffer.buffer.isEmpty());
+    }
+
+    @Test
+    public void concurrentRequests() throws Exception {
+        SENDERS.clear();
+
+        final Props props = Props.create(TestOpMonitoringBuffer.class);
+        final TestActorRef<TestOpMonitoringBuffer> testActorRef =
+                TestActorRef.create(ACTOR_SYSTEM, props, "concurrentRequests");
+
+        TestOpMonitoringBuffer opMonitoringBuffer = testActorRef.underlyingActor();
+
+        OpMonitoringData first = new OpMonitoringData(OpMonitoringData.SecurityServerType.CLIENT, 100);
+        OpMonitoringData second = new OpMonitoringData(OpMonitoringData.SecurityServerType.CLIENT, 200);
+        OpMonitoringData third = new OpMonitoringData(OpMonitoringData.SecurityServerType.CLIENT, 300);
+
+        opMonitoringBuffer.store(first);
+        opMonitoringBuffer.store(second);
+        testActorRef.tell(OpMonitoringBuffer.SEND_MONITORING_DATA, ActorRef.noSender());
+
+        // Both senders are busy, the third record waits in the buffer.
+        SENDERS.get(0).expectMsg(Collections.singletonList(first));
+        SENDERS.get(1).expectMsg(Collections.singletonList(second));
+
+        opMonitoringBuffer.store(third);
+        testActorRef.tell(OpMonitoringBuffer.SEND_MONITORING_DATA, ActorRef.noSender());
+
+        assertEquals(2, opMonitoringBuffer.inFlight.size());
+
+        testActorRef.tell(OpMonitoringBuffer.SENDING_SUCCESS, SENDERS.get(0).ref());
+
+        SENDERS.get(0).expectMsg(Collections.singletonList(third));
+
+        // Failed records are kept aside and resent by the next sending attempt.
+        testActorRef.tell(OpMonitoringBuffer.SENDING_FAILURE, SENDERS.get(1).ref());
+
+        assertEquals(1, opMonitoringBuffer.failed.size());
+        SENDERS.get(1).expectNoMessage(FiniteDuration.create(100, TimeUnit.MILLISECONDS));
+
+        testActorRef.tell(OpMonitoringBuffer.SEND_MONITORING_DATA, ActorRef.noSender());
+
+        SENDERS.get(1).expectMsg(Collections.singletonList(second));
+        assertTrue(opMonitoringBuffer.failed.isEmpty());
+    }
+
+    @Test
+    public void concurrentWriters() throws Exception {
+        final int writers = 4;
+        final int recordsPerWriter = 10000;
+
+        OpMonitoringRingBuffer buffer = new OpMonitoringRingBuffer(writers * recordsPerWriter);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+
+        try {
+            for (int i = 0; i < writers; i++) {
+                executor.submit(() -> {
+                    start.await();
+
+                    for (int j = 0; j < recordsPerWriter; j++) {
+                        buffer.put(new OpMonitoringData(OpMonitoringData.SecurityServerType.CLIENT, j));
+                    }
+
+                    return null;
+                });
+            }
+
+            start.countDown();
+            executor.shutdown();
+
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int drained = 0;
+        List<OpMonitoringData> records = buffer.drain(100);
+
+        while (!records.isEmpty()) {
+            drained += records.size();
+            records = buffer.drain(100);
+        }
+
+        assertEquals(writers * recordsPerWriter, drained);
+        assertEquals(0, buffer.getDroppedCount());
+    }
+
+    @Test
+    public void streamRecordsAsJson() throws Exception {
+        OpMonitoringData data = new OpMonitoringData(OpMonitoringData.SecurityServerType.PRODUCER, 100);
+        data.setMessageId("1234");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OpMonitoringDaemonSender.writeJson(Arrays.asList(data, data), out);
+
+        StoreOpMonitoringDataRequest request = JsonUtils.getSerializer().fromJson(
+                out.toString(StandardCharsets.UTF_8.name()), StoreOpMonitoringDataRequest.class);
+
+        assertEquals(2, request.getRecords().size());
+        assertEquals("1234", request.getRecords().get(0).get("messageId"));
+    }
+
+    @Test
+    public void streamCompressedRecords() throws Exception {
+        OpMonitoringData data = new OpMonitoringData(OpMonitoringData.SecurityServerType.PRODUCER, 100);
+        data.setMessageId("1234");
+
+        HttpEntity entity = OpMonitoringDaemonSender.createEntity(Arrays.asList(data, data), true);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+
+        assertEquals("gzip", entity.getContentEncoding().getValue());
+
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            StoreOpMonitoringDataRequest request = JsonUtils.getSerializer().fromJson(
+                    IOUtils.toString(in, StandardCharsets.UTF_8), StoreOpMonitoringDataRequest.class);
+
+            assertEquals(2, request.getRecords().size());
+        }
     }
 }
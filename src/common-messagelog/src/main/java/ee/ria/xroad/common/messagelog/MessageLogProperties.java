@@ -53,9 +53,18 @@ public final class MessageLogProperties {
 
     private static final int DEFAULT_TIMESTAMP_RETRY_DELAY = 60;
 
+    private static final int DEFAULT_TIMESTAMP_BATCH_WINDOW = 0;
+
+    private static final int DEFAULT_TIMESTAMP_HEDGE_PERCENTILE = 0;
+
     private static final int DEFAULT_ARCHIVE_TRANSACTION_BATCH_SIZE = 10000;
     private static final int DEFAULT_CLEAN_TRANSACTION_BATCH_SIZE = 10000;
 
+    private static final int DEFAULT_GROUP_COMMIT_MAX_RECORDS = 1;
+    private static final int DEFAULT_GROUP_COMMIT_MAX_DELAY = 10;
+
+    private static final int DEFAULT_WRITER_COUNT = 1;
+
     private static final long DEFAULT_MAX_LOGGABLE_MESSAGE_BODY_SIZE = 10 * 1024 * 1024;
     private static final long MAX_LOGGABLE_MESSAGE_BODY_SIZE_LIMIT = 1024 * 1024 * 1024;
 
@@ -74,6 +83,15 @@ public final class MessageLogProperties {
     /** Property name of the timestamp retry delay (seconds). */
     public static final String TIMESTAMP_RETRY_DELAY = PREFIX + "timestamp-retry-delay";
 
+    /** Property name of the time (milliseconds) concurrent time-stamping tasks are collected into one batch. */
+    public static final String TIMESTAMP_BATCH_WINDOW = PREFIX + "timestamp-batch-window";
+
+    /** Property name of the response time percentile after which a time-stamp request is sent to a second TSP. */
+    public static final String TIMESTAMP_HEDGE_PERCENTILE = PREFIX + "timestamp-hedge-percentile";
+
+    /** Property name of the flag for sending time-stamp requests to the two healthiest TSPs concurrently. */
+    public static final String TIMESTAMP_CONCURRENT_REQUESTS = PREFIX + "timestamp-concurrent-requests";
+
     public static final String ACCEPTABLE_TIMESTAMP_FAILURE_PERIOD = PREFIX + "acceptable-timestamp-failure-period";
 
     public static final String KEEP_RECORDS_FOR = PREFIX + "keep-records-for";
@@ -90,10 +108,22 @@ public final class MessageLogProperties {
 
     private static final String CLEAN_TRANSACTION_BATCH = "clean-transaction-batch";
 
+    /** Property name of the flag for the time-partitioned LOGRECORD table layout. */
+    public static final String PARTITIONED_STORAGE = PREFIX + "partitioned-storage";
+
     public static final String HASH_ALGO_ID = PREFIX + "hash-algo-id";
 
     public static final String ARCHIVE_TRANSFER_COMMAND = PREFIX + "archive-transfer-command";
 
+    /** Property name of the maximum number of message records saved in one group commit. */
+    public static final String GROUP_COMMIT_MAX_RECORDS = PREFIX + "group-commit-max-records";
+
+    /** Property name of the maximum time (milliseconds) a message record waits for its group commit. */
+    public static final String GROUP_COMMIT_MAX_DELAY = PREFIX + "group-commit-max-delay";
+
+    /** Property name of the number of message log writers. */
+    public static final String WRITER_COUNT = PREFIX + "writer-count";
+
     /**
      * Property name for toggling SOAP body logging on/off
      * @deprecated
@@ -157,6 +187,30 @@ public final class MessageLogProperties {
                 DEFAULT_TIMESTAMP_RETRY_DELAY);
     }
 
+    /**
+     * @return the time in milliseconds the timestamper collects concurrent time-stamping tasks (e.g. messages logged
+     * in timestamp-immediately mode) to time-stamp them in one batch. '0' (batching disabled) by default.
+     */
+    public static int getTimestampBatchWindow() {
+        return getInt(System.getProperty(TIMESTAMP_BATCH_WINDOW), DEFAULT_TIMESTAMP_BATCH_WINDOW);
+    }
+
+    /**
+     * @return the percentile of the first time-stamping provider's recent response times after which the time-stamp
+     * request is also sent to the second provider. '0' (hedged requests disabled) by default.
+     */
+    public static int getTimestampHedgePercentile() {
+        return getInt(System.getProperty(TIMESTAMP_HEDGE_PERCENTILE), DEFAULT_TIMESTAMP_HEDGE_PERCENTILE);
+    }
+
+    /**
+     * @return true if time-stamp requests are sent to the two healthiest time-stamping providers at once and the first
+     * valid response is used. 'false' by default.
+     */
+    public static boolean isTimestampConcurrentRequests() {
+        return "true".equalsIgnoreCase(System.getProperty(TIMESTAMP_CONCURRENT_REQUESTS, "false"));
+    }
+
     /**
      * @return true if the time-stamp is created synchronously for each request message. This is a security policy to
      * guarantee the time-stamp at the time of logging the message.
@@ -181,6 +235,31 @@ public final class MessageLogProperties {
                 DEFAULT_ACCEPTABLE_TIMESTAMP_FAILURE_PERIOD);
     }
 
+    /**
+     * @return the maximum number of message records that are saved to the database in one transaction. Concurrently
+     * logged messages are collected until this many records are pending or the group commit delay expires. '1' (group
+     * commit disabled) by default.
+     */
+    public static int getGroupCommitMaxRecords() {
+        return getInt(System.getProperty(GROUP_COMMIT_MAX_RECORDS), DEFAULT_GROUP_COMMIT_MAX_RECORDS);
+    }
+
+    /**
+     * @return the maximum time in milliseconds a logged message waits for other messages to be saved in the same
+     * transaction. '10' by default.
+     */
+    public static int getGroupCommitMaxDelay() {
+        return getInt(System.getProperty(GROUP_COMMIT_MAX_DELAY), DEFAULT_GROUP_COMMIT_MAX_DELAY);
+    }
+
+    /**
+     * @return the number of message log writers that save logged messages to the database in parallel. Messages are
+     * distributed between the writers by member. '1' by default.
+     */
+    public static int getWriterCount() {
+        return getInt(System.getProperty(WRITER_COUNT), DEFAULT_WRITER_COUNT);
+    }
+
     /**
      * @return the time interval as Cron expression for archiving time-stamped records.
      */
@@ -298,6 +377,14 @@ public final class MessageLogProperties {
         return Integer.getInteger(CLEAN_TRANSACTION_BATCH, DEFAULT_CLEAN_TRANSACTION_BATCH_SIZE);
     }
 
+    /**
+     * @return true if the LOGRECORD table has been converted to daily time partitions, in which case whole
+     * archived partitions are dropped when cleaning the database. Defaults to false.
+     */
+    public static boolean isPartitionedStorage() {
+        return "true".equalsIgnoreCase(System.getProperty(PARTITIONED_STORAGE, "false"));
+    }
+
     private static String getMessageBodyLoggingOverrideParameterName(boolean enable, boolean local) {
         String prefix = enable ? MESSAGE_BODY_LOGGING_ENABLE : MESSAGE_BODY_LOGGING_DISABLE;
         String postfix = local ? MESSAGE_BODY_LOGGING_LOCAL_PRODUCER : MESSAGE_BODY_LOGGING_REMOTE_PRODUCER;
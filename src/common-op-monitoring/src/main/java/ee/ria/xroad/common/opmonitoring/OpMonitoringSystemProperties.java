@@ -73,6 +73,19 @@ public final class OpMonitoringSystemProperties {
     private static final String OP_MONITOR_BUFFER_CONNECTION_TIMEOUT_SECONDS =
             PREFIX + "op-monitor-buffer.connection-timeout-seconds";
 
+    /**
+     * Property name of the maximum number of concurrent requests the operational monitoring buffer sends to the
+     * operational monitoring daemon.
+     */
+    private static final String OP_MONITOR_BUFFER_MAX_CONCURRENT_REQUESTS =
+            PREFIX + "op-monitor-buffer.max-concurrent-requests";
+
+    /**
+     * Property name of the flag for compressing the messages sent by the operational monitoring buffer.
+     */
+    private static final String OP_MONITOR_BUFFER_COMPRESS_MESSAGES =
+            PREFIX + "op-monitor-buffer.compress-messages";
+
     // Operational monitoring service ---------------------------------------//
 
     /**
@@ -192,6 +205,22 @@ public final class OpMonitoringSystemProperties {
         return Integer.parseInt(System.getProperty(OP_MONITOR_BUFFER_CONNECTION_TIMEOUT_SECONDS, "30"));
     }
 
+    /**
+     * @return the maximum number of concurrent requests sent by the operational monitoring buffer to the operational
+     * monitoring daemon, '1' by default.
+     */
+    public static int getOpMonitorBufferMaxConcurrentRequests() {
+        return Math.max(1, Integer.parseInt(System.getProperty(OP_MONITOR_BUFFER_MAX_CONCURRENT_REQUESTS, "1")));
+    }
+
+    /**
+     * @return whether the messages sent by the operational monitoring buffer are compressed using gzip,
+     * 'false' by default.
+     */
+    public static boolean isOpMonitorBufferCompressMessages() {
+        return Boolean.parseBoolean(System.getProperty(OP_MONITOR_BUFFER_COMPRESS_MESSAGES, "false"));
+    }
+
     /**
      * @return the operational monitoring service HTTP client SO_TIMEOUT in seconds, '60' by default.
      */
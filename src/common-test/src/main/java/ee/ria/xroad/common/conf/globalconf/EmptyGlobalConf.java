@@ -269,6 +269,12 @@ public class EmptyGlobalConf implements GlobalConfProvider {
         return null;
     }
 
+    @Override
+    public long getVersion() {
+        // Every test configuration instance is considered a distinct version
+        return System.identityHashCode(this);
+    }
+
     @Override
     public boolean isValid() {
         return true;
@@ -38,4 +38,5 @@ public class OcspResponderStatus implements Serializable {
     private String url;
     private LocalTime prevUpdate;
     private LocalTime nextUpdate;
+    private Long responseTimeMillis;
 }
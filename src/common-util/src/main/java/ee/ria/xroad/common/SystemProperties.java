@@ -47,6 +47,10 @@ public final class SystemProperties {
     public static final String TEMP_FILES_PATH =
             PREFIX + "common.temp-files-path";
 
+    /** Property name of the number of bytes a caching stream keeps in memory before using a temporary file. */
+    public static final String CACHING_STREAM_MEMORY_SIZE =
+            PREFIX + "common.caching-stream-memory-size";
+
     /** Property name of the downloaded global configuration directory. */
     public static final String CONFIGURATION_PATH =
             PREFIX + "common.configuration-path";
@@ -180,6 +184,12 @@ public final class SystemProperties {
 
     public static final String SERVER_CONF_ACL_CACHE_SIZE = PREFIX + "proxy.server-conf-acl-cache-size";
 
+    public static final String SERVER_CONF_CHANGE_CHECK_INTERVAL =
+            PREFIX + "proxy.server-conf-change-check-interval";
+
+    public static final String SOAP_MESSAGE_MEMORY_BUFFER_SIZE =
+            PREFIX + "proxy.soap-message-memory-buffer-size";
+
 
     /** Property name of the idle time that connections to the ServerProxy Connector are allowed, in milliseconds */
     private static final String SERVERPROXY_CONNECTOR_MAX_IDLE_TIME =
@@ -246,12 +256,22 @@ public final class SystemProperties {
     public static final String CLIENTPROXY_FASTEST_CONNECTING_SSL_URI_CACHE_PERIOD =
             PREFIX + "proxy.client-fastest-connecting-ssl-uri-cache-period";
 
+    public static final String CLIENTPROXY_TARGET_HEALTH_PROBE_INTERVAL =
+            PREFIX + "proxy.client-target-health-probe-interval";
+
     private static final String CLIENTPROXY_POOL_VALIDATE_CONNECTIONS_AFTER_INACTIVITY_OF_MS =
             PREFIX + "proxy.pool-validate-connections-after-inactivity-of-millis";
 
     private static final String CLIENTPROXY_POOL_REUSE_CONNECTIONS =
             PREFIX + "proxy.pool-enable-connection-reuse";
 
+    /**
+     * Property name of the switch for processing SOAP requests (parsing, signing and sending to the service
+     * provider's security server) on the thread that handles the client request
+     */
+    private static final String CLIENTPROXY_SINGLE_THREAD_SOAP_PROCESSING =
+            PREFIX + "proxy.client-single-thread-soap-processing";
+
     private static final String PROXY_HEALTH_CHECK_INTERFACE = PREFIX + "proxy.health-check-interface";
 
     private static final String PROXY_HEALTH_CHECK_PORT = PREFIX + "proxy.health-check-port";
@@ -300,6 +320,8 @@ public final class SystemProperties {
 
     private static final String DEFAULT_CLIENTPROXY_FASTEST_CONNECTING_SSL_URI_CACHE_PERIOD = "3600";
 
+    private static final String DEFAULT_CLIENTPROXY_TARGET_HEALTH_PROBE_INTERVAL = "30";
+
     private static final String DEFAULT_ENV_MONITOR_LIMIT_REMOTE_DATA_SET = "false";
 
     private static final String DEFAULT_CLIENTPROXY_POOL_VALIDATE_CONNECTIONS_AFTER_INACTIVITY_OF_MS = "2000";
@@ -310,6 +332,8 @@ public final class SystemProperties {
      **/
     private static final String DEFAULT_CLIENTPROXY_POOL_REUSE_CONNECTIONS = "false";
 
+    private static final String DEFAULT_CLIENTPROXY_SINGLE_THREAD_SOAP_PROCESSING = "false";
+
     private static final String DEFAULT_PROXY_HEALTH_CHECK_INTERFACE = "0.0.0.0";
 
     private static final String DEFAULT_PROXY_HEALTH_CHECK_PORT = "0";
@@ -323,6 +347,11 @@ public final class SystemProperties {
 
     private static final int OCSP_VERIFIER_CACHE_PERIOD_MAX = 180;
 
+    private static final String CERT_CHAIN_VERIFIER_CACHE_SIZE =
+            PREFIX + "proxy.cert-chain-verifier-cache-size";
+
+    private static final String DEFAULT_CERT_CHAIN_VERIFIER_CACHE_SIZE = "10000";
+
     public static final String ALLOW_GET_WSDL_REQUEST = PREFIX + "proxy.allow-get-wsdl-request";
 
 
@@ -370,11 +399,36 @@ public final class SystemProperties {
 
     private static final String DEFAULT_SIGNER_OCSP_RETRY_DELAY = "60";
 
+    public static final String SIGNER_OCSP_FETCH_THREADS =
+            PREFIX + "signer.ocsp-fetch-threads";
+
+    private static final String DEFAULT_SIGNER_OCSP_FETCH_THREADS = "4";
+
+    public static final String SIGNER_OCSP_CONNECT_TIMEOUT =
+            PREFIX + "signer.ocsp-connect-timeout";
+
+    private static final String DEFAULT_SIGNER_OCSP_CONNECT_TIMEOUT = "20000";
+
+    public static final String SIGNER_OCSP_READ_TIMEOUT =
+            PREFIX + "signer.ocsp-read-timeout";
+
+    private static final String DEFAULT_SIGNER_OCSP_READ_TIMEOUT = "60000";
+
     public static final String SIGNER_MODULE_MANAGER_UPDATE_INTERVAL =
             PREFIX + "signer.module-manager-update-interval";
 
     public static final String DEFAULT_SIGNER_MODULE_MANAGER_UPDATE_INTERVAL = "60";
 
+    public static final String SIGNER_SOFTWARE_TOKEN_SIGN_THREADS =
+            PREFIX + "signer.software-token-sign-threads";
+
+    private static final String DEFAULT_SIGNER_SOFTWARE_TOKEN_SIGN_THREADS = "1";
+
+    public static final String SIGNER_OCSP_MISSING_RESPONSE_CACHE_PERIOD =
+            PREFIX + "signer.ocsp-missing-response-cache-period";
+
+    private static final String DEFAULT_SIGNER_OCSP_MISSING_RESPONSE_CACHE_PERIOD = "10";
+
     // AntiDos ----------------------------------------------------------------
 
     /** Property name of the AntiDos on/off switch */
@@ -397,6 +451,14 @@ public final class SystemProperties {
     public static final String ANTIDOS_MAX_HEAP_USAGE =
             PREFIX + "anti-dos.max-heap-usage";
 
+    /** Property name of the number of connections a known partner may get processed during its turn */
+    public static final String ANTIDOS_KNOWN_PARTNER_WEIGHT =
+            PREFIX + "anti-dos.known-partner-weight";
+
+    /** Property name of the interval between system resource samples */
+    public static final String ANTIDOS_RESOURCE_SAMPLE_INTERVAL =
+            PREFIX + "anti-dos.resource-sample-interval";
+
     // Configuration client ---------------------------------------------------
 
     public static final String CONFIGURATION_CLIENT_PORT =
@@ -768,6 +830,15 @@ public final class SystemProperties {
         return System.getProperty(TEMP_FILES_PATH, DefaultFilepaths.TEMP_FILES_PATH);
     }
 
+    /**
+     * @return the number of bytes a caching stream keeps in memory before moving the content
+     * to a temporary file, 65536 by default.
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public static int getCachingStreamMemorySize() {
+        return Integer.getInteger(CACHING_STREAM_MEMORY_SIZE, 64 * 1024);
+    }
+
     /**
      * @return path to the directory where OCSP responses are stored, '/var/cache/xroad/' by default.
      */
@@ -885,6 +956,30 @@ public final class SystemProperties {
                 DEFAULT_SIGNER_OCSP_RETRY_DELAY));
     }
 
+    /**
+     * @return the maximum number of OCSP responders that signer queries in parallel, 4 by default
+     */
+    public static int getOcspFetchThreads() {
+        return Integer.parseInt(System.getProperty(SIGNER_OCSP_FETCH_THREADS,
+                DEFAULT_SIGNER_OCSP_FETCH_THREADS));
+    }
+
+    /**
+     * @return the OCSP responder connect timeout in milliseconds, 20000 by default
+     */
+    public static int getOcspConnectTimeout() {
+        return Integer.parseInt(System.getProperty(SIGNER_OCSP_CONNECT_TIMEOUT,
+                DEFAULT_SIGNER_OCSP_CONNECT_TIMEOUT));
+    }
+
+    /**
+     * @return the OCSP responder read timeout in milliseconds, 60000 by default
+     */
+    public static int getOcspReadTimeout() {
+        return Integer.parseInt(System.getProperty(SIGNER_OCSP_READ_TIMEOUT,
+                DEFAULT_SIGNER_OCSP_READ_TIMEOUT));
+    }
+
     /**
      * @return the module manager update interval in seconds that should be set for signer, 60 by default
      */
@@ -893,6 +988,24 @@ public final class SystemProperties {
                 DEFAULT_SIGNER_MODULE_MANAGER_UPDATE_INTERVAL));
     }
 
+    /**
+     * @return the number of threads that calculate signatures with software token keys in parallel,
+     * 1 by default (signatures are calculated by the token worker)
+     */
+    public static int getSoftwareTokenSignThreads() {
+        return Integer.parseInt(System.getProperty(SIGNER_SOFTWARE_TOKEN_SIGN_THREADS,
+                DEFAULT_SIGNER_SOFTWARE_TOKEN_SIGN_THREADS));
+    }
+
+    /**
+     * @return the time in seconds that signer remembers an OCSP response missing from the
+     * OCSP cache directory before looking for it on disk again, 10 by default
+     */
+    public static int getOcspMissingResponseCachePeriod() {
+        return Integer.parseInt(System.getProperty(SIGNER_OCSP_MISSING_RESPONSE_CACHE_PERIOD,
+                DEFAULT_SIGNER_OCSP_MISSING_RESPONSE_CACHE_PERIOD));
+    }
+
     /**
      * @return the HTTP port on which the configuration client is listening, '5665' by default.
      */
@@ -1215,6 +1328,24 @@ public final class SystemProperties {
         return Double.parseDouble(System.getProperty(ANTIDOS_MAX_HEAP_USAGE, "1.1"));
     }
 
+    /**
+     * @return the number of connections from a known member's security server
+     * that Anti-Dos lets through during the server's turn, '1' by default.
+     * Connections from unknown addresses get one connection per turn.
+     */
+    public static int getAntiDosKnownPartnerWeight() {
+        return Integer.parseInt(System.getProperty(ANTIDOS_KNOWN_PARTNER_WEIGHT, "1"));
+    }
+
+    /**
+     * @return the interval in milliseconds between the system resource samples
+     * that Anti-Dos uses to decide whether connections can be processed,
+     * '100' by default.
+     */
+    public static int getAntiDosResourceSampleInterval() {
+        return Integer.parseInt(System.getProperty(ANTIDOS_RESOURCE_SAMPLE_INTERVAL, "100"));
+    }
+
     /**
      * @return whether Anti-Dos should be used, 'true' by default.
      */
@@ -1297,6 +1428,15 @@ public final class SystemProperties {
         return period < OCSP_VERIFIER_CACHE_PERIOD_MAX ? period : OCSP_VERIFIER_CACHE_PERIOD_MAX;
     }
 
+    /**
+     * @return maximum number of successful certificate chain verification results that are cached, 0 disables
+     * the cache
+     */
+    public static int getCertChainVerifierCacheSize() {
+        return Integer.parseInt(System.getProperty(CERT_CHAIN_VERIFIER_CACHE_SIZE,
+                DEFAULT_CERT_CHAIN_VERIFIER_CACHE_SIZE));
+    }
+
     /**
      * @return serverproxy initial idle time (used until the request processing starts)
      */
@@ -1428,6 +1568,15 @@ public final class SystemProperties {
                 DEFAULT_CLIENTPROXY_FASTEST_CONNECTING_SSL_URI_CACHE_PERIOD));
     }
 
+    /**
+     * @return interval in seconds between background connect time probes of the provider addresses,
+     * or 0 to disable probing
+     */
+    public static int getClientProxyTargetHealthProbeInterval() {
+        return Integer.parseInt(System.getProperty(CLIENTPROXY_TARGET_HEALTH_PROBE_INTERVAL,
+                DEFAULT_CLIENTPROXY_TARGET_HEALTH_PROBE_INTERVAL));
+    }
+
     /**
      * @return the time in milliseconds, after which connections in a pool should be check for validity, ie.
      * after this time, check if pooled connections are still alive, don't just assume they are.
@@ -1438,6 +1587,16 @@ public final class SystemProperties {
                 DEFAULT_CLIENTPROXY_POOL_VALIDATE_CONNECTIONS_AFTER_INACTIVITY_OF_MS));
     }
 
+    /**
+     * @return true if SOAP requests should be parsed, signed and streamed to the service provider's security
+     * server on the thread that handles the client request instead of a separate SOAP handler thread,
+     * 'false' by default
+     */
+    public static boolean isClientProxySingleThreadSoapProcessing() {
+        return Boolean.parseBoolean(System.getProperty(CLIENTPROXY_SINGLE_THREAD_SOAP_PROCESSING,
+                DEFAULT_CLIENTPROXY_SINGLE_THREAD_SOAP_PROCESSING));
+    }
+
     /**
      * @return the {@link #NODE_TYPE} in a cluster for this Server.
      */
@@ -1516,6 +1675,24 @@ public final class SystemProperties {
         return Long.getLong(SERVER_CONF_ACL_CACHE_SIZE, 100_000);
     }
 
+    /**
+     * @return the interval in seconds at which the serverconf change counters are checked, '5' by default.
+     * If zero, changes are not checked and cached serverconf items expire after the server conf cache period.
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public static int getServerConfChangeCheckInterval() {
+        return Integer.getInteger(SERVER_CONF_CHANGE_CHECK_INTERVAL, 5);
+    }
+
+    /**
+     * @return the number of bytes of a SOAP message that are buffered in memory while parsing the message,
+     * '1048576' by default. Larger messages are buffered in a temporary file.
+     */
+    @SuppressWarnings("checkstyle:MagicNumber")
+    public static int getSoapMessageMemoryBufferSize() {
+        return Integer.getInteger(SOAP_MESSAGE_MEMORY_BUFFER_SIZE, 1024 * 1024);
+    }
+
 
     /**
      * @return whether GET request can be used for getWsdl metaservice, 'false' by default.
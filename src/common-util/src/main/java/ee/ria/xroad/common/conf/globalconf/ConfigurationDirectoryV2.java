@@ -45,6 +45,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
@@ -65,6 +66,9 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
     public static final String PRIVATE_PARAMETERS_XML = "private-params.xml";
     public static final String SHARED_PARAMETERS_XML = "shared-params.xml";
 
+    // Shared by all directories so that versions of different directories never collide.
+    private static final AtomicLong VERSION_SEQUENCE = new AtomicLong();
+
     @Getter
     @Setter
     private Path path;
@@ -72,6 +76,8 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
 
     private String instanceIdentifier;
 
+    private volatile long version = VERSION_SEQUENCE.incrementAndGet();
+
     private Map<String, PrivateParametersV2> privateParameters = new HashMap<>();
     private Map<String, SharedParametersV2> sharedParameters = new HashMap<>();
 
@@ -141,10 +147,25 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
             }
         }
 
+        if (!privateParams.keySet().equals(privateParameters.keySet())
+                || !sharedParams.keySet().equals(sharedParameters.keySet())) {
+            markChanged();
+        }
+
         privateParameters = privateParams;
         sharedParameters = sharedParams;
     }
 
+    /**
+     * Returns the version of the loaded configuration. The version changes every time a parameters file is
+     * (re)loaded or an instance is added or removed, so it can be used to detect configuration changes cheaply.
+     *
+     * @return the configuration version
+     */
+    public long getVersion() {
+        return version;
+    }
+
     /**
      * Returns private parameters for a given instance identifier.
      *
@@ -165,6 +186,7 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
 
         if (parameters != null && parameters.hasChanged()) {
             parameters.reload();
+            markChanged();
         } else if (parameters == null) {
             // Parameters not cached, attempt to load it from disk.
             Path instanceDir = Paths.get(path.toString(), safeInstanceId);
@@ -194,6 +216,7 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
 
         if (parameters != null && parameters.hasChanged()) {
             parameters.reload();
+            markChanged();
         } else if (parameters == null) {
             // Parameters not cached, attempt to load it from disk.
             Path instanceDir = Paths.get(path.toString(), safeInstanceId);
@@ -375,16 +398,21 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
 
     // Loads the parameters from file if the file has changed.
     // Returns the parameters or null if the file does not exist.
-    private static <T extends ConfProvider> T loadParameters(Path path, Class<T> clazz, T existingInstance)
+    private <T extends ConfProvider> T loadParameters(Path parametersPath, Class<T> clazz, T existingInstance)
             throws Exception {
         T params = existingInstance != null ? existingInstance : (T) clazz.newInstance();
 
         if (params.hasChanged()) {
-            log.trace("Loading {} from {}", clazz.getSimpleName(), path);
+            log.trace("Loading {} from {}", clazz.getSimpleName(), parametersPath);
 
-            params.load(path.toString());
+            params.load(parametersPath.toString());
+            markChanged();
         }
 
         return params;
     }
+
+    private void markChanged() {
+        version = VERSION_SEQUENCE.incrementAndGet();
+    }
 }
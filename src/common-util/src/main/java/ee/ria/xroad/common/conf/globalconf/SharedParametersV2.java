@@ -40,6 +40,7 @@ import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.SubsystemType;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.GlobalGroupId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
+import ee.ria.xroad.common.util.CryptoUtils;
 
 import lombok.AccessLevel;
 import lombok.Getter;
@@ -58,6 +59,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -79,8 +81,12 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
             new HashMap<>();
     private final Map<X509Certificate, List<OcspInfoType>> caCertsAndOcspData =
             new HashMap<>();
+    private final Map<X509Certificate, List<X509Certificate>>
+            caCertsAndOcspResponderCerts = new HashMap<>();
+    private final List<X509Certificate> approvedTspCerts = new ArrayList<>();
     private final Map<ClientId, Set<String>> memberAddresses = new HashMap<>();
-    private final Map<ClientId, Set<byte[]>> memberAuthCerts = new HashMap<>();
+    private final Map<String, Set<ClientId>> membersByAuthCert =
+            new HashMap<>();
     private final Map<String, SecurityServerType> serverByAuthCert =
             new HashMap<>();
     private final Map<SecurityServerId, Set<ClientId>> securityServerClients =
@@ -88,6 +94,10 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
     private final List<X509Certificate> verificationCaCerts = new ArrayList<>();
     private final Set<String> knownAddresses = new HashSet<>();
     private final Map<SecurityServerId, SecurityServerType> securityServersById = new HashMap<>();
+    private final Map<GlobalGroupId, GlobalGroupType> globalGroupsById =
+            new HashMap<>();
+    private final Map<GlobalGroupId, Set<ClientId>> globalGroupMembers =
+            new HashMap<>();
 
     SharedParametersV2() {
         super(ObjectFactory.class, SharedParametersSchemaValidatorV2.class);
@@ -142,25 +152,28 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
     }
 
     GlobalGroupType findGlobalGroup(GlobalGroupId groupId) {
-        if (!groupId.getXRoadInstance().equals(
-                confType.getInstanceIdentifier())) {
-            return null;
-        }
+        return globalGroupsById.get(groupId);
+    }
+
+    boolean isGlobalGroupMember(ClientId subjectId, GlobalGroupId groupId) {
+        Set<ClientId> members = globalGroupMembers.get(groupId);
+        return members != null && members.contains(subjectId);
+    }
 
-        return confType.getGlobalGroup().stream()
-                .filter(g -> g.getGroupCode().equals(groupId.getGroupCode()))
-                .findFirst().orElse(null);
+    boolean authCertMatchesMember(String certHash, ClientId memberId) {
+        Set<ClientId> members = membersByAuthCert.get(certHash);
+        return members != null && members.contains(memberId);
     }
 
     X509Certificate getCaCertForSubject(X509Certificate subject)
             throws Exception {
-        X509CertificateHolder certHolder =
-                new X509CertificateHolder(subject.getEncoded());
-        if (certHolder.getSubject().equals(certHolder.getIssuer())) {
+        X500Name issuer = getIssuer(subject);
+        if (X500Name.getInstance(subject.getSubjectX500Principal()
+                .getEncoded()).equals(issuer)) {
             return null;
         }
 
-        return subjectsAndCaCerts.get(certHolder.getIssuer());
+        return subjectsAndCaCerts.get(issuer);
     }
 
     @Override
@@ -174,13 +187,20 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
         try {
             clearCache();
             cacheCaCerts();
+            cacheTspCerts();
             cacheKnownAddresses();
             cacheSecurityServers();
+            cacheGlobalGroups();
         } catch (Exception e) {
             throw translateException(e);
         }
     }
 
+    static X500Name getIssuer(X509Certificate cert) {
+        return X500Name.getInstance(
+                cert.getIssuerX500Principal().getEncoded());
+    }
+
     static MemberType getOwner(SecurityServerType serverType) {
         if (!(serverType.getOwner() instanceof MemberType)) {
             throw new RuntimeException("Server owner must be member");
@@ -195,13 +215,17 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
         subjectsAndCaCerts.clear();
         caCertsAndCertProfiles.clear();
         caCertsAndOcspData.clear();
+        caCertsAndOcspResponderCerts.clear();
+        approvedTspCerts.clear();
         memberAddresses.clear();
-        memberAuthCerts.clear();
+        membersByAuthCert.clear();
         serverByAuthCert.clear();
         securityServerClients.clear();
         verificationCaCerts.clear();
         knownAddresses.clear();
         securityServersById.clear();
+        globalGroupsById.clear();
+        globalGroupMembers.clear();
     }
 
     private void cacheCaCerts() throws CertificateException, IOException {
@@ -238,6 +262,13 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
         }
     }
 
+    private void cacheTspCerts() {
+        confType.getApprovedTSA().stream().map(ApprovedTSAType::getCert)
+            .filter(Objects::nonNull)
+            .map(CryptoUtils::readCertificate)
+            .forEach(approvedTspCerts::add);
+    }
+
     private void cacheKnownAddresses() {
         confType.getSecurityServer().stream().map(s -> s.getAddress())
             .filter(StringUtils::isNotBlank)
@@ -288,9 +319,9 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
             addToMap(memberAddresses, client, server.getAddress());
         }
 
-        // Add the mapping from client to authentication certificate.
+        // Add the mapping from authentication certificate to client.
         for (byte[] authCert : server.getAuthCertHash()) {
-            addToMap(memberAuthCerts, client, authCert);
+            addToMap(membersByAuthCert, encodeBase64(authCert), client);
         }
 
         MemberType owner = getOwner(server);
@@ -302,6 +333,16 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
         addToMap(securityServerClients, securityServerId, client);
     }
 
+    private void cacheGlobalGroups() {
+        for (GlobalGroupType globalGroup : confType.getGlobalGroup()) {
+            GlobalGroupId groupId = createGlobalGroupId(globalGroup);
+
+            globalGroupsById.putIfAbsent(groupId, globalGroup);
+            globalGroupMembers.putIfAbsent(groupId,
+                    new HashSet<>(globalGroup.getGroupMember()));
+        }
+    }
+
     private Map<String, ClientId> getClientIds() {
         Map<String, ClientId> ret = new HashMap<>();
 
@@ -323,6 +364,11 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
             X509Certificate cert = readCertificate(caType.getCert());
             List<OcspInfoType> caOcspTypes = caType.getOcsp();
             caCertsAndOcspData.put(cert, caOcspTypes);
+            caCertsAndOcspResponderCerts.put(cert, caOcspTypes.stream()
+                    .map(OcspInfoType::getCert)
+                    .filter(Objects::nonNull)
+                    .map(CryptoUtils::readCertificate)
+                    .collect(Collectors.toList()));
         }
     }
 
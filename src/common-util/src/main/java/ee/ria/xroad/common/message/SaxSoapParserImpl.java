@@ -25,11 +25,14 @@
 package ee.ria.xroad.common.message;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.identifier.CentralServiceId;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.identifier.XRoadObjectType;
+import ee.ria.xroad.common.util.CacheInputStream;
+import ee.ria.xroad.common.util.CachingStream;
 import ee.ria.xroad.common.util.MimeUtils;
 import ee.ria.xroad.common.util.XmlUtils;
 
@@ -40,8 +43,10 @@ import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.input.BOMInputStream;
 import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.bouncycastle.operator.DigestCalculator;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
@@ -54,8 +59,10 @@ import javax.xml.parsers.SAXParserFactory;
 import javax.xml.soap.SOAPException;
 
 import java.io.BufferedWriter;
-import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.Arrays;
@@ -75,6 +82,7 @@ import static ee.ria.xroad.common.ErrorCodes.X_MISSING_HEADER;
 import static ee.ria.xroad.common.ErrorCodes.X_MISSING_HEADER_FIELD;
 import static ee.ria.xroad.common.ErrorCodes.translateException;
 import static ee.ria.xroad.common.message.SoapUtils.validateMimeType;
+import static ee.ria.xroad.common.util.CryptoUtils.createDigestCalculator;
 import static ee.ria.xroad.common.util.MimeUtils.UTF8;
 import static ee.ria.xroad.common.util.MimeUtils.hasUtf8Charset;
 
@@ -120,6 +128,8 @@ public class SaxSoapParserImpl implements SoapParser {
     private static final String SERVICE_VERSION = "serviceVersion";
     private static final String SERVER_CODE = "serverCode";
 
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
     protected static final String ATTR_OBJECT_TYPE = "objectType";
     protected static final String ATTR_ALGORITHM_ID = "algorithmId";
     protected static final String ATTR_ENCODING_STYLE = "encodingStyle";
@@ -193,27 +203,34 @@ public class SaxSoapParserImpl implements SoapParser {
     private Soap parseMessage(InputStream is, String mimeType, String contentType, String charset) throws Exception {
         log.trace("parseMessage({}, {})", mimeType, charset);
 
-        ByteArrayOutputStream rawXml = new ByteArrayOutputStream();
-        ByteArrayOutputStream processedXml = new ByteArrayOutputStream();
-
-        InputStream proxyStream = excludeUtf8Bom(contentType, new TeeInputStream(is, rawXml));
-        Writer outputWriter = new OutputStreamWriter(processedXml, charset);
-        XRoadSoapHandler handler = handleSoap(outputWriter, proxyStream);
+        int memoryBufferSize = SystemProperties.getSoapMessageMemoryBufferSize();
+        RawXmlStream rawXml = new RawXmlStream(new CachingStream(memoryBufferSize));
+        CachingStream processedXml = new CachingStream(memoryBufferSize);
 
-        CodedException fault = handler.getFault();
-        if (fault != null) {
-            return createSoapFault(charset, rawXml, fault);
-        }
+        try {
+            InputStream proxyStream = excludeUtf8Bom(contentType, new TeeInputStream(is, rawXml));
+            Writer outputWriter = new OutputStreamWriter(processedXml, charset);
+            XRoadSoapHandler handler = handleSoap(outputWriter, proxyStream, rawXml);
+
+            CodedException fault = handler.getFault();
+            if (fault != null) {
+                return createSoapFault(charset, toByteArray(rawXml.cache, NullOutputStream.NULL_OUTPUT_STREAM),
+                        fault);
+            }
 
-        byte[] xmlBytes = isProcessedXmlRequired() ? processedXml.toByteArray() : rawXml.toByteArray();
+            CachingStream xml = isProcessedXmlRequired() ? processedXml : rawXml.cache;
 
-        return createSoapMessage(contentType, charset, handler, xmlBytes);
+            return createSoapMessage(contentType, charset, handler, xml);
+        } finally {
+            rawXml.discard();
+            processedXml.consume();
+        }
     }
 
-    private XRoadSoapHandler handleSoap(Writer writer, InputStream inputStream)
+    private XRoadSoapHandler handleSoap(Writer writer, InputStream inputStream, RawXmlStream rawXml)
             throws Exception {
         try (BufferedWriter out = new BufferedWriter(writer)) {
-            XRoadSoapHandler handler = new XRoadSoapHandler(out);
+            XRoadSoapHandler handler = new XRoadSoapHandler(out, rawXml);
             SAXParser saxParser = PARSER_FACTORY.newSAXParser();
             XMLReader xmlReader = saxParser.getXMLReader();
             xmlReader.setProperty(LEXICAL_HANDLER_PROPERTY, handler);
@@ -229,16 +246,26 @@ public class SaxSoapParserImpl implements SoapParser {
     }
 
     private static Soap createSoapMessage(String contentType, String charset,
-            XRoadSoapHandler handler, byte[] xmlBytes) throws Exception {
-        return new SoapMessageImpl(xmlBytes, charset, handler.getHeader(),
+            XRoadSoapHandler handler, CachingStream xml) throws Exception {
+        if (!xml.isInMemory()) {
+            // Calculate the hash while reading the message from the temporary file,
+            // instead of making another pass over the message later
+            DigestCalculator dc = createDigestCalculator(SoapUtils.getHashAlgoId());
+            byte[] xmlBytes = toByteArray(xml, dc.getOutputStream());
+
+            return new SoapMessageImpl(xmlBytes, charset, handler.getHeader(),
+                    null, handler.getServiceName(), handler.isRpc(), contentType, dc.getDigest());
+        }
+
+        return new SoapMessageImpl(toByteArray(xml, NullOutputStream.NULL_OUTPUT_STREAM), charset, handler.getHeader(),
                 null, handler.getServiceName(), handler.isRpc(), contentType);
     }
 
     private static Soap createSoapFault(String charset,
-            ByteArrayOutputStream rawXml, CodedException fault) {
+            byte[] rawXml, CodedException fault) {
         return new SoapFault(fault.getFaultCode(), fault.getFaultString(),
                 fault.getFaultActor(), fault.getFaultDetail(),
-                rawXml.toByteArray(), charset);
+                rawXml, charset);
     }
 
     @SneakyThrows
@@ -298,6 +325,63 @@ public class SaxSoapParserImpl implements SoapParser {
         return new SoapHeaderHandler(header);
     }
 
+    /**
+     * Reads the cached message into a byte array, writing it to the given stream at the same time.
+     */
+    private static byte[] toByteArray(CachingStream cache, OutputStream copy) throws IOException {
+        cache.flush();
+
+        CacheInputStream in = cache.getCachedContents();
+        if (in.size() > Integer.MAX_VALUE) {
+            throw new IOException("SOAP message is too large: " + in.size() + " bytes");
+        }
+
+        byte[] bytes = new byte[(int) in.size()];
+        int offset = 0;
+        while (offset < bytes.length) {
+            int count = in.read(bytes, offset, Math.min(READ_BUFFER_SIZE, bytes.length - offset));
+            if (count < 0) {
+                throw new EOFException("Unexpected end of cached SOAP message");
+            }
+
+            copy.write(bytes, offset, count);
+            offset += count;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Keeps the raw XML of the message until it is known that the processed XML is used instead, so that
+     * the temporary file of the raw copy is released before the message content is read back.
+     */
+    @RequiredArgsConstructor
+    private static final class RawXmlStream extends OutputStream {
+        private final CachingStream cache;
+        private boolean discarded;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!discarded) {
+                cache.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!discarded) {
+                cache.write(b, off, len);
+            }
+        }
+
+        void discard() {
+            if (!discarded) {
+                discarded = true;
+                cache.consume();
+            }
+        }
+    }
+
     @RequiredArgsConstructor
     private class XRoadSoapHandler extends DefaultHandler2 {
         private static final String NAMESPACE_PREFIX_SEPARATOR = ":";
@@ -306,6 +390,8 @@ public class SaxSoapParserImpl implements SoapParser {
 
         private final BufferedWriter out;
 
+        private final RawXmlStream rawXml;
+
         private char[] xmlEntity;
 
         private Stack<XmlElementHandler> elementHandlers = new Stack<>();
@@ -435,6 +521,12 @@ public class SaxSoapParserImpl implements SoapParser {
             elementHandler.valueInternal();
             elementHandler.closeTag();
 
+            // Once the body has closed without a fault, the raw XML is only needed
+            // when the processed XML is not
+            if (elementHandler instanceof SoapBodyHandler && getFault() == null && isProcessedXmlRequired()) {
+                rawXml.discard();
+            }
+
             if (isProcessedXmlRequired()) {
                 QName element = new QName(uri, localName);
                 String prefix = findNamespacePrefix(qName);
@@ -31,8 +31,10 @@ import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.parser.AbstractContentHandler;
 import org.apache.james.mime4j.parser.MimeStreamParser;
 import org.apache.james.mime4j.stream.BodyDescriptor;
+import org.apache.james.mime4j.stream.EntityState;
 import org.apache.james.mime4j.stream.Field;
 import org.apache.james.mime4j.stream.MimeConfig;
+import org.apache.james.mime4j.stream.MimeTokenStream;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -62,6 +64,10 @@ public class SoapMessageDecoder {
     private final String baseContentType;
     private final SoapParser parser;
 
+    /** Holds the multipart parsing state between {@link #parseSoap} and {@link #parseAttachments}. */
+    private MimeTokenStream mimeTokenStream;
+    private MultipartHandler multipartHandler;
+
     /**
      * Callback interface for handling the outcome of the decoding process.
      */
@@ -153,6 +159,59 @@ public class SoapMessageDecoder {
         callback.onCompleted();
     }
 
+    /**
+     * Decodes the SOAP part of the message from the given input stream and
+     * returns without reading any attachments. The decoding must be
+     * completed on the same thread by calling {@link #parseAttachments()},
+     * which makes it possible to act on the SOAP message (e.g. open the
+     * connection to its receiver) before the attachments are streamed.
+     *
+     * @param soapStream input stream with the SOAP message data
+     * @throws Exception if any errors occur
+     */
+    public void parseSoap(InputStream soapStream) throws Exception {
+        if (baseContentType == null) {
+            throw new CodedException(X_INVALID_REQUEST,
+                    "Could not get content type from request");
+        }
+
+        try {
+            switch (baseContentType.toLowerCase()) {
+                case TEXT_XML:
+                case XOP_XML:
+                    readSoapMessage(soapStream);
+                    break;
+                case MULTIPART_RELATED:
+                    startMultipart(soapStream);
+                    readMultipartParts(true);
+                    break;
+                default:
+                    throw new CodedException(X_INVALID_CONTENT_TYPE,
+                            "Invalid content type: %s", baseContentType);
+            }
+        } catch (Exception e) {
+            callback.onError(e);
+        }
+    }
+
+    /**
+     * Decodes the attachments remaining in the input stream given to
+     * {@link #parseSoap(InputStream)} and completes the decoding.
+     *
+     * @throws Exception if any errors occur
+     */
+    public void parseAttachments() throws Exception {
+        try {
+            if (mimeTokenStream != null) {
+                readMultipartParts(false);
+            }
+        } catch (Exception e) {
+            callback.onError(e);
+        }
+
+        callback.onCompleted();
+    }
+
     private void readSoapMessage(InputStream is) throws Exception {
         log.trace("readSoapMessage");
 
@@ -190,6 +249,49 @@ public class SoapMessageDecoder {
         }
     }
 
+    private void startMultipart(InputStream is) {
+        log.trace("startMultipart");
+
+        MimeConfig config = new MimeConfig.Builder().setHeadlessParsing(contentType).build();
+
+        mimeTokenStream = new MimeTokenStream(config);
+        mimeTokenStream.parseHeadless(is, contentType);
+
+        multipartHandler = new MultipartHandler();
+    }
+
+    private void readMultipartParts(boolean stopAfterSoap) throws Exception {
+        log.trace("readMultipartParts({})", stopAfterSoap);
+
+        try {
+            for (EntityState state = mimeTokenStream.next(); state != EntityState.T_END_OF_STREAM;
+                    state = mimeTokenStream.next()) {
+                switch (state) {
+                    case T_START_HEADER:
+                        multipartHandler.startHeader();
+                        break;
+                    case T_FIELD:
+                        multipartHandler.field(mimeTokenStream.getField());
+                        break;
+                    case T_BODY:
+                        multipartHandler.body(mimeTokenStream.getBodyDescriptor(),
+                                mimeTokenStream.getInputStream());
+
+                        if (stopAfterSoap) {
+                            // The first part is the SOAP message, the rest are attachments.
+                            return;
+                        }
+
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (MimeException ex) {
+            throw new CodedException(X_MIME_PARSING_FAILED, ex);
+        }
+    }
+
     private class MultipartHandler extends AbstractContentHandler {
         private Map<String, String> headers;
         private String partContentType;
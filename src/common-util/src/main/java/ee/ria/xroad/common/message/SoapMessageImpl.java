@@ -50,6 +50,13 @@ public class SoapMessageImpl extends AbstractSoapMessage<SoapHeader> {
                 isRpcEncoded, originalContentType);
     }
 
+    SoapMessageImpl(byte[] rawXml, String charset, SoapHeader header,
+            SOAPMessage soap, String serviceName, boolean isRpcEncoded,
+            String originalContentType, byte[] hash) throws Exception {
+        this(rawXml, charset, header, soap, serviceName, isRpcEncoded, originalContentType);
+        this.hash = hash;
+    }
+
     /**
      * Lazy method to retrieve the hash of the message, will calculate it
      * on the first invocation of the method.
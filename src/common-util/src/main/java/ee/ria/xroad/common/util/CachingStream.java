@@ -26,42 +26,72 @@ package ee.ria.xroad.common.util;
 
 import ee.ria.xroad.common.DefaultFilepaths;
 import ee.ria.xroad.common.ErrorCodes;
+import ee.ria.xroad.common.SystemProperties;
 
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.channels.Channels;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Caches stuff in a temporary file.
+ * Caches stuff in memory, and in a temporary file once the cached content grows larger than the memory
+ * cache size. The memory cache consists of fixed size segments that are reused by other caching streams
+ * after the stream has been consumed.
  */
 @Slf4j
-public class CachingStream extends FilterOutputStream {
+public class CachingStream extends OutputStream {
+    private static final int SEGMENT_SIZE = 8 * 1024;
+    private static final int MAX_POOLED_SEGMENTS = 1024;
+
+    private static final BlockingQueue<byte[]> SEGMENT_POOL = new ArrayBlockingQueue<>(MAX_POOLED_SEGMENTS);
+
+    private static final LongAdder STREAM_COUNT = new LongAdder();
+    private static final LongAdder SPILLED_STREAM_COUNT = new LongAdder();
+    private static final LongAdder BUFFERED_BYTES = new LongAdder();
+    private static final LongAdder SPILLED_BYTES = new LongAdder();
+
+    private final int memoryCacheSize;
+    // Guarded by itself when segments are read or handed back to the pool, so that a reader never copies
+    // from a segment that has been reissued to another stream.
+    private final List<byte[]> segments = new ArrayList<>();
+    private long size;
+    private volatile boolean consumed;
+
     private SeekableByteChannel channel;
+    private OutputStream fileOut;
     private Path tempFile;
 
     /**
-     * Constructs a new caching stream that caches data in a temporary file.
+     * Constructs a new caching stream that caches data in memory up to the configured caching stream
+     * memory size and in a temporary file beyond that.
      *
      * @throws IOException if I/O errors occurred
      */
     public CachingStream() throws IOException {
-        // Construct the parent class with null stream and replace it later.
-        super(null);
+        this(SystemProperties.getCachingStreamMemorySize());
+    }
 
-        tempFile = DefaultFilepaths.createTempFile("tmpattach", null);
-        channel = Files.newByteChannel(tempFile, StandardOpenOption.CREATE,
-                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
-                StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+    /**
+     * Constructs a new caching stream that caches data in memory up to the given size and in a temporary
+     * file beyond that.
+     *
+     * @param memoryCacheSize the maximum number of bytes cached in memory
+     */
+    public CachingStream(int memoryCacheSize) {
+        this.memoryCacheSize = memoryCacheSize;
 
-        // Now that we are set up, we can set the output stream in the
-        // parent class.
-        out = Channels.newOutputStream(channel);
+        STREAM_COUNT.increment();
     }
 
     @Override
@@ -70,10 +100,62 @@ public class CachingStream extends FilterOutputStream {
         flush();
     }
 
+    @Override
+    public void flush() throws IOException {
+        if (fileOut != null) {
+            fileOut.flush();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-        // prevent FilterOutputStream from writing inefficiently
-        out.write(b, off, len);
+        if (consumed) {
+            throw new IOException("Caching stream has been consumed");
+        }
+
+        if (fileOut == null && size + len > memoryCacheSize) {
+            spill();
+        }
+
+        if (fileOut != null) {
+            fileOut.write(b, off, len);
+            size += len;
+
+            SPILLED_BYTES.add(len);
+
+            return;
+        }
+
+        int offset = off;
+        int remaining = len;
+        while (remaining > 0) {
+            int segmentIndex = (int) (size / SEGMENT_SIZE);
+            int segmentOffset = (int) (size % SEGMENT_SIZE);
+            if (segmentIndex == segments.size()) {
+                segments.add(acquireSegment());
+            }
+
+            int count = Math.min(remaining, SEGMENT_SIZE - segmentOffset);
+            System.arraycopy(b, offset, segments.get(segmentIndex), segmentOffset, count);
+
+            offset += count;
+            remaining -= count;
+            size += count;
+        }
+
+        BUFFERED_BYTES.add(len);
+    }
+
+    /**
+     * @return true, if the cached content is held in memory only
+     */
+    public boolean isInMemory() {
+        return fileOut == null;
     }
 
     /**
@@ -83,21 +165,155 @@ public class CachingStream extends FilterOutputStream {
      */
     public CacheInputStream getCachedContents() {
         try {
-            return new CacheInputStream(channel);
+            if (channel != null) {
+                return new CacheInputStream(channel);
+            }
+
+            return new CacheInputStream(new MemoryInputStream(size), size);
         } catch (IOException ex) { // the position shouldn't really throw
             throw ErrorCodes.translateException(ex);
         }
     }
 
     /**
-     * Finalize caching stream. Use to avoid file handle leaks.
+     * Finalize caching stream. Use to avoid file handle leaks and to return the memory cache for reuse.
      */
     public void consume() {
-        try {
-            channel.close();
-        } catch (IOException e) {
-            log.warn("Error closing channel of the temporary file '{}'", tempFile.toString(), e);
+        synchronized (segments) {
+            consumed = true;
+
+            segments.forEach(SEGMENT_POOL::offer);
+            segments.clear();
+        }
+
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error closing channel of the temporary file '{}'", tempFile.toString(), e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of caching streams created
+     */
+    public static long getStreamCount() {
+        return STREAM_COUNT.sum();
+    }
+
+    /**
+     * @return the number of caching streams that outgrew the memory cache and were moved to a temporary file
+     */
+    public static long getSpilledStreamCount() {
+        return SPILLED_STREAM_COUNT.sum();
+    }
+
+    /**
+     * @return the number of bytes cached in memory
+     */
+    public static long getBufferedBytes() {
+        return BUFFERED_BYTES.sum();
+    }
+
+    /**
+     * @return the number of bytes cached in temporary files
+     */
+    public static long getSpilledBytes() {
+        return SPILLED_BYTES.sum();
+    }
+
+    /**
+     * Logs caching statistics.
+     */
+    public static void logStatistics() {
+        if (log.isTraceEnabled()) {
+            log.trace("CachingStream: streams: {}, spilled to file: {}, bytes in memory: {}, bytes in file: {}, "
+                    + "pooled segments: {}", getStreamCount(), getSpilledStreamCount(), getBufferedBytes(),
+                    getSpilledBytes(), SEGMENT_POOL.size());
+        }
+    }
+
+    private void spill() throws IOException {
+        tempFile = DefaultFilepaths.createTempFile("tmpattach", null);
+        channel = Files.newByteChannel(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+        fileOut = Channels.newOutputStream(channel);
+
+        synchronized (segments) {
+            long remaining = size;
+            for (byte[] segment : segments) {
+                int count = (int) Math.min(remaining, SEGMENT_SIZE);
+                fileOut.write(segment, 0, count);
+                remaining -= count;
+
+                SEGMENT_POOL.offer(segment);
+            }
+
+            segments.clear();
         }
+
+        SPILLED_STREAM_COUNT.increment();
+        SPILLED_BYTES.add(size);
     }
 
+    private static byte[] acquireSegment() {
+        byte[] segment = SEGMENT_POOL.poll();
+        return segment != null ? segment : new byte[SEGMENT_SIZE];
+    }
+
+    /**
+     * Reads the memory cache directly from the segments.
+     */
+    private final class MemoryInputStream extends InputStream {
+        private final long length;
+        private long position;
+
+        MemoryInputStream(long length) {
+            this.length = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : Byte.toUnsignedInt(b[0]);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            if (position >= length) {
+                return -1;
+            }
+
+            int segmentIndex = (int) (position / SEGMENT_SIZE);
+            int segmentOffset = (int) (position % SEGMENT_SIZE);
+            int count = (int) Math.min(Math.min(len, SEGMENT_SIZE - segmentOffset), length - position);
+
+            synchronized (segments) {
+                if (consumed) {
+                    throw new IOException("Caching stream has been consumed");
+                }
+
+                if (segmentIndex >= segments.size()) {
+                    throw new IOException("Caching stream has been moved to a temporary file");
+                }
+
+                System.arraycopy(segments.get(segmentIndex), segmentOffset, b, off, count);
+            }
+
+            position += count;
+
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, length - position);
+        }
+    }
 }
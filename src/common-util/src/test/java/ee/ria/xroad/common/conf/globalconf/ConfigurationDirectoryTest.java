@@ -33,6 +33,7 @@ import java.nio.file.Paths;
 
 import static ee.ria.xroad.common.ErrorCodes.X_OUTDATED_GLOBALCONF;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
@@ -72,6 +73,27 @@ public class ConfigurationDirectoryTest {
         assertNull(dir.getShared("xxx"));
     }
 
+    /**
+     * Test to ensure the configuration version changes only when the configuration changes.
+     *
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void versionChangesWhenConfigurationChanges() throws Exception {
+        ConfigurationDirectoryV2 dir = new ConfigurationDirectoryV2("src/test/resources/globalconf_good_v2");
+
+        long version = dir.getVersion();
+
+        dir.reload();
+
+        assertEquals(version, dir.getVersion());
+
+        dir.setPath(Paths.get("src/test/resources/globalconf_empty"));
+        dir.reload();
+
+        assertNotEquals(version, dir.getVersion());
+    }
+
     /**
      * Test to ensure an empty configuration directory is read properly.
      *
@@ -0,0 +1,139 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.message;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static ee.ria.xroad.common.message.SoapMessageTestUtil.QUERY_DIR;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the two-phase decoding of SOAP messages in SoapMessageDecoder.
+ */
+public class SoapMessageDecoderTest {
+
+    private static final String MULTIPART_CONTENT_TYPE =
+            "multipart/related; charset=UTF-8; boundary=jetty771207119h3h10dty";
+
+    private static final String TEXT_XML_CONTENT_TYPE = "text/xml; charset=UTF-8";
+
+    /**
+     * Test that parsing the SOAP part of a multipart message does not read
+     * the attachments and that the attachments read afterwards are the same
+     * as when decoding the message in one pass.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void parseSoapBeforeAttachments() throws Exception {
+        RecordingCallback expected = new RecordingCallback();
+
+        try (InputStream is = new FileInputStream(QUERY_DIR + "attachm.query")) {
+            new SoapMessageDecoder(MULTIPART_CONTENT_TYPE, expected).parse(is);
+        }
+
+        RecordingCallback callback = new RecordingCallback();
+        SoapMessageDecoder decoder = new SoapMessageDecoder(MULTIPART_CONTENT_TYPE, callback);
+
+        try (InputStream is = new FileInputStream(QUERY_DIR + "attachm.query")) {
+            decoder.parseSoap(is);
+
+            assertNotNull(callback.soap);
+            assertTrue(callback.attachments.isEmpty());
+            assertFalse(callback.completed);
+
+            decoder.parseAttachments();
+
+            assertFalse(callback.attachments.isEmpty());
+            assertEquals(expected.attachments, callback.attachments);
+            assertTrue(callback.completed);
+        }
+    }
+
+    /**
+     * Test that a SOAP message without attachments is completed when
+     * attachments are parsed.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void parseSoapWithoutAttachments() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        SoapMessageDecoder decoder = new SoapMessageDecoder(TEXT_XML_CONTENT_TYPE, callback);
+
+        try (InputStream is = new FileInputStream(QUERY_DIR + "simple.query")) {
+            decoder.parseSoap(is);
+
+            assertNotNull(callback.soap);
+            assertFalse(callback.completed);
+
+            decoder.parseAttachments();
+
+            assertTrue(callback.attachments.isEmpty());
+            assertTrue(callback.completed);
+        }
+    }
+
+    private static class RecordingCallback implements SoapMessageDecoder.Callback {
+
+        private SoapMessage soap;
+        private final List<String> attachments = new ArrayList<>();
+        private boolean completed;
+
+        @Override
+        public void soap(SoapMessage message, Map<String, String> additionalHeaders) {
+            soap = message;
+        }
+
+        @Override
+        public void attachment(String contentType, InputStream content, Map<String, String> additionalHeaders)
+                throws Exception {
+            attachments.add(IOUtils.toString(content, "UTF-8"));
+        }
+
+        @Override
+        public void fault(SoapFault fault) throws Exception {
+            throw fault.toCodedException();
+        }
+
+        @Override
+        public void onCompleted() {
+            completed = true;
+        }
+
+        @Override
+        public void onError(Exception t) throws Exception {
+            throw t;
+        }
+    }
+}
@@ -24,6 +24,7 @@
  */
 package ee.ria.xroad.common.message;
 
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.identifier.CentralServiceId;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.ServiceId;
@@ -31,6 +32,7 @@ import ee.ria.xroad.common.util.ExpectedCodedException;
 import ee.ria.xroad.common.util.MimeTypes;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.bouncycastle.util.Arrays;
 import org.junit.Rule;
 import org.junit.Test;
@@ -41,6 +43,7 @@ import javax.xml.soap.SOAPException;
 
 import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import static ee.ria.xroad.common.ErrorCodes.X_DUPLICATE_HEADER_FIELD;
@@ -59,6 +62,7 @@ import static ee.ria.xroad.common.message.SoapMessageTestUtil.createSoapMessage;
 import static ee.ria.xroad.common.message.SoapMessageTestUtil.fileToBytes;
 import static ee.ria.xroad.common.message.SoapMessageTestUtil.messageToBytes;
 import static ee.ria.xroad.common.message.SoapUtils.getChildElements;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
@@ -89,6 +93,66 @@ public class SoapMessageTest {
         assertEquals("1234567890", message.getQueryId());
     }
 
+    /**
+     * Test that a message that does not fit into the memory buffer is parsed into the same content
+     * and hash as a message that is buffered in memory.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void requestBufferedInTemporaryFile() throws Exception {
+        SoapMessageImpl inMemory = createRequest("simple.query");
+
+        System.setProperty(SystemProperties.TEMP_FILES_PATH, "build/");
+        System.setProperty(SystemProperties.SOAP_MESSAGE_MEMORY_BUFFER_SIZE, "16");
+        try {
+            SoapMessageImpl buffered = createRequest("simple.query");
+
+            assertArrayEquals(inMemory.getBytes(), buffered.getBytes());
+            assertArrayEquals(inMemory.getHash(), buffered.getHash());
+            assertEquals(inMemory.getService(), buffered.getService());
+        } finally {
+            System.clearProperty(SystemProperties.SOAP_MESSAGE_MEMORY_BUFFER_SIZE);
+            System.clearProperty(SystemProperties.TEMP_FILES_PATH);
+        }
+    }
+
+    /**
+     * Test that a large message with a fault after the service element is parsed into a SOAP fault with the raw
+     * XML, when the parser uses the processed XML and the raw XML is buffered in a temporary file.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void faultAfterServiceElementKeepsRawXml() throws Exception {
+        String xml = new String(fileToBytes("simple.query"), StandardCharsets.UTF_8)
+                .replace("<name>foo</name>", "<name>" + StringUtils.repeat('x', 256 * 1024) + "</name>")
+                .replace("</SOAP-ENV:Body>", "<SOAP-ENV:Fault><faultcode>foo.bar</faultcode>"
+                        + "<faultstring>baz</faultstring></SOAP-ENV:Fault></SOAP-ENV:Body>");
+
+        SaxSoapParserImpl parser = new SaxSoapParserImpl() {
+            @Override
+            protected boolean isProcessedXmlRequired() {
+                return true;
+            }
+        };
+
+        System.setProperty(SystemProperties.TEMP_FILES_PATH, "build/");
+        System.setProperty(SystemProperties.SOAP_MESSAGE_MEMORY_BUFFER_SIZE, String.valueOf(64 * 1024));
+        try {
+            Soap message = parser.parse(MimeTypes.TEXT_XML_UTF8,
+                    new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+
+            assertTrue(message instanceof SoapFault);
+
+            SoapFault fault = (SoapFault) message;
+            assertEquals("foo.bar", fault.getCode());
+            assertEquals("baz", fault.getString());
+            assertEquals(xml, fault.getXml());
+        } finally {
+            System.clearProperty(SystemProperties.SOAP_MESSAGE_MEMORY_BUFFER_SIZE);
+            System.clearProperty(SystemProperties.TEMP_FILES_PATH);
+        }
+    }
+
     /**
      * Test that reading a normal RPC encoded request message is successful
      * and that header and body are correctly parsed.
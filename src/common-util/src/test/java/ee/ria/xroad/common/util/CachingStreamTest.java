@@ -0,0 +1,200 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests caching stream behaviour in memory and in a temporary file.
+ */
+public class CachingStreamTest {
+
+    private static String tempFilesPath;
+
+    /**
+     * Sets the temporary files path.
+     */
+    @BeforeClass
+    public static void setUpClass() {
+        tempFilesPath = System.getProperty(SystemProperties.TEMP_FILES_PATH);
+        System.setProperty(SystemProperties.TEMP_FILES_PATH, "build/");
+    }
+
+    /**
+     * Restores the temporary files path.
+     */
+    @AfterClass
+    public static void tearDownClass() {
+        if (tempFilesPath != null) {
+            System.setProperty(SystemProperties.TEMP_FILES_PATH, tempFilesPath);
+        } else {
+            System.clearProperty(SystemProperties.TEMP_FILES_PATH);
+        }
+    }
+
+    /**
+     * Test that content smaller than the memory cache size is kept in memory.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void cachedInMemory() throws Exception {
+        byte[] data = randomBytes(20000);
+
+        CachingStream stream = new CachingStream(data.length);
+        try {
+            stream.write(data, 0, 100);
+            stream.write(data[100]);
+            stream.write(data, 101, data.length - 101);
+            stream.close();
+
+            assertTrue(stream.isInMemory());
+            assertCachedContents(data, stream);
+            // the cached contents can be read more than once
+            assertCachedContents(data, stream);
+        } finally {
+            stream.consume();
+        }
+    }
+
+    /**
+     * Test that content larger than the memory cache size is moved to a temporary file.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void spilledToFile() throws Exception {
+        byte[] data = randomBytes(20000);
+        long spilledStreams = CachingStream.getSpilledStreamCount();
+
+        CachingStream stream = new CachingStream(10000);
+        try {
+            stream.write(data, 0, 9000);
+            assertTrue(stream.isInMemory());
+
+            stream.write(data, 9000, data.length - 9000);
+            stream.close();
+
+            assertFalse(stream.isInMemory());
+            assertEquals(spilledStreams + 1, CachingStream.getSpilledStreamCount());
+            assertCachedContents(data, stream);
+        } finally {
+            stream.consume();
+        }
+    }
+
+    /**
+     * Test that the memory cache can not be read after the stream has been consumed.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test(expected = IOException.class)
+    public void readAfterConsume() throws Exception {
+        CachingStream stream = new CachingStream(1024);
+        stream.write(randomBytes(100));
+        stream.close();
+
+        InputStream in = stream.getCachedContents();
+        stream.consume();
+        // consuming twice is allowed
+        stream.consume();
+
+        in.read();
+    }
+
+    /**
+     * Test that a reader racing with consume either fails or reads the original contents, never the
+     * contents of another stream that reuses the released segments.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void readConcurrentlyWithConsume() throws Exception {
+        byte[] data = randomBytes(64 * 1024);
+        byte[] other = new byte[data.length];
+        Arrays.fill(other, (byte) 0x55);
+
+        for (int i = 0; i < 100; i++) {
+            CachingStream stream = new CachingStream(data.length);
+            stream.write(data);
+            stream.close();
+
+            CacheInputStream in = stream.getCachedContents();
+            ByteArrayOutputStream read = new ByteArrayOutputStream();
+            CountDownLatch started = new CountDownLatch(1);
+
+            Thread reader = new Thread(() -> {
+                byte[] buffer = new byte[512];
+                started.countDown();
+                try {
+                    int count;
+                    while ((count = in.read(buffer)) >= 0) {
+                        read.write(buffer, 0, count);
+                    }
+                } catch (IOException expected) {
+                    // the stream was consumed while reading
+                }
+            });
+            reader.start();
+            started.await();
+
+            stream.consume();
+
+            CachingStream reuser = new CachingStream(other.length);
+            reuser.write(other);
+            reader.join();
+            reuser.consume();
+
+            byte[] result = read.toByteArray();
+            assertArrayEquals(Arrays.copyOf(data, result.length), result);
+        }
+    }
+
+    private static void assertCachedContents(byte[] expected, CachingStream stream) throws IOException {
+        CacheInputStream in = stream.getCachedContents();
+
+        assertEquals(expected.length, in.size());
+        assertArrayEquals(expected, IOUtils.toByteArray(in));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
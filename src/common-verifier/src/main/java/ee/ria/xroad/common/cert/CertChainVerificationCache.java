@@ -0,0 +1,182 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.cert;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.operator.DigestCalculator;
+
+import java.io.OutputStream;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.createDigestCalculator;
+import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
+
+/**
+ * Cache of successful certificate chain verification results.
+ *
+ * Entries are keyed by the hash of the certificate chain (including the trust
+ * anchor), the hash of the OCSP responses and the global configuration
+ * version. Each entry records the time window in which the verification
+ * result holds, so a cached result is only reused for verification dates
+ * inside that window. All entries are dropped when the global configuration
+ * changes.
+ */
+@Slf4j
+public final class CertChainVerificationCache {
+
+    private static final int CACHE_SIZE = SystemProperties.getCertChainVerifierCacheSize();
+
+    private static final Cache<Key, ValidityWindow> CACHE = CacheBuilder.newBuilder()
+            .maximumSize(Math.max(CACHE_SIZE, 0))
+            .build();
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private static volatile long confVersion;
+
+    private CertChainVerificationCache() {
+    }
+
+    /**
+     * @return true, if verification results are cached
+     */
+    public static boolean isEnabled() {
+        return CACHE_SIZE > 0;
+    }
+
+    /**
+     * @return number of verifications answered from the cache
+     */
+    public static long getHitCount() {
+        return HITS.get();
+    }
+
+    /**
+     * @return number of verifications that had to be performed
+     */
+    public static long getMissCount() {
+        return MISSES.get();
+    }
+
+    /**
+     * @return current number of cached verification results
+     */
+    public static long size() {
+        return CACHE.size();
+    }
+
+    /**
+     * Removes all cached verification results.
+     */
+    public static void invalidateAll() {
+        CACHE.invalidateAll();
+    }
+
+    /**
+     * Logs cache statistics.
+     */
+    public static void logStatistics() {
+        if (log.isTraceEnabled()) {
+            log.trace("CertChainVerificationCache: entries: {}, hits: {}, misses: {}", size(), getHitCount(),
+                    getMissCount());
+        }
+    }
+
+    static Key createKey(CertChain certChain, List<OCSPResp> ocspResponses) throws Exception {
+        long version = GlobalConf.getVersion();
+        if (version != confVersion) {
+            log.trace("Global configuration version changed ({} -> {}), invalidating cache", confVersion, version);
+
+            confVersion = version;
+            invalidateAll();
+        }
+
+        DigestCalculator certsDigest = createDigestCalculator(SHA256_ID);
+        try (OutputStream out = certsDigest.getOutputStream()) {
+            for (X509Certificate cert : certChain.getAllCerts()) {
+                out.write(cert.getEncoded());
+            }
+        }
+
+        DigestCalculator ocspDigest = createDigestCalculator(SHA256_ID);
+        try (OutputStream out = ocspDigest.getOutputStream()) {
+            for (OCSPResp response : ocspResponses) {
+                out.write(response.getEncoded());
+            }
+        }
+
+        return new Key(certChain.getInstanceIdentifier(), encodeBase64(certsDigest.getDigest()),
+                encodeBase64(ocspDigest.getDigest()), version);
+    }
+
+    static boolean isVerified(Key key, Date atDate) {
+        ValidityWindow window = CACHE.getIfPresent(key);
+        if (window != null && window.contains(atDate)) {
+            HITS.incrementAndGet();
+            return true;
+        }
+
+        MISSES.incrementAndGet();
+        return false;
+    }
+
+    static void put(Key key, Date validFrom, Date validUntil) {
+        if (validFrom.after(validUntil)) {
+            return;
+        }
+
+        CACHE.put(key, new ValidityWindow(validFrom.getTime(), validUntil.getTime()));
+    }
+
+    @Value
+    static class Key {
+        private final String instanceIdentifier;
+        private final String certsHash;
+        private final String ocspResponsesHash;
+        private final long confVersion;
+    }
+
+    @Value
+    private static class ValidityWindow {
+        private final long validFrom;
+        private final long validUntil;
+
+        boolean contains(Date atDate) {
+            return atDate.getTime() >= validFrom && atDate.getTime() <= validUntil;
+        }
+    }
+}
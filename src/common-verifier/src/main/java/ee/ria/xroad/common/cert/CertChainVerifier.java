@@ -30,7 +30,10 @@ import ee.ria.xroad.common.conf.globalconfextension.GlobalConfExtensions;
 import ee.ria.xroad.common.ocsp.OcspVerifier;
 import ee.ria.xroad.common.ocsp.OcspVerifierOptions;
 
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
 import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
 
 import java.security.cert.CertPath;
 import java.security.cert.CertPathBuilder;
@@ -49,6 +52,7 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_CANNOT_CREATE_CERT_PATH;
 import static ee.ria.xroad.common.ErrorCodes.X_CERT_VALIDATION;
@@ -59,6 +63,7 @@ import static ee.ria.xroad.common.cert.CertHelper.getOcspResponseForCert;
 /**
  * Certificate chain verifier.
  */
+@Slf4j
 public class CertChainVerifier {
 
     /** Default validation algorithm type is PKIX. */
@@ -73,6 +78,10 @@ public class CertChainVerifier {
     /** Holds the cert chain to be verified. */
     private CertChain certChain;
 
+    /** Holds the time window in which the last successful verification holds. */
+    private Date validFrom;
+    private Date validUntil;
+
     /**
      * Builds the certificate path for the target certificate using a list
      * of trust anchors and a list of intermediate certificates.
@@ -131,6 +140,9 @@ public class CertChainVerifier {
      * OCSP response is found and verified.
      * If verification fails, throws CodedException with error code
      * InvalidCertPath...
+     * Successful verification results are cached (see
+     * {@link CertChainVerificationCache}), in which case the chain is not
+     * built again.
      * @param ocspResponses list of OCSP responses that are used to
      *                      validate the certificates.
      * @param atDate The date at which the verification is performed.
@@ -141,7 +153,34 @@ public class CertChainVerifier {
                     "List of OCSP responses cannot be null or empty");
         }
 
+        CertChainVerificationCache.Key cacheKey =
+                createCacheKey(ocspResponses);
+        if (cacheKey != null
+                && CertChainVerificationCache.isVerified(cacheKey, atDate)) {
+            return;
+        }
+
         verifyImpl(ocspResponses, atDate);
+
+        if (cacheKey != null) {
+            CertChainVerificationCache.put(cacheKey, validFrom, validUntil);
+        }
+    }
+
+    private CertChainVerificationCache.Key createCacheKey(
+            List<OCSPResp> ocspResponses) {
+        if (!CertChainVerificationCache.isEnabled()) {
+            return null;
+        }
+
+        try {
+            return CertChainVerificationCache.createKey(certChain,
+                    ocspResponses);
+        } catch (Exception e) {
+            log.warn("Could not create certificate chain verification "
+                    + "cache key", e);
+            return null;
+        }
     }
 
     private void verifyImpl(List<OCSPResp> ocspResponses, Date atDate) {
@@ -152,6 +191,8 @@ public class CertChainVerifier {
             PKIXCertPathValidatorResult pkixResult =
                     verifyCertPath(certPath, pkixParams);
 
+            updateValidity(getCerts());
+
             if (ocspResponses != null) {
                 verifyOcspResponses(
                         getCerts(), ocspResponses, pkixResult, atDate);
@@ -178,10 +219,54 @@ public class CertChainVerifier {
                         + subject.getSubjectX500Principal().getName());
             }
 
-            OcspVerifier verifier = new OcspVerifier(GlobalConf.getOcspFreshnessSeconds(false),
-                    new OcspVerifierOptions(GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate()));
+            int ocspFreshnessSeconds = GlobalConf.getOcspFreshnessSeconds(false);
+            boolean verifyNextUpdate = GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate();
+
+            OcspVerifier verifier = new OcspVerifier(ocspFreshnessSeconds,
+                    new OcspVerifierOptions(verifyNextUpdate));
             verifier.verifyValidityAndStatus(response, subject, issuer,
                     atDate);
+
+            updateValidity(response, ocspFreshnessSeconds, verifyNextUpdate);
+        }
+    }
+
+    // The certificate path is valid while all of its certificates are valid.
+    private void updateValidity(List<X509Certificate> certs) {
+        validFrom = null;
+        validUntil = null;
+
+        for (X509Certificate cert : certs) {
+            restrictValidFrom(cert.getNotBefore());
+            restrictValidUntil(cert.getNotAfter());
+        }
+    }
+
+    // The OCSP response is valid from its thisUpdate until it is too old
+    // (see OcspVerifier.isExpired) or, if verified, until its nextUpdate.
+    private void updateValidity(OCSPResp response, int ocspFreshnessSeconds,
+            boolean verifyNextUpdate) throws Exception {
+        BasicOCSPResp basicResp = (BasicOCSPResp) response.getResponseObject();
+        SingleResp singleResp = basicResp.getResponses()[0];
+
+        restrictValidFrom(singleResp.getThisUpdate());
+        restrictValidUntil(new Date(singleResp.getThisUpdate().getTime()
+                + TimeUnit.SECONDS.toMillis(ocspFreshnessSeconds)));
+
+        if (verifyNextUpdate && singleResp.getNextUpdate() != null) {
+            restrictValidUntil(singleResp.getNextUpdate());
+        }
+    }
+
+    private void restrictValidFrom(Date date) {
+        if (validFrom == null || date.after(validFrom)) {
+            validFrom = date;
+        }
+    }
+
+    private void restrictValidUntil(Date date) {
+        if (validUntil == null || date.before(validUntil)) {
+            validUntil = date;
         }
     }
 
@@ -180,6 +180,15 @@ public final class GlobalConf {
         }
     }
 
+    /**
+     * Returns the version of the global configuration content. The version
+     * changes whenever the configuration is reloaded with different content.
+     * @return the configuration version
+     */
+    public static long getVersion() {
+        return getInstance().getVersion();
+    }
+
     /**
      * Returns true, if the global configuration is valid and can be used
      * for security-critical tasks.
@@ -424,7 +433,8 @@ public final class GlobalConf {
 
     /**
      * @return all the trusted and intermediate certificates that can be used
-     * to verify the other party in establishing SSL connection
+     * to verify the other party in establishing SSL connection. The array may
+     * be shared between callers and must not be modified.
      */
     public static X509Certificate[] getAuthTrustChain() {
         log.trace("getAuthTrustChain()");
@@ -45,15 +45,13 @@ import ee.ria.xroad.common.identifier.SecurityCategoryId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.util.CertUtils;
-import ee.ria.xroad.common.util.CryptoUtils;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.asn1.x500.X500Name;
 
 import java.io.OutputStream;
-import java.math.BigInteger;
 import java.nio.file.Paths;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
@@ -62,7 +60,8 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -86,6 +85,8 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     private ConfigurationDirectoryV2 confDir;
 
+    private volatile GlobalConfSnapshot snapshot;
+
     GlobalConfImpl(boolean reloadIfChanged) {
         try {
             confDir = new CachingConfigurationDirectory(getConfigurationPath(),
@@ -101,6 +102,11 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     // ------------------------------------------------------------------------
 
+    @Override
+    public long getVersion() {
+        return confDir.getVersion();
+    }
+
     @Override
     public boolean isValid() {
         try {
@@ -121,9 +127,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     @Override
     public List<String> getInstanceIdentifiers() {
-        return getSharedParameters().stream()
-                .map(SharedParametersV2::getInstanceIdentifier)
-                .collect(Collectors.toList());
+        return getSnapshot().getInstanceIdentifiers();
     }
 
     @Override
@@ -235,11 +239,10 @@ public class GlobalConfImpl implements GlobalConfProvider {
             throw new CodedException(X_INTERNAL_ERROR, e);
         }
 
-        return p == null ? null : p.getGlobalGroups().stream()
-                .filter(g -> g.getGroupCode().equals(
-                        globalGroupId.getGroupCode()))
-                .map(GlobalGroupType::getDescription)
-                .findFirst().orElse(null);
+        GlobalGroupType group = p == null ? null
+                : p.findGlobalGroup(globalGroupId);
+
+        return group == null ? null : group.getDescription();
     }
 
     @Override
@@ -322,23 +325,12 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     @Override
     public List<X509Certificate> getOcspResponderCertificates() {
-        List<X509Certificate> responderCerts = new ArrayList<>();
         try {
-            for (SharedParametersV2 p : getSharedParameters()) {
-                for (List<OcspInfoType> ocspTypes
-                        : p.getCaCertsAndOcspData().values()) {
-                    ocspTypes.stream().map(OcspInfoType::getCert)
-                            .filter(Objects::nonNull)
-                            .map(CryptoUtils::readCertificate)
-                            .forEach(responderCerts::add);
-                }
-            }
+            return getSnapshot().getOcspResponderCerts();
         } catch (Exception e) {
             log.error("Error while getting OCSP responder certificates", e);
             return Collections.emptyList();
         }
-
-        return responderCerts;
     }
 
     @Override
@@ -349,17 +341,13 @@ public class GlobalConfImpl implements GlobalConfProvider {
                     "Member certificate must be present to find CA cert!");
         }
 
-        X509CertificateHolder ch = new X509CertificateHolder(
-                memberCert.getEncoded());
+        X500Name issuer = SharedParametersV2.getIssuer(memberCert);
 
-        String[] instances = instanceIdentifier != null
-                ? new String[] {instanceIdentifier} : new String[] {};
+        Map<X500Name, X509Certificate> caCerts = instanceIdentifier != null
+                ? getSharedParameters(instanceIdentifier).getSubjectsAndCaCerts()
+                : getSnapshot().getCaCertsBySubject();
 
-        return getSharedParameters(instances)
-                .stream()
-                .map(p -> p.getSubjectsAndCaCerts().get(ch.getIssuer()))
-                .filter(Objects::nonNull)
-                .findFirst()
+        return Optional.ofNullable(caCerts.get(issuer))
                 .orElseThrow(
                         () -> new CodedException(X_INTERNAL_ERROR,
                                 "Certificate is not issued by approved "
@@ -368,9 +356,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     @Override
     public List<X509Certificate> getAllCaCerts() {
-        return getSharedParameters().stream()
-                .flatMap(p -> p.getSubjectsAndCaCerts().values().stream())
-                .collect(Collectors.toList());
+        return getSnapshot().getAllCaCerts();
     }
 
     @Override
@@ -408,20 +394,13 @@ public class GlobalConfImpl implements GlobalConfProvider {
     @Override
     public boolean isOcspResponderCert(X509Certificate ca,
             X509Certificate ocspCert) {
-        return getSharedParameters().stream()
-                .map(p -> p.getCaCertsAndOcspData().get(ca))
-                .filter(Objects::nonNull).flatMap(o -> o.stream())
-                .map(OcspInfoType::getCert).filter(Objects::nonNull)
-                .map(CryptoUtils::readCertificate)
-                .filter(c -> c.equals(ocspCert))
-                .findFirst().isPresent();
+        return getSnapshot().isOcspResponderCert(ca, ocspCert);
     }
 
     @Override
     public X509Certificate[] getAuthTrustChain() {
         try {
-            List<X509Certificate> certs = getAllCaCerts();
-            return certs.toArray(new X509Certificate[certs.size()]);
+            return getSnapshot().getAuthTrustChain();
         } catch (Exception e) {
             throw translateException(e);
         }
@@ -462,12 +441,9 @@ public class GlobalConfImpl implements GlobalConfProvider {
     @Override
     public boolean authCertMatchesMember(X509Certificate cert,
             ClientId memberId) throws Exception {
-        byte[] inputCertHash = certHash(cert);
+        String b64 = encodeBase64(certHash(cert));
         return getSharedParameters().stream()
-                .map(p -> p.getMemberAuthCerts().get(memberId))
-                .filter(Objects::nonNull).flatMap(h -> h.stream())
-                .filter(h -> Arrays.equals(inputCertHash, h)).findFirst()
-                .isPresent();
+                .anyMatch(p -> p.authCertMatchesMember(b64, memberId));
     }
 
     @Override
@@ -537,19 +513,12 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     @Override
     public List<X509Certificate> getTspCertificates() throws Exception {
-        return getSharedParameters().stream()
-                .flatMap(p -> p.getApprovedTSAs().stream())
-                .map(ApprovedTSAType::getCert)
-                .filter(Objects::nonNull)
-                .map(CryptoUtils::readCertificate)
-                .collect(Collectors.toList());
+        return getSnapshot().getTspCertificates();
     }
 
     @Override
     public Set<String> getKnownAddresses() {
-        return getSharedParameters().stream()
-                .flatMap(p -> p.getKnownAddresses().stream())
-                .collect(Collectors.toSet());
+        return getSnapshot().getKnownAddresses();
     }
 
     @Override
@@ -568,13 +537,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
             return false;
         }
 
-        GlobalGroupType group = p.findGlobalGroup(groupId);
-        if (group == null) {
-            return false;
-        }
-
-        return group.getGroupMember().stream().filter(m -> m.equals(subjectId))
-                .findFirst().isPresent();
+        return p.isGlobalGroupMember(subjectId, groupId);
     }
 
     @Override
@@ -597,9 +560,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     @Override
     public List<X509Certificate> getVerificationCaCerts() {
-        return getSharedParameters().stream()
-                .flatMap(p -> p.getVerificationCaCerts().stream())
-                .collect(Collectors.toList());
+        return getSnapshot().getVerificationCaCerts();
     }
 
     @Override
@@ -624,10 +585,8 @@ public class GlobalConfImpl implements GlobalConfProvider {
     @Override
     public int getOcspFreshnessSeconds(boolean smallestValue) {
         if (smallestValue) {
-            return getSharedParameters().stream()
-                    .map(p -> p.getGlobalSettings().getOcspFreshnessSeconds())
-                    .filter(Objects::nonNull).map(BigInteger::intValue)
-                    .min(Integer::compare).orElse(DEFAULT_OCSP_FRESHNESS);
+            Integer freshness = getSnapshot().getMinOcspFreshnessSeconds();
+            return freshness != null ? freshness : DEFAULT_OCSP_FRESHNESS;
         } else {
             return getSharedParameters(getInstanceIdentifier())
                     .getGlobalSettings().getOcspFreshnessSeconds().intValue();
@@ -665,6 +624,32 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     // ------------------------------------------------------------------------
 
+    /**
+     * Returns the snapshot of the values derived from all shared parameters.
+     * The snapshot is rebuilt when the version of the configuration
+     * directory changes.
+     * @return the current configuration snapshot
+     */
+    private GlobalConfSnapshot getSnapshot() {
+        GlobalConfSnapshot current = snapshot;
+        long version = confDir.getVersion();
+
+        if (current == null || current.getVersion() != version) {
+            synchronized (this) {
+                current = snapshot;
+
+                if (current == null || current.getVersion() != version) {
+                    log.trace("Building global configuration snapshot for version {}", version);
+
+                    current = new GlobalConfSnapshot(version, confDir.getShared());
+                    snapshot = current;
+                }
+            }
+        }
+
+        return current;
+    }
+
     protected PrivateParametersV2 getPrivateParameters() {
         PrivateParametersV2 p;
         try {
@@ -55,6 +55,14 @@ public interface GlobalConfProvider extends ConfProvider {
      */
     boolean isValid();
 
+    /**
+     * Returns the version of the configuration content. The version changes
+     * whenever the configuration is reloaded with different content, so
+     * callers may use it to invalidate values derived from the configuration.
+     * @return the configuration version
+     */
+    long getVersion();
+
     /**
      * @return the instance identifier for this configuration source
      */
@@ -191,7 +199,8 @@ public interface GlobalConfProvider extends ConfProvider {
 
     /**
      * @return all the trusted and intermediate certificates that can be used
-     * to verify the other party in establishing SSL connection.
+     * to verify the other party in establishing SSL connection. The array may
+     * be shared between callers and must not be modified.
      */
     X509Certificate[] getAuthTrustChain();
 
@@ -0,0 +1,130 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.bouncycastle.asn1.x500.X500Name;
+
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable view of the values derived from the shared parameters of all
+ * configuration instances. A snapshot is built once per configuration
+ * version, so that lookups do not need to iterate over the instances or
+ * decode certificates again.
+ */
+@Getter(AccessLevel.PACKAGE)
+final class GlobalConfSnapshot {
+
+    private final long version;
+
+    private final List<String> instanceIdentifiers;
+    private final Map<X500Name, X509Certificate> caCertsBySubject;
+    private final List<X509Certificate> allCaCerts;
+    private final List<X509Certificate> verificationCaCerts;
+    private final List<X509Certificate> ocspResponderCerts;
+    private final Map<X509Certificate, Set<X509Certificate>>
+            ocspResponderCertsByCaCert;
+    private final List<X509Certificate> tspCertificates;
+    private final Set<String> knownAddresses;
+    private final Integer minOcspFreshnessSeconds;
+
+    @Getter(AccessLevel.NONE)
+    private final X509Certificate[] authTrustChain;
+
+    GlobalConfSnapshot(long version, List<SharedParametersV2> sharedParameters) {
+        this.version = version;
+
+        List<String> instances = new ArrayList<>();
+        Map<X500Name, X509Certificate> caCerts = new HashMap<>();
+        List<X509Certificate> allCa = new ArrayList<>();
+        List<X509Certificate> verificationCa = new ArrayList<>();
+        List<X509Certificate> ocspCerts = new ArrayList<>();
+        Map<X509Certificate, Set<X509Certificate>> ocspCertsByCa =
+                new HashMap<>();
+        List<X509Certificate> tspCerts = new ArrayList<>();
+        Set<String> addresses = new HashSet<>();
+        Integer minFreshness = null;
+
+        for (SharedParametersV2 p : sharedParameters) {
+            instances.add(p.getInstanceIdentifier());
+
+            p.getSubjectsAndCaCerts().forEach(caCerts::putIfAbsent);
+            allCa.addAll(p.getSubjectsAndCaCerts().values());
+            verificationCa.addAll(p.getVerificationCaCerts());
+
+            p.getCaCertsAndOcspResponderCerts().forEach((ca, certs) -> {
+                ocspCerts.addAll(certs);
+                ocspCertsByCa.computeIfAbsent(ca, k -> new HashSet<>())
+                        .addAll(certs);
+            });
+
+            tspCerts.addAll(p.getApprovedTspCerts());
+            addresses.addAll(p.getKnownAddresses());
+
+            BigInteger freshness =
+                    p.getGlobalSettings().getOcspFreshnessSeconds();
+            if (freshness != null && (minFreshness == null
+                    || freshness.intValue() < minFreshness)) {
+                minFreshness = freshness.intValue();
+            }
+        }
+
+        this.instanceIdentifiers = Collections.unmodifiableList(instances);
+        this.caCertsBySubject = Collections.unmodifiableMap(caCerts);
+        this.allCaCerts = Collections.unmodifiableList(allCa);
+        this.verificationCaCerts =
+                Collections.unmodifiableList(verificationCa);
+        this.ocspResponderCerts = Collections.unmodifiableList(ocspCerts);
+        this.ocspResponderCertsByCaCert =
+                Collections.unmodifiableMap(ocspCertsByCa);
+        this.tspCertificates = Collections.unmodifiableList(tspCerts);
+        this.knownAddresses = Collections.unmodifiableSet(addresses);
+        this.minOcspFreshnessSeconds = minFreshness;
+        this.authTrustChain = allCa.toArray(new X509Certificate[0]);
+    }
+
+    /**
+     * @return the auth trust chain, shared by all callers, so the array
+     * must not be modified
+     */
+    X509Certificate[] getAuthTrustChain() {
+        return authTrustChain;
+    }
+
+    boolean isOcspResponderCert(X509Certificate ca, X509Certificate ocspCert) {
+        Set<X509Certificate> certs = ocspResponderCertsByCaCert.get(ca);
+        return certs != null && certs.contains(ocspCert);
+    }
+}
@@ -25,26 +25,33 @@
 package ee.ria.xroad.common.ocsp;
 
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
-import ee.ria.xroad.common.conf.globalconfextension.GlobalConfExtensions;
 
 import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
 import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
 
 import java.util.Date;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toMap;
 
 /**
  * Holds OCSP response per key. When getting the response, it is checked
  * if the response is expired at the specified date, and if it is, the
  * response is removed from the cache and null is returned.
+ * The expiry date of a cached response is computed once from the response and
+ * the global configuration, and recomputed only when the global configuration
+ * version changes.
  */
 @Slf4j
 public class OcspCache {
 
-    protected final Map<String, OCSPResp> cache = new ConcurrentHashMap<>();
+    private final Map<String, CachedResponse> cache = new ConcurrentHashMap<>();
 
     /**
      * @param key the key
@@ -69,11 +76,12 @@ public class OcspCache {
      * Associates a key with the OCSP response.
      * @param key the key
      * @param value the OCSP response
-     * @return the OCSP response
+     * @return the previous OCSP response associated with the key or null
      */
     public OCSPResp put(String key, OCSPResp value) {
         log.trace("Setting OCSP response for '{}'", key);
-        return cache.put(key, value);
+        CachedResponse previous = cache.put(key, new CachedResponse(value));
+        return previous != null ? previous.response : null;
     }
 
     /**
@@ -87,16 +95,22 @@ public class OcspCache {
      * @return a Set view of the mappings contained in this map.
      */
     public Set<Entry<String, OCSPResp>> entrySet() {
-        return cache.entrySet();
+        return cache.entrySet().stream()
+                .collect(toMap(Entry::getKey, e -> e.getValue().response))
+                .entrySet();
     }
 
     protected OCSPResp getResponse(Object key, Date atDate) {
         log.trace("Retrieving OCSP response for certificate '{}' at {}", key,
                 atDate);
 
-        OCSPResp cachedResponse = cache.get(key);
+        CachedResponse cachedResponse = cache.get(key);
+        if (cachedResponse == null) {
+            return null;
+        }
+
         try {
-            if (cachedResponse != null && isExpired(cachedResponse, atDate)) {
+            if (cachedResponse.isExpired(atDate)) {
                 log.trace("Cached OCSP response for certificate "
                         + "'{}' has expired", key);
                 cache.remove(key);
@@ -108,13 +122,96 @@ public class OcspCache {
             return null;
         }
 
-        return cachedResponse;
+        return cachedResponse.response;
+    }
+
+    /**
+     * @param key the key
+     * @return true, if the cache holds a response for the key, expired or not
+     */
+    protected boolean contains(Object key) {
+        return cache.containsKey(key);
     }
 
-    protected static boolean isExpired(OCSPResp response, Date atDate)
+    /**
+     * Associates a key with the OCSP response, if the response is not
+     * expired at the specified date.
+     * @param key the key
+     * @param value the OCSP response
+     * @param atDate the date
+     * @return true, if the response was not expired and was cached
+     * @throws Exception if the expiry of the response cannot be determined
+     */
+    protected boolean putIfNotExpired(String key, OCSPResp value, Date atDate)
             throws Exception {
-        OcspVerifier verifier = new OcspVerifier(GlobalConf.getOcspFreshnessSeconds(true),
-                new OcspVerifierOptions(GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate()));
-        return verifier.isExpired(response, atDate);
+        CachedResponse cachedResponse = new CachedResponse(value);
+        if (cachedResponse.isExpired(atDate)) {
+            return false;
+        }
+
+        cache.put(key, cachedResponse);
+        return true;
+    }
+
+    /**
+     * Cached OCSP response with the thisUpdate date decoded from the response.
+     */
+    private static final class CachedResponse {
+
+        private final OCSPResp response;
+        private final Date thisUpdate;
+        private final Exception decodingError;
+
+        private volatile Expiry expiry;
+
+        CachedResponse(OCSPResp response) {
+            this.response = response;
+
+            SingleResp singleResp = null;
+            Exception error = null;
+            try {
+                BasicOCSPResp basicResp = (BasicOCSPResp) response.getResponseObject();
+                singleResp = basicResp.getResponses()[0];
+            } catch (Exception e) {
+                error = e;
+            }
+
+            this.thisUpdate = singleResp != null ? singleResp.getThisUpdate() : null;
+            this.decodingError = error;
+        }
+
+        boolean isExpired(Date atDate) throws Exception {
+            if (decodingError != null) {
+                throw decodingError;
+            }
+
+            long version = GlobalConf.getVersion();
+            Expiry current = expiry;
+            if (current == null || current.version != version) {
+                current = new Expiry(version, computeExpiresAt());
+                expiry = current;
+            }
+
+            return atDate.getTime() > current.expiresAt;
+        }
+
+        // Same rule as OcspVerifier.isExpired: the response expires when
+        // thisUpdate is older than the freshness period. nextUpdate is only
+        // checked when the response is verified.
+        private long computeExpiresAt() {
+            return thisUpdate.getTime()
+                    + TimeUnit.SECONDS.toMillis(GlobalConf.getOcspFreshnessSeconds(true));
+        }
+    }
+
+    private static final class Expiry {
+
+        private final long version;
+        private final long expiresAt;
+
+        Expiry(long version, long expiresAt) {
+            this.version = version;
+            this.expiresAt = expiresAt;
+        }
     }
 }
@@ -0,0 +1,207 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.cert;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.ErrorCodes;
+import ee.ria.xroad.common.OcspTestUtils;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.TestSecurityUtil;
+import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests caching of certificate chain verification results.
+ */
+public class CertChainVerificationCacheTest {
+
+    static {
+        TestSecurityUtil.initSecurity();
+    }
+
+    private X509Certificate rootCa;
+    private X509Certificate userCert;
+    private CertChain chain;
+
+    /**
+     * Sets up a fresh configuration and a simple certificate chain.
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        GlobalConf.reload(new TestGlobalConf());
+
+        rootCa = TestCertUtil.getCertChainCert("root_ca.p12");
+        userCert = TestCertUtil.getCertChainCert("user_0.p12");
+        chain = new CertChain("EE", userCert, rootCa, Collections.emptyList());
+    }
+
+    /**
+     * Tests that a repeated verification is answered from the cache.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void repeatedVerificationIsCached() throws Exception {
+        Date atDate = makeDate(userCert.getNotBefore(), 1);
+        List<OCSPResp> ocsp = getOcspResponses(CertificateStatus.GOOD, atDate);
+
+        long hits = CertChainVerificationCache.getHitCount();
+        long misses = CertChainVerificationCache.getMissCount();
+
+        verify(ocsp, atDate);
+        verify(ocsp, addMinutes(atDate, 1));
+
+        assertEquals(hits + 1, CertChainVerificationCache.getHitCount());
+        assertEquals(misses + 1, CertChainVerificationCache.getMissCount());
+    }
+
+    /**
+     * Tests that a cached result is not reused outside of its validity window.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void cachedResultIsNotUsedOutsideValidityWindow() throws Exception {
+        Date atDate = makeDate(userCert.getNotBefore(), 1);
+        List<OCSPResp> ocsp = getOcspResponses(CertificateStatus.GOOD, atDate);
+
+        verify(ocsp, atDate);
+
+        try {
+            verify(ocsp, makeDate(userCert.getNotAfter(), 1));
+            fail("Verification should fail after certificate expiry");
+        } catch (CodedException expected) {
+            assertTrue(expected.getFaultCode().startsWith(ErrorCodes.X_CANNOT_CREATE_CERT_PATH));
+        }
+    }
+
+    /**
+     * Tests that a cached result is not reused before the thisUpdate of the OCSP response.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void cachedResultIsNotUsedBeforeOcspThisUpdate() throws Exception {
+        Date atDate = makeDate(userCert.getNotBefore(), 1);
+        List<OCSPResp> ocsp = getOcspResponses(CertificateStatus.GOOD, atDate);
+
+        verify(ocsp, atDate);
+
+        long hits = CertChainVerificationCache.getHitCount();
+        long misses = CertChainVerificationCache.getMissCount();
+
+        verify(ocsp, addMinutes(atDate, -1));
+
+        assertEquals(hits, CertChainVerificationCache.getHitCount());
+        assertEquals(misses + 1, CertChainVerificationCache.getMissCount());
+    }
+
+    /**
+     * Tests that reloading the global configuration invalidates cached results.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void globalConfReloadInvalidatesCache() throws Exception {
+        Date atDate = makeDate(userCert.getNotBefore(), 1);
+        List<OCSPResp> ocsp = getOcspResponses(CertificateStatus.GOOD, atDate);
+
+        verify(ocsp, atDate);
+
+        GlobalConf.reload(new TestGlobalConf());
+
+        long hits = CertChainVerificationCache.getHitCount();
+
+        verify(ocsp, atDate);
+
+        assertEquals(hits, CertChainVerificationCache.getHitCount());
+    }
+
+    /**
+     * Tests that failed verifications are not cached.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void failedVerificationIsNotCached() throws Exception {
+        Date atDate = makeDate(userCert.getNotBefore(), 1);
+        List<OCSPResp> ocsp = getOcspResponses(new RevokedStatus(new Date(), 0), atDate);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                verify(ocsp, atDate);
+                fail("Verification should fail for revoked certificate");
+            } catch (CodedException expected) {
+                assertTrue(expected.getFaultCode().endsWith(ErrorCodes.X_CERT_VALIDATION));
+            }
+        }
+    }
+
+    private void verify(List<OCSPResp> ocspResponses, Date atDate) {
+        new CertChainVerifier(chain).verify(ocspResponses, atDate);
+    }
+
+    private List<OCSPResp> getOcspResponses(CertificateStatus status, Date thisUpdate) throws Exception {
+        return Arrays.asList(OcspTestUtils.createOCSPResponse(userCert, rootCa,
+                TestCertUtil.getOcspSigner().certChain[0], TestCertUtil.getOcspSigner().key, status,
+                thisUpdate, null));
+    }
+
+    private static Date makeDate(Date someDate, int plusDays) {
+        return new Date(someDate.getTime() + (1000L * 60 * 60 * 24 * plusDays));
+    }
+
+    private static Date addMinutes(Date someDate, int minutes) {
+        return new Date(someDate.getTime() + (1000L * 60 * minutes));
+    }
+
+    private static class TestGlobalConf extends EmptyGlobalConf {
+        @Override
+        public List<X509Certificate> getOcspResponderCertificates() {
+            try {
+                return Arrays.asList(TestCertUtil.getOcspSigner().certChain[0]);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public X509Certificate getCaCert(String instanceIdentifier, X509Certificate orgCert) throws Exception {
+            return TestCertUtil.getCertChainCert("root_ca.p12");
+        }
+    }
+}
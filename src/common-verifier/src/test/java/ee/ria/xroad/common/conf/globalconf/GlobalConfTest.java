@@ -64,7 +64,9 @@ import static java.util.Collections.singleton;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -143,6 +145,24 @@ public class GlobalConfTest {
         assertNull("Description", GlobalConf.getGlobalGroupDescription(GlobalGroupId.create("EE", "foo")));
     }
 
+    /**
+     * Tests checking global group membership.
+     */
+    @Test
+    public void isSubjectInGlobalGroup() {
+        GlobalGroupId group = GlobalGroupId.create("EE", "Test group");
+
+        assertTrue(GlobalConf.isSubjectInGlobalGroup(
+                ClientId.create("EE", "BUSINESS", "member2"), group));
+        assertTrue(GlobalConf.isSubjectInGlobalGroup(
+                ClientId.create("EE", "BUSINESS", "member4"), group));
+        assertFalse(GlobalConf.isSubjectInGlobalGroup(
+                ClientId.create("EE", "BUSINESS", "member2"),
+                GlobalGroupId.create("EE", "foo")));
+        assertFalse(GlobalConf.isSubjectInGlobalGroup(
+                ClientId.create("EE", "BUSINESS", "member5"), group));
+    }
+
     /**
      * Tests getting the actual service identifier for a given identifier.
      *
@@ -394,6 +414,24 @@ public class GlobalConfTest {
         assertEquals(3, tspCertificates.size());
     }
 
+    /**
+     * Tests that decoded certificates are reused by a configuration instance.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void reuseDecodedCertificates() throws Exception {
+        assertSame(GlobalConf.getTspCertificates(), GlobalConf.getTspCertificates());
+        assertSame(GlobalConf.getAllCaCerts(), GlobalConf.getAllCaCerts());
+        assertEquals(GlobalConf.getAllCaCerts(), Arrays.asList(GlobalConf.getAuthTrustChain()));
+
+        GlobalConfImpl conf = new GlobalConfImpl(new ConfigurationDirectoryV2(getConfigurationPath()));
+        List<X509Certificate> tspCertificates = conf.getTspCertificates();
+
+        assertNotSame(GlobalConf.getTspCertificates(), tspCertificates);
+        assertEquals(GlobalConf.getTspCertificates(), tspCertificates);
+    }
+
     /**
      * Tests getting the global settings.
      */
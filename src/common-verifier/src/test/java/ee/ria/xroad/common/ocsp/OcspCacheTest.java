@@ -101,4 +101,43 @@ public class OcspCacheTest {
         assertNull(cache.put("foo", ocsp));
         assertNull(cache.get("foo"));
     }
+
+    /**
+     * Tests that the expiry of a cached OCSP response is recomputed when
+     * the global configuration changes.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void expiryFollowsGlobalConf() throws Exception {
+        Date thisUpdate = new DateTime().minusMinutes(10).toDate();
+        OCSPResp ocsp = OcspTestUtils.createOCSPResponse(subject, issuer,
+                signer, signerKey, CertificateStatus.GOOD, thisUpdate, null);
+
+        try {
+            GlobalConf.reload(new FreshnessGlobalConf(3600));
+
+            OcspCache cache = new OcspCache();
+            assertNull(cache.put("foo", ocsp));
+            assertEquals(ocsp, cache.get("foo"));
+
+            GlobalConf.reload(new FreshnessGlobalConf(60));
+            assertNull(cache.get("foo"));
+        } finally {
+            GlobalConf.reload(new EmptyGlobalConf());
+        }
+    }
+
+    private static final class FreshnessGlobalConf extends EmptyGlobalConf {
+
+        private final int freshnessSeconds;
+
+        FreshnessGlobalConf(int freshnessSeconds) {
+            this.freshnessSeconds = freshnessSeconds;
+        }
+
+        @Override
+        public int getOcspFreshnessSeconds(boolean smallestValue) {
+            return freshnessSeconds;
+        }
+    }
 }
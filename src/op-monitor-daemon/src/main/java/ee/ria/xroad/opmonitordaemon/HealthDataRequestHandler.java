@@ -39,6 +39,7 @@ import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringEscapeUtils;
@@ -212,36 +213,36 @@ public class HealthDataRequestHandler extends QueryRequestHandler {
                     Optional.ofNullable(findHistogram(healthMetricRegistry,
                             getRequestDurationName(service)));
             requestDuration.ifPresent(h -> {
-                lastPeriodStats.setRequestMinDuration(h.getSnapshot().getMin());
-                lastPeriodStats.setRequestAverageDuration(
-                        h.getSnapshot().getMean());
-                lastPeriodStats.setRequestMaxDuration(h.getSnapshot().getMax());
-                lastPeriodStats.setRequestDurationStdDev(
-                        h.getSnapshot().getStdDev());
+                Snapshot snapshot = h.getSnapshot();
+
+                lastPeriodStats.setRequestMinDuration(snapshot.getMin());
+                lastPeriodStats.setRequestAverageDuration(snapshot.getMean());
+                lastPeriodStats.setRequestMaxDuration(snapshot.getMax());
+                lastPeriodStats.setRequestDurationStdDev(snapshot.getStdDev());
             });
 
             Optional<Histogram> requestSoapSize =
                     Optional.ofNullable(findHistogram(healthMetricRegistry,
                             getRequestSoapSizeName(service)));
             requestSoapSize.ifPresent(h -> {
-                lastPeriodStats.setRequestMinSoapSize(h.getSnapshot().getMin());
-                lastPeriodStats.setRequestAverageSoapSize(
-                        h.getSnapshot().getMean());
-                lastPeriodStats.setRequestMaxSoapSize(h.getSnapshot().getMax());
-                lastPeriodStats.setRequestSoapSizeStdDev(
-                        h.getSnapshot().getStdDev());
+                Snapshot snapshot = h.getSnapshot();
+
+                lastPeriodStats.setRequestMinSoapSize(snapshot.getMin());
+                lastPeriodStats.setRequestAverageSoapSize(snapshot.getMean());
+                lastPeriodStats.setRequestMaxSoapSize(snapshot.getMax());
+                lastPeriodStats.setRequestSoapSizeStdDev(snapshot.getStdDev());
             });
 
             Optional<Histogram> responseSoapSize =
                     Optional.ofNullable(findHistogram(healthMetricRegistry,
                             getResponseSoapSizeName(service)));
             responseSoapSize.ifPresent(h -> {
-                lastPeriodStats.setResponseMinSoapSize(h.getSnapshot().getMin());
-                lastPeriodStats.setResponseAverageSoapSize(
-                        h.getSnapshot().getMean());
-                lastPeriodStats.setResponseMaxSoapSize(h.getSnapshot().getMax());
-                lastPeriodStats.setResponseSoapSizeStdDev(
-                        h.getSnapshot().getStdDev());
+                Snapshot snapshot = h.getSnapshot();
+
+                lastPeriodStats.setResponseMinSoapSize(snapshot.getMin());
+                lastPeriodStats.setResponseAverageSoapSize(snapshot.getMean());
+                lastPeriodStats.setResponseMaxSoapSize(snapshot.getMax());
+                lastPeriodStats.setResponseSoapSizeStdDev(snapshot.getStdDev());
             });
         }
 
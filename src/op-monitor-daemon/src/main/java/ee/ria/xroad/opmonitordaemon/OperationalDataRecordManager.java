@@ -33,10 +33,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.hibernate.Session;
 import org.hibernate.query.Query;
 
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import static ee.ria.xroad.opmonitordaemon.OpMonitorDaemonDatabaseCtx.doInTransaction;
 import static ee.ria.xroad.opmonitordaemon.OperationalDataOutputSpecFields.MONITORING_DATA_TS;
@@ -50,6 +53,8 @@ final class OperationalDataRecordManager {
 
     private static final int DEFAULT_BATCH_SIZE = 50;
 
+    private static final int QUERY_FETCH_SIZE = 500;
+
     @Setter
     private static int maxRecordsInPayload = OpMonitoringSystemProperties.getOpMonitorMaxRecordsInPayload();
 
@@ -77,14 +82,35 @@ final class OperationalDataRecordManager {
 
     static OperationalDataRecords queryRecords(long recordsFrom, long recordsTo, ClientId clientFilter,
             ClientId serviceProviderFilter, Set<String> outputFields) throws Exception {
-        OperationalDataRecords records = doInTransaction(session -> queryOperationalDataInTransaction(session,
-                recordsFrom, recordsTo, clientFilter, serviceProviderFilter, outputFields));
+        List<OperationalDataRecord> result = new ArrayList<>();
+        Long nextRecordsFrom = queryRecords(recordsFrom, recordsTo, clientFilter, serviceProviderFilter,
+                outputFields, result::add);
 
-        removeMonitoringDataTsIfNotSpecified(records, outputFields);
+        OperationalDataRecords records = new OperationalDataRecords(result);
+        records.setNextRecordsFrom(nextRecordsFrom);
 
         return records;
     }
 
+    /**
+     * Queries operational data records and passes them to the consumer one by one as they are read from the
+     * database cursor, so that the records need not be held in memory.
+     * @param recordsFrom           records from timestamp seconds
+     * @param recordsTo             records to timestamp seconds
+     * @param clientFilter          filter records by client (if not null)
+     * @param serviceProviderFilter filter records by service provider (if not null)
+     * @param outputFields          list of the requested operational data field
+     * @param consumer              consumer of the records
+     * @return the timestamp to query the next records from in case of records overflow, null otherwise
+     * @throws Exception if an error occurs
+     */
+    static Long queryRecords(long recordsFrom, long recordsTo, ClientId clientFilter,
+            ClientId serviceProviderFilter, Set<String> outputFields, Consumer<OperationalDataRecord> consumer)
+            throws Exception {
+        return doInTransaction(session -> queryOperationalDataInTransaction(session, recordsFrom, recordsTo,
+                clientFilter, serviceProviderFilter, outputFields, consumer));
+    }
+
     private static Void storeInTransaction(Session session, List<OperationalDataRecord> records, long timestamp) {
         int storedCount = 0;
         int batchSize = getConfiguredBatchSize(session);
@@ -120,75 +146,54 @@ final class OperationalDataRecordManager {
     /**
      * Queries operational data records from the database using search criteria parameters. The number of returned
      * records is limited by the configured value maxRecordsInPayload plus overflow records with the same
-     * monitorindDataTs timestamp as the last included record.
+     * monitorindDataTs timestamp as the last included record. The records are read using a forward-only
+     * cursor, the first record after the overflow records indicates that some records are left out.
      * @param session               database session
      * @param recordsFrom           records from timestamp seconds
      * @param recordsTo             records to timestamp seconds
      * @param clientFilter          filter records by client (if not null)
      * @param serviceProviderFilter filter records by service provider (if not null)
      * @param outputFields          list of the requested operational data field
-     * @return operational data records.
+     * @param consumer              consumer of the records
+     * @return the timestamp to query the next records from in case of records overflow, null otherwise
      */
-    @SuppressWarnings("unchecked")
-    private static OperationalDataRecords queryOperationalDataInTransaction(Session session, long recordsFrom,
-            long recordsTo, ClientId clientFilter, ClientId serviceProviderFilter, Set<String> outputFields) {
+    private static Long queryOperationalDataInTransaction(Session session, long recordsFrom, long recordsTo,
+            ClientId clientFilter, ClientId serviceProviderFilter, Set<String> outputFields,
+            Consumer<OperationalDataRecord> consumer) {
 
         final OperationalDataRecordQuery
                 query = new OperationalDataRecordQuery(session, clientFilter, serviceProviderFilter, outputFields);
         query.between(recordsFrom, recordsTo);
         query.orderByAsc(MONITORING_DATA_TS);
-        query.setMaxRecords(maxRecordsInPayload);
-        OperationalDataRecords records = new OperationalDataRecords(query.list());
 
-        // Check overflow.
-        if (records.size() == maxRecordsInPayload) {
-            log.trace("Check possible records overflow");
+        boolean removeMonitoringDataTs = !outputFields.isEmpty() && !outputFields.contains(MONITORING_DATA_TS);
+        int count = 0;
+        long lastMonitoringDataTs = 0;
 
-            long lastMonitoringDataTs = records.getLastMonitoringDataTs();
-            final OperationalDataRecordQuery overflow =
-                    new OperationalDataRecordQuery(session, clientFilter, serviceProviderFilter, outputFields);
-            overflow.addOverflowCriteria(lastMonitoringDataTs);
-            OperationalDataRecords overflowRecords = new OperationalDataRecords(overflow.list());
+        try (Stream<OperationalDataRecord> records = query.stream(QUERY_FETCH_SIZE)) {
+            Iterator<OperationalDataRecord> iterator = records.iterator();
 
-            records.removeRecordsByMonitoringDataTs(lastMonitoringDataTs);
-            records.append(overflowRecords);
+            while (iterator.hasNext()) {
+                OperationalDataRecord record = iterator.next();
+                long monitoringDataTs = record.getMonitoringDataTs();
 
-            if (recordsOverflow(session, lastMonitoringDataTs, recordsTo, clientFilter, serviceProviderFilter)) {
-                log.debug("Records overflow, set nextRecordsFrom to {}", lastMonitoringDataTs + 1);
+                if (count >= maxRecordsInPayload && monitoringDataTs != lastMonitoringDataTs) {
+                    log.debug("Records overflow, set nextRecordsFrom to {}", lastMonitoringDataTs + 1);
 
-                records.setNextRecordsFrom(lastMonitoringDataTs + 1);
-            }
-        }
+                    return lastMonitoringDataTs + 1;
+                }
 
-        return records;
-    }
+                if (removeMonitoringDataTs) {
+                    record.setMonitoringDataTs(null);
+                }
 
-    private static void removeMonitoringDataTsIfNotSpecified(OperationalDataRecords records, Set<String> outputFields) {
-        if (!outputFields.isEmpty() && !outputFields.contains(MONITORING_DATA_TS)) {
-            records.getRecords().forEach(i -> i.setMonitoringDataTs(null));
-        }
-    }
+                consumer.accept(record);
 
-    private static boolean recordsOverflow(Session session, long lastMonitoringDataTs, long recordsTo,
-            ClientId clientFilter, ClientId serviceProviderFilter) {
-        // Indicate overflow only if some records are not included.
-        return lastMonitoringDataTs < recordsTo && hasRecordsLeft(session, lastMonitoringDataTs, recordsTo,
-                clientFilter, serviceProviderFilter);
-    }
-
-    private static boolean hasRecordsLeft(Session session, long lastMonitoringDataTs, long recordsTo,
-            ClientId clientFilter, ClientId serviceProviderFilter) {
-        if (lastMonitoringDataTs == recordsTo) {
-            return false;
+                lastMonitoringDataTs = monitoringDataTs;
+                count++;
+            }
         }
 
-        final OperationalDataRecordQuery query =
-                new OperationalDataRecordQuery(session, clientFilter, serviceProviderFilter,
-                        Collections.singleton(MONITORING_DATA_TS));
-        // BETWEEN treats the endpoint values as included in the range.
-        query.between(lastMonitoringDataTs + 1, recordsTo);
-        query.setMaxRecords(1);
-
-        return query.list().size() > 0;
+        return null;
     }
 }
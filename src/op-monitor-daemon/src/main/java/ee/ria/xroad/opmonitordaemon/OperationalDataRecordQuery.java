@@ -29,6 +29,7 @@ import ee.ria.xroad.common.identifier.ClientId;
 import lombok.Setter;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.Session;
+import org.hibernate.query.Query;
 
 import javax.persistence.Tuple;
 import javax.persistence.TupleElement;
@@ -47,6 +48,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import static ee.ria.xroad.common.opmonitoring.OpMonitoringData.CLIENT_MEMBER_CLASS;
 import static ee.ria.xroad.common.opmonitoring.OpMonitoringData.CLIENT_MEMBER_CODE;
@@ -150,19 +152,30 @@ final class OperationalDataRecordQuery {
                                 member.getSubsystemCode()));
     }
 
-    void addOverflowCriteria(long monitoringDataTs) {
-        pred = cb.and(cb.equal(from.get(MONITORING_DATA_TS), monitoringDataTs));
+    List<OperationalDataRecord> list() {
+        return transform(createQuery().getResultList());
     }
 
-    List<OperationalDataRecord> list() {
+    /**
+     * Executes the query reading the results using a forward-only cursor. The returned stream must be closed.
+     * @param fetchSize number of rows to fetch from the database at a time
+     * @return stream of operational data records
+     */
+    Stream<OperationalDataRecord> stream(int fetchSize) {
+        return createQuery()
+                .setFetchSize(fetchSize)
+                .stream()
+                .map(OperationalDataRecordQuery::transform);
+    }
+
+    private Query<Tuple> createQuery() {
         query.multiselect(projection).where(pred);
         if (order != null) {
             query.orderBy(order);
         }
-        return transform(session.createQuery(query)
+        return session.createQuery(query)
                 .setReadOnly(true)
-                .setMaxResults(maxRecords)
-                .getResultList());
+                .setMaxResults(maxRecords);
     }
 
     void between(long fromTs, long toTs) {
@@ -186,20 +199,24 @@ final class OperationalDataRecordQuery {
         List<OperationalDataRecord> tmp = new ArrayList<>(result.size());
 
         for (Tuple t : result) {
-            final OperationalDataRecord record = new OperationalDataRecord();
-            for (TupleElement<?> te : t.getElements()) {
-                final Method method = SETTERS.get(te.getAlias());
-                if (method != null) {
-                    try {
-                        method.invoke(record, t.get(te));
-                    } catch (InvocationTargetException | IllegalAccessException e) {
-                        throw new IllegalArgumentException("Unable to transform", e);
-                    }
+            tmp.add(transform(t));
+        }
+        return tmp;
+    }
+
+    private static OperationalDataRecord transform(Tuple t) {
+        final OperationalDataRecord record = new OperationalDataRecord();
+        for (TupleElement<?> te : t.getElements()) {
+            final Method method = SETTERS.get(te.getAlias());
+            if (method != null) {
+                try {
+                    method.invoke(record, t.get(te));
+                } catch (InvocationTargetException | IllegalAccessException e) {
+                    throw new IllegalArgumentException("Unable to transform", e);
                 }
             }
-            tmp.add(record);
         }
-        return tmp;
+        return record;
     }
 
     /*
@@ -0,0 +1,100 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static ee.ria.xroad.common.ErrorCodes.translateException;
+
+/**
+ * Writes the payload of the request getSecurityServerOperationalData
+ * incrementally as gzip compressed JSON, one record at a time. The produced
+ * JSON is the same as the payload of {@link OperationalDataRecords}.
+ */
+class OperationalDataRecordsWriter implements Closeable {
+
+    private static final String RECORDS = "records";
+
+    private final Gson gson;
+
+    private final GZIPOutputStream gzip;
+
+    private final JsonWriter writer;
+
+    private int count = 0;
+
+    OperationalDataRecordsWriter(OutputStream out, Gson gson)
+            throws IOException {
+        this.gson = gson;
+        this.gzip = new GZIPOutputStream(out);
+        this.writer = new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(gzip, StandardCharsets.UTF_8)));
+
+        writer.beginObject();
+        writer.name(RECORDS);
+        writer.beginArray();
+    }
+
+    /**
+     * Appends the record to the payload.
+     * @param record the operational data record
+     */
+    void write(OperationalDataRecord record) {
+        try {
+            gson.toJson(record, OperationalDataRecord.class, writer);
+        } catch (Exception e) {
+            throw translateException(e);
+        }
+
+        count++;
+    }
+
+    /**
+     * @return the number of records written
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Completes the payload. The underlying stream is not closed.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+        gzip.finish();
+    }
+}
@@ -33,6 +33,7 @@ import ee.ria.xroad.common.message.MultipartSoapMessageEncoder;
 import ee.ria.xroad.common.message.SoapMessageEncoder;
 import ee.ria.xroad.common.message.SoapMessageImpl;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
+import ee.ria.xroad.common.util.CachingStream;
 import ee.ria.xroad.common.util.MimeTypes;
 import ee.ria.xroad.common.util.TimeUtils;
 import ee.ria.xroad.opmonitordaemon.message.GetSecurityServerOperationalDataResponseType;
@@ -101,24 +102,33 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
                 clientId, recordsFrom, recordsTo, serviceProviderId,
                 outputFields);
 
-        GetSecurityServerOperationalDataResponseType opDataResponse =
-                buildOperationalDataResponse(
-                        getClientForFilter(clientId, serverId), recordsFrom,
-                        recordsTo, serviceProviderId, outputFields,
-                        recordsAvailableBefore);
+        // The records are counted while writing the payload, the payload is
+        // cached until the SOAP part containing the count has been encoded.
+        CachingStream payload = new CachingStream();
+
+        try {
+            GetSecurityServerOperationalDataResponseType opDataResponse =
+                    buildOperationalDataResponse(
+                            getClientForFilter(clientId, serverId), recordsFrom,
+                            recordsTo, serviceProviderId, outputFields,
+                            recordsAvailableBefore, payload);
 
-        try (SoapMessageEncoder responseEncoder = new MultipartSoapMessageEncoder(out)) {
-            contentTypeCallback.accept(responseEncoder.getContentType());
+            try (SoapMessageEncoder responseEncoder =
+                    new MultipartSoapMessageEncoder(out)) {
+                contentTypeCallback.accept(responseEncoder.getContentType());
 
-            SoapEncoderAttachmentMarshaller attachmentMarshaller =
-                    new SoapEncoderAttachmentMarshaller(responseEncoder);
-            Marshaller marshaller = createMarshaller(attachmentMarshaller);
+                SoapEncoderAttachmentMarshaller attachmentMarshaller =
+                        new SoapEncoderAttachmentMarshaller(responseEncoder);
+                Marshaller marshaller = createMarshaller(attachmentMarshaller);
 
-            SoapMessageImpl response = createResponse(requestSoap, marshaller,
-                    createResponseElement(opDataResponse));
-            responseEncoder.soap(response, new HashMap<>());
+                SoapMessageImpl response = createResponse(requestSoap,
+                        marshaller, createResponseElement(opDataResponse));
+                responseEncoder.soap(response, new HashMap<>());
 
-            attachmentMarshaller.encodeAttachments();
+                attachmentMarshaller.encodeAttachments();
+            }
+        } finally {
+            payload.consume();
         }
     }
 
@@ -162,9 +172,8 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
     protected GetSecurityServerOperationalDataResponseType
             buildOperationalDataResponse(ClientId filterByClient,
             long recordsFrom, long recordsTo, ClientId filterByServiceProvider,
-            Set<String> outputFields, long recordsAvailableBefore)
-            throws IOException {
-        OperationalDataRecords responseRecords;
+            Set<String> outputFields, long recordsAvailableBefore,
+            CachingStream payload) throws IOException {
         GetSecurityServerOperationalDataResponseType opDataResponse =
                 OBJECT_FACTORY
                         .createGetSecurityServerOperationalDataResponseType();
@@ -179,22 +188,22 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
             opDataResponse.setNextRecordsFrom(recordsAvailableBefore);
         }
 
-        responseRecords = getOperationalDataRecords(filterByClient,
-                recordsFrom, recordsTo, filterByServiceProvider, outputFields);
+        Long nextRecordsFrom;
 
-        opDataResponse.setRecordsCount(responseRecords.size());
-        String payload = responseRecords.getPayload(GSON);
+        try (OperationalDataRecordsWriter writer =
+                new OperationalDataRecordsWriter(payload, GSON)) {
+            nextRecordsFrom = writeOperationalDataRecords(filterByClient,
+                    recordsFrom, recordsTo, filterByServiceProvider,
+                    outputFields, writer);
 
-        // Optimize memory usage: release records memory before compressing
-        // operation.
-        responseRecords.getRecords().clear();
+            opDataResponse.setRecordsCount(writer.getCount());
+        }
 
-        opDataResponse.setRecords(createAttachmentDataSource(compress(payload),
-                CID, MimeTypes.GZIP));
+        opDataResponse.setRecords(createAttachmentDataSource(payload, CID,
+                MimeTypes.GZIP));
 
-        if (responseRecords.getNextRecordsFrom() != null) {
-            opDataResponse.setNextRecordsFrom(
-                    responseRecords.getNextRecordsFrom());
+        if (nextRecordsFrom != null) {
+            opDataResponse.setNextRecordsFrom(nextRecordsFrom);
         }
 
         return opDataResponse;
@@ -206,13 +215,19 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
                 opDataResponse);
     }
 
-    protected OperationalDataRecords getOperationalDataRecords(
+    /**
+     * Writes the queried records to the payload writer.
+     * @return the timestamp to query the next records from in case of
+     * records overflow, null otherwise
+     */
+    protected Long writeOperationalDataRecords(
             ClientId filterByClient, long recordsFrom, long recordsTo,
-            ClientId filterByServiceProvider, Set<String> outputFields) {
+            ClientId filterByServiceProvider, Set<String> outputFields,
+            OperationalDataRecordsWriter writer) {
         try {
             return OperationalDataRecordManager.queryRecords(recordsFrom,
                     recordsTo, filterByClient, filterByServiceProvider,
-                    outputFields);
+                    outputFields, writer::write);
         } catch (Exception e) {
             log.error("Failed to get records for response", e);
 
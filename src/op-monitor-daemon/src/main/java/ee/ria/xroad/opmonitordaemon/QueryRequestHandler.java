@@ -29,20 +29,20 @@ import ee.ria.xroad.common.message.JaxbUtils;
 import ee.ria.xroad.common.message.SoapMessageEncoder;
 import ee.ria.xroad.common.message.SoapMessageImpl;
 import ee.ria.xroad.common.message.SoapUtils;
+import ee.ria.xroad.common.util.CachingStream;
 import ee.ria.xroad.common.util.JsonUtils;
 import ee.ria.xroad.common.util.ResourceUtils;
 import ee.ria.xroad.opmonitordaemon.message.ObjectFactory;
 
 import com.google.gson.Gson;
-import com.sun.istack.ByteArrayDataSource;
 import com.sun.xml.bind.api.AccessorException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.xml.sax.SAXException;
 
 import javax.activation.DataHandler;
+import javax.activation.DataSource;
 import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
@@ -55,15 +55,13 @@ import javax.xml.bind.attachment.AttachmentMarshaller;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 
-import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.UUID;
 import java.util.function.Consumer;
-import java.util.zip.GZIPOutputStream;
 
 import static ee.ria.xroad.common.ErrorCodes.CLIENT_X;
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
@@ -182,26 +180,28 @@ abstract class QueryRequestHandler {
     }
 
     static DataHandler createAttachmentDataSource(
-            byte[] payload, String cid, String contentType) {
-        return new DataHandler(new ByteArrayDataSource(payload, contentType)) {
+            CachingStream payload, String cid, String contentType) {
+        return new DataHandler(new DataSource() {
             @Override
-            public String getName() {
-                return cid;
+            public InputStream getInputStream() {
+                return payload.getCachedContents();
             }
-        };
-    }
 
-    static byte[] compress(String data) throws IOException {
-        byte[] dataBytes = data.getBytes(StandardCharsets.UTF_8);
+            @Override
+            public OutputStream getOutputStream() {
+                throw new UnsupportedOperationException();
+            }
 
-        try (ByteArrayOutputStream bos = new ByteArrayOutputStream(
-                dataBytes.length)) {
-            GZIPOutputStream gzip = new GZIPOutputStream(bos);
-            gzip.write(dataBytes);
-            gzip.close();
+            @Override
+            public String getContentType() {
+                return contentType;
+            }
 
-            return bos.toByteArray();
-        }
+            @Override
+            public String getName() {
+                return cid;
+            }
+        });
     }
 
     private static Map<String, String> getAdditionalAttachmentHeaders(
@@ -24,15 +24,20 @@
  */
 package ee.ria.xroad.opmonitordaemon;
 
+import com.codahale.metrics.Clock;
 import com.codahale.metrics.Counter;
-import com.codahale.metrics.Reservoir;
-import com.codahale.metrics.SlidingTimeWindowReservoir;
 
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 /**
- * A counter metric that uses the sliding time window reservoir internally to
+ * A counter metric that counts the events in a sliding window of time to
  * support periodic and configurable resetting.
+ * The window is divided into a fixed number of buckets, each holding the
+ * event count of its slice of time, so the memory used by the counter does
+ * not depend on the number of events and both incrementing and reading the
+ * count are cheap. The oldest bucket expires as a whole, the window thus
+ * slides in steps of window / {@value #BUCKET_COUNT}.
  * This counter does not support manually decrementing the count (the dec()
  * methods raise a runtime exception).
  * We extend Counter instead of implementing the Metric and Counting
@@ -41,7 +46,16 @@ import java.util.concurrent.TimeUnit;
  */
 class SlidingTimeWindowCounter extends Counter {
 
-    private final Reservoir reservoir;
+    static final int BUCKET_COUNT = 60;
+
+    private final Clock clock;
+
+    private final long bucketDurationNanos;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+
+    // The ordinal number of the slice of time each bucket currently holds.
+    private final long[] bucketTicks = new long[BUCKET_COUNT];
 
     /**
      * Creates a counter with the given window of time.
@@ -50,27 +64,57 @@ class SlidingTimeWindowCounter extends Counter {
      * @param windowUnit the unit of {@code window}
      */
     SlidingTimeWindowCounter(long window, TimeUnit windowUnit) {
-        reservoir = new SlidingTimeWindowReservoir(window, windowUnit);
+        this(window, windowUnit, Clock.defaultClock());
+    }
+
+    /**
+     * Creates a counter with the given window of time using the given clock.
+     *
+     * @param window     the window of time
+     * @param windowUnit the unit of {@code window}
+     * @param clock      the clock used for measuring time
+     */
+    SlidingTimeWindowCounter(long window, TimeUnit windowUnit, Clock clock) {
+        this.clock = clock;
+        this.bucketDurationNanos = Math.max(1,
+                windowUnit.toNanos(window) / BUCKET_COUNT);
+
+        Arrays.fill(bucketTicks, Long.MIN_VALUE);
     }
 
     /**
-     * @return the snapshot size of the sliding time window reservoir.
+     * @return the number of events in the sliding time window.
      */
     @Override
-    public long getCount() {
-        return reservoir.getSnapshot().size();
+    public synchronized long getCount() {
+        long tick = currentTick();
+        long count = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (bucketTicks[i] > tick - BUCKET_COUNT) {
+                count += counts[i];
+            }
+        }
+
+        return count;
     }
 
     @Override
     public void inc() {
-        reservoir.update(1L);
+        inc(1L);
     }
 
     @Override
-    public void inc(long n) {
-        for (int i = 0; i < n; ++i) {
-            inc();
+    public synchronized void inc(long n) {
+        long tick = currentTick();
+        int index = (int) Math.floorMod(tick, (long) BUCKET_COUNT);
+
+        if (bucketTicks[index] != tick) {
+            bucketTicks[index] = tick;
+            counts[index] = 0;
         }
+
+        counts[index] += n;
     }
 
     @Override
@@ -83,4 +127,7 @@ class SlidingTimeWindowCounter extends Counter {
         throw new RuntimeException("This counter can be incremented only");
     }
 
+    private long currentTick() {
+        return Math.floorDiv(clock.getTick(), bucketDurationNanos);
+    }
 }
@@ -0,0 +1,358 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * A reservoir that keeps the distribution of the values in a sliding window
+ * of time in constant memory, instead of storing each value.
+ * The window is divided into a fixed number of time buckets. Each time
+ * bucket records the count, sum, sum of squares, minimum and maximum of its
+ * values, so the minimum, maximum, mean and standard deviation are exact.
+ * Quantiles are estimated from log-linear value buckets (in the manner of
+ * HDR histograms), with the relative error of at most
+ * 1 / {@value #SUB_BUCKET_COUNT}.
+ * The oldest time bucket expires as a whole, the window thus slides in steps
+ * of window / {@value #TIME_BUCKET_COUNT}.
+ */
+class SlidingTimeWindowHistogramReservoir implements Reservoir {
+
+    static final int TIME_BUCKET_COUNT = 20;
+
+    private static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    // Values up to 2^MAX_EXPONENT - 1 are distinguished, larger values fall
+    // into the last value bucket.
+    private static final int MAX_EXPONENT = 40;
+    private static final int VALUE_BUCKET_COUNT =
+            (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final Clock clock;
+
+    private final long bucketDurationNanos;
+
+    private final TimeBucket[] buckets = new TimeBucket[TIME_BUCKET_COUNT];
+
+    /**
+     * Creates a reservoir with the given window of time.
+     *
+     * @param window     the window of time
+     * @param windowUnit the unit of {@code window}
+     */
+    SlidingTimeWindowHistogramReservoir(long window, TimeUnit windowUnit) {
+        this(window, windowUnit, Clock.defaultClock());
+    }
+
+    /**
+     * Creates a reservoir with the given window of time using the given clock.
+     *
+     * @param window     the window of time
+     * @param windowUnit the unit of {@code window}
+     * @param clock      the clock used for measuring time
+     */
+    SlidingTimeWindowHistogramReservoir(long window, TimeUnit windowUnit,
+            Clock clock) {
+        this.clock = clock;
+        this.bucketDurationNanos = Math.max(1,
+                windowUnit.toNanos(window) / TIME_BUCKET_COUNT);
+
+        for (int i = 0; i < TIME_BUCKET_COUNT; i++) {
+            buckets[i] = new TimeBucket();
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        long tick = currentTick();
+        long count = 0;
+
+        for (TimeBucket bucket : buckets) {
+            if (bucket.isActive(tick)) {
+                count += bucket.count;
+            }
+        }
+
+        return (int) Math.min(Integer.MAX_VALUE, count);
+    }
+
+    @Override
+    public synchronized void update(long value) {
+        long tick = currentTick();
+        TimeBucket bucket = buckets[(int) Math.floorMod(tick,
+                (long) TIME_BUCKET_COUNT)];
+
+        if (bucket.tick != tick) {
+            bucket.reset(tick);
+        }
+
+        bucket.update(value);
+    }
+
+    @Override
+    public synchronized Snapshot getSnapshot() {
+        long tick = currentTick();
+        long[] valueCounts = new long[VALUE_BUCKET_COUNT];
+        long count = 0;
+        double sum = 0;
+        double sumOfSquares = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+
+        for (TimeBucket bucket : buckets) {
+            if (!bucket.isActive(tick) || bucket.count == 0) {
+                continue;
+            }
+
+            for (int i = 0; i < VALUE_BUCKET_COUNT; i++) {
+                valueCounts[i] += bucket.valueCounts[i];
+            }
+
+            count += bucket.count;
+            sum += bucket.sum;
+            sumOfSquares += bucket.sumOfSquares;
+            min = Math.min(min, bucket.min);
+            max = Math.max(max, bucket.max);
+        }
+
+        return new HistogramSnapshot(valueCounts, count, sum, sumOfSquares,
+                min, max);
+    }
+
+    private long currentTick() {
+        return Math.floorDiv(clock.getTick(), bucketDurationNanos);
+    }
+
+    /**
+     * @param value a non-negative value
+     * @return the index of the value bucket holding the given value
+     */
+    static int valueBucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT * 2) {
+            return (int) Math.max(0, value);
+        }
+
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+
+        if (exponent >= MAX_EXPONENT) {
+            return VALUE_BUCKET_COUNT - 1;
+        }
+
+        int shift = exponent - SUB_BUCKET_BITS;
+        long subBucket = (value >> shift) - SUB_BUCKET_COUNT;
+
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) subBucket;
+    }
+
+    /**
+     * @param index a value bucket index
+     * @return the lowest value of the value bucket
+     */
+    static long valueBucketLowerBound(int index) {
+        if (index < SUB_BUCKET_COUNT * 2) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+
+        return subBucket << shift;
+    }
+
+    private static long valueBucketMidpoint(int index) {
+        long lower = valueBucketLowerBound(index);
+        long width = index < SUB_BUCKET_COUNT * 2 ? 1
+                : 1L << (index / SUB_BUCKET_COUNT - 1);
+
+        return lower + (width - 1) / 2;
+    }
+
+    private static final class TimeBucket {
+        private long tick = Long.MIN_VALUE;
+        private long count;
+        private double sum;
+        private double sumOfSquares;
+        private long min;
+        private long max;
+
+        // Allocated on first use and reused when the bucket is reset. An int
+        // is enough for the values of a single time bucket and keeps the
+        // reservoir at about 24 KB.
+        private int[] valueCounts;
+
+        boolean isActive(long currentTick) {
+            return tick > currentTick - TIME_BUCKET_COUNT;
+        }
+
+        void reset(long newTick) {
+            tick = newTick;
+            count = 0;
+            sum = 0;
+            sumOfSquares = 0;
+            min = Long.MAX_VALUE;
+            max = Long.MIN_VALUE;
+
+            if (valueCounts != null) {
+                Arrays.fill(valueCounts, 0);
+            }
+        }
+
+        void update(long value) {
+            if (valueCounts == null) {
+                valueCounts = new int[VALUE_BUCKET_COUNT];
+            }
+
+            valueCounts[valueBucketIndex(value)]++;
+            count++;
+            sum += value;
+            sumOfSquares += (double) value * value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+    }
+
+    /**
+     * Snapshot of the merged time buckets of the reservoir.
+     */
+    static final class HistogramSnapshot extends Snapshot {
+        private final long[] valueCounts;
+        private final long count;
+        private final double sum;
+        private final double sumOfSquares;
+        private final long min;
+        private final long max;
+
+        HistogramSnapshot(long[] valueCounts, long count, double sum,
+                double sumOfSquares, long min, long max) {
+            this.valueCounts = valueCounts;
+            this.count = count;
+            this.sum = sum;
+            this.sumOfSquares = sumOfSquares;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public double getValue(double quantile) {
+            if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile)) {
+                throw new IllegalArgumentException(
+                        quantile + " is not in [0..1]");
+            }
+
+            if (count == 0) {
+                return 0.0;
+            }
+
+            if (quantile == 0.0) {
+                return min;
+            }
+
+            if (quantile == 1.0) {
+                return max;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+
+            for (int i = 0; i < valueCounts.length; i++) {
+                seen += valueCounts[i];
+
+                if (seen >= rank) {
+                    return clamp(valueBucketMidpoint(i));
+                }
+            }
+
+            return max;
+        }
+
+        /**
+         * @return the representative value of each non-empty value bucket
+         */
+        @Override
+        public long[] getValues() {
+            return IntStream.range(0, valueCounts.length)
+                    .filter(i -> valueCounts[i] > 0)
+                    .mapToLong(i -> clamp(valueBucketMidpoint(i)))
+                    .toArray();
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(Integer.MAX_VALUE, count);
+        }
+
+        @Override
+        public long getMax() {
+            return count == 0 ? 0 : max;
+        }
+
+        @Override
+        public double getMean() {
+            return count == 0 ? 0.0 : sum / count;
+        }
+
+        @Override
+        public long getMin() {
+            return count == 0 ? 0 : min;
+        }
+
+        @Override
+        public double getStdDev() {
+            if (count <= 1) {
+                return 0.0;
+            }
+
+            double mean = getMean();
+            double variance = (sumOfSquares - mean * sum) / (count - 1);
+
+            return Math.sqrt(Math.max(0.0, variance));
+        }
+
+        @Override
+        public void dump(OutputStream output) {
+            try (PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                    output, StandardCharsets.UTF_8))) {
+                for (long value : getValues()) {
+                    out.printf("%d%n", value);
+                }
+            }
+        }
+
+        private long clamp(long value) {
+            return Math.max(min, Math.min(max, value));
+        }
+    }
+}
@@ -34,8 +34,11 @@ import org.apache.commons.lang3.StringUtils;
 
 import javax.servlet.http.HttpServletRequest;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static ee.ria.xroad.common.util.TimeUtils.getEpochSecond;
 
@@ -47,6 +50,12 @@ class StoreRequestProcessor {
 
     private static final Gson GSON = JsonUtils.getSerializer();
 
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+
+    private static final String GZIP = "gzip";
+
+    private static final String IDENTITY = "identity";
+
     /** The servlet request. */
     private HttpServletRequest servletRequest;
 
@@ -65,7 +74,7 @@ class StoreRequestProcessor {
      * @throws Exception in case of any errors
      */
     void process() throws Exception {
-        String rawJson = IOUtils.toString(servletRequest.getInputStream(),
+        String rawJson = IOUtils.toString(getRequestContent(servletRequest),
                 StandardCharsets.UTF_8);
 
         log.trace("Incoming JSON: {}", rawJson);
@@ -80,6 +89,25 @@ class StoreRequestProcessor {
         HealthDataMetrics.processRecords(healthMetricRegistry, records);
     }
 
+    // The operational monitoring buffer may compress the request payload
+    // using gzip.
+    static InputStream getRequestContent(HttpServletRequest request)
+            throws IOException {
+        String contentEncoding = request.getHeader(HEADER_CONTENT_ENCODING);
+
+        if (StringUtils.isBlank(contentEncoding)
+                || IDENTITY.equalsIgnoreCase(contentEncoding.trim())) {
+            return request.getInputStream();
+        }
+
+        if (GZIP.equalsIgnoreCase(contentEncoding.trim())) {
+            return new GZIPInputStream(request.getInputStream());
+        }
+
+        throw new IOException("Unsupported content encoding "
+                + contentEncoding);
+    }
+
     // Get usable operational data to be stored. If no such data is found,
     // send an error message right away.
     private static List<OperationalDataRecord> prepareRawStoreData(
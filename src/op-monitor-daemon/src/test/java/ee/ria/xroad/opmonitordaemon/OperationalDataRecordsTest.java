@@ -27,10 +27,16 @@ package ee.ria.xroad.opmonitordaemon;
 import ee.ria.xroad.common.util.JsonUtils;
 
 import com.google.gson.Gson;
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertEquals;
 
@@ -55,4 +61,34 @@ public class OperationalDataRecordsTest {
 
         assertEquals("{\"records\":[{},{}]}", records.getPayload(GSON));
     }
+
+    /**
+     * Test that the streamed payload equals the payload of the records.
+     * @throws Exception if an error occurs.
+     */
+    @Test
+    public void writeRecordsPayload() throws Exception {
+        OperationalDataRecord record = new OperationalDataRecord();
+        record.setServiceCode("getRandom");
+        record.setMonitoringDataTs(1474968979L);
+
+        List<OperationalDataRecord> recordList = new ArrayList<>();
+        recordList.add(record);
+        recordList.add(new OperationalDataRecord());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (OperationalDataRecordsWriter writer =
+                new OperationalDataRecordsWriter(out, GSON)) {
+            recordList.forEach(writer::write);
+
+            assertEquals(2, writer.getCount());
+        }
+
+        try (InputStream in = new GZIPInputStream(
+                new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(new OperationalDataRecords(recordList).getPayload(GSON),
+                    IOUtils.toString(in, StandardCharsets.UTF_8));
+        }
+    }
 }
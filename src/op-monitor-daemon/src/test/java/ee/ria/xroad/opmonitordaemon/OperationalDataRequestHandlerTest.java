@@ -26,6 +26,7 @@ package ee.ria.xroad.opmonitordaemon;
 
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.util.CachingStream;
 import ee.ria.xroad.common.util.TimeUtils;
 import ee.ria.xroad.opmonitordaemon.message.GetSecurityServerOperationalDataResponseType;
 
@@ -72,13 +73,19 @@ public class OperationalDataRequestHandlerTest extends BaseTestUsingDB {
         OperationalDataRequestHandler handler =
                 new OperationalDataRequestHandler();
         long recordsAvailableBefore = TimeUtils.getEpochSecond();
-
-        GetSecurityServerOperationalDataResponseType response = handler
-                .buildOperationalDataResponse(client, 1474968960L,
-                        recordsAvailableBefore + 10, null,
-                        Collections.emptySet(), recordsAvailableBefore);
-
-        assertNotNull(response.getNextRecordsFrom());
+        CachingStream payload = new CachingStream();
+
+        try {
+            GetSecurityServerOperationalDataResponseType response = handler
+                    .buildOperationalDataResponse(client, 1474968960L,
+                            recordsAvailableBefore + 10, null,
+                            Collections.emptySet(), recordsAvailableBefore,
+                            payload);
+
+            assertNotNull(response.getNextRecordsFrom());
+        } finally {
+            payload.consume();
+        }
     }
 
     @Test
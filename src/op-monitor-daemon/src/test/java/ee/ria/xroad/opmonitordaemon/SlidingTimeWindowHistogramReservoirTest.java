@@ -0,0 +1,168 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Snapshot;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the bucketed sliding time window counter and histogram reservoir.
+ */
+public class SlidingTimeWindowHistogramReservoirTest {
+
+    private static final double DELTA = 1e-9;
+
+    private static class ManualClock extends Clock {
+        private long tick = 0;
+
+        @Override
+        public long getTick() {
+            return tick;
+        }
+
+        void addSeconds(long seconds) {
+            tick += TimeUnit.SECONDS.toNanos(seconds);
+        }
+    }
+
+    @Test
+    public void counterExpiresEventsOutsideWindow() {
+        ManualClock clock = new ManualClock();
+        SlidingTimeWindowCounter counter =
+                new SlidingTimeWindowCounter(60, TimeUnit.SECONDS, clock);
+
+        counter.inc();
+        counter.inc(5);
+        clock.addSeconds(30);
+        counter.inc(2);
+
+        assertEquals(8, counter.getCount());
+
+        clock.addSeconds(40);
+
+        assertEquals(2, counter.getCount());
+
+        clock.addSeconds(60);
+
+        assertEquals(0, counter.getCount());
+    }
+
+    @Test
+    public void snapshotStatisticsAreExact() {
+        ManualClock clock = new ManualClock();
+        SlidingTimeWindowHistogramReservoir reservoir =
+                new SlidingTimeWindowHistogramReservoir(60, TimeUnit.SECONDS,
+                        clock);
+
+        reservoir.update(2);
+        reservoir.update(4);
+        clock.addSeconds(10);
+        reservoir.update(4);
+        reservoir.update(10);
+
+        Snapshot snapshot = reservoir.getSnapshot();
+
+        assertEquals(4, snapshot.size());
+        assertEquals(2, snapshot.getMin());
+        assertEquals(10, snapshot.getMax());
+        assertEquals(5.0, snapshot.getMean(), DELTA);
+        assertEquals(Math.sqrt(12.0), snapshot.getStdDev(), DELTA);
+
+        clock.addSeconds(55);
+        snapshot = reservoir.getSnapshot();
+
+        assertEquals(2, snapshot.size());
+        assertEquals(4, snapshot.getMin());
+        assertEquals(7.0, snapshot.getMean(), DELTA);
+
+        clock.addSeconds(60);
+
+        assertEquals(0, reservoir.getSnapshot().size());
+        assertEquals(0, reservoir.getSnapshot().getMax());
+    }
+
+    @Test
+    public void quantilesAreWithinRelativeError() {
+        SlidingTimeWindowHistogramReservoir reservoir =
+                new SlidingTimeWindowHistogramReservoir(60, TimeUnit.SECONDS,
+                        new ManualClock());
+
+        for (long value = 1; value <= 100000; value++) {
+            reservoir.update(value);
+        }
+
+        Snapshot snapshot = reservoir.getSnapshot();
+        double maxError = 1.0
+                / SlidingTimeWindowHistogramReservoir.SUB_BUCKET_COUNT;
+
+        assertEquals(50000, snapshot.getMedian(), 50000 * maxError);
+        assertEquals(99000, snapshot.get99thPercentile(), 99000 * maxError);
+        assertEquals(99900, snapshot.get999thPercentile(), 99900 * maxError);
+        assertEquals(1, (long) snapshot.getValue(0.0));
+        assertEquals(100000, (long) snapshot.getValue(1.0));
+    }
+
+    @Test
+    public void quantilesExpireWithTimeBuckets() {
+        ManualClock clock = new ManualClock();
+        SlidingTimeWindowHistogramReservoir reservoir =
+                new SlidingTimeWindowHistogramReservoir(60, TimeUnit.SECONDS,
+                        clock);
+
+        for (int i = 0; i < 100; i++) {
+            reservoir.update(1000);
+        }
+
+        clock.addSeconds(30);
+        reservoir.update(10);
+
+        assertEquals(1000, reservoir.getSnapshot().getMedian(), 1000.0
+                / SlidingTimeWindowHistogramReservoir.SUB_BUCKET_COUNT);
+
+        clock.addSeconds(40);
+
+        assertEquals(10, reservoir.getSnapshot().getMedian(), DELTA);
+        assertArrayEquals(new long[] {10}, reservoir.getSnapshot().getValues());
+    }
+
+    @Test
+    public void valueBucketsAreContiguous() {
+        for (long value = 0; value < 1 << 20; value++) {
+            int index = SlidingTimeWindowHistogramReservoir
+                    .valueBucketIndex(value);
+
+            assertEquals(true, SlidingTimeWindowHistogramReservoir
+                    .valueBucketLowerBound(index) <= value);
+            assertEquals(true, SlidingTimeWindowHistogramReservoir
+                    .valueBucketLowerBound(index + 1) > value);
+        }
+    }
+}
@@ -34,6 +34,7 @@ cp -p %{srcdir}/../../../addons/messagelog/build/libs/messagelog-1.0.jar %{build
 cp -p %{srcdir}/../../../addons/messagelog/scripts/archive-http-transporter.sh %{buildroot}/usr/share/xroad/scripts
 cp -p %{srcdir}/default-configuration/addons/message-log.ini %{buildroot}/etc/xroad/conf.d/addons/
 cp -p %{srcdir}/common/addon/proxy/messagelog-changelog.xml %{buildroot}/usr/share/xroad/db/
+cp -p %{srcdir}/common/addon/proxy/messagelog-partitioning-changelog.xml %{buildroot}/usr/share/xroad/db/
 cp -p %{srcdir}/common/addon/proxy/messagelog/* %{buildroot}/usr/share/xroad/db/messagelog
 
 cp -p %{srcdir}/../../../addons/messagelog/scripts/demo-upload.pl %{buildroot}/usr/share/doc/xroad-addon-messagelog/archive-server/
@@ -55,6 +56,7 @@ rm -rf %{buildroot}
 /usr/share/doc/xroad-addon-messagelog/archive-hashchain-verifier/archive-hashchain-verifier.rb
 /usr/share/doc/xroad-addon-messagelog/archive-server/demo-upload.pl
 /usr/share/xroad/db/messagelog-changelog.xml
+/usr/share/xroad/db/messagelog-partitioning-changelog.xml
 /usr/share/xroad/db/messagelog
 /usr/share/xroad/jlib/addon/proxy/messagelog-1.0.jar
 /usr/share/xroad/jlib/addon/proxy/messagelog.conf
@@ -32,18 +32,21 @@ import ee.ria.xroad.common.PortNumbers;
 import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.SystemPropertiesLoader;
 import ee.ria.xroad.common.Version;
+import ee.ria.xroad.common.cert.CertChainVerificationCache;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.CachingServerConfImpl;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
 import ee.ria.xroad.common.monitoring.MonitorAgent;
 import ee.ria.xroad.common.signature.BatchSigner;
 import ee.ria.xroad.common.util.AdminPort;
+import ee.ria.xroad.common.util.CachingStream;
 import ee.ria.xroad.common.util.JobManager;
 import ee.ria.xroad.common.util.JsonUtils;
 import ee.ria.xroad.common.util.StartStop;
 import ee.ria.xroad.common.util.healthcheck.HealthCheckPort;
 import ee.ria.xroad.proxy.addon.AddOn;
 import ee.ria.xroad.proxy.clientproxy.ClientProxy;
+import ee.ria.xroad.proxy.conf.KeyConfChangeWatcher;
 import ee.ria.xroad.proxy.messagelog.MessageLog;
 import ee.ria.xroad.proxy.opmonitoring.OpMonitoring;
 import ee.ria.xroad.proxy.serverproxy.ServerProxy;
@@ -71,6 +74,7 @@ import java.net.URL;
 import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
@@ -196,6 +200,8 @@ public final class ProxyMain {
 
         SERVICES.add(new CertHashBasedOcspResponder());
 
+        SERVICES.add(new KeyConfChangeWatcher());
+
         SERVICES.add(createAdminPort());
 
         if (SystemProperties.isHealthCheckEnabled()) {
@@ -228,9 +234,39 @@ public final class ProxyMain {
 
         addMaintenanceHandler(adminPort);
 
+        addCacheStatisticsHandler(adminPort);
+
         return adminPort;
     }
 
+    /**
+     * Statistics of the certificate chain verification cache and of the cached message streams, the same values
+     * that are periodically logged by {@link ServerConfStatsLogger}.
+     */
+    private static void addCacheStatisticsHandler(AdminPort adminPort) {
+        adminPort.addHandler("/cachestatistics", new AdminPort.SynchronousCallback() {
+            @Override
+            public void handle(HttpServletRequest request, HttpServletResponse response) {
+                Map<String, Long> result = new LinkedHashMap<>();
+                result.put("certChainVerificationCacheEntries", CertChainVerificationCache.size());
+                result.put("certChainVerificationCacheHits", CertChainVerificationCache.getHitCount());
+                result.put("certChainVerificationCacheMisses", CertChainVerificationCache.getMissCount());
+                result.put("cachingStreams", CachingStream.getStreamCount());
+                result.put("cachingStreamsSpilledToFile", CachingStream.getSpilledStreamCount());
+                result.put("cachingStreamBytesInMemory", CachingStream.getBufferedBytes());
+                result.put("cachingStreamBytesInFile", CachingStream.getSpilledBytes());
+
+                try {
+                    response.setCharacterEncoding("UTF8");
+                    JsonUtils.getSerializer().toJson(result, response.getWriter());
+                } catch (IOException e) {
+                    log.error("Unable to write to provided response, delegated request handling failed, response may"
+                            + " be malformed", e);
+                }
+            }
+        });
+    }
+
     private static void addMaintenanceHandler(AdminPort adminPort) {
         adminPort.addHandler("/maintenance", new AdminPort.SynchronousCallback() {
             @Override
@@ -58,4 +58,19 @@ class AntiDosConfiguration {
     double getMaxHeapUsage() {
         return SystemProperties.getAntiDosMaxHeapUsage();
     }
+
+    /**
+     * @return the number of connections a known partner may get processed
+     * during its turn. Connections from unknown addresses get one per turn.
+     */
+    int getKnownPartnerWeight() {
+        return SystemProperties.getAntiDosKnownPartnerWeight();
+    }
+
+    /**
+     * @return the interval in milliseconds between system resource samples
+     */
+    int getResourceSampleInterval() {
+        return SystemProperties.getAntiDosResourceSampleInterval();
+    }
 }
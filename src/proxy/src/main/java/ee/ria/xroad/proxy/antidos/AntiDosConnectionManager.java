@@ -27,45 +27,89 @@ package ee.ria.xroad.proxy.antidos;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.util.SystemMetrics;
 
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Manages the incoming connections and prevents system resource exhaustion.
+ *
+ * Every known partner (address of a member's security server in the global
+ * configuration) has its own queue of waiting connections, connections from
+ * unknown addresses share a single queue. The partners with waiting
+ * connections are served in a weighted round-robin fashion. Accepting a
+ * connection does not take any locks, and the system resources are sampled
+ * periodically instead of for every connection.
  */
 @Slf4j
 class AntiDosConnectionManager<T extends SocketChannelWrapper> {
 
-    // Tiny wrapper class for active connections of a partner
+    // Connection queue and statistics of a partner
     private class HostData {
-        final Deque<T> connections = new LinkedBlockingDeque<>();
+        final int weight;
+
+        final Deque<T> connections = new ConcurrentLinkedDeque<>();
+        // Whether the partner is in the buffer of active partners
+        final AtomicBoolean scheduled = new AtomicBoolean();
+
+        final LongAdder accepted = new LongAdder();
+        final AtomicInteger queued = new AtomicInteger();
+        final LongAdder dropped = new LongAdder();
+
+        HostData(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Connection statistics of a partner.
+     */
+    @Value
+    static class PartnerStatistics {
+        private final long accepted;
+        private final int queued;
+        private final long dropped;
     }
 
     // The IP used for unknown members
-    private static final String UNKNOWN_ORG_IP = "0.0.0.0";
+    static final String UNKNOWN_ORG_IP = "0.0.0.0";
 
     // Holds the configuration
     protected final AntiDosConfiguration configuration;
 
-    // IP to HostData mapping
-    protected Map<String, HostData> database = new HashMap<>();
+    // IP to HostData mapping, replaced as a whole when the known members change
+    protected volatile Map<String, HostData> database;
 
     // Buffer of partners with waiting connections
-    protected LinkedBlockingQueue<HostData> activePartners =
+    protected BlockingQueue<HostData> activePartners =
             new LinkedBlockingQueue<>();
 
     // Holds a cache of previously known member IPs.
     // Used to determine if should sync the database when conf changed.
     private Set<String> previousKnownOrganizations = new HashSet<>();
 
+    // Result of the latest resource sample
+    private volatile boolean sufficientResources = true;
+    private volatile long freeFileDescriptors = 1;
+
+    // The partner being served and the number of connections it may still
+    // get during its turn. Only accessed by the thread taking connections.
+    private HostData currentPartner;
+    private int currentCredit;
+
     AntiDosConnectionManager(AntiDosConfiguration configuration) {
         if (configuration == null) {
             throw new IllegalArgumentException("configuration cannot be null");
@@ -73,7 +117,7 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
 
         this.configuration = configuration;
         this.previousKnownOrganizations.add(UNKNOWN_ORG_IP);
-        this.database.put(UNKNOWN_ORG_IP, new HostData());
+        this.database = Collections.singletonMap(UNKNOWN_ORG_IP, new HostData(1));
     }
 
     void init() throws Exception {
@@ -83,31 +127,27 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
 
     /**
      * Checks if we can accept the incoming connection. Basically verify that
-     * we have at least one free file handle.
+     * we had at least one free file handle when the resources were last sampled.
      */
     boolean canAccept() {
-        long freeFileHandles = getFreeFileDescriptorCount();
-        log.trace("canAccept({})", freeFileHandles);
-        return freeFileHandles > 0;
+        log.trace("canAccept({})", freeFileDescriptors);
+        return freeFileDescriptors > 0;
     }
 
     /**
      * Adds the connection into the partner's connection queue.
      */
-    synchronized void accept(T connection) {
-        // We need to synchronize the database with the existing members.
-        syncDatabase();
-
+    void accept(T connection) {
         // Find the host data for the incoming connection and register
         // the new connection to this host data
-        HostData currentPartner = getHostData(connection.getHostAddress());
-        currentPartner.connections.addFirst(connection);
+        HostData partner = getHostData(connection.getHostAddress());
+        partner.connections.addFirst(connection);
+        partner.queued.incrementAndGet();
+        partner.accepted.increment();
 
         // If the host data is not for an active partner,
         // add it to the connection buffer as the newest partner.
-        if (!activePartners.contains(currentPartner)) {
-            activePartners.add(currentPartner);
-        }
+        schedule(partner);
     }
 
     /**
@@ -126,33 +166,132 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
         sock.close();
     }
 
+    /**
+     * Samples the system resources and synchronizes the database with the
+     * known members. Called periodically by the connector.
+     */
+    void sampleResources() {
+        long freeFileDescriptorCount = getFreeFileDescriptorCount();
+        int minFreeFileHandles = configuration.getMinFreeFileHandles();
+        double cpuLoad = getCpuLoad();
+        double maxCpuLoad = configuration.getMaxCpuLoad();
+        double heapUsage = getHeapUsage();
+        double maxHeapUsage = configuration.getMaxHeapUsage();
+
+        log.trace("Resource usage when considering connections:\n"
+                + "freeFileDescriptorCount: {} ( >= {})\n"
+                + "cpuLoad: {} ( < {})\n"
+                + "heapUsage: {} ( < {})",
+                new Object[] {freeFileDescriptorCount, minFreeFileHandles,
+                    cpuLoad, maxCpuLoad, heapUsage, maxHeapUsage});
+
+        freeFileDescriptors = freeFileDescriptorCount;
+        sufficientResources = freeFileDescriptorCount >= minFreeFileHandles
+                && cpuLoad < maxCpuLoad
+                && heapUsage < maxHeapUsage;
+    }
+
+    /**
+     * Synchronizes the database with the addresses of the known members.
+     */
+    synchronized void syncDatabase() {
+        Set<String> knownAddresses = getAllAddresses();
+
+        if (previousKnownOrganizations.equals(knownAddresses)) {
+            // Nothing has changed, do not sync.
+            return;
+        }
+
+        Map<String, HostData> currentDatabase = database;
+        Map<String, HostData> newDatabase = new HashMap<>();
+
+        // Retain existing members connections
+        currentDatabase.keySet().stream()
+                .filter(knownAddresses::contains)
+                .forEach(existingAddress -> newDatabase.put(
+                        existingAddress, currentDatabase.get(existingAddress)));
+
+        // Add new members
+        knownAddresses.stream()
+                .filter(knownAddress -> !currentDatabase.containsKey(knownAddress))
+                .forEach(knownAddress ->
+                        registerHostData(newDatabase, knownAddress));
+
+        previousKnownOrganizations = knownAddresses;
+        database = newDatabase;
+    }
+
+    /**
+     * @return connection statistics by partner IP, connections from unknown
+     * addresses are counted under {@value #UNKNOWN_ORG_IP}
+     */
+    Map<String, PartnerStatistics> getPartnerStatistics() {
+        Map<String, PartnerStatistics> statistics = new HashMap<>();
+        database.forEach((address, partner) -> statistics.put(address,
+                new PartnerStatistics(partner.accepted.sum(), partner.queued.get(), partner.dropped.sum())));
+
+        return statistics;
+    }
+
+    /**
+     * Logs the connection statistics of the partners that have connected.
+     */
+    void logStatistics() {
+        if (log.isTraceEnabled()) {
+            getPartnerStatistics().entrySet().stream()
+                    .filter(e -> e.getValue().getAccepted() > 0)
+                    .forEach(e -> log.trace("AntiDos partner {}: {}", e.getKey(), e.getValue()));
+        }
+    }
+
     /**
      * Retrieves the next connection to be processed. First, it checks that
      * there are sufficient resources available (free file handles etc.).
      * If not, then the connection is closed thus freeing some resources.
      */
     protected T getNextConnection() throws InterruptedException {
-        // Take the oldest partner from the buffer (blocks until available).
-        HostData oldestPartner = activePartners.take();
+        if (currentPartner == null) {
+            // Take the oldest partner from the buffer (blocks until available).
+            currentPartner = activePartners.take();
+            currentCredit = currentPartner.weight;
+        }
+
+        HostData partner = currentPartner;
 
         // Take the oldest connection.
-        T sock = oldestPartner.connections.pollLast();
-        if (sock == null) {
-            return null;
+        T sock = partner.connections.pollLast();
+        if (sock != null) {
+            partner.queued.decrementAndGet();
+            currentCredit--;
         }
 
-        // If there are more connections left for this partner, add the partner
-        // back to the buffer as the first partner.
-        if (!oldestPartner.connections.isEmpty()) {
-            activePartners.add(oldestPartner);
+        // If the turn of the partner is over and there are more connections
+        // left, add the partner back to the buffer as the newest partner.
+        if (sock == null || currentCredit == 0 || partner.connections.isEmpty()) {
+            currentPartner = null;
+
+            if (partner.connections.isEmpty()) {
+                partner.scheduled.set(false);
+                // A connection may have been added before the flag was cleared
+                if (!partner.connections.isEmpty()) {
+                    schedule(partner);
+                }
+            } else {
+                activePartners.add(partner);
+            }
+        }
+
+        if (sock == null) {
+            return null;
         }
 
         // Processing a connection consumes file handles and other resources
-        if (hasSufficientResources()) {
+        if (sufficientResources) {
             return sock;
         }
 
         log.error("Insufficient resources, closing connection " + sock);
+        partner.dropped.increment();
         try {
             closeConnection(sock);
         } catch (IOException e) {
@@ -180,61 +319,24 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
         return SystemMetrics.getHeapUsage();
     }
 
-    private HostData getHostData(String ip) {
-        return database.containsKey(ip)
-                ? database.get(ip) : database.get(UNKNOWN_ORG_IP);
-    }
-
-    private void syncDatabase() {
-        Set<String> knownAddresses = getAllAddresses();
-
-        if (previousKnownOrganizations.equals(knownAddresses)) {
-            // Nothing has changed, do not sync.
-            return;
+    private void schedule(HostData partner) {
+        if (partner.scheduled.compareAndSet(false, true)) {
+            activePartners.add(partner);
         }
+    }
 
-        Map<String, HostData> newDatabase = new HashMap<>();
-
-        // Retain existing members connections
-        database.keySet().stream()
-                .filter(knownAddresses::contains)
-                .forEach(existingAddress -> newDatabase.put(
-                        existingAddress, database.get(existingAddress)));
-
-        // Add new members
-        knownAddresses.stream()
-                .filter(knownAddress -> !database.containsKey(knownAddress))
-                .forEach(knownAddress ->
-                        registerHostData(newDatabase, knownAddress));
+    private HostData getHostData(String ip) {
+        Map<String, HostData> currentDatabase = database;
+        HostData partner = currentDatabase.get(ip);
 
-        previousKnownOrganizations = knownAddresses;
-        database = newDatabase;
+        return partner != null ? partner : currentDatabase.get(UNKNOWN_ORG_IP);
     }
 
     private void registerHostData(
             Map<String, HostData> newDatabase, String knownAddress) {
         log.trace("Registering HostData for " + knownAddress);
-        newDatabase.put(knownAddress, new HostData());
-    }
-
-    private boolean hasSufficientResources() {
-        long freeFileDescriptorCount = getFreeFileDescriptorCount();
-        int minFreeFileHandles = configuration.getMinFreeFileHandles();
-        double cpuLoad = getCpuLoad();
-        double maxCpuLoad = configuration.getMaxCpuLoad();
-        double heapUsage = getHeapUsage();
-        double maxHeapUsage = configuration.getMaxHeapUsage();
-
-        log.trace("Resource usage when considering connection:\n"
-                + "freeFileDescriptorCount: {} ( >= {})\n"
-                + "cpuLoad: {} ( < {})\n"
-                + "heapUsage: {} ( < {})",
-                new Object[] {freeFileDescriptorCount, minFreeFileHandles,
-                    cpuLoad, maxCpuLoad, heapUsage, maxHeapUsage});
-
-        return freeFileDescriptorCount >= minFreeFileHandles
-                && cpuLoad < maxCpuLoad
-                && heapUsage < maxHeapUsage;
+        int weight = UNKNOWN_ORG_IP.equals(knownAddress) ? 1 : configuration.getKnownPartnerWeight();
+        newDatabase.put(knownAddress, new HostData(weight));
     }
 
     private static Set<String> getAllAddresses() {
@@ -39,6 +39,7 @@ import java.nio.channels.SelectableChannel;
 import java.nio.channels.SocketChannel;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class implements a connector that prevents DoS attacks.
@@ -53,10 +54,16 @@ import java.util.concurrent.Semaphore;
  * making lots of connections only gets a small amount of connections
  * "approved", and is a trade-off since non-attackers connections might
  * also get closed.
+ *
+ * The system resources and the known members are checked periodically by
+ * a scheduled task, so that the checks do not slow down the processing of
+ * connections under heavy load.
  */
 @Slf4j
 public class AntiDosConnector extends ServerConnector {
 
+    private static final long STATISTICS_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
     private final AntiDosConfiguration configuration = new AntiDosConfiguration();
 
     private final Semaphore semaphore = new Semaphore(configuration.getMaxParallelConnections());
@@ -97,8 +104,11 @@ public class AntiDosConnector extends ServerConnector {
         super.doStart();
 
         manager.init();
+        manager.sampleResources();
 
         getExecutor().execute(new QueueManager());
+        getScheduler().schedule(new ResourceSampler(), configuration.getResourceSampleInterval(),
+                TimeUnit.MILLISECONDS);
     }
 
     @Override
@@ -139,6 +149,30 @@ public class AntiDosConnector extends ServerConnector {
         };
     }
 
+    private class ResourceSampler implements Runnable {
+        private long nextStatistics;
+
+        @Override
+        public void run() {
+            try {
+                manager.sampleResources();
+                manager.syncDatabase();
+
+                long now = System.currentTimeMillis();
+                if (now >= nextStatistics) {
+                    manager.logStatistics();
+                    nextStatistics = now + STATISTICS_INTERVAL_MILLIS;
+                }
+            } catch (Exception e) {
+                log.error("Error sampling system resources", e);
+            } finally {
+                if (isRunning()) {
+                    getScheduler().schedule(this, configuration.getResourceSampleInterval(), TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
     private class QueueManager implements Runnable {
         @Override
         public void run() {
@@ -25,6 +25,7 @@
 package ee.ria.xroad.proxy.clientproxy;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.IsAuthenticationData;
@@ -55,6 +56,7 @@ import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.client.HttpClient;
+import org.apache.http.entity.AbstractHttpEntity;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.util.Arrays;
 import org.xml.sax.Attributes;
@@ -64,7 +66,9 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.namespace.QName;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.io.Writer;
@@ -92,6 +96,9 @@ import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
 import static ee.ria.xroad.common.util.MimeUtils.HEADER_ORIGINAL_CONTENT_TYPE;
 import static ee.ria.xroad.common.util.MimeUtils.HEADER_ORIGINAL_SOAP_ACTION;
 import static ee.ria.xroad.common.util.MimeUtils.HEADER_REQUEST_ID;
+import static ee.ria.xroad.common.util.MimeUtils.getBoundary;
+import static ee.ria.xroad.common.util.MimeUtils.mpMixedContentType;
+import static ee.ria.xroad.common.util.MimeUtils.randomBoundary;
 import static ee.ria.xroad.common.util.TimeUtils.getEpochMillisecond;
 
 @Slf4j
@@ -118,6 +125,13 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
      */
     private final CountDownLatch httpSenderGate = new CountDownLatch(1);
 
+    /**
+     * If true, the request is parsed, signed and streamed to the server proxy
+     * on the thread that calls {@link #process()}, without the SOAP handler
+     * thread and the pipe between the two threads.
+     */
+    private final boolean singleThreaded;
+
     /** Holds the incoming request SOAP message. */
     private volatile String originalSoapAction;
     private volatile SoapMessageImpl requestSoap;
@@ -131,6 +145,11 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
     private volatile PipedOutputStream reqOuts;
     private volatile String outputContentType;
 
+    /** Holds the request decoder and the SOAP part headers in single-threaded mode. */
+    private SoapMessageDecoder requestDecoder;
+    private SoapMessageHandler requestHandler;
+    private Map<String, String> requestSoapHeaders;
+
     /** Holds the request to the server proxy. */
     private ProxyMessageEncoder request;
     private String xRequestId;
@@ -157,9 +176,13 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             HttpClient httpClient, IsAuthenticationData clientCert, OpMonitoringData opMonitoringData)
             throws Exception {
         super(servletRequest, servletResponse, httpClient, clientCert, opMonitoringData);
-        this.reqIns = new PipedInputStream();
-        this.reqOuts = new PipedOutputStream(reqIns);
+        this.singleThreaded = SystemProperties.isClientProxySingleThreadSoapProcessing();
         this.xRequestId = UUID.randomUUID().toString();
+
+        if (!singleThreaded) {
+            this.reqIns = new PipedInputStream();
+            this.reqOuts = new PipedOutputStream(reqIns);
+        }
     }
 
     @Override
@@ -169,11 +192,18 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         opMonitoringData.setXRequestId(xRequestId);
         updateOpMonitoringClientSecurityServerAddress();
 
-        Future<?> soapHandler = SOAP_HANDLER_EXECUTOR.submit(this::handleSoap);
+        Future<?> soapHandler = null;
 
         try {
-            // Wait for the request SOAP message to be parsed before we can start sending stuff.
-            waitForSoapMessage();
+            if (singleThreaded) {
+                // Read the request SOAP message, the attachments are read when sending the request.
+                readSoap();
+            } else {
+                soapHandler = SOAP_HANDLER_EXECUTOR.submit(this::handleSoap);
+
+                // Wait for the request SOAP message to be parsed before we can start sending stuff.
+                waitForSoapMessage();
+            }
 
             // If the handler thread excepted, do not continue.
             checkError();
@@ -196,7 +226,9 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             }
 
             // Let's interrupt the handler thread so that it won't block forever waiting for us to do something.
-            soapHandler.cancel(true);
+            if (soapHandler != null) {
+                soapHandler.cancel(true);
+            }
 
             throw e;
         } finally {
@@ -251,9 +283,20 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
 
             try {
                 opMonitoringData.setRequestOutTs(getEpochMillisecond());
-                httpSender.doPost(getServiceAddress(addresses), reqIns, CHUNKED_LENGTH, outputContentType);
+
+                if (singleThreaded) {
+                    httpSender.doPost(getServiceAddress(addresses), new SoapRequestEntity());
+                } else {
+                    httpSender.doPost(getServiceAddress(addresses), reqIns, CHUNKED_LENGTH, outputContentType);
+                }
+
                 opMonitoringData.setResponseInTs(getEpochMillisecond());
             } catch (Exception e) {
+                // The request was aborted because of an error in processing the client's request
+                if (singleThreaded) {
+                    checkError();
+                }
+
                 // Failed to connect to server proxy
                 MonitorAgent.serverProxyFailed(createRequestMessageInfo());
 
@@ -439,6 +482,24 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
                 requestSoap.getQueryId());
     }
 
+    private void readSoap() {
+        requestHandler = new SoapMessageHandler();
+
+        try {
+            requestDecoder = new SoapMessageDecoder(servletRequest.getContentType(), requestHandler,
+                    new RequestSoapParserImpl());
+
+            originalSoapAction = validateSoapActionHeader(servletRequest.getHeader("SOAPAction"));
+            requestDecoder.parseSoap(servletRequest.getInputStream());
+        } catch (Exception ex) {
+            setError(new ClientException(translateException(ex)));
+        }
+
+        if (requestSoap == null) {
+            setError(new ClientException(X_MISSING_SOAP, "Request does not contain SOAP message"));
+        }
+    }
+
     public void handleSoap() {
         try (SoapMessageHandler handler = new SoapMessageHandler()) {
             SoapMessageDecoder soapMessageDecoder = new SoapMessageDecoder(servletRequest.getContentType(),
@@ -471,6 +532,13 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
 
             updateOpMonitoringDataBySoapMessage(opMonitoringData, requestSoap);
 
+            if (singleThreaded) {
+                // The request is encoded when the HTTP sender starts writing the request entity.
+                requestSoapHeaders = headers;
+
+                return;
+            }
+
             if (request == null) {
                 request = new ProxyMessageEncoder(reqOuts, SoapUtils.getHashAlgoId());
                 outputContentType = request.getContentType();
@@ -480,6 +548,10 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             // request to server proxy.
             continueProcessing();
 
+            writeSoap(headers);
+        }
+
+        void writeSoap(Map<String, String> headers) throws Exception {
             // In SSL mode, we need to send the OCSP response of our SSL cert.
             if (isSslEnabled()) {
                 writeOcspResponses();
@@ -566,6 +638,65 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
         }
     }
 
+    /**
+     * Request entity that encodes the request to the server proxy while the
+     * HTTP sender writes it, reading the attachments from the client request
+     * on the same thread.
+     */
+    private class SoapRequestEntity extends AbstractHttpEntity {
+
+        SoapRequestEntity() {
+            setContentType(mpMixedContentType("xtop" + randomBoundary()));
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return CHUNKED_LENGTH;
+        }
+
+        @Override
+        public InputStream getContent() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            log.trace("writeTo()");
+
+            try (SoapMessageHandler handler = requestHandler) {
+                request = new ProxyMessageEncoder(out, SoapUtils.getHashAlgoId(),
+                        getBoundary(getContentType().getValue()));
+
+                handler.writeSoap(requestSoapHeaders);
+
+                try {
+                    requestDecoder.parseAttachments();
+                } catch (Exception ex) {
+                    throw new ClientException(translateException(ex));
+                }
+            } catch (Throwable ex) {
+                setError(ex);
+            } finally {
+                continueReadingResponse();
+            }
+
+            if (executionException != null) {
+                // Do not let the server proxy process an incomplete or unsigned request.
+                throw new IOException("Request processing failed", executionException);
+            }
+        }
+    }
+
     /**
      * Soap parser that changes the CentralServiceId to ServiceId in message
      * header.
@@ -70,6 +70,7 @@ import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.proxy.clientproxy.HandlerLoader.loadHandler;
 
@@ -96,6 +97,7 @@ public class ClientProxy implements StartStop {
 
     private CloseableHttpClient client;
     private IdleConnectionMonitorThread connectionMonitor;
+    private TargetHealthProber targetHealthProber;
 
     /**
      * Constructs and configures a new client proxy.
@@ -175,9 +177,15 @@ public class ClientProxy implements StartStop {
         return poolingManager;
     }
 
-    private static SSLConnectionSocketFactory createSSLSocketFactory() throws Exception {
-        return new FastestConnectionSelectingSSLSocketFactory(SSLContextUtil.createXroadSSLContext()
-        );
+    private SSLConnectionSocketFactory createSSLSocketFactory() throws Exception {
+        TargetHealthTable targetHealth = FastestConnectionSelectingSSLSocketFactory.createTargetHealthTable();
+
+        int probeInterval = SystemProperties.getClientProxyTargetHealthProbeInterval();
+        if (targetHealth != null && probeInterval > 0) {
+            targetHealthProber = new TargetHealthProber(targetHealth, (int) TimeUnit.SECONDS.toMillis(probeInterval));
+        }
+
+        return new FastestConnectionSelectingSSLSocketFactory(SSLContextUtil.createXroadSSLContext(), targetHealth);
     }
 
     private void createConnectors() throws Exception {
@@ -297,6 +305,10 @@ public class ClientProxy implements StartStop {
         if (connectionMonitor != null) {
             connectionMonitor.start();
         }
+
+        if (targetHealthProber != null) {
+            targetHealthProber.start();
+        }
     }
 
     @Override
@@ -316,6 +328,10 @@ public class ClientProxy implements StartStop {
             connectionMonitor.shutdown();
         }
 
+        if (targetHealthProber != null) {
+            targetHealthProber.shutdown();
+        }
+
         client.close();
         server.stop();
 
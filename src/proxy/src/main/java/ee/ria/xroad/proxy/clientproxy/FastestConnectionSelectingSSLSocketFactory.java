@@ -30,8 +30,6 @@ import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
 import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.proxy.clientproxy.FastestSocketSelector.SocketInfo;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.HttpHost;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
@@ -39,6 +37,7 @@ import org.apache.http.protocol.HttpContext;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 
 import java.io.Closeable;
@@ -48,7 +47,6 @@ import java.net.Socket;
 import java.net.SocketException;
 import java.net.URI;
 import java.util.Arrays;
-import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_NETWORK_ERROR;
@@ -61,8 +59,10 @@ import static ee.ria.xroad.proxy.clientproxy.AuthTrustVerifier.verify;
  * The fastest target address is selected by initializing socket connection
  * to all provided addresses and choosing the first one to respond.
  *
- * If an SSL session already exists to one of the provided addresses, then
- * that address is selected immediately without previous selection algorithm.
+ * If the target health table knows a healthy address among the provided addresses,
+ * then the address with the lowest average connect and handshake time is selected
+ * immediately without the selection algorithm. Addresses that have failed recently
+ * are left out of the selection.
  */
 @Slf4j
 class FastestConnectionSelectingSSLSocketFactory
@@ -79,21 +79,29 @@ class FastestConnectionSelectingSSLSocketFactory
 
     public static final int MIN_TIMEOUT = 5000;
 
-    public static final int CACHE_MAXIMUM_SIZE = 10000;
-
     private final javax.net.ssl.SSLSocketFactory socketfactory;
 
-    private final Cache<CacheKey, URI> selectedHosts;
-    private final boolean cachingEnabled;
+    private final TargetHealthTable targetHealth;
 
     FastestConnectionSelectingSSLSocketFactory(SSLContext sslContext) {
+        this(sslContext, createTargetHealthTable());
+    }
+
+    /**
+     * @param targetHealth the target health table to use, or null to always select the fastest address
+     */
+    FastestConnectionSelectingSSLSocketFactory(SSLContext sslContext, TargetHealthTable targetHealth) {
         super(sslContext, null, SystemProperties.getXroadTLSCipherSuites(), (HostnameVerifier)null);
         this.socketfactory = sslContext.getSocketFactory();
-        this.selectedHosts = CacheBuilder.newBuilder()
-                .expireAfterWrite(SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod(), TimeUnit.SECONDS)
-                .maximumSize(CACHE_MAXIMUM_SIZE)
-                .build();
-        this.cachingEnabled = SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod() > 0;
+        this.targetHealth = targetHealth;
+    }
+
+    /**
+     * @return a new target health table, or null if remembering the target addresses is disabled
+     */
+    static TargetHealthTable createTargetHealthTable() {
+        int period = SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod();
+        return period > 0 ? new TargetHealthTable(period) : null;
     }
 
     @Override
@@ -110,50 +118,53 @@ class FastestConnectionSelectingSSLSocketFactory
 
         // Read target addresses from the context.
         final URI[] addressesFromContext = getAddressesFromContext(context);
-        final boolean useCache = cachingEnabled && (addressesFromContext.length > 1);
+        final boolean useHealth = targetHealth != null && (addressesFromContext.length > 1);
         final FastestSocketSelector selector = new FastestSocketSelector();
 
-        CacheKey cacheKey = null;
-        URI cachedURI = null;
+        URI preferredURI = null;
 
         if (log.isTraceEnabled()) {
             log.trace("addresses from context {} current thread id {}", addressesFromContext,
                     Thread.currentThread().getId());
         }
 
-        // If URI cache is enabled, check for a previously selected host, avoiding the selection process.
-        if (useCache) {
-            cacheKey = new CacheKey(addressesFromContext);
-            cachedURI = selectedHosts.getIfPresent(cacheKey);
+        // If the target health table is enabled, prefer the healthiest known host, avoiding the selection process.
+        if (useHealth) {
+            preferredURI = targetHealth.selectPreferred(addressesFromContext);
 
-            if (cachedURI != null) {
-                log.trace("Use cached URI {}", cachedURI);
-                selector.add(cachedURI);
+            if (preferredURI != null) {
+                log.trace("Use preferred URI {}", preferredURI);
+                selector.add(preferredURI);
             }
         }
 
         if (selector.isEmpty()) {
-            selector.addAll(addressesFromContext);
+            selector.addAll(getCandidates(addressesFromContext, useHealth));
         }
 
         Exception deferredException = null;
-        int connectTimeout = (cachedURI == null ? timeout : CACHED_TIMEOUT);
+        int connectTimeout = (preferredURI == null ? timeout : CACHED_TIMEOUT);
         while (!selector.isEmpty()) {
             SocketInfo selectedSocket = null;
             SSLSocket sslSocket = null;
             try {
                 // Select the fastest address if more than one address is provided.
                 // see also FastestSocketSelector
+                long start = System.nanoTime();
                 selectedSocket = selector.select(connectTimeout);
+                long connected = System.nanoTime();
                 sslSocket = wrapToSSLSocket(selectedSocket.getSocket(), connectTimeout);
-                prepareAndVerify(sslSocket, selectedSocket.getUri(), context);
+                prepareSocket(sslSocket);
+                // getSession() completes the handshake
+                SSLSession session = sslSocket.getSession();
+                long handshaked = System.nanoTime();
+                verify(context, session, selectedSocket.getUri());
                 configureSocket(sslSocket);
                 log.trace("Connected to {}", selectedSocket.getUri());
                 updateOpMonitoringData(context, selectedSocket);
 
-                if (useCache && cachedURI == null) {
-                    log.trace("Store the fastest provider URI to cache {}", selectedSocket.getUri());
-                    selectedHosts.put(cacheKey, selectedSocket.getUri());
+                if (useHealth) {
+                    targetHealth.connected(selectedSocket.getUri(), connected - start, handshaked - connected);
                 }
                 return sslSocket;
             } catch (IOException | RuntimeException e) {
@@ -162,14 +173,20 @@ class FastestConnectionSelectingSSLSocketFactory
                 if (selectedSocket != null) {
                     log.trace("Failed to connect to {}", selectedSocket.getUri(), e);
                     closeQuietly(selectedSocket.getSocket());
+
+                    if (useHealth) {
+                        targetHealth.failed(selectedSocket.getUri());
+                    }
                 } else {
                     log.debug("Failed to connect", e);
                 }
-                if (cachedURI != null) {
-                    selectedHosts.asMap().remove(cacheKey, cachedURI);
-                    selector.addAll(addressesFromContext);
-                    selector.remove(cachedURI);
-                    cachedURI = null;
+                if (preferredURI != null) {
+                    if (selectedSocket == null) {
+                        targetHealth.failed(preferredURI);
+                    }
+                    selector.addAll(getCandidates(addressesFromContext, useHealth));
+                    selector.remove(preferredURI);
+                    preferredURI = null;
                     connectTimeout = timeout;
                 } else {
                     if (selectedSocket == null) {
@@ -237,12 +254,6 @@ class FastestConnectionSelectingSSLSocketFactory
         socket.setKeepAlive(true);
     }
 
-    private void prepareAndVerify(SSLSocket sslSocket, URI selectedAddress,
-            HttpContext context) throws IOException {
-        prepareSocket(sslSocket);
-        verify(context, sslSocket.getSession(), selectedAddress);
-    }
-
     private SSLSocket wrapToSSLSocket(Socket socket, int connectTimeout) throws IOException {
         if (socket instanceof SSLSocket) {
             return (SSLSocket)socket;
@@ -259,6 +270,10 @@ class FastestConnectionSelectingSSLSocketFactory
         throw new CodedException(X_INTERNAL_ERROR, "Failed to create SSL socket");
     }
 
+    private URI[] getCandidates(URI[] addresses, boolean useHealth) {
+        return useHealth ? targetHealth.getCandidates(addresses) : addresses;
+    }
+
     private static URI[] getAddressesFromContext(HttpContext context) {
         Object targets = context.getAttribute(ID_TARGETS);
         if (targets instanceof URI[] && ((URI[])targets).length > 0) {
@@ -276,33 +291,4 @@ class FastestConnectionSelectingSSLSocketFactory
                     Arrays.toString(addresses));
         }
     }
-
-    static final class CacheKey {
-        private final URI[] addresses;
-        private final int hash;
-
-        CacheKey(URI[] addresses) {
-            // address lists are small, using an sorted arraylist as a key
-            // will have a lower overhead than using a hashset or treeset
-            final URI[] tmp = addresses.clone();
-            Arrays.sort(tmp);
-            this.addresses = tmp;
-            this.hash = Arrays.hashCode(this.addresses);
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (!(o instanceof CacheKey)) return false;
-            final CacheKey key = (CacheKey)o;
-            if (hash != key.hash) return false;
-            return Arrays.equals(addresses, key.addresses);
-        }
-
-        @Override
-        public int hashCode() {
-            return hash;
-        }
-    }
-
 }
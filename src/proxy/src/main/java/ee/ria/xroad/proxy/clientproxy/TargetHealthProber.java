@@ -0,0 +1,149 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static ee.ria.xroad.proxy.clientproxy.FastestConnectionSelectingSSLSocketFactory.closeQuietly;
+
+/**
+ * Thread that periodically measures the TCP connect time of the recently used addresses in the target
+ * health table, so that the fastest address is known before the next request needs it.
+ *
+ * Only the addresses used during the last few probe intervals are probed, at most MAX_PROBED_TARGETS of
+ * them per round. The probes are made in parallel with a short connect timeout, and a round is cut off
+ * when the probe interval ends.
+ */
+@Slf4j
+class TargetHealthProber extends Thread {
+
+    static final int MAX_PROBED_TARGETS = 256;
+    static final int PROBE_TIMEOUT_MILLIS = 2000;
+
+    private static final int PROBE_THREADS = 8;
+    private static final int RECENT_USE_INTERVALS = 10;
+
+    private final TargetHealthTable targetHealth;
+    private final int intervalMilliseconds;
+    private final ExecutorService probeExecutor;
+
+    private volatile boolean shutdown;
+
+    TargetHealthProber(TargetHealthTable targetHealth, int intervalMilliseconds) {
+        super("TargetHealthProber");
+        setDaemon(true);
+
+        this.targetHealth = targetHealth;
+        this.intervalMilliseconds = intervalMilliseconds;
+        this.probeExecutor = createProbeExecutor();
+    }
+
+    void probeNow() throws InterruptedException {
+        List<URI> targets = targetHealth.getRecentTargets(
+                TimeUnit.MILLISECONDS.toNanos((long) intervalMilliseconds * RECENT_USE_INTERVALS),
+                MAX_PROBED_TARGETS);
+
+        if (targets.isEmpty() || shutdown) {
+            return;
+        }
+
+        List<Callable<Void>> probes = targets.stream()
+                .map(target -> (Callable<Void>) () -> {
+                    targetHealth.probed(target, probe(target));
+                    return null;
+                })
+                .collect(Collectors.toList());
+
+        // probes still running when the interval ends are cancelled
+        probeExecutor.invokeAll(probes, intervalMilliseconds, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!shutdown && !isInterrupted()) {
+                try {
+                    sleep(intervalMilliseconds);
+                    probeNow();
+                } catch (InterruptedException ex) {
+                    //ignored (stopping controlled by shutdown)
+                } catch (Exception e) {
+                    log.error("Error while probing target hosts", e);
+                }
+            }
+        } finally {
+            probeExecutor.shutdownNow();
+        }
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        interrupt();
+    }
+
+    private static ExecutorService createProbeExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        return Executors.newFixedThreadPool(PROBE_THREADS, r -> {
+            Thread thread = new Thread(r, "TargetHealthProber-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the connect time in nanoseconds, or -1 if the connection failed
+     */
+    private static long probe(URI target) {
+        InetSocketAddress address = new InetSocketAddress(target.getHost(), target.getPort());
+        if (address.isUnresolved()) {
+            log.trace("Could not resolve target host {}", target);
+            return -1;
+        }
+
+        Socket socket = new Socket();
+        try {
+            long start = System.nanoTime();
+            socket.connect(address, PROBE_TIMEOUT_MILLIS);
+            return System.nanoTime() - start;
+        } catch (Exception e) {
+            log.trace("Probing target host {} failed: {}", target, e.getMessage());
+            return -1;
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps track of the health of service provider addresses (target hosts).
+ *
+ * For every address, the table holds exponentially weighted moving averages of the TCP connect and TLS
+ * handshake times, and the number of consecutive connection failures. A failed address is not used for a
+ * backoff period that doubles with every consecutive failure. Addresses that have not been used by requests
+ * during the idle period are forgotten, so that they are not probed any more.
+ */
+@Slf4j
+final class TargetHealthTable {
+
+    static final long MIN_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(5);
+    static final long MAX_BACKOFF_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private static final int MAX_BACKOFF_SHIFT = 6;
+    private static final double EWMA_WEIGHT = 0.3;
+    private static final int CACHE_MAXIMUM_SIZE = 10000;
+
+    private final Cache<URI, TargetHealth> targets;
+    private final Ticker ticker;
+    private final long idlePeriodNanos;
+
+    TargetHealthTable(int idlePeriodSeconds) {
+        this(idlePeriodSeconds, Ticker.systemTicker());
+    }
+
+    TargetHealthTable(int idlePeriodSeconds, Ticker ticker) {
+        this.ticker = ticker;
+        this.idlePeriodNanos = TimeUnit.SECONDS.toNanos(idlePeriodSeconds);
+        this.targets = CacheBuilder.newBuilder()
+                .maximumSize(CACHE_MAXIMUM_SIZE)
+                .build();
+    }
+
+    /**
+     * Returns the healthy address with the lowest average connect and handshake time,
+     * or null if none of the addresses has been connected to successfully.
+     * Unknown addresses are added to the table so that they will be probed.
+     */
+    URI selectPreferred(URI[] addresses) {
+        long now = ticker.read();
+        URI preferred = null;
+        double preferredScore = Double.MAX_VALUE;
+
+        for (URI address : addresses) {
+            TargetHealth health = get(address, now);
+            double score = health.getScore(now);
+            if (score < preferredScore) {
+                preferred = address;
+                preferredScore = score;
+            }
+        }
+
+        return preferred;
+    }
+
+    /**
+     * Returns the addresses that are not in a failure backoff period,
+     * or all addresses if every one of them has failed recently.
+     */
+    URI[] getCandidates(URI[] addresses) {
+        long now = ticker.read();
+        List<URI> candidates = new ArrayList<>(addresses.length);
+
+        for (URI address : addresses) {
+            if (!get(address, now).isBackingOff(now)) {
+                candidates.add(address);
+            }
+        }
+
+        return candidates.isEmpty() ? addresses : candidates.toArray(new URI[0]);
+    }
+
+    /**
+     * Records a successful connection to the address.
+     * @param connectNanos TCP connect time in nanoseconds
+     * @param handshakeNanos TLS handshake time in nanoseconds, or a negative value if not measured
+     */
+    void connected(URI address, long connectNanos, long handshakeNanos) {
+        get(address, ticker.read()).connected(connectNanos, handshakeNanos);
+    }
+
+    /**
+     * Records a failed connection attempt to the address.
+     */
+    void failed(URI address) {
+        long now = ticker.read();
+        get(address, now).failed(now);
+
+        log.debug("Connection to {} failed, backing off", address);
+    }
+
+    /**
+     * Records the result of a background probe without counting it as usage of the address.
+     * Addresses that have already been forgotten are ignored.
+     */
+    void probed(URI address, long connectNanos) {
+        TargetHealth health = targets.getIfPresent(address);
+        if (health != null) {
+            if (connectNanos >= 0) {
+                health.connected(connectNanos, -1);
+            } else {
+                health.failed(ticker.read());
+            }
+        }
+    }
+
+    /**
+     * Returns the addresses used within the given time, after dropping the idle ones (see {@link #forgetIdle}).
+     * @param usedWithinNanos how recently an address must have been used to be returned
+     * @param maxTargets maximum number of addresses to return
+     * @return the most recently used addresses, most recent first
+     */
+    List<URI> getRecentTargets(long usedWithinNanos, int maxTargets) {
+        long now = ticker.read();
+        forgetIdle(now);
+
+        return targets.asMap().entrySet().stream()
+                .filter(e -> now - e.getValue().getLastUsed() <= usedWithinNanos)
+                .sorted(Comparator.comparingLong(
+                        (Map.Entry<URI, TargetHealth> e) -> e.getValue().getLastUsed()).reversed())
+                .limit(maxTargets)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Forgets the addresses that have not been used during the idle period.
+     */
+    private void forgetIdle(long now) {
+        targets.asMap().values().removeIf(health -> now - health.getLastUsed() > idlePeriodNanos);
+    }
+
+    private TargetHealth get(URI address, long now) {
+        TargetHealth health = targets.getIfPresent(address);
+        if (health == null) {
+            health = targets.asMap().computeIfAbsent(address, a -> new TargetHealth());
+        }
+
+        health.setLastUsed(now);
+        return health;
+    }
+
+    private static final class TargetHealth {
+        private double connectNanos = -1;
+        private double handshakeNanos = -1;
+        private int failures;
+        private long failedAt;
+        private volatile long lastUsed;
+
+        long getLastUsed() {
+            return lastUsed;
+        }
+
+        void setLastUsed(long now) {
+            lastUsed = now;
+        }
+
+        synchronized void connected(long connect, long handshake) {
+            connectNanos = average(connectNanos, connect);
+            if (handshake >= 0) {
+                handshakeNanos = average(handshakeNanos, handshake);
+            }
+
+            failures = 0;
+        }
+
+        synchronized void failed(long now) {
+            failures++;
+            failedAt = now;
+        }
+
+        synchronized boolean isBackingOff(long now) {
+            if (failures == 0) {
+                return false;
+            }
+
+            long backoff = MIN_BACKOFF_NANOS << Math.min(failures - 1, MAX_BACKOFF_SHIFT);
+            return now - failedAt < Math.min(backoff, MAX_BACKOFF_NANOS);
+        }
+
+        /**
+         * @return the expected time to set up a connection, or Double.MAX_VALUE if the address should not
+         * be preferred (it has not been connected to yet or has failed recently)
+         */
+        synchronized double getScore(long now) {
+            if (connectNanos < 0 || isBackingOff(now)) {
+                return Double.MAX_VALUE;
+            }
+
+            return connectNanos + Math.max(handshakeNanos, 0);
+        }
+
+        private static double average(double average, long sample) {
+            return average < 0 ? sample : EWMA_WEIGHT * sample + (1 - EWMA_WEIGHT) * average;
+        }
+    }
+}
@@ -25,13 +25,11 @@
 package ee.ria.xroad.proxy.conf;
 
 import ee.ria.xroad.common.CodedException;
-import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.conf.globalconf.AuthKey;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
-import ee.ria.xroad.common.util.FileContentChangeChecker;
 import ee.ria.xroad.signer.protocol.SignerClient;
 import ee.ria.xroad.signer.protocol.dto.MemberSigningInfo;
 import ee.ria.xroad.signer.protocol.message.GetAuthKey;
@@ -48,6 +46,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static ee.ria.xroad.common.ErrorCodes.X_CANNOT_CREATE_SIGNATURE;
 import static ee.ria.xroad.common.util.CryptoUtils.readCertificate;
@@ -61,7 +60,10 @@ class CachingKeyConfImpl extends KeyConfImpl {
     // Specifies how long data is cached
     private static final int CACHE_PERIOD_SECONDS = 300;
 
-    private final FileContentChangeChecker keyConfChangeChecker;
+    // Incremented each time the key conf file has changed, see KeyConfChangeWatcher
+    private static final AtomicLong KEY_CONF_GENERATION = new AtomicLong();
+
+    private volatile long keyConfGeneration = KEY_CONF_GENERATION.get();
 
     private static final Cache<ClientId, SigningInfo> SIGNING_INFO_CACHE;
 
@@ -80,14 +82,6 @@ class CachingKeyConfImpl extends KeyConfImpl {
                 .build();
     }
 
-    CachingKeyConfImpl() throws Exception {
-        keyConfChangeChecker = getKeyConfChangeChecker();
-    }
-
-    protected FileContentChangeChecker getKeyConfChangeChecker() throws Exception {
-        return new FileContentChangeChecker(SystemProperties.getKeyConfFile());
-    }
-
     @Override
     public SigningCtx getSigningCtx(ClientId clientId) {
         try {
@@ -143,13 +137,32 @@ class CachingKeyConfImpl extends KeyConfImpl {
         }
     }
 
+    /**
+     * Invalidates the caches after the key conf file has changed. Called by the key conf watcher thread, so that
+     * the threads processing messages only need to compare the key conf generation.
+     */
+    static void keyConfChanged() {
+        long generation = KEY_CONF_GENERATION.incrementAndGet();
+
+        log.debug("Key conf changed, invalidating caches (generation {})", generation);
+
+        invalidateCaches();
+    }
+
+    /**
+     * @return true if the key conf has changed since the previous call. Entries loaded concurrently with the
+     * invalidation could still be from the old key conf, so the caches are invalidated again by the caller.
+     */
     boolean keyConfHasChanged() {
-        try {
-            return keyConfChangeChecker.hasChanged();
-        } catch (Exception e) {
-            log.error("Failed to check if key conf has changed", e);
+        long generation = KEY_CONF_GENERATION.get();
+
+        if (generation != keyConfGeneration) {
+            keyConfGeneration = generation;
+
             return true;
         }
+
+        return false;
     }
 
     protected AuthKeyInfo getAuthKeyInfo(SecurityServerId serverId) throws Exception {
@@ -0,0 +1,143 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.conf;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.util.FileContentChangeChecker;
+import ee.ria.xroad.common.util.StartStop;
+import ee.ria.xroad.common.util.filewatcher.FileWatcherRunner;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the key conf file for changes and invalidates the cached signing info and authentication key when the
+ * contents of the file have changed. Changes are debounced, since the file is usually written in several steps.
+ */
+@Slf4j
+public class KeyConfChangeWatcher implements StartStop {
+
+    // Time to wait for further changes before checking the contents of the file
+    private static final long DEBOUNCE_MILLIS = 500;
+
+    private final Path keyConfFile;
+    private final long debounceMillis;
+
+    private ScheduledExecutorService checker;
+    private FileWatcherRunner watcherRunner;
+
+    private ScheduledFuture<?> pendingCheck;
+
+    // Accessed only by the checker thread after start
+    private FileContentChangeChecker changeChecker;
+
+    /**
+     * Creates a watcher for the configured key conf file.
+     */
+    public KeyConfChangeWatcher() {
+        this(Paths.get(SystemProperties.getKeyConfFile()), DEBOUNCE_MILLIS);
+    }
+
+    KeyConfChangeWatcher(Path keyConfFile, long debounceMillis) {
+        this.keyConfFile = keyConfFile;
+        this.debounceMillis = debounceMillis;
+    }
+
+    @Override
+    public void start() throws Exception {
+        checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "keyconf-change-checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        changeChecker = createChangeChecker();
+
+        watcherRunner = FileWatcherRunner.create()
+                .watchForChangesIn(keyConfFile)
+                .listenToCreate().listenToModify()
+                .andOnChangeNotify(this::fileModified)
+                .buildAndStartWatcher();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (watcherRunner != null) {
+            watcherRunner.stop();
+        }
+
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        // nothing to join
+    }
+
+    /**
+     * Schedules a check of the key conf file, replacing the check scheduled by a previous event.
+     */
+    synchronized void fileModified() {
+        if (pendingCheck != null) {
+            pendingCheck.cancel(false);
+        }
+
+        pendingCheck = checker.schedule(this::checkKeyConf, debounceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void checkKeyConf() {
+        try {
+            if (changeChecker == null) {
+                changeChecker = createChangeChecker();
+
+                CachingKeyConfImpl.keyConfChanged();
+            } else if (changeChecker.hasChanged()) {
+                CachingKeyConfImpl.keyConfChanged();
+            }
+        } catch (Exception e) {
+            log.error("Failed to check if key conf has changed", e);
+
+            CachingKeyConfImpl.keyConfChanged();
+        }
+    }
+
+    private FileContentChangeChecker createChangeChecker() {
+        try {
+            return new FileContentChangeChecker(keyConfFile.toString());
+        } catch (Exception e) {
+            log.warn("Could not read key conf file {}: {}", keyConfFile, e.getMessage());
+
+            return null;
+        }
+    }
+}
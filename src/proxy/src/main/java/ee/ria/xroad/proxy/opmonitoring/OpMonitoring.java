@@ -33,6 +33,8 @@ import akka.actor.ActorSystem;
 import akka.actor.Props;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.function.Consumer;
+
 /**
  * Contains method for storing operational monitoring data.
  */
@@ -46,6 +48,8 @@ public final class OpMonitoring {
 
     private static ActorRef opMonitoringBuffer;
 
+    private static volatile Consumer<OpMonitoringData> directStore;
+
     private OpMonitoring() {
     }
 
@@ -71,12 +75,28 @@ public final class OpMonitoring {
         log.trace("store()");
 
         try {
-            tell(data);
+            Consumer<OpMonitoringData> store = directStore;
+
+            if (store != null) {
+                store.accept(data);
+            } else {
+                tell(data);
+            }
         } catch (Throwable t) {
             log.error("Storing operational monitoring data failed", t);
         }
     }
 
+    /**
+     * Sets the function used for storing operational monitoring data directly from
+     * the calling thread, bypassing the buffer actor mailbox. Buffer implementations
+     * that are safe for concurrent writes register themselves here.
+     * @param store the store function or null to send the data to the buffer actor
+     */
+    static void setDirectStore(Consumer<OpMonitoringData> store) {
+        directStore = store;
+    }
+
     @SuppressWarnings("unchecked")
     private static Class<? extends AbstractOpMonitoringBuffer>
             getOpMonitoringManagerImpl() {
@@ -24,7 +24,9 @@
  */
 package ee.ria.xroad.proxy.util;
 
+import ee.ria.xroad.common.cert.CertChainVerificationCache;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
+import ee.ria.xroad.common.util.CachingStream;
 
 import lombok.extern.slf4j.Slf4j;
 import org.quartz.DisallowConcurrentExecution;
@@ -40,5 +42,7 @@ public class ServerConfStatsLogger implements Job {
     @Override
     public void execute(JobExecutionContext context) {
         ServerConf.logStatistics();
+        CertChainVerificationCache.logStatistics();
+        CachingStream.logStatistics();
     }
 }
@@ -26,13 +26,16 @@ package ee.ria.xroad.proxy.antidos;
 
 import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.proxy.antidos.AntiDosConnectionManager.PartnerStatistics;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -156,6 +159,70 @@ public class AntiDosConnectionManagerTest {
         cm.assertEmpty();
     }
 
+    /**
+     * Test to ensure known members get connections processed according to their weight.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void knownMembersAreWeighted() throws Exception {
+        TestConfiguration conf = new TestConfiguration(5, 1.1) {
+            @Override
+            int getKnownPartnerWeight() {
+                return 2;
+            }
+        };
+
+        TestSystemMetrics sm = new TestSystemMetrics();
+        sm.addLoad(7, 0.1);
+
+        TestSocketChannel member1 = createConnection("test1");
+        TestSocketChannel attacker1 = createConnection("attacker1");
+
+        TestConnectionManager cm = createConnectionManager(conf, sm);
+
+        cm.accept(member1, attacker1, member1, attacker1, member1, attacker1);
+
+        cm.assertConnections(
+                member1,
+                member1,
+                attacker1,
+                member1,
+                attacker1,
+                attacker1);
+
+        cm.assertEmpty();
+    }
+
+    /**
+     * Test to ensure accepted, queued and dropped connections are counted per partner.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void partnerStatistics() throws Exception {
+        TestConfiguration conf = new TestConfiguration(5, 1.1);
+
+        TestSystemMetrics sm = new TestSystemMetrics();
+        sm.addLoad(7, 0.1);
+        sm.addLoad(3, 0.1);
+
+        TestSocketChannel member1 = createConnection("test1");
+        TestSocketChannel attacker1 = createConnection("attacker1");
+        TestSocketChannel attacker2 = createConnection("attacker2");
+
+        TestConnectionManager cm = createConnectionManager(conf, sm);
+        cm.accept(member1, attacker1, attacker2);
+
+        cm.assertNextConnection(member1);
+        assertNull(cm.getNextConnection());
+        assertTrue(attacker1.isClosed());
+
+        Map<String, PartnerStatistics> statistics = cm.getPartnerStatistics();
+        assertEquals(new PartnerStatistics(1, 0, 0), statistics.get("test1"));
+        assertEquals(new PartnerStatistics(0, 0, 0), statistics.get("test2"));
+        assertEquals(new PartnerStatistics(2, 1, 1),
+                statistics.get(AntiDosConnectionManager.UNKNOWN_ORG_IP));
+    }
+
     // ------------------------------------------------------------------------
 
     private static TestConnectionManager createConnectionManager(
@@ -0,0 +1,170 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import com.google.common.base.Ticker;
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test TargetHealthTable
+ */
+public class TargetHealthTableTest {
+
+    private static final int IDLE_PERIOD = 3600;
+
+    private final URI first;
+    private final URI second;
+    private final URI[] addresses;
+
+    /**
+     * Constructs the test.
+     * @throws URISyntaxException if the test addresses are invalid
+     */
+    public TargetHealthTableTest() throws URISyntaxException {
+        first = new URI("https://10.10.10.10:5500");
+        second = new URI("https://10.10.10.11:5500");
+        addresses = new URI[] {first, second};
+    }
+
+    @Test
+    public void preferFastestTarget() {
+        TargetHealthTable table = new TargetHealthTable(IDLE_PERIOD);
+
+        // nothing is known about the targets yet
+        assertNull(table.selectPreferred(addresses));
+
+        table.connected(first, ms(10), ms(20));
+        assertEquals(first, table.selectPreferred(addresses));
+
+        table.probed(second, ms(5));
+        assertEquals(second, table.selectPreferred(addresses));
+
+        // handshake times count as well
+        table.connected(second, ms(5), ms(100));
+        assertEquals(first, table.selectPreferred(addresses));
+    }
+
+    @Test
+    public void failedTargetBacksOff() {
+        FakeTicker ticker = new FakeTicker();
+        TargetHealthTable table = new TargetHealthTable(IDLE_PERIOD, ticker);
+
+        table.connected(first, ms(10), ms(10));
+        table.connected(second, ms(20), ms(20));
+        table.failed(first);
+
+        assertEquals(second, table.selectPreferred(addresses));
+        assertArrayEquals(new URI[] {second}, table.getCandidates(addresses));
+
+        ticker.advance(TargetHealthTable.MIN_BACKOFF_NANOS, TimeUnit.NANOSECONDS);
+        assertEquals(first, table.selectPreferred(addresses));
+
+        // consecutive failures double the backoff period
+        table.failed(first);
+        table.failed(first);
+        ticker.advance(TargetHealthTable.MIN_BACKOFF_NANOS, TimeUnit.NANOSECONDS);
+        assertEquals(second, table.selectPreferred(addresses));
+
+        // all addresses are candidates if all of them have failed
+        table.failed(second);
+        assertArrayEquals(addresses, table.getCandidates(addresses));
+
+        // a successful probe ends the backoff
+        table.probed(first, ms(10));
+        assertEquals(first, table.selectPreferred(addresses));
+    }
+
+    @Test
+    public void forgetIdleTargets() {
+        FakeTicker ticker = new FakeTicker();
+        TargetHealthTable table = new TargetHealthTable(IDLE_PERIOD, ticker);
+
+        table.connected(first, ms(10), ms(10));
+        table.selectPreferred(addresses);
+        assertEquals(2, getAllTargets(table).size());
+
+        // probing does not keep targets alive
+        ticker.advance(IDLE_PERIOD / 2, TimeUnit.SECONDS);
+        table.probed(first, ms(10));
+        table.selectPreferred(new URI[] {second});
+
+        ticker.advance(IDLE_PERIOD / 2 + 1, TimeUnit.SECONDS);
+        assertTrue(getAllTargets(table).contains(second));
+        assertEquals(1, getAllTargets(table).size());
+    }
+
+    @Test
+    public void recentTargetsAreBounded() throws URISyntaxException {
+        FakeTicker ticker = new FakeTicker();
+        TargetHealthTable table = new TargetHealthTable(IDLE_PERIOD, ticker);
+        URI third = new URI("https://10.10.10.12:5500");
+
+        table.selectPreferred(new URI[] {first});
+        ticker.advance(10, TimeUnit.SECONDS);
+        table.selectPreferred(new URI[] {second});
+        ticker.advance(10, TimeUnit.SECONDS);
+        table.selectPreferred(new URI[] {third});
+
+        // most recently used first, limited to the maximum count
+        assertEquals(Arrays.asList(third, second), table.getRecentTargets(TimeUnit.SECONDS.toNanos(60), 2));
+
+        // targets not used recently enough are not returned, but are still remembered
+        assertEquals(Arrays.asList(third, second), table.getRecentTargets(TimeUnit.SECONDS.toNanos(15), 5));
+        assertEquals(3, getAllTargets(table).size());
+    }
+
+    private static List<URI> getAllTargets(TargetHealthTable table) {
+        return table.getRecentTargets(Long.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    private static long ms(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    static class FakeTicker extends Ticker {
+        long ticks = 0;
+
+        @Override
+        public long read() {
+            return ticks;
+        }
+
+        void advance(long t, TimeUnit unit) {
+            ticks += unit.toNanos(t);
+        }
+    }
+
+}
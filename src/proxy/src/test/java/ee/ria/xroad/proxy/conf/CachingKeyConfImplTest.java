@@ -25,14 +25,12 @@ package ee.ria.xroad.proxy.conf;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
-import ee.ria.xroad.common.util.FileContentChangeChecker;
 import ee.ria.xroad.proxy.testsuite.EmptyServerConf;
 
 import lombok.extern.slf4j.Slf4j;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
@@ -48,7 +46,9 @@ import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.core.AllOf.allOf;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test to verify that CachingKeyConf works as expected when it comes to threading
@@ -229,6 +229,18 @@ public class CachingKeyConfImplTest {
         assertEquals(expectedCacheHits, callsToGetAuthKeyInfo.get());
     }
 
+    @Test
+    public void testKeyConfChanged() throws Exception {
+        CachingKeyConfImpl keyConf = new CachingKeyConfImpl();
+        assertFalse(keyConf.keyConfHasChanged());
+
+        CachingKeyConfImpl.keyConfChanged();
+
+        // the change is seen once
+        assertTrue(keyConf.keyConfHasChanged());
+        assertFalse(keyConf.keyConfHasChanged());
+    }
+
     /**
      * Operation that reads from the cache
      */
@@ -374,19 +386,9 @@ public class CachingKeyConfImplTest {
         }
 
         @Override
-        protected FileContentChangeChecker getKeyConfChangeChecker() throws Exception {
-            return new FileContentChangeChecker("dummyFileName") {
-                @Override
-                protected String calculateConfFileChecksum(File file) throws Exception {
-                    return "dummyChecksum";
-                }
-
-                @Override
-                public boolean hasChanged() throws Exception {
-                    log.debug("asking if key conf has changed, answer: " + keyConfHasChanged.getAsBoolean());
-                    return keyConfHasChanged.getAsBoolean();
-                }
-            };
+        boolean keyConfHasChanged() {
+            log.debug("asking if key conf has changed, answer: " + keyConfHasChanged.getAsBoolean());
+            return keyConfHasChanged.getAsBoolean();
         }
 
         private void delay(long delayMs) throws Exception {
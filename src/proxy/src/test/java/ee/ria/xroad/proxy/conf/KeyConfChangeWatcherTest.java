@@ -0,0 +1,107 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.conf;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that key conf changes are detected by the key conf watcher.
+ */
+public class KeyConfChangeWatcherTest {
+
+    private static final long DEBOUNCE_MILLIS = 50;
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Path keyConfFile;
+    private KeyConfChangeWatcher watcher;
+    private CachingKeyConfImpl keyConf;
+
+    @Before
+    public void setUp() throws Exception {
+        keyConfFile = tempFolder.getRoot().toPath().resolve("keyconf.xml");
+        write("<keyConf/>");
+
+        watcher = new KeyConfChangeWatcher(keyConfFile, DEBOUNCE_MILLIS);
+        watcher.start();
+
+        keyConf = new CachingKeyConfImpl();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        watcher.stop();
+    }
+
+    @Test
+    public void unchangedContentsAreIgnored() throws Exception {
+        watcher.fileModified();
+
+        Thread.sleep(DEBOUNCE_MILLIS * 4);
+
+        assertFalse(keyConf.keyConfHasChanged());
+    }
+
+    @Test
+    public void changedContentsAreDetected() throws Exception {
+        write("<keyConf><device/></keyConf>");
+
+        // the file watcher might not get the events in time on every platform
+        watcher.fileModified();
+
+        assertTrue(waitForChange());
+    }
+
+    private boolean waitForChange() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+        while (System.currentTimeMillis() < deadline) {
+            if (keyConf.keyConfHasChanged()) {
+                return true;
+            }
+
+            Thread.sleep(DEBOUNCE_MILLIS);
+        }
+
+        return false;
+    }
+
+    private void write(String contents) throws Exception {
+        Files.write(keyConfFile, contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
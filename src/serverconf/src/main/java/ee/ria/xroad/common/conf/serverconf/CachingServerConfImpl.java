@@ -27,9 +27,9 @@ package ee.ria.xroad.common.conf.serverconf;
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.conf.serverconf.dao.ChangeCounterDAOImpl;
 import ee.ria.xroad.common.conf.serverconf.model.ClientType;
 import ee.ria.xroad.common.conf.serverconf.model.DescriptionType;
-import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
 import ee.ria.xroad.common.conf.serverconf.model.ServiceType;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.SecurityCategoryId;
@@ -38,70 +38,121 @@ import ee.ria.xroad.common.identifier.ServiceId;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import lombok.Value;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import lombok.extern.slf4j.Slf4j;
-import org.hibernate.Session;
 
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static ee.ria.xroad.common.ErrorCodes.X_UNKNOWN_SERVICE;
 
 /**
  * Caching implementation for ServerConf
- * The long lasting and frequently used operations are cached
+ * The long lasting and frequently used operations are cached. Cached items are invalidated when the serverconf
+ * change counters show that the tables they are read from have changed, or after a fixed period if change
+ * checking is disabled.
  */
 @Slf4j
 public class CachingServerConfImpl extends ServerConfImpl {
 
     public static final String TSP_URL = "tsp_url";
 
+    // Serverconf tables and the cached items that are read from them
+    private static final Map<String, Set<CachedItem>> TABLE_ITEMS = ImmutableMap.<String, Set<CachedItem>>builder()
+            .put("serverconf", EnumSet.of(CachedItem.SERVER_ID))
+            .put("client", EnumSet.of(CachedItem.SERVER_ID, CachedItem.CLIENT, CachedItem.ACL))
+            .put("identifier", EnumSet.allOf(CachedItem.class))
+            .put("certificate", EnumSet.of(CachedItem.CLIENT))
+            .put("servicedescription", EnumSet.of(CachedItem.SERVICE))
+            .put("service", EnumSet.of(CachedItem.SERVICE))
+            .put("service_securitycategories", EnumSet.of(CachedItem.SERVICE))
+            .put("endpoint", EnumSet.of(CachedItem.ACL))
+            .put("accessright", EnumSet.of(CachedItem.ACL))
+            .put("localgroup", EnumSet.of(CachedItem.ACL))
+            .put("groupmember", EnumSet.of(CachedItem.ACL))
+            .put("tsp", EnumSet.of(CachedItem.TSP))
+            .build();
+
+    private enum CachedItem {
+        SERVER_ID, TSP, CLIENT, SERVICE, ACL
+    }
+
+    private final ChangeCounterDAOImpl changeCounterDao = new ChangeCounterDAOImpl();
+
     private final int expireSeconds;
+    private final long changeCheckIntervalMillis;
+    private final AtomicLong nextChangeCheck = new AtomicLong();
+    private volatile Map<String, Long> changeVersions;
+    private volatile Set<CachedItem> previouslyChanged = EnumSet.noneOf(CachedItem.class);
     private volatile SecurityServerId serverId;
     private final Cache<Object, List<String>> tspCache;
     private final Cache<ServiceId, Optional<ServiceType>> serviceCache;
-    private final Cache<AclCacheKey, List<EndpointType>> aclCache;
+    private final LoadingCache<ClientId, Optional<CompiledAccessRights>> aclCache;
     private final Cache<ClientId, Optional<ClientType>> clientCache;
 
     /**
-     * Constructor, creates time based object cache with expireSeconds paramter
+     * Constructor, creates caches that are invalidated on serverconf changes, or time based caches with
+     * expireSeconds parameter if change checking is disabled
      */
     @SuppressWarnings("checkstyle:MagicNumber")
     public CachingServerConfImpl() {
         super();
         expireSeconds = SystemProperties.getServerConfCachePeriod();
+        changeCheckIntervalMillis = TimeUnit.SECONDS.toMillis(SystemProperties.getServerConfChangeCheckInterval());
 
-        tspCache = CacheBuilder.newBuilder()
+        tspCache = newCacheBuilder()
                 .maximumSize(1)
-                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
                 .build();
 
-        clientCache = CacheBuilder.newBuilder()
+        clientCache = newCacheBuilder()
                 .maximumSize(SystemProperties.getServerConfClientCacheSize())
-                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
                 .recordStats()
                 .build();
 
-        serviceCache = CacheBuilder.newBuilder()
+        serviceCache = newCacheBuilder()
                 .maximumSize(SystemProperties.getServerConfServiceCacheSize())
-                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
                 .recordStats()
                 .build();
 
-        aclCache = CacheBuilder.newBuilder()
-                .weigher((AclCacheKey k, List<EndpointType> v) -> v.size() + 1)
+        CacheBuilder<Object, Object> aclCacheBuilder = CacheBuilder.newBuilder();
+        if (changeCheckIntervalMillis <= 0) {
+            // Compiled access rights are refreshed instead of expired, so that only the thread that triggers
+            // the refresh reloads them and the other threads keep using the previous rights in the meantime.
+            aclCacheBuilder.refreshAfterWrite(expireSeconds, TimeUnit.SECONDS);
+        }
+
+        aclCache = aclCacheBuilder
+                .weigher((ClientId k, Optional<CompiledAccessRights> v) ->
+                        1 + v.map(CompiledAccessRights::size).orElse(0))
                 .maximumWeight(SystemProperties.getServerConfAclCacheSize())
-                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
                 .recordStats()
-                .build();
+                .build(CacheLoader.from(owner -> Optional.ofNullable(super.getAccessRights(owner))));
+    }
 
+    private CacheBuilder<Object, Object> newCacheBuilder() {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+        if (changeCheckIntervalMillis <= 0) {
+            builder.expireAfterWrite(expireSeconds, TimeUnit.SECONDS);
+        }
+        return builder;
     }
 
     @Override
     public SecurityServerId getIdentifier() {
+        checkForChanges();
+
         SecurityServerId id = serverId;
         if (id == null) {
             return getAndCacheServerId(null);
@@ -126,6 +177,8 @@ public class CachingServerConfImpl extends ServerConfImpl {
 
     @Override
     public List<String> getTspUrl() {
+        checkForChanges();
+
         try {
             return tspCache.get(TSP_URL, super::getTspUrl);
         } catch (ExecutionException e) {
@@ -192,25 +245,23 @@ public class CachingServerConfImpl extends ServerConfImpl {
     }
 
     @Override
-    protected List<EndpointType> getEndpoints(Session session, ClientId client, ServiceId service) {
-        final AclCacheKey key = new AclCacheKey(client, service);
+    protected CompiledAccessRights getAccessRights(ClientId serviceOwner) {
+        checkForChanges();
+
         try {
-            /*
-             * Implementation note. It seems that the loader function is executed in the same thread, in which case the
-             * transaction simply joins the current one. However, this is not explicitly promised by the API,
-             * so we start a transaction if necessary.
-             */
-            return aclCache.get(key, () -> tx(s -> super.getEndpoints(s, client, service)));
-        } catch (ExecutionException e) {
+            return aclCache.getUnchecked(serviceOwner).orElse(null);
+        } catch (UncheckedExecutionException e) {
             if (e.getCause() instanceof CodedException) {
                 throw (CodedException)e.getCause();
             }
-            log.debug("Failed get list of endpoints", e);
-            return Collections.emptyList();
+            log.debug("Failed to get access rights", e);
+            return CompiledAccessRights.NONE;
         }
     }
 
     private Optional<ServiceType> getService(ServiceId serviceId) {
+        checkForChanges();
+
         try {
             return serviceCache
                     .get(serviceId, () -> tx(session -> Optional.ofNullable(super.getService(session, serviceId))));
@@ -224,6 +275,8 @@ public class CachingServerConfImpl extends ServerConfImpl {
     }
 
     private Optional<ClientType> getClient(ClientId clientId) {
+        checkForChanges();
+
         try {
             return clientCache.get(clientId,
                     () -> tx(session -> Optional.ofNullable(super.getClient(session, clientId))));
@@ -236,6 +289,91 @@ public class CachingServerConfImpl extends ServerConfImpl {
         }
     }
 
+    /**
+     * Reads the serverconf change counters, if the check interval has passed, and invalidates the cached items
+     * that are read from the changed tables. Only one thread checks for changes at a time, the other threads
+     * keep using the cached items in the meantime.
+     */
+    void checkForChanges() {
+        if (changeCheckIntervalMillis <= 0) {
+            return;
+        }
+
+        long now = currentTimeMillis();
+        long next = nextChangeCheck.get();
+        if (now < next || !nextChangeCheck.compareAndSet(next, now + changeCheckIntervalMillis)) {
+            return;
+        }
+
+        Set<CachedItem> changed;
+        try {
+            Map<String, Long> versions = tx(changeCounterDao::getVersions);
+            changed = getChangedItems(changeVersions, versions);
+            changeVersions = versions;
+        } catch (Exception e) {
+            log.warn("Failed to check serverconf changes, invalidating all cached items", e);
+            changed = EnumSet.allOf(CachedItem.class);
+            changeVersions = null;
+        }
+
+        // Items that changed before the previous check are invalidated once more, in case they were being
+        // loaded from the database when the change was made.
+        Set<CachedItem> invalidated = EnumSet.copyOf(changed);
+        invalidated.addAll(previouslyChanged);
+        invalidate(invalidated);
+        previouslyChanged = changed;
+    }
+
+    /**
+     * @return the current time in milliseconds, used for scheduling the change checks
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private static Set<CachedItem> getChangedItems(Map<String, Long> previous, Map<String, Long> current) {
+        if (previous == null) {
+            return EnumSet.allOf(CachedItem.class);
+        }
+
+        Set<CachedItem> changed = EnumSet.noneOf(CachedItem.class);
+        for (String table : Sets.union(previous.keySet(), current.keySet())) {
+            if (!Objects.equals(previous.get(table), current.get(table))) {
+                changed.addAll(TABLE_ITEMS.getOrDefault(table, EnumSet.allOf(CachedItem.class)));
+            }
+        }
+
+        return changed;
+    }
+
+    private void invalidate(Set<CachedItem> items) {
+        if (!items.isEmpty()) {
+            log.debug("Invalidating cached serverconf items {}", items);
+        }
+
+        for (CachedItem item : items) {
+            switch (item) {
+                case SERVER_ID:
+                    serverId = null;
+                    break;
+                case TSP:
+                    tspCache.invalidateAll();
+                    break;
+                case CLIENT:
+                    clientCache.invalidateAll();
+                    break;
+                case SERVICE:
+                    serviceCache.invalidateAll();
+                    break;
+                case ACL:
+                    aclCache.invalidateAll();
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
     @Override
     public void logStatistics() {
         if (log.isTraceEnabled()) {
@@ -247,10 +385,4 @@ public class CachingServerConfImpl extends ServerConfImpl {
                     aclCache.stats().toString());
         }
     }
-
-    @Value
-    private static class AclCacheKey {
-        final ClientId client;
-        final ServiceId serviceId;
-    }
 }
@@ -0,0 +1,280 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.serverconf;
+
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.conf.serverconf.model.AccessRightType;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
+import ee.ria.xroad.common.conf.serverconf.model.GroupMemberType;
+import ee.ria.xroad.common.conf.serverconf.model.LocalGroupType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.GlobalGroupId;
+import ee.ria.xroad.common.identifier.LocalGroupId;
+import ee.ria.xroad.common.identifier.XRoadId;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Access rights of a single service owner, compiled into lookup structures.
+ * <p>
+ * Endpoints are grouped by service code and method, and endpoint paths are
+ * stored in a tree keyed by path segment, so that only the path globs that
+ * can match a request are evaluated. The subjects of an endpoint are
+ * resolved to sets: local group members are expanded at compile time and
+ * global group membership is checked from the global configuration.
+ * <p>
+ * Instances are not modified after compilation and can be shared between
+ * threads.
+ */
+final class CompiledAccessRights {
+
+    /**
+     * Access rights that allow nothing.
+     */
+    static final CompiledAccessRights NONE = new CompiledAccessRights();
+
+    private final Map<String, ServiceRights> services = new HashMap<>();
+    private final int size;
+
+    private CompiledAccessRights() {
+        size = 0;
+    }
+
+    private CompiledAccessRights(ClientType serviceOwner) {
+        Map<String, Set<ClientId>> localGroups = new HashMap<>();
+        for (LocalGroupType group : serviceOwner.getLocalGroup()) {
+            Set<ClientId> members = localGroups.computeIfAbsent(group.getGroupCode(), k -> new HashSet<>());
+            for (GroupMemberType member : group.getGroupMember()) {
+                members.add(copyOf(member.getGroupMemberId()));
+            }
+        }
+
+        for (AccessRightType accessRight : serviceOwner.getAcl()) {
+            EndpointType endpoint = accessRight.getEndpoint();
+            services.computeIfAbsent(endpoint.getServiceCode(), k -> new ServiceRights())
+                    .subjects(endpoint.getMethod(), endpoint.getPath())
+                    .add(accessRight.getSubjectId(), localGroups);
+        }
+
+        size = serviceOwner.getAcl().size();
+    }
+
+    /**
+     * Compiles the access rights of the given service owner. The access rights and local groups of the owner
+     * must be loaded.
+     * @param serviceOwner the service owner
+     * @return compiled access rights
+     */
+    static CompiledAccessRights compile(ClientType serviceOwner) {
+        return new CompiledAccessRights(serviceOwner);
+    }
+
+    /**
+     * @return the number of access rights that were compiled
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the client is allowed to access the service endpoint.
+     * @param client the client
+     * @param serviceCode the service code
+     * @param method the request method, or null
+     * @param path the normalized request path, or null
+     * @return true if one of the matching endpoints grants access to the client
+     */
+    boolean isAllowed(ClientId client, String serviceCode, String method, String path) {
+        ServiceRights service = services.get(serviceCode);
+        if (service == null) {
+            return false;
+        }
+
+        if (service.anyMethod.isAllowed(client, path)) {
+            return true;
+        }
+
+        if (method == null) {
+            return false;
+        }
+
+        MethodRights rights = service.methods.get(method.toUpperCase(Locale.ROOT));
+        return rights != null && rights.isAllowed(client, path);
+    }
+
+    /**
+     * Copies a client identifier loaded by Hibernate. Group members are not loaded eagerly like access right
+     * subjects, and a lazy proxy would never be equal to the plain identifier of the client being checked.
+     */
+    private static ClientId copyOf(ClientId id) {
+        return ClientId.create(id.getXRoadInstance(), id.getMemberClass(), id.getMemberCode(), id.getSubsystemCode());
+    }
+
+    private static final class ServiceRights {
+        private final MethodRights anyMethod = new MethodRights();
+        private final Map<String, MethodRights> methods = new HashMap<>();
+
+        Subjects subjects(String method, String path) {
+            MethodRights rights = EndpointType.ANY_METHOD.equals(method)
+                    ? anyMethod
+                    : methods.computeIfAbsent(method.toUpperCase(Locale.ROOT), k -> new MethodRights());
+
+            return rights.subjects(path);
+        }
+    }
+
+    private static final class MethodRights {
+        private final Subjects anyPath = new Subjects();
+        private final PathNode root = new PathNode();
+
+        Subjects subjects(String path) {
+            if (EndpointType.ANY_PATH.equals(path)) {
+                return anyPath;
+            }
+
+            PathNode node = root;
+            for (String segment : path.split("/", -1)) {
+                if (segment.contains("**")) {
+                    // The rest of the glob can match across segments, so the whole path is matched against it.
+                    return node.globs.computeIfAbsent(path, p -> new GlobRule(PathGlob.compile(p))).subjects;
+                }
+                node = node.child(segment);
+            }
+
+            if (node.subjects == null) {
+                node.subjects = new Subjects();
+            }
+
+            return node.subjects;
+        }
+
+        boolean isAllowed(ClientId client, String path) {
+            if (anyPath.matches(client)) {
+                return true;
+            }
+
+            return path != null && root.isAllowed(client, path, path.split("/", -1), 0);
+        }
+    }
+
+    private static final class PathNode {
+        private final Map<String, PathNode> children = new HashMap<>();
+        private final Map<String, SegmentNode> segmentGlobs = new HashMap<>();
+        private final Map<String, GlobRule> globs = new HashMap<>();
+        private Subjects subjects;
+
+        PathNode child(String segment) {
+            if (segment.indexOf('*') != -1 || segment.indexOf('\\') != -1) {
+                return segmentGlobs.computeIfAbsent(segment, SegmentNode::new).node;
+            }
+
+            return children.computeIfAbsent(segment, k -> new PathNode());
+        }
+
+        boolean isAllowed(ClientId client, String path, String[] segments, int index) {
+            for (GlobRule glob : globs.values()) {
+                if (glob.subjects.matches(client) && glob.pattern.matcher(path).matches()) {
+                    return true;
+                }
+            }
+
+            if (index == segments.length) {
+                return subjects != null && subjects.matches(client);
+            }
+
+            String segment = segments[index];
+
+            PathNode child = children.get(segment);
+            if (child != null && child.isAllowed(client, path, segments, index + 1)) {
+                return true;
+            }
+
+            for (SegmentNode segmentGlob : segmentGlobs.values()) {
+                if (segmentGlob.pattern.matcher(segment).matches()
+                        && segmentGlob.node.isAllowed(client, path, segments, index + 1)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    private static final class SegmentNode {
+        private final Pattern pattern;
+        private final PathNode node = new PathNode();
+
+        SegmentNode(String segment) {
+            pattern = PathGlob.compile(segment);
+        }
+    }
+
+    private static final class GlobRule {
+        private final Pattern pattern;
+        private final Subjects subjects = new Subjects();
+
+        GlobRule(Pattern pattern) {
+            this.pattern = pattern;
+        }
+    }
+
+    private static final class Subjects {
+        private final Set<ClientId> clients = new HashSet<>();
+        private final Set<GlobalGroupId> globalGroups = new HashSet<>();
+
+        void add(XRoadId subject, Map<String, Set<ClientId>> localGroups) {
+            if (subject instanceof GlobalGroupId) {
+                globalGroups.add((GlobalGroupId)subject);
+            } else if (subject instanceof LocalGroupId) {
+                Set<ClientId> members = localGroups.get(((LocalGroupId)subject).getGroupCode());
+                if (members != null) {
+                    clients.addAll(members);
+                }
+            } else if (subject instanceof ClientId) {
+                clients.add((ClientId)subject);
+            }
+        }
+
+        boolean matches(ClientId client) {
+            if (clients.contains(client)) {
+                return true;
+            }
+
+            for (GlobalGroupId group : globalGroups) {
+                if (GlobalConf.isSubjectInGlobalGroup(client, group)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
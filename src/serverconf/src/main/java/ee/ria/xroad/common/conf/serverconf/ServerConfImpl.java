@@ -26,30 +26,22 @@ package ee.ria.xroad.common.conf.serverconf;
 
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.conf.InternalSSLKey;
-import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.dao.CertificateDAOImpl;
 import ee.ria.xroad.common.conf.serverconf.dao.ClientDAOImpl;
-import ee.ria.xroad.common.conf.serverconf.dao.IdentifierDAOImpl;
 import ee.ria.xroad.common.conf.serverconf.dao.ServerConfDAOImpl;
 import ee.ria.xroad.common.conf.serverconf.dao.ServiceDAOImpl;
 import ee.ria.xroad.common.conf.serverconf.dao.ServiceDescriptionDAOImpl;
-import ee.ria.xroad.common.conf.serverconf.model.AccessRightType;
 import ee.ria.xroad.common.conf.serverconf.model.ClientType;
 import ee.ria.xroad.common.conf.serverconf.model.DescriptionType;
-import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
 import ee.ria.xroad.common.conf.serverconf.model.ServerConfType;
 import ee.ria.xroad.common.conf.serverconf.model.ServiceDescriptionType;
 import ee.ria.xroad.common.conf.serverconf.model.ServiceType;
 import ee.ria.xroad.common.conf.serverconf.model.TspType;
 import ee.ria.xroad.common.db.TransactionCallback;
 import ee.ria.xroad.common.identifier.ClientId;
-import ee.ria.xroad.common.identifier.GlobalGroupId;
-import ee.ria.xroad.common.identifier.LocalGroupId;
 import ee.ria.xroad.common.identifier.SecurityCategoryId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.identifier.ServiceId;
-import ee.ria.xroad.common.identifier.XRoadId;
-import ee.ria.xroad.common.identifier.XRoadObjectType;
 import ee.ria.xroad.common.util.UriUtils;
 
 import lombok.extern.slf4j.Slf4j;
@@ -57,16 +49,10 @@ import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.Session;
 
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Join;
-import javax.persistence.criteria.Root;
-
 import java.net.URI;
 import java.security.cert.X509Certificate;
 import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
 import java.util.stream.Collectors;
 
 import static ee.ria.xroad.common.ErrorCodes.X_MALFORMED_SERVERCONF;
@@ -85,7 +71,6 @@ public class ServerConfImpl implements ServerConfProvider {
     protected static final int DEFAULT_SERVICE_TIMEOUT = 30;
 
     private final ServiceDAOImpl serviceDao = new ServiceDAOImpl();
-    private final IdentifierDAOImpl identifierDao = new IdentifierDAOImpl();
     private final ClientDAOImpl clientDao = new ClientDAOImpl();
     private final CertificateDAOImpl certificateDao = new CertificateDAOImpl();
     private final ServerConfDAOImpl serverConfDao = new ServerConfDAOImpl();
@@ -148,7 +133,7 @@ public class ServerConfImpl implements ServerConfProvider {
             List<ServiceId> allServices =
                     serviceDao.getServices(session, serviceProvider);
             return allServices.stream()
-                    .filter(s -> internalIsQueryAllowed(session, client, s, null, null))
+                    .filter(s -> isQueryAllowed(client, s, null, null))
                     .collect(Collectors.toList());
         });
     }
@@ -160,7 +145,7 @@ public class ServerConfImpl implements ServerConfProvider {
             List<ServiceId> allServices =
                     serviceDao.getServicesByDescriptionType(session, serviceProvider, descriptionType);
             return allServices.stream()
-                    .filter(s -> internalIsQueryAllowed(session, client, s, null, null))
+                    .filter(s -> isQueryAllowed(client, s, null, null))
                     .collect(Collectors.toList());
         });
     }
@@ -252,7 +237,26 @@ public class ServerConfImpl implements ServerConfProvider {
 
     @Override
     public boolean isQueryAllowed(ClientId client, ServiceId service, String method, String path) {
-        return tx(session -> internalIsQueryAllowed(session, client, service, method, path));
+        if (client == null) {
+            return false;
+        }
+
+        CompiledAccessRights accessRights = getAccessRights(service.getClientId());
+
+        if (accessRights == null) {
+            // should not normally happen, but possible if service and acl caches are in inconsistent state
+            // (see CachingServerConfImpl))
+            throw new CodedException(X_UNKNOWN_SERVICE, "Service '%s' owner not found", service);
+        }
+
+        final String normalizedPath;
+        if (path == null) {
+            normalizedPath = null;
+        } else {
+            normalizedPath = UriUtils.uriPathPercentDecode(URI.create(path).normalize().getRawPath(), true);
+        }
+
+        return accessRights.isAllowed(client, service.getServiceCode(), method, normalizedPath);
     }
 
     @Override
@@ -315,77 +319,16 @@ public class ServerConfImpl implements ServerConfProvider {
         return serviceDescriptionDao.getServiceDescription(session, service);
     }
 
-    private boolean internalIsQueryAllowed(Session session, ClientId client, ServiceId service, String method,
-            String path) {
-
-        if (client == null) {
-            return false;
-        }
-
-        return checkAccessRights(session, client, service, method, path);
-    }
-
-    @SuppressWarnings("squid:S3776")
-    private boolean checkAccessRights(Session session, ClientId client, ServiceId service, String method, String path) {
-        final String normalizedPath;
-        if (path == null) {
-            normalizedPath = null;
-        } else {
-            normalizedPath = UriUtils.uriPathPercentDecode(URI.create(path).normalize().getRawPath(), true);
-        }
-        return getEndpoints(session, client, service).stream().anyMatch(ep -> ep.matches(method, normalizedPath));
-    }
-
-    protected List<EndpointType> getEndpoints(Session session, ClientId client, ServiceId service) {
-        log.debug("getAcl, session = {}", session);
-
-        final ClientType serviceOwner = getClient(session, service.getClientId());
-
-        if (serviceOwner == null) {
-            // should not normally happen, but possible if service and acl caches are in inconsistent state
-            // (see CachingServerConfImpl))
-            throw new CodedException(X_UNKNOWN_SERVICE, "Service '%s' owner not found", service);
-        }
-
-        final ClientId localClientId = identifierDao.findClientId(session, client);
-        // localClientId can be null if the permissions are defined by a global group
-
-        final CriteriaBuilder cb = session.getCriteriaBuilder();
-        final CriteriaQuery<AccessRightType> query = cb.createQuery(AccessRightType.class);
-        final Root<ClientType> root = query.from(ClientType.class);
-        final Join<ClientType, AccessRightType> acl = root.join("acl");
-        final Join<AccessRightType, EndpointType> endpoint = acl.join("endpoint");
-        final Join<AccessRightType, XRoadId> identifier = acl.join("subjectId");
-        acl.fetch("endpoint");
-
-        query.select(acl).where(cb.and(
-                cb.equal(root, serviceOwner),
-                cb.equal(endpoint.get("serviceCode"), service.getServiceCode())),
-                cb.or(cb.equal(identifier, localClientId),
-                        cb.equal(identifier.get("type"), XRoadObjectType.GLOBALGROUP),
-                        cb.equal(identifier.get("type"), XRoadObjectType.LOCALGROUP)));
-
-        return session.createQuery(query).setReadOnly(true).list().stream()
-                .filter(it -> subjectMatches(serviceOwner, it.getSubjectId(), client))
-                .map(AccessRightType::getEndpoint)
-                .collect(Collectors.toList());
-    }
-
-    private boolean subjectMatches(ClientType serviceOwner, XRoadId aclSubject, ClientId client) {
-        if (aclSubject instanceof GlobalGroupId) {
-            return GlobalConf.isSubjectInGlobalGroup(client, (GlobalGroupId)aclSubject);
-        } else if (aclSubject instanceof LocalGroupId) {
-            return isMemberInLocalGroup(client, (LocalGroupId)aclSubject, serviceOwner);
-        } else {
-            return client.equals(aclSubject);
-        }
-    }
-
-    private boolean isMemberInLocalGroup(ClientId member, LocalGroupId groupId, ClientType groupOwner) {
-        return groupOwner.getLocalGroup().stream()
-                .filter(g -> Objects.equals(groupId.getGroupCode(), g.getGroupCode()))
-                .flatMap(g -> g.getGroupMember().stream())
-                .anyMatch(m -> m.getGroupMemberId().equals(member));
+    /**
+     * Loads and compiles the access rights of the given service owner.
+     * @param serviceOwner the service owner identifier
+     * @return compiled access rights or null, if the service owner does not exist
+     */
+    protected CompiledAccessRights getAccessRights(ClientId serviceOwner) {
+        return tx(session -> {
+            ClientType owner = getClient(session, serviceOwner);
+            return owner != null ? CompiledAccessRights.compile(owner) : null;
+        });
     }
 
     /**
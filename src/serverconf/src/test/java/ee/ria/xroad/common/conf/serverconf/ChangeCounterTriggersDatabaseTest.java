@@ -0,0 +1,194 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.serverconf;
+
+import ee.ria.xroad.common.conf.serverconf.dao.ChangeCounterDAOImpl;
+import ee.ria.xroad.common.conf.serverconf.model.ServerConfType;
+import ee.ria.xroad.common.conf.serverconf.model.TspType;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests the serverconf change counter triggers against a PostgreSQL database.
+ * The test is skipped unless the connection is given with the system properties
+ * xroad.test.serverconf.postgres-url, xroad.test.serverconf.postgres-user and
+ * xroad.test.serverconf.postgres-password. The serverconf tables of the database are recreated.
+ */
+public class ChangeCounterTriggersDatabaseTest {
+
+    private static final String URL = System.getProperty("xroad.test.serverconf.postgres-url");
+    private static final String USER = System.getProperty("xroad.test.serverconf.postgres-user");
+    private static final String PASSWORD = System.getProperty("xroad.test.serverconf.postgres-password");
+
+    private static final String CHANGE_COUNTER_CHANGELOG =
+            "../packages/src/xroad/common/proxy/usr/share/xroad/db/serverconf/12-change-counter.xml";
+
+    private Connection connection;
+    private SessionFactory sessionFactory;
+
+    /**
+     * Creates the serverconf tables and the change counter triggers.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(URL != null);
+
+        sessionFactory = new Configuration()
+                .configure("serverconf.hibernate.cfg.xml")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect")
+                .setProperty("hibernate.connection.driver_class", "org.postgresql.Driver")
+                .setProperty("hibernate.connection.url", URL)
+                .setProperty("hibernate.connection.username", USER)
+                .setProperty("hibernate.connection.password", PASSWORD)
+                .setProperty("hibernate.hbm2ddl.auto", "create")
+                .buildSessionFactory();
+
+        connection = DriverManager.getConnection(URL, USER, PASSWORD);
+        execute(getTriggerSql());
+    }
+
+    /**
+     * Closes the connections.
+     * @throws Exception in case of any unexpected errors
+     */
+    @After
+    public void tearDown() throws Exception {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Test that every statement on a tracked table increments the counter of that table only, even if no rows
+     * are affected.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void everyTrackedTableIncrementsItsCounter() throws Exception {
+        Map<String, Long> versions = getVersions();
+        assertFalse(versions.isEmpty());
+
+        for (String table : versions.keySet()) {
+            execute("DELETE FROM " + table + " WHERE false");
+
+            Map<String, Long> expected = new HashMap<>(versions);
+            expected.put(table, versions.get(table) + 1);
+
+            versions = getVersions();
+            assertEquals(table, expected, versions);
+        }
+    }
+
+    /**
+     * Test that changes made through Hibernate and truncation are counted.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void changesAreCounted() throws Exception {
+        inTransaction(session -> {
+            ServerConfType conf = new ServerConfType();
+            session.save(conf);
+            return null;
+        });
+
+        long tspVersion = getVersions().get("tsp");
+
+        inTransaction(session -> {
+            TspType tsp = new TspType();
+            tsp.setName("tsp");
+            tsp.setUrl("http://tsp");
+            session.createQuery("from ServerConfType", ServerConfType.class).getSingleResult().getTsp().add(tsp);
+            return null;
+        });
+
+        long inserted = getVersions().get("tsp");
+        assertTrue(inserted > tspVersion);
+
+        execute("TRUNCATE tsp");
+
+        assertEquals(inserted + 1, getVersions().get("tsp").longValue());
+    }
+
+    private Map<String, Long> getVersions() {
+        return inTransaction(new ChangeCounterDAOImpl()::getVersions);
+    }
+
+    private <T> T inTransaction(Function<Session, T> callback) {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                T result = callback.apply(session);
+                transaction.commit();
+
+                return result;
+            } catch (RuntimeException e) {
+                transaction.rollback();
+
+                throw e;
+            }
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static String getTriggerSql() throws Exception {
+        Document changelog = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(Paths.get(CHANGE_COUNTER_CHANGELOG).toFile());
+
+        return changelog.getElementsByTagName("sql").item(0).getTextContent();
+    }
+}
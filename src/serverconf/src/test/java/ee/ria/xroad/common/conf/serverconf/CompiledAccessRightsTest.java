@@ -0,0 +1,149 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.serverconf;
+
+import ee.ria.xroad.common.conf.serverconf.model.AccessRightType;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
+import ee.ria.xroad.common.conf.serverconf.model.GroupMemberType;
+import ee.ria.xroad.common.conf.serverconf.model.LocalGroupType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.LocalGroupId;
+import ee.ria.xroad.common.identifier.XRoadId;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CompiledAccessRights unit tests
+ */
+public class CompiledAccessRightsTest {
+
+    private static final ClientId CLIENT = ClientId.create("XX", "Class", "client");
+    private static final ClientId OTHER_CLIENT = ClientId.create("XX", "Class", "other");
+    private static final String SERVICE = "service";
+
+    /**
+     * Tests that path matching is equivalent to matching the path globs one by one.
+     */
+    @Test
+    public void matchPathsLikePathGlob() {
+        Object[][] cases = {
+                {"**", "", true},
+                {"***", "match/anything/*", true},
+                {"/*/", "/a/", true},
+                {"/*/", "/a/b/", false},
+                {"", "", true},
+                {"", " ", false},
+                {".^$+{[]|()", ".^$+{[]|()", true},
+                {"**/bar/**", "a/b/c/bar/e/f", true},
+                {"**/bar/**", "a/b/c/foo/e/f", false},
+                {"**\\*", "/what/ever*", true},
+                {"**\\*", "/what/ever!", false},
+                {"/api/**", "/api/foo/bar", true},
+                {"/api/**", "/api", false},
+                {"/api/*/foo", "/api/test/foo", true},
+                {"/api/*/foo", "/api/test/bar/foo", false},
+                {"/api/t*/**", "/api/test/foo", true},
+                {"/api/t*/**", "/api/xest/foo", false},
+                {"/api/\\*", "/api/*", true},
+                {"/api/\\*", "/api/x", false},
+                {"/api/\\\\", "/api/\\", true},
+                {"/api/foo", "/api/foo", true},
+                {"/api/foo", "/api/foo/", false},
+                {"/api/foo", "/api/fo", false},
+        };
+
+        for (Object[] c : cases) {
+            String glob = (String)c[0];
+            String path = (String)c[1];
+
+            ClientType owner = new ClientType();
+            addAccessRight(owner, "GET", glob, CLIENT);
+
+            assertEquals(glob + " matches " + path, c[2],
+                    CompiledAccessRights.compile(owner).isAllowed(CLIENT, SERVICE, "GET", path));
+            assertEquals(glob + " matches " + path, c[2], PathGlob.matches(glob, path));
+        }
+    }
+
+    /**
+     * Tests matching of endpoint methods and service codes.
+     */
+    @Test
+    public void matchMethodsAndServices() {
+        ClientType owner = new ClientType();
+        addAccessRight(owner, "get", "/read", CLIENT);
+        addAccessRight(owner, EndpointType.ANY_METHOD, "/any", CLIENT);
+        addAccessRight(owner, "POST", EndpointType.ANY_PATH, CLIENT);
+
+        CompiledAccessRights accessRights = CompiledAccessRights.compile(owner);
+
+        assertEquals(3, accessRights.size());
+        assertTrue(accessRights.isAllowed(CLIENT, SERVICE, "GET", "/read"));
+        assertTrue(accessRights.isAllowed(CLIENT, SERVICE, "get", "/read"));
+        assertFalse(accessRights.isAllowed(CLIENT, SERVICE, "PUT", "/read"));
+        assertTrue(accessRights.isAllowed(CLIENT, SERVICE, "DELETE", "/any"));
+        assertTrue(accessRights.isAllowed(CLIENT, SERVICE, "POST", "/whatever"));
+        assertTrue(accessRights.isAllowed(CLIENT, SERVICE, "POST", null));
+        assertFalse(accessRights.isAllowed(CLIENT, SERVICE, null, null));
+        assertFalse(accessRights.isAllowed(CLIENT, "otherService", "GET", "/read"));
+        assertFalse(accessRights.isAllowed(OTHER_CLIENT, SERVICE, "GET", "/read"));
+    }
+
+    /**
+     * Tests that local group members are granted the rights given to the group.
+     */
+    @Test
+    public void resolveLocalGroupMembers() {
+        ClientType owner = new ClientType();
+
+        LocalGroupType group = new LocalGroupType();
+        group.setGroupCode("group");
+        GroupMemberType member = new GroupMemberType();
+        member.setGroupMemberId(OTHER_CLIENT);
+        group.getGroupMember().add(member);
+        owner.getLocalGroup().add(group);
+
+        addAccessRight(owner, "GET", "/group/**", LocalGroupId.create("group"));
+        addAccessRight(owner, "GET", "/missing/**", LocalGroupId.create("missing"));
+
+        CompiledAccessRights accessRights = CompiledAccessRights.compile(owner);
+
+        assertTrue(accessRights.isAllowed(OTHER_CLIENT, SERVICE, "GET", "/group/foo"));
+        assertFalse(accessRights.isAllowed(CLIENT, SERVICE, "GET", "/group/foo"));
+        assertFalse(accessRights.isAllowed(OTHER_CLIENT, SERVICE, "GET", "/missing/foo"));
+    }
+
+    private static void addAccessRight(ClientType owner, String method, String path, XRoadId subject) {
+        AccessRightType accessRight = new AccessRightType();
+        accessRight.setEndpoint(new EndpointType(SERVICE, method, path, false));
+        accessRight.setSubjectId(subject);
+        owner.getAcl().add(accessRight);
+    }
+}
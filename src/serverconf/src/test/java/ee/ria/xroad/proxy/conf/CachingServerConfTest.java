@@ -24,19 +24,32 @@
  */
 package ee.ria.xroad.proxy.conf;
 
+import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.ExpectedCodedException;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.CachingServerConfImpl;
 import ee.ria.xroad.common.conf.serverconf.IsAuthentication;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
 import ee.ria.xroad.common.conf.serverconf.ServerConfDatabaseCtx;
+import ee.ria.xroad.common.conf.serverconf.dao.ClientDAOImpl;
+import ee.ria.xroad.common.conf.serverconf.dao.ServerConfDAOImpl;
 import ee.ria.xroad.common.conf.serverconf.dao.ServiceDAOImpl;
+import ee.ria.xroad.common.conf.serverconf.model.ChangeCounterType;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
+import ee.ria.xroad.common.conf.serverconf.model.GroupMemberType;
+import ee.ria.xroad.common.conf.serverconf.model.LocalGroupType;
+import ee.ria.xroad.common.conf.serverconf.model.ServerConfType;
+import ee.ria.xroad.common.conf.serverconf.model.TspType;
 import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.LocalGroupId;
 import ee.ria.xroad.common.identifier.SecurityCategoryId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.identifier.ServiceId;
 
+import org.hibernate.Session;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -47,9 +60,13 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static ee.ria.xroad.common.ErrorCodes.X_UNKNOWN_SERVICE;
+import static ee.ria.xroad.common.conf.serverconf.ServerConfDatabaseCtx.doInTransaction;
 import static ee.ria.xroad.common.util.CryptoUtils.readCertificate;
 import static ee.ria.xroad.proxy.conf.TestUtil.BASE64_CERT;
 import static ee.ria.xroad.proxy.conf.TestUtil.CLIENT_CODE;
@@ -68,6 +85,7 @@ import static ee.ria.xroad.proxy.conf.TestUtil.SERVICE_VERSION;
 import static ee.ria.xroad.proxy.conf.TestUtil.SUBSYSTEM;
 import static ee.ria.xroad.proxy.conf.TestUtil.XROAD_INSTANCE;
 import static ee.ria.xroad.proxy.conf.TestUtil.client;
+import static ee.ria.xroad.proxy.conf.TestUtil.createAccessRight;
 import static ee.ria.xroad.proxy.conf.TestUtil.createTestClientId;
 import static ee.ria.xroad.proxy.conf.TestUtil.createTestServiceId;
 import static ee.ria.xroad.proxy.conf.TestUtil.prepareDB;
@@ -78,12 +96,15 @@ import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Tests server conf API.
  */
 public class CachingServerConfTest {
 
+    private static final long CHANGE_CHECK_INTERVAL_MILLIS = 1000;
+
     @Rule
     public ExpectedCodedException thrown = ExpectedCodedException.none();
 
@@ -254,6 +275,79 @@ public class CachingServerConfTest {
         assertFalse(ServerConf.isQueryAllowed(client1, serviceRest));
     }
 
+    /**
+     * Tests that the members of a local group are allowed to access the services that the group has access to.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void isQueryAllowedForLocalGroupMember() throws Exception {
+        ClientId serviceOwner = createTestClientId(client(1));
+        // the member is not referenced by any access right, so it is loaded lazily with the group
+        ClientId groupMember = ClientId.create("XX", "memberClass", "groupMember");
+        ClientId otherMember = ClientId.create("XX", "memberClass", "memberCode2");
+        ServiceId service = createTestServiceId(serviceOwner.getMemberCode(), "localGroupService", null);
+
+        doInTransaction(session -> {
+            ClientType owner = new ClientDAOImpl().getClient(session, serviceOwner);
+
+            GroupMemberType member = new GroupMemberType();
+            member.setAdded(new Date());
+            member.setGroupMemberId(groupMember);
+            getLocalGroup(owner, "localGroup1").getGroupMember().add(member);
+
+            EndpointType endpoint = new EndpointType(service.getServiceCode(), "*", "**", false);
+            session.persist(endpoint);
+            owner.getAcl().add(createAccessRight(endpoint, LocalGroupId.create("localGroup1")));
+            return null;
+        });
+
+        try {
+            CachingServerConfImpl caching = new CachingServerConfImpl();
+
+            assertTrue(caching.isQueryAllowed(groupMember, service, null, null));
+            assertTrue(caching.isQueryAllowed(groupMember, service, "GET", "/api"));
+            assertFalse(caching.isQueryAllowed(otherMember, service, null, null));
+        } finally {
+            doInTransaction(session -> {
+                ClientType owner = new ClientDAOImpl().getClient(session, serviceOwner);
+                owner.getAcl().removeIf(a -> service.getServiceCode().equals(a.getEndpoint().getServiceCode()));
+                getLocalGroup(owner, "localGroup1").getGroupMember()
+                        .removeIf(m -> groupMember.equals(m.getGroupMemberId()));
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Tests that a failure to load the access rights of a service owner is reported to the caller and not cached.
+     */
+    @Test
+    public void accessRightsLoadFailureIsNotCached() {
+        ClientId client1 = createTestClientId(client(1));
+        ServiceId service1 = createTestServiceId(client1.getMemberCode(), service(1, 1), SERVICE_VERSION);
+        AtomicBoolean databaseDown = new AtomicBoolean(true);
+
+        CachingServerConfImpl caching = new CachingServerConfImpl() {
+            @Override
+            protected ClientType getClient(Session session, ClientId c) {
+                if (databaseDown.get()) {
+                    throw new IllegalStateException("Database is not available");
+                }
+                return super.getClient(session, c);
+            }
+        };
+
+        try {
+            caching.isQueryAllowed(client1, service1, null, null);
+            fail("Expected CodedException");
+        } catch (CodedException expected) {
+            // loader exceptions are translated to coded exceptions
+        }
+
+        databaseDown.set(false);
+        assertTrue(caching.isQueryAllowed(client1, service1, null, null));
+    }
+
     /**
      * Tests getting required categories.
      */
@@ -355,6 +449,69 @@ public class CachingServerConfTest {
         assertEquals(NUM_SERVICEDESCRIPTIONS * NUM_SERVICES, allServices.size());
     }
 
+    /**
+     * Tests that cached items are reloaded after the change counter of their table has changed.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void reloadOnChange() throws Exception {
+        AtomicLong now = new AtomicLong();
+
+        System.setProperty(SystemProperties.SERVER_CONF_CHANGE_CHECK_INTERVAL, "1");
+        CachingServerConfImpl caching;
+        try {
+            caching = new CachingServerConfImpl() {
+                @Override
+                protected long currentTimeMillis() {
+                    return now.get();
+                }
+            };
+        } finally {
+            System.clearProperty(SystemProperties.SERVER_CONF_CHANGE_CHECK_INTERVAL);
+        }
+
+        // the first two checks reload everything, as there are no previous change counters to compare to
+        assertEquals(NUM_TSPS, caching.getTspUrl().size());
+        now.addAndGet(CHANGE_CHECK_INTERVAL_MILLIS);
+        assertEquals(NUM_TSPS, caching.getTspUrl().size());
+
+        TspType tsp = new TspType();
+        tsp.setName("tspChanged");
+        tsp.setUrl("tspChanged");
+        doInTransaction(session -> new ServerConfDAOImpl().getConf(session).getTsp().add(tsp));
+
+        now.addAndGet(CHANGE_CHECK_INTERVAL_MILLIS);
+        assertEquals(NUM_TSPS, caching.getTspUrl().size());
+
+        // HSQLDB has no change counter triggers, so the counter is updated here (the PostgreSQL triggers are
+        // tested in ChangeCounterTriggersDatabaseTest)
+        ChangeCounterType counter = new ChangeCounterType();
+        counter.setTableName("TSP");
+        counter.setVersion(1);
+        doInTransaction(session -> session.save(counter));
+
+        // no reload before the check interval has passed
+        now.addAndGet(CHANGE_CHECK_INTERVAL_MILLIS - 1);
+        assertEquals(NUM_TSPS, caching.getTspUrl().size());
+
+        now.addAndGet(1);
+        assertEquals(NUM_TSPS + 1, caching.getTspUrl().size());
+
+        doInTransaction(session -> {
+            ServerConfType conf = new ServerConfDAOImpl().getConf(session);
+            conf.getTsp().removeIf(t -> "tspChanged".equals(t.getUrl()));
+            session.delete(session.merge(counter));
+            return null;
+        });
+    }
+
+    private static LocalGroupType getLocalGroup(ClientType client, String groupCode) {
+        return client.getLocalGroup().stream()
+                .filter(g -> groupCode.equals(g.getGroupCode()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Local group " + groupCode + " not found"));
+    }
+
     private static List<ServiceId> getServices(ClientId serviceProvider) {
         return new ServiceDAOImpl().getServices(
                 ServerConfDatabaseCtx.get().getSession(),
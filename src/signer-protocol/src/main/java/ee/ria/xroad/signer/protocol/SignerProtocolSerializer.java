@@ -0,0 +1,335 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.protocol;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.SecurityServerId;
+import ee.ria.xroad.signer.protocol.dto.AuthKeyInfo;
+import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
+import ee.ria.xroad.signer.protocol.dto.MemberSigningInfo;
+import ee.ria.xroad.signer.protocol.message.GetAuthKey;
+import ee.ria.xroad.signer.protocol.message.GetMemberSigningInfo;
+import ee.ria.xroad.signer.protocol.message.GetOcspResponses;
+import ee.ria.xroad.signer.protocol.message.GetOcspResponsesResponse;
+import ee.ria.xroad.signer.protocol.message.Sign;
+import ee.ria.xroad.signer.protocol.message.SignResponse;
+
+import akka.serialization.SerializerWithStringManifest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Akka serializer for the signer protocol messages that are exchanged with the signer on every signed
+ * message. The messages are written in a compact binary format instead of Java serialization, which
+ * spends most of its bytes and time on class descriptors.
+ *
+ * The serializer is bound to the message classes in the reference.conf of this module. Other signer
+ * protocol messages are still serialized using Java serialization.
+ */
+public class SignerProtocolSerializer extends SerializerWithStringManifest {
+
+    /** Serializer identifier, ids 0 - 40 are reserved by Akka. */
+    public static final int IDENTIFIER = 6601;
+
+    private static final String SIGN = "Sign";
+    private static final String SIGN_RESPONSE = "SignResponse";
+    private static final String GET_OCSP_RESPONSES = "GetOcspResponses";
+    private static final String GET_OCSP_RESPONSES_RESPONSE = "GetOcspResponsesResponse";
+    private static final String GET_MEMBER_SIGNING_INFO = "GetMemberSigningInfo";
+    private static final String MEMBER_SIGNING_INFO = "MemberSigningInfo";
+    private static final String GET_AUTH_KEY = "GetAuthKey";
+    private static final String AUTH_KEY_INFO = "AuthKeyInfo";
+
+    // Length of absent (null) values
+    private static final int NULL_LENGTH = -1;
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    @Override
+    public int identifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    public String manifest(Object o) {
+        if (o instanceof Sign) {
+            return SIGN;
+        } else if (o instanceof SignResponse) {
+            return SIGN_RESPONSE;
+        } else if (o instanceof GetOcspResponses) {
+            return GET_OCSP_RESPONSES;
+        } else if (o instanceof GetOcspResponsesResponse) {
+            return GET_OCSP_RESPONSES_RESPONSE;
+        } else if (o instanceof GetMemberSigningInfo) {
+            return GET_MEMBER_SIGNING_INFO;
+        } else if (o instanceof MemberSigningInfo) {
+            return MEMBER_SIGNING_INFO;
+        } else if (o instanceof GetAuthKey) {
+            return GET_AUTH_KEY;
+        } else if (o instanceof AuthKeyInfo) {
+            return AUTH_KEY_INFO;
+        }
+
+        throw new IllegalArgumentException("Cannot serialize object of type " + o.getClass().getName());
+    }
+
+    @Override
+    public byte[] toBinary(Object o) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            if (o instanceof Sign) {
+                Sign sign = (Sign) o;
+
+                writeString(out, sign.getKeyId());
+                writeString(out, sign.getSignatureAlgorithmId());
+                writeBytes(out, sign.getDigest());
+            } else if (o instanceof SignResponse) {
+                writeBytes(out, ((SignResponse) o).getSignature());
+            } else if (o instanceof GetOcspResponses) {
+                writeStrings(out, ((GetOcspResponses) o).getCertHash());
+            } else if (o instanceof GetOcspResponsesResponse) {
+                writeStrings(out, ((GetOcspResponsesResponse) o).getBase64EncodedResponses());
+            } else if (o instanceof GetMemberSigningInfo) {
+                writeClientId(out, ((GetMemberSigningInfo) o).getMemberId());
+            } else if (o instanceof MemberSigningInfo) {
+                MemberSigningInfo info = (MemberSigningInfo) o;
+
+                writeString(out, info.getKeyId());
+                writeCertificateInfo(out, info.getCert());
+                writeString(out, info.getSignMechanismName());
+            } else if (o instanceof GetAuthKey) {
+                writeSecurityServerId(out, ((GetAuthKey) o).getSecurityServer());
+            } else if (o instanceof AuthKeyInfo) {
+                AuthKeyInfo info = (AuthKeyInfo) o;
+
+                writeString(out, info.getAlias());
+                writeString(out, info.getKeyStoreFileName());
+                writeChars(out, info.getPassword());
+                writeCertificateInfo(out, info.getCert());
+            } else {
+                throw new IllegalArgumentException("Cannot serialize object of type " + o.getClass().getName());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Object fromBinary(byte[] bytes, String manifest) throws NotSerializableException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            switch (manifest) {
+                case SIGN:
+                    return new Sign(readString(in), readString(in), readBytes(in));
+                case SIGN_RESPONSE:
+                    return new SignResponse(readBytes(in));
+                case GET_OCSP_RESPONSES:
+                    return new GetOcspResponses(readStrings(in));
+                case GET_OCSP_RESPONSES_RESPONSE:
+                    return new GetOcspResponsesResponse(readStrings(in));
+                case GET_MEMBER_SIGNING_INFO:
+                    return new GetMemberSigningInfo(readClientId(in));
+                case MEMBER_SIGNING_INFO:
+                    return new MemberSigningInfo(readString(in), readCertificateInfo(in), readString(in));
+                case GET_AUTH_KEY:
+                    return new GetAuthKey(readSecurityServerId(in));
+                case AUTH_KEY_INFO:
+                    return new AuthKeyInfo(readString(in), readString(in), readChars(in), readCertificateInfo(in));
+                default:
+                    throw new NotSerializableException("Unknown signer protocol message type: " + manifest);
+            }
+        } catch (NotSerializableException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    private static void writeCertificateInfo(DataOutputStream out, CertificateInfo cert) throws IOException {
+        out.writeBoolean(cert != null);
+
+        if (cert != null) {
+            writeClientId(out, cert.getMemberId());
+            out.writeBoolean(cert.isActive());
+            out.writeBoolean(cert.isSavedToConfiguration());
+            writeString(out, cert.getStatus());
+            writeString(out, cert.getId());
+            writeBytes(out, cert.getCertificateBytes());
+            writeBytes(out, cert.getOcspBytes());
+        }
+    }
+
+    private static CertificateInfo readCertificateInfo(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        return new CertificateInfo(readClientId(in), in.readBoolean(), in.readBoolean(), readString(in),
+                readString(in), readBytes(in), readBytes(in));
+    }
+
+    private static void writeClientId(DataOutputStream out, ClientId clientId) throws IOException {
+        out.writeBoolean(clientId != null);
+
+        if (clientId != null) {
+            writeString(out, clientId.getXRoadInstance());
+            writeString(out, clientId.getMemberClass());
+            writeString(out, clientId.getMemberCode());
+            writeString(out, clientId.getSubsystemCode());
+        }
+    }
+
+    private static ClientId readClientId(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        return ClientId.create(readString(in), readString(in), readString(in), readString(in));
+    }
+
+    private static void writeSecurityServerId(DataOutputStream out, SecurityServerId serverId) throws IOException {
+        out.writeBoolean(serverId != null);
+
+        if (serverId != null) {
+            writeString(out, serverId.getXRoadInstance());
+            writeString(out, serverId.getMemberClass());
+            writeString(out, serverId.getMemberCode());
+            writeString(out, serverId.getServerCode());
+        }
+    }
+
+    private static SecurityServerId readSecurityServerId(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        return SecurityServerId.create(readString(in), readString(in), readString(in), readString(in));
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+        if (strings == null) {
+            out.writeInt(NULL_LENGTH);
+
+            return;
+        }
+
+        out.writeInt(strings.length);
+
+        for (String s : strings) {
+            writeString(out, s);
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        int length = in.readInt();
+
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+
+        String[] strings = new String[length];
+
+        for (int i = 0; i < length; i++) {
+            strings[i] = readString(in);
+        }
+
+        return strings;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        writeBytes(out, s != null ? s.getBytes(StandardCharsets.UTF_8) : null);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in);
+
+        return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+    }
+
+    private static void writeChars(DataOutputStream out, char[] chars) throws IOException {
+        if (chars == null) {
+            out.writeInt(NULL_LENGTH);
+
+            return;
+        }
+
+        out.writeInt(chars.length);
+
+        for (char c : chars) {
+            out.writeChar(c);
+        }
+    }
+
+    private static char[] readChars(DataInputStream in) throws IOException {
+        int length = in.readInt();
+
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+
+        char[] chars = new char[length];
+
+        for (int i = 0; i < length; i++) {
+            chars[i] = in.readChar();
+        }
+
+        return chars;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(NULL_LENGTH);
+
+            return;
+        }
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+
+        return bytes;
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.protocol;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
+import ee.ria.xroad.signer.protocol.dto.MemberSigningInfo;
+import ee.ria.xroad.signer.protocol.message.GetOcspResponses;
+import ee.ria.xroad.signer.protocol.message.GetOcspResponsesResponse;
+import ee.ria.xroad.signer.protocol.message.Sign;
+import ee.ria.xroad.signer.protocol.message.SignResponse;
+
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.serialization.JavaSerializer;
+import akka.serialization.Serializer;
+import akka.testkit.javadsl.TestKit;
+
+import java.lang.management.ManagementFactory;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the round-trip latency, allocations and size of signer protocol messages serialized with Java
+ * serialization and with {@link SignerProtocolSerializer}.
+ *
+ * Usage: SignerProtocolSerializerBenchmark [iterations]
+ */
+public final class SignerProtocolSerializerBenchmark {
+
+    private static final int DEFAULT_ITERATIONS = 200_000;
+
+    private static final int SHA256_DIGEST_LENGTH = 32;
+    private static final int SIGNATURE_LENGTH = 256;
+    private static final int CERT_LENGTH = 1500;
+    private static final int OCSP_RESPONSE_LENGTH = 2000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private SignerProtocolSerializerBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args optional number of iterations per message type
+     * @throws Exception in case of any errors
+     */
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+
+        ActorSystem actorSystem = ActorSystem.create();
+
+        try {
+            Serializer java = new JavaSerializer((ExtendedActorSystem) actorSystem);
+            SignerProtocolSerializer binary = new SignerProtocolSerializer();
+
+            System.out.printf("%-26s %-7s %10s %12s %10s%n", "message", "format", "ns/op", "bytes/op", "size");
+
+            for (Map.Entry<String, Object> message : createMessages().entrySet()) {
+                run(message.getKey(), "java", message.getValue(), java, null, iterations);
+                run(message.getKey(), "binary", message.getValue(), binary, binary.manifest(message.getValue()),
+                        iterations);
+            }
+        } finally {
+            TestKit.shutdownActorSystem(actorSystem);
+        }
+    }
+
+    private static void run(String name, String format, Object message, Serializer serializer, String manifest,
+            int iterations) throws Exception {
+        // warm up
+        roundTrips(message, serializer, manifest, iterations);
+
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long start = System.nanoTime();
+
+        roundTrips(message, serializer, manifest, iterations);
+
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+
+        System.out.printf("%-26s %-7s %10d %12d %10d%n", name, format, elapsed / iterations,
+                allocated / iterations, serializer.toBinary(message).length);
+    }
+
+    private static void roundTrips(Object message, Serializer serializer, String manifest, int iterations)
+            throws Exception {
+        for (int i = 0; i < iterations; i++) {
+            byte[] bytes = serializer.toBinary(message);
+
+            if (manifest != null) {
+                ((SignerProtocolSerializer) serializer).fromBinary(bytes, manifest);
+            } else {
+                serializer.fromBinary(bytes);
+            }
+        }
+    }
+
+    private static Map<String, Object> createMessages() {
+        Random random = new Random(0);
+        ClientId member = ClientId.create("EE", "BUSINESS", "consumer");
+        String certHash = Base64.getEncoder().encodeToString(randomBytes(random, SHA256_DIGEST_LENGTH));
+        CertificateInfo cert = new CertificateInfo(member, true, true, CertificateInfo.STATUS_REGISTERED,
+                certHash, randomBytes(random, CERT_LENGTH), randomBytes(random, OCSP_RESPONSE_LENGTH));
+
+        Map<String, Object> messages = new LinkedHashMap<>();
+        messages.put("Sign", new Sign(certHash, "http://www.w3.org/2001/04/xmldsig-more#rsa-sha256",
+                randomBytes(random, SHA256_DIGEST_LENGTH)));
+        messages.put("SignResponse", new SignResponse(randomBytes(random, SIGNATURE_LENGTH)));
+        messages.put("GetOcspResponses", new GetOcspResponses(new String[] {certHash}));
+        messages.put("GetOcspResponsesResponse", new GetOcspResponsesResponse(new String[] {
+                Base64.getEncoder().encodeToString(randomBytes(random, OCSP_RESPONSE_LENGTH))}));
+        messages.put("MemberSigningInfo", new MemberSigningInfo(certHash, cert, "CKM_RSA_PKCS"));
+
+        return messages;
+    }
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+
+        return bytes;
+    }
+}
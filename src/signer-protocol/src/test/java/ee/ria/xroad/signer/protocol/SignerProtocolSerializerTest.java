@@ -0,0 +1,171 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.protocol;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.SecurityServerId;
+import ee.ria.xroad.signer.protocol.dto.AuthKeyInfo;
+import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
+import ee.ria.xroad.signer.protocol.dto.MemberSigningInfo;
+import ee.ria.xroad.signer.protocol.message.GetAuthKey;
+import ee.ria.xroad.signer.protocol.message.GetMemberSigningInfo;
+import ee.ria.xroad.signer.protocol.message.GetOcspResponses;
+import ee.ria.xroad.signer.protocol.message.GetOcspResponsesResponse;
+import ee.ria.xroad.signer.protocol.message.GetTokenInfo;
+import ee.ria.xroad.signer.protocol.message.Sign;
+import ee.ria.xroad.signer.protocol.message.SignResponse;
+
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.serialization.JavaSerializer;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
+import akka.testkit.javadsl.TestKit;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the signer protocol serializer and its serialization bindings.
+ */
+public class SignerProtocolSerializerTest {
+
+    private static final ClientId MEMBER = ClientId.create("EE", "BUSINESS", "consumer");
+
+    private static final CertificateInfo CERT = new CertificateInfo(MEMBER, true, true,
+            CertificateInfo.STATUS_REGISTERED, "certId", new byte[] {1, 2, 3}, new byte[] {4, 5});
+
+    private static ActorSystem actorSystem;
+
+    private static Serialization serialization;
+
+    /**
+     * Creates the actor system.
+     */
+    @BeforeClass
+    public static void setUpClass() {
+        actorSystem = ActorSystem.create();
+        serialization = SerializationExtension.get(actorSystem);
+    }
+
+    /**
+     * Shuts down the actor system.
+     */
+    @AfterClass
+    public static void tearDownClass() {
+        TestKit.shutdownActorSystem(actorSystem);
+    }
+
+    /**
+     * Test that the sign request and response are serialized in the binary format.
+     */
+    @Test
+    public void sign() {
+        assertRoundTrip(new Sign("keyId", "signAlgorithmId", new byte[] {1, 2, 3}));
+        assertRoundTrip(new Sign(null, null, null));
+        assertRoundTrip(new SignResponse(new byte[] {1, 2, 3}));
+        assertRoundTrip(new SignResponse(new byte[0]));
+    }
+
+    /**
+     * Test that OCSP response requests and responses, including missing responses, are serialized.
+     */
+    @Test
+    public void ocspResponses() {
+        assertRoundTrip(new GetOcspResponses(new String[] {"hash1", "hash2"}));
+        assertRoundTrip(new GetOcspResponses(new String[0]));
+        assertRoundTrip(new GetOcspResponsesResponse(new String[] {"cmVzcG9uc2U=", null}));
+        assertRoundTrip(new GetOcspResponsesResponse(null));
+    }
+
+    /**
+     * Test that member signing info requests and responses are serialized.
+     */
+    @Test
+    public void memberSigningInfo() {
+        assertRoundTrip(new GetMemberSigningInfo(MEMBER));
+        assertRoundTrip(new GetMemberSigningInfo(ClientId.create("EE", "BUSINESS", "consumer", "subsystem")));
+        assertRoundTrip(new MemberSigningInfo("keyId", CERT, "CKM_RSA_PKCS"));
+        assertRoundTrip(new MemberSigningInfo("keyId", new CertificateInfo(null, false, false, null, null,
+                null, null), null));
+    }
+
+    /**
+     * Test that authentication key requests and responses are serialized.
+     */
+    @Test
+    public void authKey() {
+        assertRoundTrip(new GetAuthKey(SecurityServerId.create(MEMBER, "server")));
+
+        AuthKeyInfo authKeyInfo = (AuthKeyInfo) assertRoundTrip(
+                new AuthKeyInfo("alias", "keystore.p12", "pässword".toCharArray(), CERT));
+
+        assertArrayEquals("pässword".toCharArray(), authKeyInfo.getPassword());
+
+        assertRoundTrip(new AuthKeyInfo(null, null, null, null));
+    }
+
+    /**
+     * Test that other messages are left to the default serializer.
+     */
+    @Test
+    public void otherMessagesUseDefaultSerializer() {
+        assertNotEquals(SignerProtocolSerializer.IDENTIFIER,
+                serialization.findSerializerFor(new GetTokenInfo("tokenId")).identifier());
+    }
+
+    /**
+     * Test that the binary format is smaller than Java serialization.
+     */
+    @Test
+    public void smallerThanJavaSerialization() {
+        Sign sign = new Sign("keyId", "signAlgorithmId", new byte[] {1, 2, 3});
+
+        byte[] binary = serialization.serialize(sign).get();
+        byte[] java = new JavaSerializer((ExtendedActorSystem) actorSystem).toBinary(sign);
+
+        assertTrue(binary.length < java.length);
+    }
+
+    private static Object assertRoundTrip(Object message) {
+        Serializer serializer = serialization.findSerializerFor(message);
+
+        assertEquals(SignerProtocolSerializer.IDENTIFIER, serializer.identifier());
+
+        byte[] bytes = serialization.serialize(message).get();
+        Object result = serialization.deserialize(bytes, serializer.identifier(),
+                ((SignerProtocolSerializer) serializer).manifest(message)).get();
+
+        assertEquals(message, result);
+
+        return result;
+    }
+}
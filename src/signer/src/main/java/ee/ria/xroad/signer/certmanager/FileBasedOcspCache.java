@@ -41,12 +41,18 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.translateException;
 import static ee.ria.xroad.common.SystemProperties.getOcspCachePath;
+import static ee.ria.xroad.common.SystemProperties.getOcspMissingResponseCachePeriod;
 
 /**
- * OCSP cache that holds the OCSP responses on disk.
+ * OCSP cache that holds the OCSP responses on disk. Responses that are not
+ * found on disk are remembered for a short time, so that repeated lookups of
+ * missing responses do not hit the file system.
  */
 @Slf4j
 public class FileBasedOcspCache extends OcspCache {
@@ -54,6 +60,8 @@ public class FileBasedOcspCache extends OcspCache {
     /** The OCSP response file extension. */
     private static final String OCSP_FILE_EXTENSION = ".ocsp";
 
+    private final Map<Object, Long> missingResponses = new ConcurrentHashMap<>();
+
     /**
      * Returns the OCSP response for the given certificate or null, if the
      * response is not available.
@@ -63,13 +71,17 @@ public class FileBasedOcspCache extends OcspCache {
     @Override
     protected OCSPResp getResponse(Object key, Date atDate) {
         OCSPResp response = null;
-        if (cache.containsKey(key)) { // is the OCSP response in memory?
+        if (contains(key)) { // is the OCSP response in memory?
             response = super.getResponse(key, atDate);
             if (response != null) {
                 return response;
             }
         }
 
+        if (isMissing(key)) {
+            return null;
+        }
+
         File file = getOcspResponseFile(getOcspCachePath(), key);
         try {
             response = loadResponseFromFileIfNotExpired(file, atDate);
@@ -78,11 +90,18 @@ public class FileBasedOcspCache extends OcspCache {
             throw translateException(e);
         }
 
+        if (response == null) {
+            missingResponses.put(key, System.currentTimeMillis()
+                    + TimeUnit.SECONDS.toMillis(getOcspMissingResponseCachePeriod()));
+        }
+
         return response;
     }
 
     @Override
     public OCSPResp put(String key, OCSPResp value) {
+        missingResponses.remove(key);
+
         OCSPResp response = super.put(key, value);
         try {
             File file = getOcspResponseFile(getOcspCachePath(), key);
@@ -95,6 +114,12 @@ public class FileBasedOcspCache extends OcspCache {
         return response;
     }
 
+    @Override
+    public void clear() {
+        super.clear();
+        missingResponses.clear();
+    }
+
     void reloadFromDisk() throws Exception {
         Path path = Paths.get(getOcspCachePath());
 
@@ -127,10 +152,8 @@ public class FileBasedOcspCache extends OcspCache {
         OCSPResp response = loadResponseFromFile(file);
         if (response != null) {
             String key = getFileNameWithoutExtension(file);
-            if (!isExpired(response, atDate)) {
+            if (putIfNotExpired(key, response, atDate)) { // store in memory
                 log.trace("Loaded OCSP response for cert hash {}", key);
-
-                super.put(key, response); // store in memory
             } else {
                 log.trace("Cached OCSP response for certificate '{}' "
                         + "has expired, deleting the file '{}'", key, file);
@@ -160,6 +183,20 @@ public class FileBasedOcspCache extends OcspCache {
         }
     }
 
+    private boolean isMissing(Object key) {
+        Long missingUntil = missingResponses.get(key);
+        if (missingUntil == null) {
+            return false;
+        }
+
+        if (missingUntil < System.currentTimeMillis()) {
+            missingResponses.remove(key, missingUntil);
+            return false;
+        }
+
+        return true;
+    }
+
     private static void createIntermediateDirectories(File file)
             throws IOException {
         File path = file.getParentFile();
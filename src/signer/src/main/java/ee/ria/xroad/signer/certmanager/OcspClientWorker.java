@@ -28,6 +28,7 @@ import ee.ria.xroad.common.CertificationServiceDiagnostics;
 import ee.ria.xroad.common.CertificationServiceStatus;
 import ee.ria.xroad.common.DiagnosticsErrorCodes;
 import ee.ria.xroad.common.OcspResponderStatus;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.globalconfextension.GlobalConfExtensions;
@@ -56,13 +57,20 @@ import java.security.cert.X509Certificate;
 import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
 import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
@@ -77,6 +85,8 @@ import static java.util.Collections.emptyList;
  * server and providing the responses to the message signer.
  *
  * The certificate status is queried from the server at a fixed interval.
+ * Certificates are grouped by their OCSP responders, and the groups are queried
+ * in parallel, so that a slow responder only delays the certificates it serves.
  */
 @Slf4j
 @RequiredArgsConstructor
@@ -99,11 +109,30 @@ public class OcspClientWorker extends AbstractSignerActor {
 
     private CertificationServiceDiagnostics certServDiagnostics;
 
+    private ExecutorService fetchExecutor;
+
     @Override
     public void preStart() throws Exception {
         super.preStart();
         changeChecker = new GlobalConfChangeChecker();
         certServDiagnostics = new CertificationServiceDiagnostics();
+        fetchExecutor = createFetchExecutor();
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        fetchExecutor.shutdownNow();
+        super.postStop();
+    }
+
+    private static ExecutorService createFetchExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        return Executors.newFixedThreadPool(SystemProperties.getOcspFetchThreads(), r -> {
+            Thread thread = new Thread(r, "ocsp-fetch-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @Override
@@ -208,25 +237,38 @@ public class OcspClientWorker extends AbstractSignerActor {
             return;
         }
 
-        log.info("Fetching OCSP responses for {} certificates", certs.size());
+        Collection<List<X509Certificate>> certGroups = groupByResponders(certs);
 
-        Boolean failed = false;
-        Map<String, OCSPResp> statuses = new HashMap<>();
+        log.info("Fetching OCSP responses for {} certificates from {} responder groups", certs.size(),
+                certGroups.size());
 
-        for (X509Certificate subject : certs) {
+        OcspVerifierOptions verifierOptions = new OcspVerifierOptions(
+                GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate());
+
+        boolean failed = false;
+        Map<String, OCSPResp> statuses = new ConcurrentHashMap<>();
+        List<Future<Boolean>> results = new ArrayList<>(certGroups.size());
+
+        for (List<X509Certificate> certGroup : certGroups) {
+            results.add(fetchExecutor.submit(() -> queryCertStatuses(certGroup, verifierOptions, statuses)));
+        }
+
+        for (Future<Boolean> result : results) {
             try {
-                OCSPResp status = queryCertStatus(subject, new OcspVerifierOptions(
-                        GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate()));
-                if (status != null) {
-                    String subjectHash = calculateCertHexHash(subject);
-                    statuses.put(subjectHash, status);
-                } else {
+                if (!result.get()) {
                     failed = true;
                 }
-            } catch (Exception e) {
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
                 failed = true;
 
-                log.error("Error when querying certificate '{}'", subject.getSerialNumber(), e);
+                log.error("Interrupted while fetching OCSP responses", e);
+
+                break;
+            } catch (ExecutionException e) {
+                failed = true;
+
+                log.error("Error when fetching OCSP responses", e.getCause());
             }
         }
 
@@ -243,6 +285,55 @@ public class OcspClientWorker extends AbstractSignerActor {
         }
     }
 
+    /**
+     * Groups the certificates by their OCSP responder addresses, keeping the order of the certificates.
+     */
+    Collection<List<X509Certificate>> groupByResponders(List<X509Certificate> certs) {
+        Map<List<String>, List<X509Certificate>> certsByResponders = new LinkedHashMap<>();
+
+        for (X509Certificate cert : certs) {
+            List<String> responderURIs;
+            try {
+                responderURIs = GlobalConf.getOcspResponderAddresses(cert);
+            } catch (Exception e) {
+                log.error("Unable to get OCSP responders for certificate '{}'", cert.getSerialNumber(), e);
+
+                responderURIs = emptyList();
+            }
+
+            certsByResponders.computeIfAbsent(responderURIs, k -> new ArrayList<>()).add(cert);
+        }
+
+        return certsByResponders.values();
+    }
+
+    /**
+     * Queries the statuses of certificates that share the same OCSP responders, one certificate at a time.
+     * @return true if the statuses of all the certificates were received
+     */
+    boolean queryCertStatuses(List<X509Certificate> certs, OcspVerifierOptions verifierOptions,
+            Map<String, OCSPResp> statuses) {
+        boolean success = true;
+
+        for (X509Certificate subject : certs) {
+            try {
+                OCSPResp status = queryCertStatus(subject, verifierOptions);
+                if (status != null) {
+                    String subjectHash = calculateCertHexHash(subject);
+                    statuses.put(subjectHash, status);
+                } else {
+                    success = false;
+                }
+            } catch (Exception e) {
+                success = false;
+
+                log.error("Error when querying certificate '{}'", subject.getSerialNumber(), e);
+            }
+        }
+
+        return success;
+    }
+
     List<X509Certificate> getCertsForOcsp() {
         Set<X509Certificate> certs = new HashSet<>();
 
@@ -302,6 +393,7 @@ public class OcspClientWorker extends AbstractSignerActor {
         OCSPResp response = null;
 
         for (String responderURI : responderURIs) {
+            long start = System.currentTimeMillis();
             try {
                 log.debug("Fetching response from: {}", responderURI);
 
@@ -309,7 +401,8 @@ public class OcspClientWorker extends AbstractSignerActor {
 
                 if (response != null) {
                     reportOcspDiagnostics(issuer, responderURI, DiagnosticsErrorCodes.RETURN_SUCCESS, LocalTime.now(),
-                            LocalTime.now().plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval()));
+                            LocalTime.now().plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval()),
+                            System.currentTimeMillis() - start);
 
                     break;
                 }
@@ -318,19 +411,22 @@ public class OcspClientWorker extends AbstractSignerActor {
 
                 reportOcspDiagnostics(issuer, responderURI, DiagnosticsErrorCodes.ERROR_CODE_OCSP_RESPONSE_INVALID,
                         LocalTime.now(),
-                        LocalTime.now().plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval()));
+                        LocalTime.now().plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval()),
+                        System.currentTimeMillis() - start);
             } catch (IOException e) {
                 log.error("Unable to connect to responder at " + responderURI, e);
 
                 reportOcspDiagnostics(issuer, responderURI, DiagnosticsErrorCodes.ERROR_CODE_OCSP_CONNECTION_ERROR,
                         LocalTime.now(),
-                        LocalTime.now().plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval()));
+                        LocalTime.now().plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval()),
+                        System.currentTimeMillis() - start);
             } catch (Exception e) {
                 log.error("Unable to fetch response from responder at " + responderURI, e);
 
                 reportOcspDiagnostics(issuer, responderURI, DiagnosticsErrorCodes.ERROR_CODE_OCSP_FAILED,
                         LocalTime.now(),
-                        LocalTime.now().plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval()));
+                        LocalTime.now().plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval()),
+                        System.currentTimeMillis() - start);
             }
         }
         try {
@@ -351,25 +447,29 @@ public class OcspClientWorker extends AbstractSignerActor {
     }
 
     private void reportOcspDiagnostics(X509Certificate issuer, String responderURI, int statusCode,
-            LocalTime prevUpdate, LocalTime nextUpdate) {
+            LocalTime prevUpdate, LocalTime nextUpdate, long responseTimeMillis) {
 
-        OcspResponderStatus responderStatus = new OcspResponderStatus(statusCode, responderURI, prevUpdate, nextUpdate);
+        OcspResponderStatus responderStatus = new OcspResponderStatus(statusCode, responderURI, prevUpdate, nextUpdate,
+                responseTimeMillis);
 
         String subjectName = issuer.getSubjectDN().toString();
 
         CertificationServiceStatus serviceStatus;
 
-        Map<String, CertificationServiceStatus> serviceStatusMap =
-                certServDiagnostics.getCertificationServiceStatusMap();
+        // responders are queried in parallel
+        synchronized (certServDiagnostics) {
+            Map<String, CertificationServiceStatus> serviceStatusMap =
+                    certServDiagnostics.getCertificationServiceStatusMap();
 
-        if (!serviceStatusMap.containsKey(subjectName)) {
-            serviceStatus = new CertificationServiceStatus(subjectName);
-            serviceStatusMap.put(subjectName, serviceStatus);
-        } else {
-            serviceStatus = serviceStatusMap.get(subjectName);
-        }
+            if (!serviceStatusMap.containsKey(subjectName)) {
+                serviceStatus = new CertificationServiceStatus(subjectName);
+                serviceStatusMap.put(subjectName, serviceStatus);
+            } else {
+                serviceStatus = serviceStatusMap.get(subjectName);
+            }
 
-        serviceStatus.getOcspResponderStatusMap().put(responderURI, responderStatus);
+            serviceStatus.getOcspResponderStatusMap().put(responderURI, responderStatus);
+        }
     }
 
     void updateCertStatuses(Map<String, OCSPResp> statuses) throws Exception {
@@ -481,7 +581,7 @@ public class OcspClientWorker extends AbstractSignerActor {
                             OcspResponderStatus responderStatus = new OcspResponderStatus(
                                     DiagnosticsErrorCodes.ERROR_CODE_OCSP_UNINITIALIZED, responderURI, null,
                                     LocalTime.now().plusSeconds(
-                                            GlobalConfExtensions.getInstance().getOcspFetchInterval()));
+                                            GlobalConfExtensions.getInstance().getOcspFetchInterval()), null);
                             serviceStatus.getOcspResponderStatusMap().put(responderURI, responderStatus);
                         });
             } catch (Exception e) {
@@ -48,6 +48,9 @@ public class HardwareModuleType implements ModuleType {
 
     private final boolean batchSigningEnabled;
 
+    // Number of PKCS#11 sessions used in parallel for signing.
+    private final int signSessionCount;
+
     private final boolean forceReadOnly;
 
     private final String signMechanismName;
@@ -69,6 +69,8 @@ public final class ModuleConf {
 
     private static final String DEFAULT_SIGN_MECHANISM_NAME = PKCS11Constants.NAME_CKM_RSA_PKCS;
 
+    private static final int DEFAULT_SIGN_SESSIONS = 1;
+
     // Module configuration fields.
     private static final String ENABLED_PARAM = "enabled";
     private static final String LIBRARY_PARAM = "library";
@@ -76,6 +78,7 @@ public final class ModuleConf {
     private static final String OS_LOCKING_OK_PARAM = "os_locking_ok";
     private static final String SIGN_VERIFY_PIN_PARAM = "sign_verify_pin";
     private static final String BATCH_SIGNING_ENABLED_PARAM = "batch_signing_enabled";
+    private static final String SIGN_SESSIONS_PARAM = "sign_sessions";
     private static final String READ_ONLY_PARAM = "read_only";
     private static final String TOKEN_ID_FORMAT_PARAM = "token_id_format";
     private static final String SIGN_MECHANISM_PARAM = "sign_mechanism";
@@ -220,6 +223,27 @@ public final class ModuleConf {
         boolean verifyPin = getBoolean(section, SIGN_VERIFY_PIN_PARAM, false);
         boolean batchSigning = getBoolean(section, BATCH_SIGNING_ENABLED_PARAM, true);
         boolean readOnly = getBoolean(section, READ_ONLY_PARAM, false);
+        int signSessions = getInt(section, SIGN_SESSIONS_PARAM, DEFAULT_SIGN_SESSIONS);
+
+        if (signSessions < 1) {
+            log.error("Invalid number of sign sessions ({}) specified for module ({}), skipping...",
+                    signSessions, uid);
+
+            return;
+        }
+
+        if (signSessions > 1 && !verifyPin) {
+            // The library is called from several signing threads, so it must be told to do its own locking
+            if (Boolean.FALSE.equals(osLockingOk)) {
+                log.error("Signing with {} sessions requires os_locking_ok = true for module ({}), skipping...",
+                        signSessions, uid);
+
+                return;
+            }
+
+            osLockingOk = true;
+        }
+
         String tokenIdFormat = section.getString(TOKEN_ID_FORMAT_PARAM);
 
         if (StringUtils.isBlank(tokenIdFormat)) {
@@ -246,9 +270,9 @@ public final class ModuleConf {
 
         log.debug("Read module configuration (UID = {}, library = {}, library_cant_create_os_threads = {}"
                 + ", os_locking_ok = {}, token_id_format = {}, pin_verification_per_signing = {}, batch_signing = {}"
-                + ", sign_mechanism = {}, pub_key_attributes = {}, priv_key_attributes = {})",
+                + ", sign_sessions = {}, sign_mechanism = {}, pub_key_attributes = {}, priv_key_attributes = {})",
                 uid, library, libraryCantCreateOsThreads, osLockingOk, tokenIdFormat, verifyPin, batchSigning,
-                signMechanismName, pubKeyAttributes, privKeyAttributes);
+                signSessions, signMechanismName, pubKeyAttributes, privKeyAttributes);
 
         if (MODULES.containsKey(uid)) {
             log.warn("Module information already defined for {}, skipping...", uid);
@@ -260,7 +284,8 @@ public final class ModuleConf {
         Set<Long> slotIds = slotIdStrings.stream().map(String::trim).map(Long::parseLong).collect(Collectors.toSet());
 
         MODULES.put(uid, new HardwareModuleType(uid, library, libraryCantCreateOsThreads, osLockingOk, tokenIdFormat,
-                verifyPin, batchSigning, readOnly, signMechanismName, privKeyAttributes, pubKeyAttributes, slotIds));
+                verifyPin, batchSigning, signSessions, readOnly, signMechanismName, privKeyAttributes,
+                pubKeyAttributes, slotIds));
     }
 
     private static PubKeyAttributes loadPubKeyAttributes(SubnodeConfiguration section) {
@@ -325,6 +350,15 @@ public final class ModuleConf {
         }
     }
 
+    private static int getInt(SubnodeConfiguration section, String key, int defaultValue) {
+        try {
+            return section.getInt(key, defaultValue);
+        } catch (ConversionException e) {
+            throw new ConversionException(String.format("Invalid value of '%s' for module (%s), skipping...",
+                    key, section.getSubnodeKey()), e);
+        }
+    }
+
     private static String[] getStringArray(SubnodeConfiguration section, String key) {
         try {
             return section.getStringArray(key);
@@ -37,9 +37,13 @@ import ee.ria.xroad.signer.util.CalculateSignature;
 import ee.ria.xroad.signer.util.CalculatedSignature;
 import ee.ria.xroad.signer.util.SignerUtil;
 
+import akka.actor.ActorRef;
 import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
 import static ee.ria.xroad.common.ErrorCodes.X_CANNOT_SIGN;
 import static ee.ria.xroad.common.ErrorCodes.X_FAILED_TO_GENERATE_R_KEY;
 import static ee.ria.xroad.signer.tokenmanager.TokenManager.setTokenAvailable;
@@ -81,6 +85,16 @@ public abstract class AbstractTokenWorker extends AbstractUpdateableActor {
         return e;
     }
 
+    /**
+     * Returns the executor on which signatures are calculated. By default, signatures are calculated on
+     * the worker's own thread. Workers returning an executor must support concurrent calls to
+     * {@link #sign(String, String, byte[])}.
+     * @return the sign executor or null, if signing is done on the worker's thread
+     */
+    protected Executor getSignExecutor() {
+        return null;
+    }
+
     @Override
     protected void onMessage(Object message) throws Exception {
         log.trace("onMessage()");
@@ -172,17 +186,38 @@ public abstract class AbstractTokenWorker extends AbstractUpdateableActor {
         sendSuccessResponse();
     }
 
-    private void handleCalculateSignature(CalculateSignature signRequest) throws Exception {
+    private void handleCalculateSignature(CalculateSignature signRequest) {
+        Executor signExecutor = getSignExecutor();
+
+        if (signExecutor != null) {
+            ActorRef sender = getSender();
+            ActorRef self = getSelf();
+
+            try {
+                signExecutor.execute(() -> sender.tell(calculateSignature(signRequest), self));
+
+                return;
+            } catch (RejectedExecutionException e) {
+                log.warn("Sign executor of token '{}' rejected the request, signing on worker thread", getWorkerId());
+            }
+        }
+
+        sendResponse(calculateSignature(signRequest));
+    }
+
+    private CalculatedSignature calculateSignature(CalculateSignature signRequest) {
         try {
             byte data[] = SignerUtil.createDataToSign(signRequest.getDigest(), signRequest.getSignatureAlgorithmId());
 
             byte[] signature = sign(signRequest.getKeyId(), signRequest.getSignatureAlgorithmId(), data);
-            sendResponse(new CalculatedSignature(signRequest, signature, null));
+
+            return new CalculatedSignature(signRequest, signature, null);
         } catch (Exception e) { // catch-log-rethrow
             log.error("Error while signing with key '{}'", signRequest.getKeyId(), e);
 
             CodedException tr = translateError(customizeException(e)).withPrefix(X_CANNOT_SIGN);
-            sendResponse(new CalculatedSignature(signRequest, null, tr));
+
+            return new CalculatedSignature(signRequest, null, tr);
         }
     }
 
@@ -47,10 +47,15 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.KeyPair;
 import java.security.KeyStore;
+import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.Signature;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_PIN_INCORRECT;
@@ -89,7 +94,14 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
     // Use no digesting algorithm, since the input data is already a digest
     private static final String SIGNATURE_ALGORITHM = "NONEwithRSA";
 
-    private final Map<String, PrivateKey> privateKeys = new HashMap<>();
+    // Signature instances are not thread-safe, so each signing thread reuses its own
+    private static final ThreadLocal<Signature> SIGNATURES = new ThreadLocal<>();
+
+    // maps key id to decoded private key, written only by the worker actor and read concurrently
+    // when signing on the sign executor
+    private final Map<String, PrivateKey> privateKeys = new ConcurrentHashMap<>();
+
+    private ExecutorService signExecutor;
 
     /**
      * Creates new worker.
@@ -100,6 +112,29 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
         super(tokenInfo);
     }
 
+    @Override
+    public void preStart() throws Exception {
+        int signThreads = SystemProperties.getSoftwareTokenSignThreads();
+
+        if (signThreads > 1) {
+            signExecutor = createSignExecutor(signThreads);
+        }
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        super.postStop();
+
+        if (signExecutor != null) {
+            signExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    protected Executor getSignExecutor() {
+        return signExecutor;
+    }
+
     @Override
     protected void onUpdate() throws Exception {
         log.trace("onUpdate()");
@@ -131,6 +166,7 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
     protected void activateToken(ActivateToken message) throws Exception {
         if (message.isActivate()) {
             activateToken();
+            updateKeys();
         } else {
             deactivateToken();
         }
@@ -151,6 +187,7 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
 
         String keyId = SignerUtil.randomId();
         savePkcs12Keystore(keyPair, keyId, getKeyStoreFileName(keyId), getPin());
+        privateKeys.put(keyId, keyPair.getPrivate());
 
         String publicKeyBase64 = encodeBase64(keyPair.getPublic().getEncoded());
 
@@ -169,6 +206,7 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
 
         log.info("Deleting key file {}", path);
 
+        privateKeys.remove(keyId);
         Files.deleteIfExists(path);
     }
 
@@ -199,7 +237,7 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
 
         log.debug("Signing with key '{}' and signature algorithm '{}'", keyId, signatureAlgorithmId);
 
-        Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+        Signature signature = getSignature();
         signature.initSign(key);
         signature.update(data);
 
@@ -219,6 +257,27 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
         }
     }
 
+    private static Signature getSignature() throws NoSuchAlgorithmException {
+        Signature signature = SIGNATURES.get();
+
+        if (signature == null) {
+            signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+            SIGNATURES.set(signature);
+        }
+
+        return signature;
+    }
+
+    private ExecutorService createSignExecutor(int signThreads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        return Executors.newFixedThreadPool(signThreads, r -> {
+            Thread thread = new Thread(r, "token-sign-" + getWorkerId() + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
     // ------------------------------------------------------------------------
 
     private void updateStatus() {
@@ -283,11 +342,14 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
     private PrivateKey getPrivateKey(String keyId) throws Exception {
         PrivateKey pkey = privateKeys.get(keyId);
 
-        if (pkey == null) {
+        // Keys are loaded on the sign executor's behalf by activateToken() and updateKeys(), so that
+        // loading cannot race with deactivation or key deletion handled by the worker actor
+        if (pkey == null && signExecutor == null) {
             initializePrivateKey(keyId);
+            pkey = privateKeys.get(keyId);
         }
 
-        return privateKeys.get(keyId);
+        return pkey;
     }
 
     private void initializePrivateKey(String keyId) throws Exception {
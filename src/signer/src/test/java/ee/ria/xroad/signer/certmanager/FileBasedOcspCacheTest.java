@@ -148,6 +148,36 @@ public class FileBasedOcspCacheTest {
         assertNull(cache.loadResponseFromFile(f));
     }
 
+    /**
+     * Test that a response missing from disk is not looked up again until
+     * a response is put into the cache.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void missingResponse() throws Exception {
+        Date thisUpdate = new DateTime().plusDays(1).toDate();
+        OCSPResp ocsp = OcspTestUtils.createOCSPResponse(subject, issuer,
+                signer, signerKey, CertificateStatus.GOOD, thisUpdate, null);
+
+        FileBasedOcspCache cache = new FileBasedOcspCache();
+        FileBasedOcspCache spy = Mockito.spy(cache);
+
+        Mockito.doNothing().when(spy).saveResponseToFile(
+                Mockito.any(File.class), Mockito.any(OCSPResp.class));
+
+        Mockito.doReturn(null).when(spy).loadResponseFromFile(
+                Mockito.any(File.class));
+
+        assertNull(spy.get("foo"));
+        assertNull(spy.get("foo"));
+
+        Mockito.verify(spy, Mockito.times(1)).loadResponseFromFile(
+                Mockito.any(File.class));
+
+        spy.put("foo", ocsp);
+        assertNotNull(spy.get("foo"));
+    }
+
     /**
      * Loads test certificates.
      * @throws Exception if an error occurs
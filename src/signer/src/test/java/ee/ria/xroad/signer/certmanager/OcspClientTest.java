@@ -65,10 +65,15 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -244,6 +249,36 @@ public class OcspClientTest {
         OcspClient.fetchResponse(RESPONDER_URI, subject, issuer, null, null, null);
     }
 
+    /**
+     * Test.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void certStatusesGroupedByResponders() throws Exception {
+        X509Certificate subject = getDefaultClientCert();
+        X509Certificate otherSubject = TestCertUtil.getProducer().certChain[0];
+
+        GlobalConfProvider conf = getTestGlobalConf();
+        when(conf.getOcspResponderAddresses(otherSubject)).thenReturn(Arrays.asList("http://127.0.0.1:1234"));
+        GlobalConf.reload(conf);
+
+        Date thisUpdate = new DateTime().plusDays(1).toDate();
+
+        responseData = OcspTestUtils.createOCSPResponse(subject, GlobalConf.getCaCert("EE", subject), ocspResponderCert,
+                getOcspSignerKey(), CertificateStatus.GOOD, thisUpdate, null).getEncoded();
+
+        List<List<X509Certificate>> groups = new ArrayList<>(
+                ocspClient.groupByResponders(Arrays.asList(subject, otherSubject, subject)));
+        assertEquals(Arrays.asList(Arrays.asList(subject, subject), Arrays.asList(otherSubject)), groups);
+
+        Map<String, OCSPResp> statuses = new HashMap<>();
+        assertTrue(ocspClient.queryCertStatuses(groups.get(0), new OcspVerifierOptions(true), statuses));
+        assertNotNull(statuses.get(hash(subject)));
+
+        assertFalse(ocspClient.queryCertStatuses(groups.get(1), new OcspVerifierOptions(true), statuses));
+        assertNull(statuses.get(hash(otherSubject)));
+    }
+
     // ------------------------------------------------------------------------
 
     /**
@@ -0,0 +1,222 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.signer.protocol.dto.TokenInfo;
+import ee.ria.xroad.signer.protocol.dto.TokenStatusInfo;
+import ee.ria.xroad.signer.protocol.message.ActivateToken;
+import ee.ria.xroad.signer.protocol.message.GenerateKey;
+import ee.ria.xroad.signer.util.CalculateSignature;
+import ee.ria.xroad.signer.util.CalculatedSignature;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.javadsl.TestKit;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.ErrorCodes.X_CANNOT_SIGN;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests dispatching of signature calculations in {@link AbstractTokenWorker}.
+ */
+public class AbstractTokenWorkerTest {
+
+    private static final ActorSystem ACTOR_SYSTEM = ActorSystem.create();
+
+    private static final byte[] DIGEST = new byte[CryptoUtils.SHA256_DIGEST_LENGTH];
+
+    private static final int SIGN_THREADS = 2;
+
+    private static final TokenInfo TOKEN_INFO = new TokenInfo("test", "test", "test", false, true, true, null,
+            null, 0, TokenStatusInfo.OK, new ArrayList<>(), new HashMap<>());
+
+    private ExecutorService signExecutor;
+
+    /**
+     * Creates the sign executor.
+     */
+    @Before
+    public void setUp() {
+        signExecutor = Executors.newFixedThreadPool(SIGN_THREADS);
+    }
+
+    /**
+     * Shuts down the sign executor.
+     */
+    @After
+    public void tearDown() {
+        signExecutor.shutdownNow();
+    }
+
+    /**
+     * Shuts down the actor system.
+     */
+    @AfterClass
+    public static void tearDownClass() {
+        TestKit.shutdownActorSystem(ACTOR_SYSTEM);
+    }
+
+    /**
+     * Test that signatures are calculated on the worker thread when no sign executor is given.
+     */
+    @Test
+    public void signOnWorkerThread() {
+        TestKit probe = new TestKit(ACTOR_SYSTEM);
+        ActorRef worker = ACTOR_SYSTEM.actorOf(Props.create(TestTokenWorker.class, null, null));
+
+        worker.tell(new CalculateSignature(probe.getRef(), "key", CryptoUtils.SHA256WITHRSA_ID, DIGEST),
+                probe.getRef());
+
+        CalculatedSignature response = probe.expectMsgClass(CalculatedSignature.class);
+
+        assertNull(response.getException());
+        assertNotNull(response.getSignature());
+    }
+
+    /**
+     * Test that signatures are calculated concurrently on the sign executor.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void signConcurrentlyOnSignExecutor() throws Exception {
+        CountDownLatch started = new CountDownLatch(SIGN_THREADS);
+
+        TestKit probe = new TestKit(ACTOR_SYSTEM);
+        ActorRef worker = ACTOR_SYSTEM.actorOf(Props.create(TestTokenWorker.class, signExecutor, started));
+
+        for (int i = 0; i < SIGN_THREADS; i++) {
+            worker.tell(new CalculateSignature(probe.getRef(), "key" + i, CryptoUtils.SHA256WITHRSA_ID, DIGEST),
+                    probe.getRef());
+        }
+
+        // Every signing waits for the others to start, so the responses only arrive if they run concurrently.
+        List<Object> responses = probe.receiveN(SIGN_THREADS);
+
+        for (Object response : responses) {
+            CalculatedSignature signature = (CalculatedSignature) response;
+
+            assertNull(signature.getException());
+            assertArrayEquals(signature.getRequest().getKeyId().getBytes(), signature.getSignature());
+        }
+    }
+
+    /**
+     * Test that signing errors are returned to the sender from the sign executor.
+     */
+    @Test
+    public void signFailureOnSignExecutor() {
+        TestKit probe = new TestKit(ACTOR_SYSTEM);
+        ActorRef worker = ACTOR_SYSTEM.actorOf(Props.create(TestTokenWorker.class, signExecutor, null));
+
+        worker.tell(new CalculateSignature(probe.getRef(), "key", "unknown", DIGEST), probe.getRef());
+
+        CalculatedSignature response = probe.expectMsgClass(CalculatedSignature.class);
+
+        assertTrue(response.getException() instanceof CodedException);
+        assertTrue(((CodedException) response.getException()).getFaultCode().startsWith(X_CANNOT_SIGN));
+        assertEquals("key", response.getRequest().getKeyId());
+    }
+
+    /**
+     * Token worker that returns the key id as the signature.
+     */
+    static class TestTokenWorker extends AbstractTokenWorker {
+
+        private final Executor signExecutor;
+
+        private final CountDownLatch started;
+
+        TestTokenWorker(Executor signExecutor, CountDownLatch started) {
+            super(TOKEN_INFO);
+
+            this.signExecutor = signExecutor;
+            this.started = started;
+        }
+
+        @Override
+        protected Executor getSignExecutor() {
+            return signExecutor;
+        }
+
+        @Override
+        public void postStop() {
+            // The token is not registered in the token manager
+        }
+
+        @Override
+        protected void onUpdate() {
+        }
+
+        @Override
+        protected void activateToken(ActivateToken message) {
+        }
+
+        @Override
+        protected GenerateKeyResult generateKey(GenerateKey message) {
+            return null;
+        }
+
+        @Override
+        protected void deleteKey(String keyId) {
+        }
+
+        @Override
+        protected void deleteCert(String certId) {
+        }
+
+        @Override
+        protected byte[] sign(String keyId, String signatureAlgorithmId, byte[] data) throws Exception {
+            if (started != null) {
+                started.countDown();
+
+                if (!started.await(1, TimeUnit.MINUTES)) {
+                    throw new IllegalStateException("Signatures were not calculated concurrently");
+                }
+            }
+
+            return keyId.getBytes();
+        }
+    }
+}